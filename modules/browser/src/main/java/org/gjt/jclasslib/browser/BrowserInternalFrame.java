@@ -23,8 +23,6 @@ import java.beans.PropertyVetoException;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
 
 /**
  * A child window of the class file browser application.
@@ -187,10 +185,9 @@ public class BrowserInternalFrame extends BasicInternalFrame
             if (index > -1) {
                 String jarFileName = fileName.substring(0, index);
                 String classFileName = fileName.substring(index + 1);
-                JarFile jarFile = new JarFile(jarFileName);
-                JarEntry jarEntry = jarFile.getJarEntry(classFileName);
-                if (jarEntry != null) {
-                    classFile = ClassFileReader.readFromInputStream(jarFile.getInputStream(jarEntry));
+                ClassFile jarClassFile = ClassFileReader.readFromArchive(new File(jarFileName), classFileName);
+                if (jarClassFile != null) {
+                    classFile = jarClassFile;
                 }
             } else {
                 classFile = ClassFileReader.readFromFile(new File(fileName));
@@ -8,6 +8,7 @@
 package org.gjt.jclasslib.browser.config;
 
 import org.gjt.jclasslib.browser.config.classpath.*;
+import org.gjt.jclasslib.io.ClassPathIndex;
 import org.gjt.jclasslib.mdi.MDIConfig;
 
 import javax.swing.tree.DefaultTreeModel;
@@ -31,6 +32,7 @@ public class BrowserConfig implements ClasspathComponent {
     private List<ClasspathEntry> classpath = new ArrayList<ClasspathEntry>();
     private Set<ClasspathEntry> mergedEntries = new HashSet<ClasspathEntry>();
     private Set<ClasspathChangeListener> changeListeners = new HashSet<ClasspathChangeListener>();
+    private ClassPathIndex classPathIndex;
 
     /**
      * Get the associated MDI configuration object.
@@ -62,6 +64,7 @@ public class BrowserConfig implements ClasspathComponent {
      */
     public void setClasspath(List<ClasspathEntry> classpath) {
         this.classpath = classpath;
+        classPathIndex = null;
     }
 
     public void addClasspathChangeListener(ClasspathChangeListener listener) {
@@ -141,13 +144,16 @@ public class BrowserConfig implements ClasspathComponent {
 
     public FindResult findClass(String className) {
 
-        for (ClasspathEntry entry : classpath) {
-            FindResult findResult = entry.findClass(className);
-            if (findResult != null) {
-                return findResult;
-            }
+        ClassPathIndex index = getClassPathIndex();
+        int entryIndex = index.findEntry(className);
+        if (entryIndex < 0 && index.refresh()) {
+            // an archive may have been changed since the index was created
+            entryIndex = index.findEntry(className);
         }
-        return null;
+        if (entryIndex < 0) {
+            return null;
+        }
+        return classpath.get(entryIndex).createFindResult(className);
     }
 
     public void mergeClassesIntoTree(DefaultTreeModel model, boolean reset) {
@@ -160,7 +166,21 @@ public class BrowserConfig implements ClasspathComponent {
         }
     }
 
+    private ClassPathIndex getClassPathIndex() {
+
+        if (classPathIndex == null) {
+            String[] classPathNames = new String[classpath.size()];
+            for (int i = 0; i < classPathNames.length; i++) {
+                classPathNames[i] = classpath.get(i).getFileName();
+            }
+            // the listings of archives are cached across sessions
+            classPathIndex = new ClassPathIndex(classPathNames, ClassPathIndex.getDefaultCacheDirectory());
+        }
+        return classPathIndex;
+    }
+
     private void fireClasspathChanged(boolean removal) {
+        classPathIndex = null;
         ClasspathChangeEvent event = new ClasspathChangeEvent(this, removal);
         for (ClasspathChangeListener listener : changeListeners) {
             listener.classpathChanged(event);
@@ -7,12 +7,14 @@
 
 package org.gjt.jclasslib.browser.config.classpath;
 
+import org.gjt.jclasslib.io.ClassPathIndex;
+import org.gjt.jclasslib.io.JarFileCache;
+
 import javax.swing.tree.DefaultTreeModel;
 import java.io.File;
 import java.io.IOException;
 import java.util.Enumeration;
 import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
 
 /**
     Classpath entry for an archive.
@@ -21,23 +23,34 @@ import java.util.jar.JarFile;
 */
 public class ClasspathArchiveEntry extends ClasspathEntry {
 
+    private ClassPathIndex classPathIndex;
+
     public FindResult findClass(String className) {
 
         File file = getFile();
         if (file == null) {
             return null;
         }
-        className = className.replace('.', '/') + ".class";
-        try {
-            JarFile jarFile = new JarFile(file);
-            JarEntry entry = jarFile.getJarEntry(className);
-            if (entry != null) {
-                return new FindResult(this, file.getPath() + "!" + className);
-            }
-        } catch (IOException e) {
+        // the listing of the archive is cached, so the archive is only opened if it has changed
+        if (classPathIndex == null) {
+            classPathIndex = new ClassPathIndex(new String[] {file.getPath()}, ClassPathIndex.getDefaultCacheDirectory());
+        }
+        if (classPathIndex.findEntry(className) < 0 &&
+                !(classPathIndex.refresh() && classPathIndex.findEntry(className) >= 0))
+        {
+            return null;
         }
 
-        return null;
+        return createFindResult(className);
+    }
+
+    public FindResult createFindResult(String className) {
+
+        File file = getFile();
+        if (file == null) {
+            return null;
+        }
+        return new FindResult(this, file.getPath() + "!" + className.replace('.', '/') + ".class");
     }
 
     public void mergeClassesIntoTree(DefaultTreeModel model, boolean reset) {
@@ -48,13 +61,17 @@ public class ClasspathArchiveEntry extends ClasspathEntry {
         }
 
         try {
-            JarFile jarFile = new JarFile(archive);
-            Enumeration en = jarFile.entries();
-            while (en.hasMoreElements()) {
-                JarEntry entry = (JarEntry)en.nextElement();
-                if (!entry.isDirectory() && entry.getName().toLowerCase().endsWith(CLASSFILE_SUFFIX)) {
-                    addEntry((stripClassSuffix(entry.getName())), model, reset);
+            JarFileCache.Handle handle = JarFileCache.getSharedCache().acquire(archive);
+            try {
+                Enumeration en = handle.getJarFile().entries();
+                while (en.hasMoreElements()) {
+                    JarEntry entry = (JarEntry)en.nextElement();
+                    if (!entry.isDirectory() && entry.getName().toLowerCase().endsWith(CLASSFILE_SUFFIX)) {
+                        addEntry((stripClassSuffix(entry.getName())), model, reset);
+                    }
                 }
+            } finally {
+                handle.release();
             }
         } catch (IOException ex) {
         }
@@ -31,6 +31,15 @@ public class ClasspathDirectoryEntry extends ClasspathEntry {
         return null;
     }
 
+    public FindResult createFindResult(String className) {
+
+        File file = getFile();
+        if (file == null) {
+            return null;
+        }
+        return new FindResult(this, new File(file, className.replace('.', '/') + ".class").getPath());
+    }
+
     public void mergeClassesIntoTree(DefaultTreeModel model, boolean reset) {
 
         File directory = getFile();
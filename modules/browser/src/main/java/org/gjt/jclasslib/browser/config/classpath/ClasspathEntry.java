@@ -70,6 +70,14 @@ public abstract class ClasspathEntry implements ClasspathComponent {
     public void removeClasspathChangeListener(ClasspathChangeListener listener) {
     }
 
+    /**
+     * Create the result for a class that is contained in this classpath entry
+     * without checking the file system.
+     * @param className the name of the class.
+     * @return the <tt>FindResult</tt> object. <tt>null</tt> if the entry is invalid.
+     */
+    public abstract FindResult createFindResult(String className);
+
     /**
      * Get the file for the classpath entry. May be <tt>null</tt> if the entry is invalid.
      * @return the file.
@@ -100,7 +100,8 @@ public class ByteCodeDisplay extends JPanel implements Scrollable {
 
     private int offsetWidth;
     private String offsetBlank;
-    private HashMap<Integer, Integer> offsetToLine = new HashMap<Integer, Integer>();
+    private int[] instructionLines = new int[0];
+    private int instructionCount;
     private ArrayList<AttributedString> lines = new ArrayList<AttributedString>();
     private ArrayList<String> textLines = new ArrayList<String>();
     private TextLayout[] textLayouts;
@@ -278,10 +279,16 @@ public class ByteCodeDisplay extends JPanel implements Scrollable {
      */
     public void scrollToOffset(int offset) {
 
-        Integer line = offsetToLine.get(new Integer(offset));
-        if (line == null) {
+        int index;
+        try {
+            index = codeAttribute == null ? -1 : codeAttribute.getInstructionIndex(offset);
+        } catch (InvalidByteCodeException ex) {
+            return;
+        }
+        if (index < 0 || index >= instructionCount) {
             return;
         }
+        int line = instructionLines[index];
         Rectangle target = new Rectangle(0, line * lineHeight + MARGIN_Y + 1, 10, getParent().getHeight());
         scrollRectToVisible(target);
     }
@@ -385,7 +392,8 @@ public class ByteCodeDisplay extends JPanel implements Scrollable {
         textLines.clear();
         lines.clear();
         textLayouts = null;
-        offsetToLine.clear();
+        instructionLines = new int[0];
+        instructionCount = 0;
         lineToLink.clear();
         invalidBranches.clear();
 
@@ -394,6 +402,7 @@ public class ByteCodeDisplay extends JPanel implements Scrollable {
 
         try {
             ArrayList<AbstractInstruction> instructions = ByteCodeReader.readByteCode(code);
+            instructionLines = new int[instructions.size()];
             verifyOffsets(instructions);
 
             calculateOffsetWidth(instructions);
@@ -405,30 +414,17 @@ public class ByteCodeDisplay extends JPanel implements Scrollable {
             textLayouts = new TextLayout[lines.size()];
         } catch (IOException ex) {
             ex.printStackTrace();
+        } catch (InvalidByteCodeException ex) {
+            ex.printStackTrace();
         }
         setPreferredSize(new Dimension((int)currentWidth + 2 * MARGIN_X, (int)currentHeight + 2 * MARGIN_Y));
     }
 
-    private void verifyOffsets(ArrayList<AbstractInstruction> instructions) {
-        int instructionsLength = instructions.size();
-        for (int i = 0; i < instructionsLength; i++) {
-            AbstractInstruction instruction = instructions.get(i);
+    private void verifyOffsets(ArrayList<AbstractInstruction> instructions) throws InvalidByteCodeException {
+        for (AbstractInstruction instruction : instructions) {
             if (instruction instanceof AbstractBranchInstruction) {
-                int branchOffset = ((AbstractBranchInstruction)instruction).getBranchOffset();
-                int targetDistance = 0;
-                if (branchOffset > 0) {
-                    branchOffset -= instruction.getSize();
-                    while (branchOffset > 0 && i + targetDistance + 1 < instructionsLength) {
-                        ++targetDistance;
-                        branchOffset -= (instructions.get(i + targetDistance)).getSize();
-                    }
-                } else {
-                    while (branchOffset < 0 && i + targetDistance > 0) {
-                        --targetDistance;
-                        branchOffset += (instructions.get(i + targetDistance)).getSize();
-                    }
-                }
-                if (branchOffset != 0) {
+                int targetOffset = instruction.getOffset() + ((AbstractBranchInstruction)instruction).getBranchOffset();
+                if (codeAttribute.getInstructionIndex(targetOffset) < 0) {
                     invalidBranches.add(instruction);
                 }
             }
@@ -457,7 +453,7 @@ public class ByteCodeDisplay extends JPanel implements Scrollable {
 
         int offset = instruction.getOffset();
 
-        addOffsetReference(offset);
+        addInstructionLine();
 
         appendString(getPaddedValue(offset, offsetWidth),
                 STYLE_OFFSET);
@@ -471,8 +467,9 @@ public class ByteCodeDisplay extends JPanel implements Scrollable {
 
     }
 
-    private void addOffsetReference(int offset) {
-        offsetToLine.put(offset, getCurrentLine());
+    private void addInstructionLine() {
+        // instructions are added in the order of CodeAttribute.getInstructionOffsets
+        instructionLines[instructionCount++] = getCurrentLine();
     }
 
     private void addOpcodeSpecificInfo(AbstractInstruction instruction) {
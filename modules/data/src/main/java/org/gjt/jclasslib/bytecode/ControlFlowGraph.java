@@ -0,0 +1,591 @@
+/*
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU General Public
+    License as published by the Free Software Foundation; either
+    version 2 of the license, or (at your option) any later version.
+*/
+
+package org.gjt.jclasslib.bytecode;
+
+import org.gjt.jclasslib.structures.InvalidByteCodeException;
+import org.gjt.jclasslib.structures.attributes.CodeAttribute;
+import org.gjt.jclasslib.structures.attributes.ExceptionTableEntry;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+    Control flow graph of the basic blocks in the code of a <tt>Code</tt> attribute. <p>
+
+    A basic block starts at offset 0, at a branch or switch target, at the start,
+    end or handler of an exception table entry and after an instruction that branches
+    or does not fall through. Blocks are numbered in the order of their offsets, block 0
+    is the entry block. A block has normal successors for branch targets and fall-through,
+    and exception successors for the handlers of the exception table entries that cover
+    any of its instructions. The block after a <tt>jsr</tt> instruction is a normal successor
+    of the <tt>jsr</tt> block, while a <tt>ret</tt> instruction has no successors. <p>
+
+    Edges, immediate dominators and loop depths are stored in int arrays that are indexed
+    by block number. Loops are the natural loops of back edges whose target dominates their
+    source, so irreducible loops are not detected. Blocks that cannot be reached from the
+    entry block have no dominator and are not part of any loop.
+*/
+public class ControlFlowGraph {
+
+    private final int codeLength;
+    private final int[] blockStarts;
+    private final int blockCount;
+
+    private final int[] successorStarts;
+    private final int[] successors;
+    private final int[] exceptionSuccessorStarts;
+    private final int[] exceptionSuccessors;
+    private final int[] predecessorStarts;
+    private final int[] predecessors;
+
+    private final int[] immediateDominators;
+    private final int[] loopDepths;
+    private final int[] loopHeaders;
+
+    /**
+        Build the control flow graph for a code attribute.
+        @param codeAttribute the code attribute
+        @return the control flow graph
+        @throws InvalidByteCodeException if the code contains an invalid instruction or
+                                         a branch or exception table entry with an invalid offset
+     */
+    public static ControlFlowGraph build(CodeAttribute codeAttribute) throws InvalidByteCodeException {
+        ExceptionTableEntry[] exceptionTable = codeAttribute.getExceptionTable();
+        return new ControlFlowGraph(codeAttribute.getCode(), codeAttribute.getInstructionOffsets(),
+                exceptionTable == null ? new ExceptionTableEntry[0] : exceptionTable);
+    }
+
+    private ControlFlowGraph(byte[] code, int[] instructionOffsets, ExceptionTableEntry[] exceptionTable)
+            throws InvalidByteCodeException {
+
+        codeLength = code == null ? 0 : code.length;
+        InstructionCursor cursor = new InstructionCursor(code == null ? new byte[0] : code);
+
+        boolean[] leaders = findLeaders(cursor, instructionOffsets, exceptionTable);
+        int count = 0;
+        int[] starts = new int[instructionOffsets.length + 1];
+        for (int offset : instructionOffsets) {
+            if (leaders[offset]) {
+                starts[count++] = offset;
+            }
+        }
+        starts[count] = codeLength;
+        blockCount = count;
+        blockStarts = Arrays.copyOf(starts, count + 1);
+
+        successorStarts = new int[blockCount + 1];
+        successors = findSuccessors(cursor, code);
+        exceptionSuccessorStarts = new int[blockCount + 1];
+        exceptionSuccessors = findExceptionSuccessors(exceptionTable);
+        predecessorStarts = new int[blockCount + 1];
+        predecessors = findPredecessors();
+
+        immediateDominators = new int[blockCount];
+        computeDominators();
+        loopDepths = new int[blockCount];
+        loopHeaders = computeLoops();
+    }
+
+    /**
+        Get the number of basic blocks.
+        @return the number
+     */
+    public int getBlockCount() {
+        return blockCount;
+    }
+
+    /**
+        Get the offset of the first instruction of a block.
+        @param block the block number
+        @return the offset
+     */
+    public int getBlockStart(int block) {
+        checkBlock(block);
+        return blockStarts[block];
+    }
+
+    /**
+        Get the offset after the last instruction of a block.
+        @param block the block number
+        @return the offset
+     */
+    public int getBlockEnd(int block) {
+        checkBlock(block);
+        return blockStarts[block + 1];
+    }
+
+    /**
+        Get the block that contains a given offset.
+        @param offset the offset in the code
+        @return the block number or <tt>-1</tt> if the offset is outside of the code
+     */
+    public int getBlockAt(int offset) {
+        if (offset < 0 || offset >= codeLength) {
+            return -1;
+        }
+        int index = Arrays.binarySearch(blockStarts, 0, blockCount, offset);
+        return index < 0 ? -index - 2 : index;
+    }
+
+    /**
+        Get the number of normal successors of a block.
+        @param block the block number
+        @return the number
+     */
+    public int getSuccessorCount(int block) {
+        checkBlock(block);
+        return successorStarts[block + 1] - successorStarts[block];
+    }
+
+    /**
+        Get a normal successor of a block.
+        @param block the block number
+        @param index the index of the successor
+        @return the block number of the successor
+     */
+    public int getSuccessor(int block, int index) {
+        return successors[successorStarts[block] + checkIndex(index, getSuccessorCount(block))];
+    }
+
+    /**
+        Get the number of exception handlers that can be reached from a block.
+        @param block the block number
+        @return the number
+     */
+    public int getExceptionSuccessorCount(int block) {
+        checkBlock(block);
+        return exceptionSuccessorStarts[block + 1] - exceptionSuccessorStarts[block];
+    }
+
+    /**
+        Get an exception handler that can be reached from a block.
+        @param block the block number
+        @param index the index of the exception successor
+        @return the block number of the handler
+     */
+    public int getExceptionSuccessor(int block, int index) {
+        return exceptionSuccessors[exceptionSuccessorStarts[block] + checkIndex(index, getExceptionSuccessorCount(block))];
+    }
+
+    /**
+        Get the number of normal and exception predecessors of a block.
+        @param block the block number
+        @return the number
+     */
+    public int getPredecessorCount(int block) {
+        checkBlock(block);
+        return predecessorStarts[block + 1] - predecessorStarts[block];
+    }
+
+    /**
+        Get a normal or exception predecessor of a block.
+        @param block the block number
+        @param index the index of the predecessor
+        @return the block number of the predecessor
+     */
+    public int getPredecessor(int block, int index) {
+        return predecessors[predecessorStarts[block] + checkIndex(index, getPredecessorCount(block))];
+    }
+
+    /**
+        Returns whether a block can be reached from the entry block.
+        @param block the block number
+        @return the value
+     */
+    public boolean isReachable(int block) {
+        checkBlock(block);
+        return block == 0 || immediateDominators[block] >= 0;
+    }
+
+    /**
+        Get the immediate dominator of a block.
+        @param block the block number
+        @return the block number of the immediate dominator, <tt>-1</tt> for the
+                entry block and for unreachable blocks
+     */
+    public int getImmediateDominator(int block) {
+        checkBlock(block);
+        return block == 0 ? -1 : immediateDominators[block];
+    }
+
+    /**
+        Returns whether every path from the entry block to a block passes through
+        another block. A block dominates itself.
+        @param dominator the block number of the dominator
+        @param block the block number of the dominated block
+        @return the value
+     */
+    public boolean dominates(int dominator, int block) {
+        checkBlock(dominator);
+        if (!isReachable(block)) {
+            return false;
+        }
+        while (block != dominator && block != 0) {
+            block = immediateDominators[block];
+        }
+        return block == dominator;
+    }
+
+    /**
+        Returns whether a block is the header of a loop.
+        @param block the block number
+        @return the value
+     */
+    public boolean isLoopHeader(int block) {
+        checkBlock(block);
+        return Arrays.binarySearch(loopHeaders, block) >= 0;
+    }
+
+    /**
+        Get the headers of all loops.
+        @return the block numbers in ascending order
+     */
+    public int[] getLoopHeaders() {
+        return loopHeaders.clone();
+    }
+
+    /**
+        Get the number of nested loops that contain a block. The header of
+        a loop is part of the loop.
+        @param block the block number
+        @return the number, <tt>0</tt> if the block is not in a loop
+     */
+    public int getLoopDepth(int block) {
+        checkBlock(block);
+        return loopDepths[block];
+    }
+
+    /**
+        Returns whether a block is part of a loop.
+        @param block the block number
+        @return the value
+     */
+    public boolean isInLoop(int block) {
+        return getLoopDepth(block) > 0;
+    }
+
+    private boolean[] findLeaders(InstructionCursor cursor, int[] instructionOffsets,
+                                  ExceptionTableEntry[] exceptionTable) throws InvalidByteCodeException {
+
+        boolean[] leaders = new boolean[codeLength + 1];
+        if (codeLength > 0) {
+            leaders[0] = true;
+        }
+        try {
+            while (cursor.next()) {
+                int bytecode = cursor.getBytecode();
+                if (Opcode.isBranch(bytecode)) {
+                    if (cursor.getOpcode().getOperandLayout().isVariableLength()) {
+                        markTarget(leaders, instructionOffsets, cursor.getDefaultTarget());
+                        int caseCount = cursor.getCaseCount();
+                        for (int i = 0; i < caseCount; i++) {
+                            markTarget(leaders, instructionOffsets, cursor.getCaseTarget(i));
+                        }
+                    } else {
+                        markTarget(leaders, instructionOffsets, cursor.getBranchTarget());
+                    }
+                    leaders[cursor.getOffset() + cursor.getLength()] = true;
+                } else if (!cursor.getOpcode().canFallThrough()) {
+                    leaders[cursor.getOffset() + cursor.getLength()] = true;
+                }
+            }
+        } catch (IOException e) {
+            throw new InvalidByteCodeException(e.getMessage());
+        }
+        for (ExceptionTableEntry entry : exceptionTable) {
+            markTarget(leaders, instructionOffsets, entry.getStartPc());
+            markTarget(leaders, instructionOffsets, entry.getHandlerPc());
+            if (entry.getEndPc() != codeLength) {
+                markTarget(leaders, instructionOffsets, entry.getEndPc());
+            }
+        }
+        return leaders;
+    }
+
+    private void markTarget(boolean[] leaders, int[] instructionOffsets, int offset) throws InvalidByteCodeException {
+        if (Arrays.binarySearch(instructionOffsets, offset) < 0) {
+            throw new InvalidByteCodeException("offset " + offset + " is not the start of an instruction");
+        }
+        leaders[offset] = true;
+    }
+
+    private int[] findSuccessors(InstructionCursor cursor, byte[] code) throws InvalidByteCodeException {
+
+        int[] edges = new int[Math.max(4, 2 * blockCount)];
+        int count = 0;
+        // stamps avoid duplicate edges for switches with repeated targets
+        int[] stamps = new int[blockCount];
+        Arrays.fill(stamps, -1);
+        int block = 0;
+        cursor.reset(code);
+        try {
+            while (cursor.next()) {
+                int nextOffset = cursor.getOffset() + cursor.getLength();
+                if (nextOffset != blockStarts[block + 1]) {
+                    continue;
+                }
+                // last instruction of the block
+                successorStarts[block] = count;
+                Opcode opcode = cursor.getOpcode();
+                if (opcode.isBranch()) {
+                    if (opcode.getOperandLayout().isVariableLength()) {
+                        int caseCount = cursor.getCaseCount();
+                        edges = ensureCapacity(edges, count + caseCount + 1);
+                        count = addEdge(edges, count, stamps, block, getBlockAt(cursor.getDefaultTarget()));
+                        for (int i = 0; i < caseCount; i++) {
+                            count = addEdge(edges, count, stamps, block, getBlockAt(cursor.getCaseTarget(i)));
+                        }
+                    } else {
+                        edges = ensureCapacity(edges, count + 1);
+                        count = addEdge(edges, count, stamps, block, getBlockAt(cursor.getBranchTarget()));
+                    }
+                }
+                if (opcode.canFallThrough() && nextOffset < codeLength) {
+                    edges = ensureCapacity(edges, count + 1);
+                    count = addEdge(edges, count, stamps, block, block + 1);
+                }
+                block++;
+            }
+        } catch (IOException e) {
+            throw new InvalidByteCodeException(e.getMessage());
+        }
+        successorStarts[blockCount] = count;
+        return Arrays.copyOf(edges, count);
+    }
+
+    private int[] findExceptionSuccessors(ExceptionTableEntry[] exceptionTable) {
+
+        // collect (block, handler) pairs, then group them by block
+        int[] sources = new int[Math.max(4, exceptionTable.length)];
+        int[] handlers = new int[sources.length];
+        int pairCount = 0;
+        for (ExceptionTableEntry entry : exceptionTable) {
+            if (entry.getStartPc() >= entry.getEndPc()) {
+                continue;
+            }
+            int handler = getBlockAt(entry.getHandlerPc());
+            int lastBlock = getBlockAt(entry.getEndPc() - 1);
+            for (int block = getBlockAt(entry.getStartPc()); block <= lastBlock; block++) {
+                if (pairCount == sources.length) {
+                    sources = Arrays.copyOf(sources, 2 * pairCount);
+                    handlers = Arrays.copyOf(handlers, 2 * pairCount);
+                }
+                sources[pairCount] = block;
+                handlers[pairCount++] = handler;
+            }
+        }
+        int[] grouped = groupBySource(sources, handlers, pairCount, exceptionSuccessorStarts);
+
+        // remove duplicate handlers of the same block
+        int[] stamps = new int[blockCount];
+        Arrays.fill(stamps, -1);
+        int count = 0;
+        for (int block = 0; block < blockCount; block++) {
+            int start = exceptionSuccessorStarts[block];
+            int end = exceptionSuccessorStarts[block + 1];
+            exceptionSuccessorStarts[block] = count;
+            for (int i = start; i < end; i++) {
+                count = addEdge(grouped, count, stamps, block, grouped[i]);
+            }
+        }
+        exceptionSuccessorStarts[blockCount] = count;
+        return Arrays.copyOf(grouped, count);
+    }
+
+    private int[] findPredecessors() {
+
+        int edgeCount = successors.length + exceptionSuccessors.length;
+        int[] sources = new int[edgeCount];
+        int[] targets = new int[edgeCount];
+        int count = 0;
+        for (int block = 0; block < blockCount; block++) {
+            for (int i = successorStarts[block]; i < successorStarts[block + 1]; i++) {
+                sources[count] = successors[i];
+                targets[count++] = block;
+            }
+            for (int i = exceptionSuccessorStarts[block]; i < exceptionSuccessorStarts[block + 1]; i++) {
+                sources[count] = exceptionSuccessors[i];
+                targets[count++] = block;
+            }
+        }
+        return groupBySource(sources, targets, count, predecessorStarts);
+    }
+
+    // counting sort of the targets by source, starts receives the offsets of the groups
+    private int[] groupBySource(int[] sources, int[] targets, int count, int[] starts) {
+
+        for (int i = 0; i < count; i++) {
+            starts[sources[i] + 1]++;
+        }
+        for (int block = 0; block < blockCount; block++) {
+            starts[block + 1] += starts[block];
+        }
+        int[] positions = Arrays.copyOf(starts, blockCount);
+        int[] grouped = new int[count];
+        for (int i = 0; i < count; i++) {
+            grouped[positions[sources[i]]++] = targets[i];
+        }
+        return grouped;
+    }
+
+    // iterative algorithm by Cooper, Harvey and Kennedy on the reverse postorder
+    private void computeDominators() {
+
+        Arrays.fill(immediateDominators, -1);
+        if (blockCount == 0) {
+            return;
+        }
+        int[] postorder = computePostorder();
+        int[] postorderNumbers = new int[blockCount];
+        Arrays.fill(postorderNumbers, -1);
+        for (int i = 0; i < postorder.length; i++) {
+            postorderNumbers[postorder[i]] = i;
+        }
+
+        immediateDominators[0] = 0;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = postorder.length - 2; i >= 0; i--) {
+                int block = postorder[i];
+                int newDominator = -1;
+                for (int j = predecessorStarts[block]; j < predecessorStarts[block + 1]; j++) {
+                    int predecessor = predecessors[j];
+                    if (immediateDominators[predecessor] < 0) {
+                        continue;
+                    }
+                    newDominator = newDominator < 0 ? predecessor :
+                            intersect(predecessor, newDominator, postorderNumbers);
+                }
+                if (immediateDominators[block] != newDominator) {
+                    immediateDominators[block] = newDominator;
+                    changed = true;
+                }
+            }
+        }
+    }
+
+    private int intersect(int block1, int block2, int[] postorderNumbers) {
+        while (block1 != block2) {
+            while (postorderNumbers[block1] < postorderNumbers[block2]) {
+                block1 = immediateDominators[block1];
+            }
+            while (postorderNumbers[block2] < postorderNumbers[block1]) {
+                block2 = immediateDominators[block2];
+            }
+        }
+        return block1;
+    }
+
+    private int[] computePostorder() {
+
+        int[] postorder = new int[blockCount];
+        int count = 0;
+        boolean[] visited = new boolean[blockCount];
+        // explicit stack of blocks and the index of their next successor
+        int[] stack = new int[blockCount];
+        int[] nextSuccessors = new int[blockCount];
+        int depth = 0;
+        stack[depth++] = 0;
+        visited[0] = true;
+        while (depth > 0) {
+            int block = stack[depth - 1];
+            int next = nextSuccessors[depth - 1]++;
+            int normalCount = getSuccessorCount(block);
+            int successor;
+            if (next < normalCount) {
+                successor = successors[successorStarts[block] + next];
+            } else if (next < normalCount + getExceptionSuccessorCount(block)) {
+                successor = exceptionSuccessors[exceptionSuccessorStarts[block] + next - normalCount];
+            } else {
+                postorder[count++] = block;
+                depth--;
+                continue;
+            }
+            if (!visited[successor]) {
+                visited[successor] = true;
+                stack[depth] = successor;
+                nextSuccessors[depth++] = 0;
+            }
+        }
+        return Arrays.copyOf(postorder, count);
+    }
+
+    private int[] computeLoops() {
+
+        int[] headers = new int[0];
+        int[] stamps = new int[blockCount];
+        Arrays.fill(stamps, -1);
+        int[] worklist = new int[blockCount];
+        for (int header = 0; header < blockCount; header++) {
+            if (!isReachable(header)) {
+                continue;
+            }
+            // the loop body consists of all blocks from which a back edge can be
+            // reached without passing through the header
+            int size = 0;
+            for (int i = predecessorStarts[header]; i < predecessorStarts[header + 1]; i++) {
+                int source = predecessors[i];
+                if (dominates(header, source) && stamps[source] != header) {
+                    stamps[source] = header;
+                    worklist[size++] = source;
+                }
+            }
+            if (size == 0) {
+                continue;
+            }
+            headers = Arrays.copyOf(headers, headers.length + 1);
+            headers[headers.length - 1] = header;
+            loopDepths[header]++;
+            stamps[header] = header;
+            while (size > 0) {
+                int block = worklist[--size];
+                if (block == header) {
+                    // a block that branches to itself
+                    continue;
+                }
+                loopDepths[block]++;
+                for (int i = predecessorStarts[block]; i < predecessorStarts[block + 1]; i++) {
+                    int predecessor = predecessors[i];
+                    if (stamps[predecessor] != header && isReachable(predecessor)) {
+                        stamps[predecessor] = header;
+                        worklist[size++] = predecessor;
+                    }
+                }
+            }
+        }
+        return headers;
+    }
+
+    private static int addEdge(int[] edges, int count, int[] stamps, int source, int target) {
+        if (stamps[target] == source) {
+            return count;
+        }
+        stamps[target] = source;
+        edges[count] = target;
+        return count + 1;
+    }
+
+    private static int[] ensureCapacity(int[] array, int length) {
+        return length <= array.length ? array : Arrays.copyOf(array, Math.max(length, 2 * array.length));
+    }
+
+    private void checkBlock(int block) {
+        if (block < 0 || block >= blockCount) {
+            throw new IndexOutOfBoundsException("invalid block " + block);
+        }
+    }
+
+    private static int checkIndex(int index, int count) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("invalid index " + index);
+        }
+        return index;
+    }
+
+}
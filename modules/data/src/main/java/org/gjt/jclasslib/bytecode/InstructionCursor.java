@@ -0,0 +1,295 @@
+/*
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU General Public
+    License as published by the Free Software Foundation; either
+    version 2 of the license, or (at your option) any later version.
+*/
+
+package org.gjt.jclasslib.bytecode;
+
+import java.io.IOException;
+
+/**
+    Iterates over the instructions in the code of a <tt>Code</tt> attribute without
+    creating instruction objects. <p>
+
+    The cursor is positioned on an instruction with <tt>next</tt>, after which the
+    opcode, offset, length and operands of that instruction can be queried. Operands
+    are decoded directly from the code array when they are requested. As with
+    <tt>ByteCodeReader</tt>, a <tt>wide</tt> prefix is reported as a separate instruction
+    and the following instruction is marked as wide. A cursor can be reused for
+    other code with <tt>reset</tt>.
+*/
+public class InstructionCursor {
+
+    private byte[] code;
+    private int codeLength;
+    private int nextOffset;
+
+    private int offset = -1;
+    private int opcode;
+    private int length;
+    private boolean wide;
+
+    /**
+        Constructor.
+        @param code the code of a <tt>Code</tt> attribute
+     */
+    public InstructionCursor(byte[] code) {
+        reset(code);
+    }
+
+    /**
+        Start iterating over different code.
+        @param code the code of a <tt>Code</tt> attribute
+     */
+    public void reset(byte[] code) {
+        reset(code, code.length);
+    }
+
+    /**
+        Start iterating over different code that is stored at the beginning of
+        a larger array, for example a buffer that is reused for the code of many methods.
+        @param code the array that contains the code of a <tt>Code</tt> attribute
+        @param codeLength the length of the code
+     */
+    public void reset(byte[] code, int codeLength) {
+        if (codeLength < 0 || codeLength > code.length) {
+            throw new IllegalArgumentException("invalid code length " + codeLength);
+        }
+        this.code = code;
+        this.codeLength = codeLength;
+        nextOffset = 0;
+        offset = -1;
+        opcode = 0;
+        length = 0;
+        wide = false;
+    }
+
+    /**
+        Move to the next instruction.
+        @return whether there is a next instruction
+        @throws IOException if the code contains an invalid or truncated instruction
+     */
+    public boolean next() throws IOException {
+
+        if (nextOffset >= codeLength) {
+            offset = nextOffset;
+            length = 0;
+            return false;
+        }
+        wide = offset >= 0 && opcode == Opcode.WIDE.getBytecode();
+        offset = nextOffset;
+        opcode = code[offset] & 0xff;
+        length = computeLength();
+        if (offset + length > codeLength) {
+            throw new IOException("truncated instruction at offset " + offset);
+        }
+        nextOffset = offset + length;
+        return true;
+    }
+
+    /**
+        Get the offset of the current instruction in the code.
+        @return the offset
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+        Get the length of the current instruction including its operands and padding.
+        @return the length
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+        Get the bytecode value of the opcode of the current instruction.
+        @return the value
+     */
+    public int getBytecode() {
+        return opcode;
+    }
+
+    /**
+        Get the opcode of the current instruction.
+        @return the opcode
+     */
+    public Opcode getOpcode() {
+        return Opcode.getFromBytecode(opcode);
+    }
+
+    /**
+        Returns whether the current instruction is preceded by a <tt>wide</tt> instruction.
+        @return the value
+     */
+    public boolean isWide() {
+        return wide;
+    }
+
+    /**
+        Get the immediate unsigned byte of an instruction such as <tt>iload</tt>,
+        <tt>bipush</tt>, <tt>ldc</tt>, <tt>newarray</tt> or <tt>iinc</tt>. For wide
+        instructions, this is an unsigned short.
+        @return the value
+     */
+    public int getImmediateByte() {
+        return wide ? readUnsignedShort(offset + 1) : code[offset + 1] & 0xff;
+    }
+
+    /**
+        Get the immediate unsigned short of an instruction such as <tt>sipush</tt>,
+        <tt>getfield</tt>, <tt>invokevirtual</tt>, <tt>invokeinterface</tt>,
+        <tt>invokedynamic</tt> or <tt>multianewarray</tt>.
+        @return the value
+     */
+    public int getImmediateShort() {
+        return readUnsignedShort(offset + 1);
+    }
+
+    /**
+        Get the constant pool index that is referenced by the current instruction.
+        @return the index or -1 if the instruction does not reference the constant pool
+     */
+    public int getConstantPoolIndex() {
+        if (!Opcode.isConstantPoolReference(opcode)) {
+            return -1;
+        } else if (opcode == Opcode.LDC.getBytecode()) {
+            return getImmediateByte();
+        } else {
+            return getImmediateShort();
+        }
+    }
+
+    /**
+        Get the increment of an <tt>iinc</tt> instruction.
+        @return the increment
+     */
+    public int getIncrement() {
+        return wide ? readShort(offset + 3) : code[offset + 2];
+    }
+
+    /**
+        Get the count of an <tt>invokeinterface</tt> instruction or the dimensions
+        of a <tt>multianewarray</tt> instruction.
+        @return the value
+     */
+    public int getCount() {
+        return code[offset + 3] & 0xff;
+    }
+
+    /**
+        Get the absolute target offset of a branch instruction.
+        @return the target offset
+     */
+    public int getBranchTarget() {
+        if (Opcode.getFromBytecode(opcode).getOperandLayout() == OperandLayout.WIDE_BRANCH) {
+            return offset + readInt(offset + 1);
+        } else {
+            return offset + readShort(offset + 1);
+        }
+    }
+
+    /**
+        Get the absolute default target offset of a <tt>tableswitch</tt> or
+        <tt>lookupswitch</tt> instruction.
+        @return the target offset
+     */
+    public int getDefaultTarget() {
+        return offset + readInt(getSwitchStart());
+    }
+
+    /**
+        Get the number of cases of a <tt>tableswitch</tt> or <tt>lookupswitch</tt>
+        instruction, not including the default case.
+        @return the number of cases
+     */
+    public int getCaseCount() {
+        int start = getSwitchStart();
+        if (opcode == Opcode.TABLESWITCH.getBytecode()) {
+            return readInt(start + 8) - readInt(start + 4) + 1;
+        } else {
+            return readInt(start + 4);
+        }
+    }
+
+    /**
+        Get the match value of a case of a <tt>tableswitch</tt> or <tt>lookupswitch</tt>
+        instruction.
+        @param index the index of the case
+        @return the match value
+     */
+    public int getCaseMatch(int index) {
+        int start = getSwitchStart();
+        if (opcode == Opcode.TABLESWITCH.getBytecode()) {
+            return readInt(start + 4) + index;
+        } else {
+            return readInt(start + 8 + index * 8);
+        }
+    }
+
+    /**
+        Get the absolute target offset of a case of a <tt>tableswitch</tt> or
+        <tt>lookupswitch</tt> instruction.
+        @param index the index of the case
+        @return the target offset
+     */
+    public int getCaseTarget(int index) {
+        int start = getSwitchStart();
+        if (opcode == Opcode.TABLESWITCH.getBytecode()) {
+            return offset + readInt(start + 12 + index * 4);
+        } else {
+            return offset + readInt(start + 12 + index * 8);
+        }
+    }
+
+    private int computeLength() throws IOException {
+
+        Opcode opcodeConstant = Opcode.getFromBytecode(opcode);
+        if (opcodeConstant == null) {
+            throw new IOException("invalid opcode 0x" + Integer.toHexString(opcode) + " at offset " + offset);
+        }
+        OperandLayout operandLayout = opcodeConstant.getOperandLayout();
+        if (operandLayout.isVariableLength()) {
+            return computeSwitchLength();
+        } else {
+            return operandLayout.getLength(wide && opcodeConstant.isWideCapable());
+        }
+    }
+
+    private int computeSwitchLength() throws IOException {
+
+        boolean tableSwitch = opcode == Opcode.TABLESWITCH.getBytecode();
+        int start = getSwitchStart();
+        int headerLength = tableSwitch ? 12 : 8;
+        if (start + headerLength > codeLength) {
+            throw new IOException("truncated instruction at offset " + offset);
+        }
+        long caseCount = tableSwitch ? (long)readInt(start + 8) - readInt(start + 4) + 1 : readInt(start + 4);
+        long length = start - offset + headerLength + caseCount * (tableSwitch ? 4 : 8);
+        if (caseCount < 0 || offset + length > codeLength) {
+            throw new IOException("invalid switch at offset " + offset);
+        }
+        return (int)length;
+    }
+
+    // the operands of a switch start at the next multiple of four after the opcode
+    private int getSwitchStart() {
+        return (offset + 4) & ~3;
+    }
+
+    private int readUnsignedShort(int position) {
+        return (code[position] & 0xff) << 8 | code[position + 1] & 0xff;
+    }
+
+    private int readShort(int position) {
+        return (short)readUnsignedShort(position);
+    }
+
+    private int readInt(int position) {
+        return code[position] << 24 | (code[position + 1] & 0xff) << 16 | (code[position + 2] & 0xff) << 8 | code[position + 3] & 0xff;
+    }
+
+}
@@ -8,7 +8,11 @@
 package org.gjt.jclasslib.bytecode;
 
 /**
-    Defines all opcodes and their verbose representation.
+    Defines all opcodes and their verbose representation. <p>
+
+    For each opcode, the layout of its operands, its stack effect and its category
+    are kept in tables, so that code can be scanned without creating instruction objects.
+    The static methods that take a bytecode value look up the same tables.
  
     @author <a href="mailto:jclasslib@ej-technologies.com">Ingo Kegel</a>
 */
@@ -226,6 +230,90 @@ public enum Opcode {
             LOOKUP[opcode.getBytecode()] = opcode;
         }
     }
+
+    /** Stack delta of opcodes whose stack effect depends on a descriptor or an operand. */
+    public static final int VARIABLE_STACK_DELTA = Integer.MIN_VALUE;
+
+    private static final int FLAG_BRANCH = 1;
+    private static final int FLAG_INVOKE = 2;
+    private static final int FLAG_FIELD_ACCESS = 4;
+    private static final int FLAG_WIDE_CAPABLE = 8;
+    private static final int FLAG_CONSTANT_POOL = 16;
+    private static final int FLAG_NO_FALL_THROUGH = 32;
+
+    static {
+        setOperandLayout(OperandLayout.IMMEDIATE_BYTE, BIPUSH, LDC, ILOAD, LLOAD, FLOAD, DLOAD, ALOAD,
+                ISTORE, LSTORE, FSTORE, DSTORE, ASTORE, RET, NEWARRAY);
+        setOperandLayout(OperandLayout.IMMEDIATE_SHORT, SIPUSH, LDC_W, LDC2_W, GETSTATIC, PUTSTATIC, GETFIELD, PUTFIELD,
+                INVOKEVIRTUAL, INVOKESPECIAL, INVOKESTATIC, NEW, ANEWARRAY, CHECKCAST, INSTANCEOF);
+        setOperandLayout(OperandLayout.BRANCH, IFEQ, IFNE, IFLT, IFGE, IFGT, IFLE, IF_ICMPEQ, IF_ICMPNE,
+                IF_ICMPLT, IF_ICMPGE, IF_ICMPGT, IF_ICMPLE, IF_ACMPEQ, IF_ACMPNE, GOTO, JSR, IFNULL, IFNONNULL);
+        setOperandLayout(OperandLayout.WIDE_BRANCH, GOTO_W, JSR_W);
+        setOperandLayout(OperandLayout.INCREMENT, IINC);
+        setOperandLayout(OperandLayout.TABLE_SWITCH, TABLESWITCH);
+        setOperandLayout(OperandLayout.LOOKUP_SWITCH, LOOKUPSWITCH);
+        setOperandLayout(OperandLayout.INVOKE_INTERFACE, INVOKEINTERFACE);
+        setOperandLayout(OperandLayout.INVOKE_DYNAMIC, INVOKEDYNAMIC);
+        setOperandLayout(OperandLayout.MULTIANEWARRAY, MULTIANEWARRAY);
+
+        addFlag(FLAG_BRANCH, IFEQ, IFNE, IFLT, IFGE, IFGT, IFLE, IF_ICMPEQ, IF_ICMPNE, IF_ICMPLT, IF_ICMPGE,
+                IF_ICMPGT, IF_ICMPLE, IF_ACMPEQ, IF_ACMPNE, GOTO, JSR, IFNULL, IFNONNULL, GOTO_W, JSR_W,
+                TABLESWITCH, LOOKUPSWITCH);
+        addFlag(FLAG_INVOKE, INVOKEVIRTUAL, INVOKESPECIAL, INVOKESTATIC, INVOKEINTERFACE, INVOKEDYNAMIC);
+        addFlag(FLAG_FIELD_ACCESS, GETSTATIC, PUTSTATIC, GETFIELD, PUTFIELD);
+        addFlag(FLAG_WIDE_CAPABLE, ILOAD, LLOAD, FLOAD, DLOAD, ALOAD, ISTORE, LSTORE, FSTORE, DSTORE, ASTORE,
+                RET, IINC);
+        addFlag(FLAG_CONSTANT_POOL, LDC, LDC_W, LDC2_W, GETSTATIC, PUTSTATIC, GETFIELD, PUTFIELD,
+                INVOKEVIRTUAL, INVOKESPECIAL, INVOKESTATIC, INVOKEINTERFACE, INVOKEDYNAMIC,
+                NEW, ANEWARRAY, CHECKCAST, INSTANCEOF, MULTIANEWARRAY);
+        addFlag(FLAG_NO_FALL_THROUGH, GOTO, GOTO_W, RET, TABLESWITCH, LOOKUPSWITCH,
+                IRETURN, LRETURN, FRETURN, DRETURN, ARETURN, RETURN, ATHROW);
+
+        // stack deltas are counted in slots, long and double values take two slots
+        setStackDelta(2, LCONST_0, LCONST_1, DCONST_0, DCONST_1, LDC2_W, LLOAD, DLOAD,
+                LLOAD_0, LLOAD_1, LLOAD_2, LLOAD_3, DLOAD_0, DLOAD_1, DLOAD_2, DLOAD_3,
+                DUP2, DUP2_X1, DUP2_X2);
+        setStackDelta(1, ACONST_NULL, ICONST_M1, ICONST_0, ICONST_1, ICONST_2, ICONST_3, ICONST_4, ICONST_5,
+                FCONST_0, FCONST_1, FCONST_2, BIPUSH, SIPUSH, LDC, LDC_W, ILOAD, FLOAD, ALOAD,
+                ILOAD_0, ILOAD_1, ILOAD_2, ILOAD_3, FLOAD_0, FLOAD_1, FLOAD_2, FLOAD_3,
+                ALOAD_0, ALOAD_1, ALOAD_2, ALOAD_3, DUP, DUP_X1, DUP_X2,
+                I2L, I2D, F2L, F2D, JSR, JSR_W, NEW);
+        setStackDelta(-1, IALOAD, FALOAD, AALOAD, BALOAD, CALOAD, SALOAD, ISTORE, FSTORE, ASTORE,
+                ISTORE_0, ISTORE_1, ISTORE_2, ISTORE_3, FSTORE_0, FSTORE_1, FSTORE_2, FSTORE_3,
+                ASTORE_0, ASTORE_1, ASTORE_2, ASTORE_3, POP,
+                IADD, FADD, ISUB, FSUB, IMUL, FMUL, IDIV, FDIV, IREM, FREM,
+                ISHL, LSHL, ISHR, LSHR, IUSHR, LUSHR, IAND, IOR, IXOR,
+                L2I, L2F, D2I, D2F, FCMPL, FCMPG, IFEQ, IFNE, IFLT, IFGE, IFGT, IFLE, IFNULL, IFNONNULL,
+                TABLESWITCH, LOOKUPSWITCH, IRETURN, FRETURN, ARETURN, ATHROW, MONITORENTER, MONITOREXIT);
+        setStackDelta(-2, LSTORE, DSTORE, LSTORE_0, LSTORE_1, LSTORE_2, LSTORE_3,
+                DSTORE_0, DSTORE_1, DSTORE_2, DSTORE_3, POP2,
+                LADD, DADD, LSUB, DSUB, LMUL, DMUL, LDIV, DDIV, LREM, DREM, LAND, LOR, LXOR,
+                IF_ICMPEQ, IF_ICMPNE, IF_ICMPLT, IF_ICMPGE, IF_ICMPGT, IF_ICMPLE, IF_ACMPEQ, IF_ACMPNE,
+                LRETURN, DRETURN);
+        setStackDelta(-3, IASTORE, FASTORE, AASTORE, BASTORE, CASTORE, SASTORE, LCMP, DCMPL, DCMPG);
+        setStackDelta(-4, LASTORE, DASTORE);
+        setStackDelta(VARIABLE_STACK_DELTA, GETSTATIC, PUTSTATIC, GETFIELD, PUTFIELD,
+                INVOKEVIRTUAL, INVOKESPECIAL, INVOKESTATIC, INVOKEINTERFACE, INVOKEDYNAMIC, MULTIANEWARRAY);
+    }
+
+    private static void setOperandLayout(OperandLayout operandLayout, Opcode... opcodes) {
+        for (Opcode opcode : opcodes) {
+            opcode.operandLayout = operandLayout;
+        }
+    }
+
+    private static void addFlag(int flag, Opcode... opcodes) {
+        for (Opcode opcode : opcodes) {
+            opcode.flags |= flag;
+        }
+    }
+
+    private static void setStackDelta(int stackDelta, Opcode... opcodes) {
+        for (Opcode opcode : opcodes) {
+            opcode.stackDelta = stackDelta;
+        }
+    }
+
     private static final String JVM_SPEC_URL = "http://docs.oracle.com/javase/specs/jvms/se7/html/jvms-6.html#jvms-6.5.";
 
     public static Opcode getFromBytecode(int bytecode) {
@@ -236,9 +324,72 @@ public enum Opcode {
         }
     }
     
+    /**
+     * Returns the length of the instruction with the given bytecode value without
+     * looking at its operands.
+     * @param bytecode the bytecode value
+     * @param wide whether the instruction is preceded by a <tt>wide</tt> instruction
+     * @return the length, <tt>-1</tt> for switch instructions, invalid bytecode values
+     * and instructions that cannot be preceded by a <tt>wide</tt> instruction if <tt>wide</tt>
+     * is <tt>true</tt>
+     */
+    public static int getFixedLength(int bytecode, boolean wide) {
+        Opcode opcode = getFromBytecode(bytecode);
+        if (opcode == null || (wide && !opcode.isWideCapable())) {
+            return -1;
+        }
+        return opcode.operandLayout.getLength(wide);
+    }
+
+    /**
+     * Returns whether the instruction with the given bytecode value is a branch.
+     * @param bytecode the bytecode value
+     * @return the value
+     * @see #isBranch()
+     */
+    public static boolean isBranch(int bytecode) {
+        return hasFlag(bytecode, FLAG_BRANCH);
+    }
+
+    /**
+     * Returns whether the instruction with the given bytecode value invokes a method.
+     * @param bytecode the bytecode value
+     * @return the value
+     */
+    public static boolean isInvoke(int bytecode) {
+        return hasFlag(bytecode, FLAG_INVOKE);
+    }
+
+    /**
+     * Returns whether the instruction with the given bytecode value reads or writes a field.
+     * @param bytecode the bytecode value
+     * @return the value
+     */
+    public static boolean isFieldAccess(int bytecode) {
+        return hasFlag(bytecode, FLAG_FIELD_ACCESS);
+    }
+
+    /**
+     * Returns whether the instruction with the given bytecode value has a constant
+     * pool index as an operand.
+     * @param bytecode the bytecode value
+     * @return the value
+     */
+    public static boolean isConstantPoolReference(int bytecode) {
+        return hasFlag(bytecode, FLAG_CONSTANT_POOL);
+    }
+
+    private static boolean hasFlag(int bytecode, int flag) {
+        Opcode opcode = getFromBytecode(bytecode);
+        return opcode != null && (opcode.flags & flag) != 0;
+    }
+
     private int bytecode;
     private String verbose;
     private String docAnchorSuffix;
+    private OperandLayout operandLayout = OperandLayout.NONE;
+    private int flags;
+    private int stackDelta;
 
     Opcode(int bytecode, String verbose) {
         this(bytecode, verbose, verbose);
@@ -270,4 +421,72 @@ public enum Opcode {
         return JVM_SPEC_URL + docAnchorSuffix;
     }
 
+    /**
+     * Returns the layout of the operands of this opcode.
+     * @return the layout
+     */
+    public OperandLayout getOperandLayout() {
+        return operandLayout;
+    }
+
+    /**
+     * Returns whether this opcode has branch targets. This includes <tt>jsr</tt>,
+     * <tt>jsr_w</tt> and the switch instructions.
+     * @return the value
+     */
+    public boolean isBranch() {
+        return (flags & FLAG_BRANCH) != 0;
+    }
+
+    /**
+     * Returns whether this opcode invokes a method.
+     * @return the value
+     */
+    public boolean isInvoke() {
+        return (flags & FLAG_INVOKE) != 0;
+    }
+
+    /**
+     * Returns whether this opcode reads or writes a field.
+     * @return the value
+     */
+    public boolean isFieldAccess() {
+        return (flags & FLAG_FIELD_ACCESS) != 0;
+    }
+
+    /**
+     * Returns whether this opcode can be preceded by a <tt>wide</tt> instruction.
+     * @return the value
+     */
+    public boolean isWideCapable() {
+        return (flags & FLAG_WIDE_CAPABLE) != 0;
+    }
+
+    /**
+     * Returns whether this opcode has a constant pool index as an operand.
+     * @return the value
+     */
+    public boolean isConstantPoolReference() {
+        return (flags & FLAG_CONSTANT_POOL) != 0;
+    }
+
+    /**
+     * Returns whether execution can continue with the next instruction. This is
+     * <tt>false</tt> for unconditional jumps, switches, returns and <tt>athrow</tt>.
+     * @return the value
+     */
+    public boolean canFallThrough() {
+        return (flags & FLAG_NO_FALL_THROUGH) == 0;
+    }
+
+    /**
+     * Returns the change of the operand stack depth in slots, where <tt>long</tt>
+     * and <tt>double</tt> values take two slots.
+     * @return the change or <tt>VARIABLE_STACK_DELTA</tt> for field accesses,
+     *         method invocations and <tt>multianewarray</tt>
+     */
+    public int getStackDelta() {
+        return stackDelta;
+    }
+
 }
@@ -0,0 +1,65 @@
+/*
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU General Public
+    License as published by the Free Software Foundation; either
+    version 2 of the license, or (at your option) any later version.
+*/
+
+package org.gjt.jclasslib.bytecode;
+
+/**
+ * Enum for the layouts of the operands that follow an {@link org.gjt.jclasslib.bytecode.Opcode}.
+ * Each layout corresponds to one subclass of <tt>AbstractInstruction</tt>.
+ */
+public enum OperandLayout {
+
+    /** No operands, read as a <tt>SimpleInstruction</tt>. */
+    NONE(1, 1),
+    /** An immediate byte or a short after a <tt>wide</tt> instruction, read as an <tt>ImmediateByteInstruction</tt>. */
+    IMMEDIATE_BYTE(2, 3),
+    /** An immediate short, read as an <tt>ImmediateShortInstruction</tt>. */
+    IMMEDIATE_SHORT(3, 3),
+    /** A short branch offset, read as a <tt>BranchInstruction</tt>. */
+    BRANCH(3, 3),
+    /** An int branch offset, read as a <tt>WideBranchInstruction</tt>. */
+    WIDE_BRANCH(5, 5),
+    /** A local variable index and a constant, read as an <tt>IncrementInstruction</tt>. */
+    INCREMENT(3, 5),
+    /** Padding and a jump table, read as a <tt>TableSwitchInstruction</tt>. */
+    TABLE_SWITCH(-1, -1),
+    /** Padding and match-offset pairs, read as a <tt>LookupSwitchInstruction</tt>. */
+    LOOKUP_SWITCH(-1, -1),
+    /** A constant pool index, a count and a zero byte, read as an <tt>InvokeInterfaceInstruction</tt>. */
+    INVOKE_INTERFACE(5, 5),
+    /** A constant pool index and two zero bytes, read as an <tt>InvokeDynamicInstruction</tt>. */
+    INVOKE_DYNAMIC(5, 5),
+    /** A constant pool index and the dimensions, read as a <tt>MultianewarrayInstruction</tt>. */
+    MULTIANEWARRAY(4, 4);
+
+    private final int length;
+    private final int wideLength;
+
+    OperandLayout(int length, int wideLength) {
+        this.length = length;
+        this.wideLength = wideLength;
+    }
+
+    /**
+     * Returns whether the length of instructions with this layout depends on their
+     * position in the code and on their operands.
+     * @return the value
+     */
+    public boolean isVariableLength() {
+        return length < 0;
+    }
+
+    /**
+     * Returns the length of an instruction with this layout including the opcode.
+     * @param wide whether the instruction is preceded by a <tt>wide</tt> instruction
+     * @return the length or <tt>-1</tt> if the length is variable
+     */
+    public int getLength(boolean wide) {
+        return wide ? wideLength : length;
+    }
+
+}
@@ -0,0 +1,168 @@
+/*
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU General Public
+    License as published by the Free Software Foundation; either
+    version 2 of the license, or (at your option) any later version.
+*/
+
+package org.gjt.jclasslib.io;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+    <tt>ByteCodeInput</tt> that reads directly from a <tt>ByteBuffer</tt>. <p>
+
+    In contrast to a <tt>DataInputStream</tt>, all read operations work on
+    an index into the buffer without any intermediate stream layers. The
+    buffer may be a heap buffer wrapping a byte array or a memory mapped
+    file. The position and limit of the buffer that is passed to the
+    constructor are not changed.
+*/
+public class ByteBufferInput implements ByteCodeInput {
+
+    private final ByteBuffer buffer;
+    private final int start;
+
+    /**
+        Constructor.
+        @param buffer the buffer. Reading starts at the current position
+                      of the buffer and ends at its limit.
+     */
+    public ByteBufferInput(ByteBuffer buffer) {
+        // duplicate() is always big endian which is the byte order of the class file format
+        this.buffer = buffer.duplicate();
+        start = buffer.position();
+    }
+
+    /**
+        Constructor.
+        @param bytes the byte array
+        @param offset the offset in the array at which reading starts
+        @param length the number of bytes that can be read
+     */
+    public ByteBufferInput(byte[] bytes, int offset, int length) {
+        this(ByteBuffer.wrap(bytes, offset, length));
+    }
+
+    public int getBytesRead() {
+        return buffer.position() - start;
+    }
+
+    /**
+        Get the absolute position in the underlying buffer.
+        @return the position
+     */
+    public int getPosition() {
+        return buffer.position();
+    }
+
+    /**
+        Set the absolute position in the underlying buffer.
+        @param position the position
+     */
+    public void setPosition(int position) {
+        buffer.position(position);
+    }
+
+    /**
+        Get the underlying buffer. The returned buffer must not be modified.
+        @return the buffer
+     */
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    public void readFully(byte[] b) throws IOException {
+        readFully(b, 0, b.length);
+    }
+
+    public void readFully(byte[] b, int off, int len) throws IOException {
+        ensureRemaining(len);
+        buffer.get(b, off, len);
+    }
+
+    public int skipBytes(int n) throws IOException {
+        int skipped = Math.max(0, Math.min(n, buffer.remaining()));
+        buffer.position(buffer.position() + skipped);
+        return skipped;
+    }
+
+    public boolean readBoolean() throws IOException {
+        return readByte() != 0;
+    }
+
+    public byte readByte() throws IOException {
+        ensureRemaining(1);
+        return buffer.get();
+    }
+
+    public int readUnsignedByte() throws IOException {
+        return readByte() & 0xff;
+    }
+
+    public short readShort() throws IOException {
+        ensureRemaining(2);
+        return buffer.getShort();
+    }
+
+    public int readUnsignedShort() throws IOException {
+        return readShort() & 0xffff;
+    }
+
+    public char readChar() throws IOException {
+        ensureRemaining(2);
+        return buffer.getChar();
+    }
+
+    public int readInt() throws IOException {
+        ensureRemaining(4);
+        return buffer.getInt();
+    }
+
+    public long readLong() throws IOException {
+        ensureRemaining(8);
+        return buffer.getLong();
+    }
+
+    public float readFloat() throws IOException {
+        return Float.intBitsToFloat(readInt());
+    }
+
+    public double readDouble() throws IOException {
+        return Double.longBitsToDouble(readLong());
+    }
+
+    public String readLine() throws IOException {
+        if (!buffer.hasRemaining()) {
+            return null;
+        }
+        StringBuilder line = new StringBuilder();
+        while (buffer.hasRemaining()) {
+            int c = buffer.get() & 0xff;
+            if (c == '\n') {
+                break;
+            } else if (c == '\r') {
+                if (buffer.hasRemaining() && buffer.get(buffer.position()) == '\n') {
+                    buffer.get();
+                }
+                break;
+            }
+            line.append((char)c);
+        }
+        return line.toString();
+    }
+
+    public String readUTF() throws IOException {
+        return DataInputStream.readUTF(this);
+    }
+
+    private void ensureRemaining(int count) throws EOFException {
+        if (buffer.remaining() < count) {
+            throw new EOFException();
+        }
+    }
+
+}
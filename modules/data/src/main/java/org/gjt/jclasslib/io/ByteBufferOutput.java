@@ -0,0 +1,170 @@
+/*
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU General Public
+    License as published by the Free Software Foundation; either
+    version 2 of the license, or (at your option) any later version.
+*/
+
+package org.gjt.jclasslib.io;
+
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+
+/**
+    <tt>ByteCodeOutput</tt> that writes directly into a <tt>ByteBuffer</tt>. <p>
+
+    In contrast to a <tt>DataOutputStream</tt> on a <tt>ByteArrayOutputStream</tt>,
+    all write operations are absolute puts at an index into the buffer, and the
+    buffer is never grown or copied. Writing beyond the limit of the buffer fails
+    with an <tt>IOException</tt>. The position and limit of the buffer that is
+    passed to the constructor are not changed.
+*/
+public class ByteBufferOutput implements ByteCodeOutput {
+
+    private final ByteBuffer buffer;
+    private final int start;
+    private int position;
+
+    /**
+        Constructor.
+        @param buffer the buffer. Writing starts at the current position
+                      of the buffer and ends at its limit.
+     */
+    public ByteBufferOutput(ByteBuffer buffer) {
+        // duplicate() is always big endian which is the byte order of the class file format
+        this.buffer = buffer.duplicate();
+        start = buffer.position();
+        position = start;
+    }
+
+    /**
+        Constructor.
+        @param bytes the byte array that is written from the beginning
+     */
+    public ByteBufferOutput(byte[] bytes) {
+        this(ByteBuffer.wrap(bytes));
+    }
+
+    public int getBytesWritten() {
+        return position - start;
+    }
+
+    /**
+        Get the absolute position in the underlying buffer.
+        @return the position
+     */
+    public int getPosition() {
+        return position;
+    }
+
+    public void write(int b) throws IOException {
+        ensureRemaining(1);
+        buffer.put(position++, (byte)b);
+    }
+
+    public void write(byte[] b) throws IOException {
+        write(b, 0, b.length);
+    }
+
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureRemaining(len);
+        if (buffer.hasArray()) {
+            System.arraycopy(b, off, buffer.array(), buffer.arrayOffset() + position, len);
+        } else {
+            ByteBuffer target = buffer.duplicate();
+            target.position(position);
+            target.put(b, off, len);
+        }
+        position += len;
+    }
+
+    public void writeBoolean(boolean v) throws IOException {
+        write(v ? 1 : 0);
+    }
+
+    public void writeByte(int v) throws IOException {
+        write(v);
+    }
+
+    public void writeShort(int v) throws IOException {
+        ensureRemaining(2);
+        buffer.putShort(position, (short)v);
+        position += 2;
+    }
+
+    public void writeChar(int v) throws IOException {
+        writeShort(v);
+    }
+
+    public void writeInt(int v) throws IOException {
+        ensureRemaining(4);
+        buffer.putInt(position, v);
+        position += 4;
+    }
+
+    public void writeLong(long v) throws IOException {
+        ensureRemaining(8);
+        buffer.putLong(position, v);
+        position += 8;
+    }
+
+    public void writeFloat(float v) throws IOException {
+        writeInt(Float.floatToIntBits(v));
+    }
+
+    public void writeDouble(double v) throws IOException {
+        writeLong(Double.doubleToLongBits(v));
+    }
+
+    public void writeBytes(String s) throws IOException {
+        int length = s.length();
+        ensureRemaining(length);
+        for (int i = 0; i < length; i++) {
+            buffer.put(position++, (byte)s.charAt(i));
+        }
+    }
+
+    public void writeChars(String s) throws IOException {
+        int length = s.length();
+        ensureRemaining(2 * length);
+        for (int i = 0; i < length; i++) {
+            buffer.putChar(position, s.charAt(i));
+            position += 2;
+        }
+    }
+
+    public void writeUTF(String s) throws IOException {
+        int length = s.length();
+        int utfLength = 0;
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            utfLength += c != 0 && c < 0x80 ? 1 : c < 0x800 ? 2 : 3;
+        }
+        if (utfLength > 0xffff) {
+            throw new UTFDataFormatException("encoded string too long: " + utfLength + " bytes");
+        }
+        ensureRemaining(2 + utfLength);
+        writeShort(utfLength);
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (c != 0 && c < 0x80) {
+                buffer.put(position++, (byte)c);
+            } else if (c < 0x800) {
+                buffer.put(position++, (byte)(0xc0 | c >> 6));
+                buffer.put(position++, (byte)(0x80 | c & 0x3f));
+            } else {
+                buffer.put(position++, (byte)(0xe0 | c >> 12));
+                buffer.put(position++, (byte)(0x80 | c >> 6 & 0x3f));
+                buffer.put(position++, (byte)(0x80 | c & 0x3f));
+            }
+        }
+    }
+
+    private void ensureRemaining(int count) throws IOException {
+        if (buffer.limit() - position < count) {
+            throw new IOException("buffer overflow: " + count + " bytes do not fit at position " + position);
+        }
+    }
+
+}
@@ -0,0 +1,196 @@
+/*
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU General Public
+    License as published by the Free Software Foundation; either
+    version 2 of the license, or (at your option) any later version.
+*/
+
+package org.gjt.jclasslib.io;
+
+import org.gjt.jclasslib.structures.ClassFile;
+import org.gjt.jclasslib.structures.InvalidByteCodeException;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+    Reusable context for reading many class files on one thread. <p>
+
+    The static methods of <tt>ClassFileReader</tt> allocate a new read buffer for each
+    class file and grow it while the stream is read. A parser keeps its read buffer
+    between class files and only grows it for class files that are larger than all
+    previous ones, so reading a large number of small class files allocates little
+    besides the returned structures. <p>
+
+    If the read options make the class file structure retain the bytes from which it
+    has been read, that is for lazily read constant pools or attributes, header only
+    reads and copying of unmodified structures, the bytes are copied into an array of
+    the exact size before they are parsed. <p>
+
+    A parser is not thread safe. Concurrent readers should use one parser per thread.
+*/
+public class ClassFileParser {
+
+    private static final int INITIAL_BUFFER_SIZE = 8192;
+
+    private ReadOptions readOptions;
+    private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+
+    /**
+        Constructor. The read options are taken from the <tt>jclasslib.io.*</tt>
+        JVM system properties.
+     */
+    public ClassFileParser() {
+        this(ReadOptions.fromSystemProperties());
+    }
+
+    /**
+        Constructor.
+        @param readOptions the options for reading the class files
+     */
+    public ClassFileParser(ReadOptions readOptions) {
+        this.readOptions = readOptions;
+    }
+
+    /**
+        Get the options for reading the class files.
+        @return the options
+     */
+    public ReadOptions getReadOptions() {
+        return readOptions;
+    }
+
+    /**
+        Set the options for reading the class files. The options are used for
+        all class files that are read after this call.
+        @param readOptions the options
+     */
+    public void setReadOptions(ReadOptions readOptions) {
+        this.readOptions = readOptions;
+    }
+
+    /**
+        Get the current size of the read buffer.
+        @return the size as a number of bytes
+     */
+    public int getBufferSize() {
+        return buffer.length;
+    }
+
+    /**
+        Converts a class file to a <tt>ClassFile</tt> structure. The input
+        stream is closed afterwards.
+        @param is the input stream from which to read the
+                  <tt>ClassFile</tt> structure
+        @return the new <tt>ClassFile</tt> structure
+        @throws InvalidByteCodeException if the code is invalid
+        @throws IOException if an exception occurs while reading from
+                            the input stream
+     */
+    public ClassFile parse(InputStream is)
+        throws InvalidByteCodeException, IOException
+    {
+
+        int count = 0;
+        try {
+            ensureCapacity(is.available());
+            int readCount;
+            while ((readCount = is.read(buffer, count, buffer.length - count)) != -1) {
+                count += readCount;
+                if (count == buffer.length) {
+                    int next = is.read();
+                    if (next == -1) {
+                        break;
+                    }
+                    ensureCapacity(count + 1);
+                    buffer[count++] = (byte)next;
+                }
+            }
+        } finally {
+            is.close();
+        }
+        return parseBuffer(count);
+    }
+
+    /**
+        Converts a class file to a <tt>ClassFile</tt> structure.
+        @param file the file from which to read the <tt>ClassFile</tt> structure
+        @return the new <tt>ClassFile</tt> structure
+        @throws InvalidByteCodeException if the code is invalid
+        @throws IOException if an exception occurs while reading the file
+     */
+    public ClassFile parse(File file)
+        throws InvalidByteCodeException, IOException
+    {
+
+        int length;
+        FileInputStream fis = new FileInputStream(file);
+        try {
+            FileChannel channel = fis.getChannel();
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException(file + " is too large for a class file");
+            }
+            length = (int)size;
+            ensureCapacity(length);
+            ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, length);
+            while (byteBuffer.hasRemaining()) {
+                if (channel.read(byteBuffer) < 0) {
+                    throw new EOFException();
+                }
+            }
+        } finally {
+            fis.close();
+        }
+        return parseBuffer(length);
+    }
+
+    /**
+        Converts a class file to a <tt>ClassFile</tt> structure. The byte array
+        is not copied, so it must not be modified while the class file structure
+        retains it.
+        @param bytes the byte array which contains the class file
+        @param offset the offset at which the class file starts
+        @param length the length of the class file
+        @return the new <tt>ClassFile</tt> structure
+        @throws InvalidByteCodeException if the code is invalid
+        @throws IOException if the class file is truncated
+     */
+    public ClassFile parse(byte[] bytes, int offset, int length)
+        throws InvalidByteCodeException, IOException
+    {
+
+        return ClassFileReader.readFromByteBuffer(ByteBuffer.wrap(bytes, offset, length), readOptions);
+    }
+
+    private ClassFile parseBuffer(int length) throws InvalidByteCodeException, IOException {
+
+        if (isSourceRetained()) {
+            // the structure keeps the buffer, which is overwritten by the next class file
+            byte[] bytes = new byte[length];
+            System.arraycopy(buffer, 0, bytes, 0, length);
+            return parse(bytes, 0, length);
+        } else {
+            return parse(buffer, 0, length);
+        }
+    }
+
+    private boolean isSourceRetained() {
+        return readOptions.isLazyConstantPool() || readOptions.isLazyAttributes() ||
+                readOptions.isHeaderOnly() || readOptions.isCopyUnmodified();
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > buffer.length) {
+            byte[] newBuffer = new byte[Math.max(capacity, buffer.length * 2)];
+            System.arraycopy(buffer, 0, newBuffer, 0, buffer.length);
+            buffer = newBuffer;
+        }
+    }
+
+}
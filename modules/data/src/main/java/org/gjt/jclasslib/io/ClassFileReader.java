@@ -7,11 +7,12 @@
 
 package org.gjt.jclasslib.io;
 
-import org.gjt.jclasslib.structures.AttributeInfo;
 import org.gjt.jclasslib.structures.ClassFile;
 import org.gjt.jclasslib.structures.InvalidByteCodeException;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 
@@ -39,7 +40,26 @@ public class ClassFileReader {
     public static ClassFile readFromClassPath(String[] classPath, String packageName, String className)
         throws InvalidByteCodeException, IOException
     {
-        
+
+        return readFromClassPath(classPath, packageName, className, ReadOptions.fromSystemProperties());
+    }
+
+    /**
+        Looks up a class file in the specified class path and converts it
+        to a <tt>ClassFile</tt> structure.
+        @param classPath the class path from which to read the <tt>ClassFile</tt> structure
+        @param packageName the name of the package in which the class resides
+        @param className the simple name of the class
+        @param readOptions the options for reading the class file
+        @return the new <tt>ClassFile</tt> structure or <tt>null</tt> if it cannot be found
+        @throws InvalidByteCodeException if the code is invalid
+        @throws IOException if an exception occurs while reading the file
+     */
+    public static ClassFile readFromClassPath(String[] classPath, String packageName, String className,
+                                              ReadOptions readOptions)
+        throws InvalidByteCodeException, IOException
+    {
+
         String relativePath = packageName.replace('.', File.separatorChar) + (packageName.length() == 0 ? "" : File.separator) + className + ".class";
         String jarRelativePath = relativePath.replace(File.separatorChar, '/');
         for (String singlePath : classPath) {
@@ -50,17 +70,12 @@ public class ClassFileReader {
             if (currentClassPathEntry.isDirectory()) {
                 File testFile = new File(currentClassPathEntry, relativePath);
                 if (testFile.exists()) {
-                    return readFromFile(testFile);
+                    return readFromFile(testFile, readOptions);
                 }
             } else if (currentClassPathEntry.isFile()) {
-                JarFile jarFile = new JarFile(currentClassPathEntry);
-                try {
-                    JarEntry jarEntry = jarFile.getJarEntry(jarRelativePath);
-                    if (jarEntry != null) {
-                        return readFromInputStream(jarFile.getInputStream(jarEntry));
-                    }
-                } finally {
-                    jarFile.close();
+                ClassFile classFile = readFromArchive(currentClassPathEntry, jarRelativePath, readOptions);
+                if (classFile != null) {
+                    return classFile;
                 }
             }
         }
@@ -68,6 +83,83 @@ public class ClassFileReader {
         return null;
     }
 
+    /**
+        Looks up a class file with a class path index and converts it to a
+        <tt>ClassFile</tt> structure. Only the archive or the directory that
+        contains the class file is accessed.
+        @param classPathIndex the index of the class path from which to read the <tt>ClassFile</tt> structure
+        @param packageName the name of the package in which the class resides
+        @param className the simple name of the class
+        @param readOptions the options for reading the class file
+        @return the new <tt>ClassFile</tt> structure or <tt>null</tt> if it cannot be found
+        @throws InvalidByteCodeException if the code is invalid
+        @throws IOException if an exception occurs while reading the file
+     */
+    public static ClassFile readFromClassPath(ClassPathIndex classPathIndex, String packageName, String className,
+                                              ReadOptions readOptions)
+        throws InvalidByteCodeException, IOException
+    {
+
+        String internalName = (packageName.length() == 0 ? "" : packageName.replace('.', '/') + "/") + className;
+        int index = classPathIndex.findEntry(internalName);
+        if (index < 0) {
+            return null;
+        }
+        File classPathEntry = classPathIndex.getEntry(index);
+        if (classPathIndex.isDirectory(index)) {
+            return readFromFile(new File(classPathEntry, internalName.replace('/', File.separatorChar) + ".class"), readOptions);
+        }
+        // null if the archive has been changed since the index was created
+        return readFromArchive(classPathEntry, internalName + ".class", readOptions);
+    }
+
+    /**
+        Converts a class file in an archive to a <tt>ClassFile</tt> structure. The
+        archive is obtained from the shared <tt>JarFileCache</tt>, so its central
+        directory is only read once for multiple class files.
+        @param file the archive
+        @param entryName the name of the class file in the archive
+        @return the new <tt>ClassFile</tt> structure or <tt>null</tt> if the archive
+                does not contain the class file
+        @throws InvalidByteCodeException if the code is invalid
+        @throws IOException if an exception occurs while reading the archive
+     */
+    public static ClassFile readFromArchive(File file, String entryName)
+        throws InvalidByteCodeException, IOException
+    {
+
+        return readFromArchive(file, entryName, ReadOptions.fromSystemProperties());
+    }
+
+    /**
+        Converts a class file in an archive to a <tt>ClassFile</tt> structure. The
+        archive is obtained from the shared <tt>JarFileCache</tt>, so its central
+        directory is only read once for multiple class files.
+        @param file the archive
+        @param entryName the name of the class file in the archive
+        @param readOptions the options for reading the class file
+        @return the new <tt>ClassFile</tt> structure or <tt>null</tt> if the archive
+                does not contain the class file
+        @throws InvalidByteCodeException if the code is invalid
+        @throws IOException if an exception occurs while reading the archive
+     */
+    public static ClassFile readFromArchive(File file, String entryName, ReadOptions readOptions)
+        throws InvalidByteCodeException, IOException
+    {
+
+        JarFileCache.Handle handle = JarFileCache.getSharedCache().acquire(file);
+        try {
+            JarFile jarFile = handle.getJarFile();
+            JarEntry jarEntry = jarFile.getJarEntry(entryName);
+            if (jarEntry == null) {
+                return null;
+            }
+            return readFromInputStream(jarFile.getInputStream(jarEntry), readOptions);
+        } finally {
+            handle.release();
+        }
+    }
+
     /**
         Converts a class file to a <tt>ClassFile</tt> structure.
         @param file the file from which to read the <tt>ClassFile</tt> structure
@@ -79,7 +171,80 @@ public class ClassFileReader {
         throws InvalidByteCodeException, IOException
     {
 
-        return readFromInputStream(new FileInputStream(file));
+        return readFromFile(file, ReadOptions.fromSystemProperties());
+    }
+
+    /**
+        Converts a class file to a <tt>ClassFile</tt> structure.
+        @param file the file from which to read the <tt>ClassFile</tt> structure
+        @param readOptions the options for reading the class file
+        @return the new <tt>ClassFile</tt> structure
+        @throws InvalidByteCodeException if the code is invalid
+        @throws IOException if an exception occurs while reading the file
+     */
+    public static ClassFile readFromFile(File file, ReadOptions readOptions)
+        throws InvalidByteCodeException, IOException
+    {
+
+        FileInputStream fis = new FileInputStream(file);
+        try {
+            FileChannel channel = fis.getChannel();
+            ByteBuffer buffer = ByteBuffer.allocate((int)channel.size());
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    throw new EOFException();
+                }
+            }
+            buffer.flip();
+            return readFromByteBuffer(buffer, readOptions);
+        } finally {
+            fis.close();
+        }
+    }
+
+    /**
+        Converts a class file to a <tt>ClassFile</tt> structure by mapping
+        the file into memory. <p>
+
+        This is intended for bulk processing of large numbers of class files. Note
+        that the mapping is only released when the buffer is garbage collected,
+        on some platforms the file cannot be modified or deleted until then.
+        @param file the file from which to read the <tt>ClassFile</tt> structure
+        @return the new <tt>ClassFile</tt> structure
+        @throws InvalidByteCodeException if the code is invalid
+        @throws IOException if an exception occurs while reading the file
+     */
+    public static ClassFile readFromMappedFile(File file)
+        throws InvalidByteCodeException, IOException
+    {
+
+        return readFromMappedFile(file, ReadOptions.fromSystemProperties());
+    }
+
+    /**
+        Converts a class file to a <tt>ClassFile</tt> structure by mapping
+        the file into memory. <p>
+
+        This is intended for bulk processing of large numbers of class files. Note
+        that the mapping is only released when the buffer is garbage collected,
+        on some platforms the file cannot be modified or deleted until then.
+        @param file the file from which to read the <tt>ClassFile</tt> structure
+        @param readOptions the options for reading the class file
+        @return the new <tt>ClassFile</tt> structure
+        @throws InvalidByteCodeException if the code is invalid
+        @throws IOException if an exception occurs while reading the file
+     */
+    public static ClassFile readFromMappedFile(File file, ReadOptions readOptions)
+        throws InvalidByteCodeException, IOException
+    {
+
+        FileInputStream fis = new FileInputStream(file);
+        try {
+            FileChannel channel = fis.getChannel();
+            return readFromByteBuffer(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), readOptions);
+        } finally {
+            fis.close();
+        }
     }
 
     /**
@@ -95,15 +260,168 @@ public class ClassFileReader {
         throws InvalidByteCodeException, IOException
     {
 
-        DataInputStream in = new DataInputStream(
-                                new BufferedInputStream(is));
+        return readFromInputStream(is, ReadOptions.fromSystemProperties());
+    }
+
+    /**
+        Converts a class file to a <tt>ClassFile</tt> structure.
+        @param is the input stream from which to read the
+                  <tt>ClassFile</tt> structure
+        @param readOptions the options for reading the class file
+        @return the new <tt>ClassFile</tt> structure
+        @throws InvalidByteCodeException if the code is invalid
+        @throws IOException if an exception occurs while reading from
+                            the input stream
+     */
+    public static ClassFile readFromInputStream(InputStream is, ReadOptions readOptions)
+        throws InvalidByteCodeException, IOException
+    {
+
+        byte[] bytes;
+        try {
+            bytes = readAllBytes(is);
+        } finally {
+            is.close();
+        }
+        return readFromByteArray(bytes, 0, bytes.length, readOptions);
+    }
+
+    /**
+        Converts a class file to a <tt>ClassFile</tt> structure.
+        @param bytes the byte array which contains the class file
+        @param offset the offset at which the class file starts
+        @param length the length of the class file
+        @return the new <tt>ClassFile</tt> structure
+        @throws InvalidByteCodeException if the code is invalid
+        @throws IOException if the class file is truncated
+     */
+    public static ClassFile readFromByteArray(byte[] bytes, int offset, int length)
+        throws InvalidByteCodeException, IOException
+    {
+
+        return readFromByteArray(bytes, offset, length, ReadOptions.fromSystemProperties());
+    }
+
+    /**
+        Converts a class file to a <tt>ClassFile</tt> structure.
+        @param bytes the byte array which contains the class file
+        @param offset the offset at which the class file starts
+        @param length the length of the class file
+        @param readOptions the options for reading the class file
+        @return the new <tt>ClassFile</tt> structure
+        @throws InvalidByteCodeException if the code is invalid
+        @throws IOException if the class file is truncated
+     */
+    public static ClassFile readFromByteArray(byte[] bytes, int offset, int length, ReadOptions readOptions)
+        throws InvalidByteCodeException, IOException
+    {
+
+        return readFromByteBuffer(ByteBuffer.wrap(bytes, offset, length), readOptions);
+    }
+
+    /**
+        Converts a class file to a <tt>ClassFile</tt> structure. Reading starts
+        at the current position of the buffer, the position and the limit of the
+        buffer are not changed.
+        @param buffer the buffer which contains the class file
+        @return the new <tt>ClassFile</tt> structure
+        @throws InvalidByteCodeException if the code is invalid
+        @throws IOException if the class file is truncated
+     */
+    public static ClassFile readFromByteBuffer(ByteBuffer buffer)
+        throws InvalidByteCodeException, IOException
+    {
+
+        return readFromByteBuffer(buffer, ReadOptions.fromSystemProperties());
+    }
 
-        ClassFile classFile = new ClassFile();
-        classFile.read(in);
-        in.close();
+    /**
+        Converts a class file to a <tt>ClassFile</tt> structure. Reading starts
+        at the current position of the buffer, the position and the limit of the
+        buffer are not changed.
+        @param buffer the buffer which contains the class file
+        @param readOptions the options for reading the class file
+        @return the new <tt>ClassFile</tt> structure
+        @throws InvalidByteCodeException if the code is invalid
+        @throws IOException if the class file is truncated
+     */
+    public static ClassFile readFromByteBuffer(ByteBuffer buffer, ReadOptions readOptions)
+        throws InvalidByteCodeException, IOException
+    {
+
+        ClassFile classFile = new ClassFile(readOptions);
+        classFile.read(new ByteBufferInput(buffer));
         return classFile;
     }
 
+    /**
+        Reads a class file and reports its fields, methods and attributes to a visitor
+        without building the complete <tt>ClassFile</tt> structure.
+        @param bytes the byte array which contains the class file
+        @param offset the offset at which the class file starts
+        @param length the length of the class file
+        @param readOptions the options for reading the class file
+        @param visitor the visitor
+        @return the <tt>ClassFile</tt> structure with the constant pool and the data up to
+                the interfaces
+        @throws InvalidByteCodeException if the code is invalid
+        @throws IOException if the class file is truncated
+     */
+    public static ClassFile readFromByteArray(byte[] bytes, int offset, int length, ReadOptions readOptions,
+                                              ClassFileVisitor visitor)
+        throws InvalidByteCodeException, IOException
+    {
+
+        return readFromByteBuffer(ByteBuffer.wrap(bytes, offset, length), readOptions, visitor);
+    }
+
+    /**
+        Reads a class file and reports its fields, methods and attributes to a visitor
+        without building the complete <tt>ClassFile</tt> structure. Reading starts at the
+        current position of the buffer, the position and the limit of the buffer are not changed.
+        @param buffer the buffer which contains the class file
+        @param readOptions the options for reading the class file
+        @param visitor the visitor
+        @return the <tt>ClassFile</tt> structure with the constant pool and the data up to
+                the interfaces
+        @throws InvalidByteCodeException if the code is invalid
+        @throws IOException if the class file is truncated
+     */
+    public static ClassFile readFromByteBuffer(ByteBuffer buffer, ReadOptions readOptions, ClassFileVisitor visitor)
+        throws InvalidByteCodeException, IOException
+    {
+
+        ClassFile classFile = new ClassFile(readOptions);
+        classFile.read(new ByteBufferInput(buffer), visitor);
+        return classFile;
+    }
+
+    private static byte[] readAllBytes(InputStream is) throws IOException {
+
+        byte[] bytes = new byte[Math.max(is.available(), 1024)];
+        int count = 0;
+        int readCount;
+        while ((readCount = is.read(bytes, count, bytes.length - count)) != -1) {
+            count += readCount;
+            if (count == bytes.length) {
+                int next = is.read();
+                if (next == -1) {
+                    return bytes;
+                }
+                byte[] newBytes = new byte[bytes.length * 2];
+                System.arraycopy(bytes, 0, newBytes, 0, count);
+                bytes = newBytes;
+                bytes[count++] = (byte)next;
+            }
+        }
+        if (count == bytes.length) {
+            return bytes;
+        }
+        byte[] result = new byte[count];
+        System.arraycopy(bytes, 0, result, 0, count);
+        return result;
+    }
+
     /**
      * Test method.
      * @param args arguments
@@ -126,10 +444,11 @@ public class ClassFileReader {
         System.out.print((endTime - startTime));
         System.out.println(" ms");
 
-        System.setProperty(AttributeInfo.SYSTEM_PROPERTY_SKIP_ATTRIBUTES, "true");
+        ReadOptions readOptions = new ReadOptions();
+        readOptions.setSkipAttributes(true);
         startTime = System.currentTimeMillis();
         for (int i = 0; i < maxCount; i++) {
-            classFile = readFromFile(file);
+            classFile = readFromFile(file, readOptions);
         }
         endTime = System.currentTimeMillis();
         System.out.println("Without attributes:");
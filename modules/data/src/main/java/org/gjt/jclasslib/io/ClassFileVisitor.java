@@ -0,0 +1,159 @@
+/*
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU General Public
+    License as published by the Free Software Foundation; either
+    version 2 of the license, or (at your option) any later version.
+*/
+
+package org.gjt.jclasslib.io;
+
+import org.gjt.jclasslib.bytecode.InstructionCursor;
+import org.gjt.jclasslib.structures.AttributeInfo;
+import org.gjt.jclasslib.structures.CPInfo;
+import org.gjt.jclasslib.structures.ClassFile;
+import org.gjt.jclasslib.structures.InvalidByteCodeException;
+
+/**
+    Receives the contents of a class file while it is read with
+    <tt>ClassFile.read(DataInput, ClassFileVisitor)</tt>. <p>
+
+    Fields, methods and attributes are reported as they are read and are not
+    retained, only the constant pool is kept in the <tt>ClassFile</tt> structure.
+    The methods are called in the order of the class file format:
+    <ol>
+    <li><tt>visitStart</tt>, followed by <tt>visitConstantPoolEntry</tt> for each entry if requested
+    <li><tt>visitClass</tt>
+    <li><tt>visitField</tt> for each field, followed by the attributes of the field if requested
+    <li><tt>visitMethod</tt> for each method, followed by the attributes of the method if requested
+    <li><tt>visitClassAttributes</tt>, followed by the attributes of the class if requested
+    <li><tt>visitEnd</tt>
+    </ol>
+    For each requested attribute, <tt>acceptAttribute</tt> decides by the name of the attribute
+    whether it is decoded and passed to <tt>visitAttribute</tt>. Attributes that are not
+    accepted are skipped without being decoded. For a code attribute, <tt>visitCode</tt> is
+    called in either case and may request <tt>visitInstruction</tt> for each instruction. If
+    the code attribute is not accepted, its instructions are read into a buffer that is reused
+    for all methods and are reported through an <tt>InstructionCursor</tt>, so that no
+    structures are created for the code. <p>
+
+    All methods do nothing by default, so that subclasses only override the methods they need.
+*/
+public abstract class ClassFileVisitor {
+
+    /**
+        Called after the version and the constant pool have been read.
+        @param classFile the class file structure which holds the constant pool
+                         and which can be used to resolve constant pool indices
+        @return whether <tt>visitConstantPoolEntry</tt> should be called for all entries.
+                This creates all entries of a lazily read constant pool.
+        @throws InvalidByteCodeException to abort reading
+     */
+    public boolean visitStart(ClassFile classFile) throws InvalidByteCodeException {
+        return false;
+    }
+
+    /**
+        Called for each constant pool entry if requested by <tt>visitStart</tt>.
+        @param index the index of the entry
+        @param cpInfo the entry
+        @throws InvalidByteCodeException to abort reading
+     */
+    public void visitConstantPoolEntry(int index, CPInfo cpInfo) throws InvalidByteCodeException {
+    }
+
+    /**
+        Called after the interfaces have been read.
+        @param accessFlags the access flags of the class
+        @param thisClass the constant pool index of the class
+        @param superClass the constant pool index of the super class
+        @param interfaces the constant pool indices of the interfaces
+        @throws InvalidByteCodeException to abort reading
+     */
+    public void visitClass(int accessFlags, int thisClass, int superClass, int[] interfaces)
+        throws InvalidByteCodeException
+    {
+    }
+
+    /**
+        Called for each field.
+        @param accessFlags the access flags of the field
+        @param nameIndex the constant pool index of the name of the field
+        @param descriptorIndex the constant pool index of the descriptor of the field
+        @return whether the attributes of the field should be visited
+        @throws InvalidByteCodeException to abort reading
+     */
+    public boolean visitField(int accessFlags, int nameIndex, int descriptorIndex) throws InvalidByteCodeException {
+        return false;
+    }
+
+    /**
+        Called for each method.
+        @param accessFlags the access flags of the method
+        @param nameIndex the constant pool index of the name of the method
+        @param descriptorIndex the constant pool index of the descriptor of the method
+        @return whether the attributes of the method should be visited
+        @throws InvalidByteCodeException to abort reading
+     */
+    public boolean visitMethod(int accessFlags, int nameIndex, int descriptorIndex) throws InvalidByteCodeException {
+        return false;
+    }
+
+    /**
+        Called after all methods have been visited.
+        @return whether the attributes of the class should be visited
+        @throws InvalidByteCodeException to abort reading
+     */
+    public boolean visitClassAttributes() throws InvalidByteCodeException {
+        return false;
+    }
+
+    /**
+        Called for each attribute of the last visited field or method or of the class
+        before the attribute is decoded. Attributes that are excluded by the read options
+        are not visited.
+        @param attributeName the name of the attribute
+        @return whether the attribute should be decoded and passed to <tt>visitAttribute</tt>
+        @throws InvalidByteCodeException to abort reading
+     */
+    public boolean acceptAttribute(String attributeName) throws InvalidByteCodeException {
+        return true;
+    }
+
+    /**
+        Called for each attribute that has been accepted by <tt>acceptAttribute</tt>.
+        @param attribute the attribute
+        @throws InvalidByteCodeException to abort reading
+     */
+    public void visitAttribute(AttributeInfo attribute) throws InvalidByteCodeException {
+    }
+
+    /**
+        Called for each code attribute of the last visited method, after <tt>visitAttribute</tt>
+        if the attribute has been accepted.
+        @param maxStack the maximum stack depth of the code
+        @param maxLocals the number of local variables of the code
+        @param codeLength the length of the code as a number of bytes
+        @return whether the instructions of the code should be visited
+        @throws InvalidByteCodeException to abort reading
+     */
+    public boolean visitCode(int maxStack, int maxLocals, int codeLength) throws InvalidByteCodeException {
+        return false;
+    }
+
+    /**
+        Called for each instruction of a code attribute if requested by <tt>visitCode</tt>.
+        @param cursor the cursor, which is positioned on the instruction. It is reused for
+                      all instructions and must not be moved by the visitor.
+        @throws InvalidByteCodeException to abort reading
+     */
+    public void visitInstruction(InstructionCursor cursor) throws InvalidByteCodeException {
+    }
+
+    /**
+        Called after the class file has been read completely.
+        @throws InvalidByteCodeException to abort reading
+     */
+    public void visitEnd() throws InvalidByteCodeException {
+    }
+
+}
@@ -11,6 +11,7 @@ import org.gjt.jclasslib.structures.ClassFile;
 import org.gjt.jclasslib.structures.InvalidByteCodeException;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 
 /**
     Converts class file structure <tt>ClassFile</tt> as defined in
@@ -32,31 +33,53 @@ public class ClassFileWriter {
      */
     public static void writeToFile(File file, ClassFile classFile)
         throws InvalidByteCodeException, IOException {
-            
-        DataOutputStream out = new DataOutputStream(
-                                new BufferedOutputStream(
-                                new FileOutputStream(file)));
-        
-        classFile.write(out);
-        out.flush();
-        out.close();
+
+        byte[] bytes = writeToByteArray(classFile);
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
     }
 
     /**
-     * Converts a <tt>ClassFile</tt> structure to a byte array.
+     * Converts a <tt>ClassFile</tt> structure to a byte array. The exact length
+     * of the class file is computed first, so that the array is allocated only once.
      * @param classFile the class file
      */
     public static byte[] writeToByteArray(ClassFile classFile)
         throws InvalidByteCodeException, IOException {
 
-        ByteArrayOutputStream result = new ByteArrayOutputStream();
-        DataOutputStream out = new DataOutputStream(result);
+        byte[] bytes = new byte[classFile.prepareWrite()];
+        write(classFile, new ByteBufferOutput(bytes), bytes.length);
+        return bytes;
+    }
 
-        classFile.write(out);
-        out.flush();
-        out.close();
+    /**
+     * Converts a <tt>ClassFile</tt> structure to a byte buffer. The exact length
+     * of the class file is computed first, so that the buffer is allocated only once.
+     * @param classFile the class file
+     * @param direct whether a direct buffer should be allocated
+     * @return the buffer with a position of 0 and the length of the class file as the limit
+     */
+    public static ByteBuffer writeToByteBuffer(ClassFile classFile, boolean direct)
+        throws InvalidByteCodeException, IOException {
+
+        int length = classFile.prepareWrite();
+        ByteBuffer buffer = direct ? ByteBuffer.allocateDirect(length) : ByteBuffer.allocate(length);
+        write(classFile, new ByteBufferOutput(buffer), length);
+        return buffer;
+    }
 
-        return result.toByteArray();
+    private static void write(ClassFile classFile, ByteBufferOutput out, int length)
+        throws InvalidByteCodeException, IOException {
+
+        classFile.write(out);
+        if (out.getBytesWritten() != length) {
+            throw new InvalidByteCodeException("class file has a computed length of " + length +
+                    ", but " + out.getBytesWritten() + " bytes were written");
+        }
     }
 
 }
@@ -0,0 +1,350 @@
+/*
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU General Public
+    License as published by the Free Software Foundation; either
+    version 2 of the license, or (at your option) any later version.
+*/
+
+package org.gjt.jclasslib.io;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarEntry;
+
+/**
+    Finds the class path entry that contains a class without opening archives. <p>
+
+    The class files of all archives in the class path are listed once when the index is
+    created and mapped to the first archive that contains them. The listing of each archive
+    can be stored in a cache directory, where it is keyed by the canonical path, the size and
+    the modification time of the archive, so that archives that have not changed are not
+    opened again by later indices, for example in the next session. <p>
+
+    Directories are not listed, since their contents change frequently. A lookup checks the
+    directories that come before the found archive in the class path for the class file, so
+    the result is the same as with a linear search of the class path. <p>
+
+    Lookups can be made concurrently. <tt>refresh</tt> lists the archives that have changed
+    since the index was created and replaces the mapping when it is complete.
+*/
+public class ClassPathIndex {
+
+    /** Extension of class files. */
+    public static final String CLASS_FILE_EXTENSION = ".class";
+
+    private static final int CACHE_FILE_MAGIC = 0x6a636c69;
+    private static final int CACHE_FILE_VERSION = 1;
+    private static final String CACHE_FILE_EXTENSION = ".idx";
+
+    private final File[] entries;
+    private final boolean[] directories;
+    private final File cacheDirectory;
+    private final ArchiveListing[] listings;
+    private volatile Map<String, Integer> classToEntry;
+
+    /**
+        Constructor. The listings of the archives are not cached.
+        @param classPath the paths of the class path entries
+     */
+    public ClassPathIndex(String[] classPath) {
+        this(classPath, null);
+    }
+
+    /**
+        Constructor.
+        @param classPath the paths of the class path entries
+        @param cacheDirectory the directory in which the listings of the archives are stored
+                              or <tt>null</tt> if the listings should not be cached. The directory
+                              is created if it does not exist.
+     */
+    public ClassPathIndex(String[] classPath, File cacheDirectory) {
+
+        this.cacheDirectory = cacheDirectory;
+        entries = new File[classPath.length];
+        directories = new boolean[classPath.length];
+        listings = new ArchiveListing[classPath.length];
+        for (int i = 0; i < classPath.length; i++) {
+            File file = new File(classPath[i]);
+            try {
+                file = file.getCanonicalFile();
+            } catch (IOException e) {
+                file = file.getAbsoluteFile();
+            }
+            entries[i] = file;
+            directories[i] = file.isDirectory();
+        }
+        refresh();
+    }
+
+    /**
+        Get the default directory for caching the listings of archives, which is
+        located in the home directory of the user.
+        @return the directory
+     */
+    public static File getDefaultCacheDirectory() {
+        return new File(System.getProperty("user.home"), ".jclasslib" + File.separator + "classpath");
+    }
+
+    /**
+        Get the number of class path entries.
+        @return the number
+     */
+    public int getEntryCount() {
+        return entries.length;
+    }
+
+    /**
+        Get a class path entry.
+        @param index the position in the class path
+        @return the canonical file of the class path entry
+     */
+    public File getEntry(int index) {
+        return entries[index];
+    }
+
+    /**
+        Returns whether a class path entry is a directory.
+        @param index the position in the class path
+        @return the value
+     */
+    public boolean isDirectory(int index) {
+        return directories[index];
+    }
+
+    /**
+        Get the number of distinct classes in all archives.
+        @return the number
+     */
+    public int getArchiveClassCount() {
+        return classToEntry.size();
+    }
+
+    /**
+        Find the first class path entry that contains a class.
+        @param className the fully qualified name of the class with slashes or dots as separators
+        @return the position in the class path or <tt>-1</tt> if the class is not found
+     */
+    public int findEntry(String className) {
+
+        String internalName = className.replace('.', '/');
+        Integer archiveIndex = classToEntry.get(internalName);
+        int end = archiveIndex == null ? entries.length : archiveIndex;
+        String relativePath = null;
+        for (int i = 0; i < end; i++) {
+            if (directories[i]) {
+                if (relativePath == null) {
+                    relativePath = internalName.replace('/', File.separatorChar) + CLASS_FILE_EXTENSION;
+                }
+                if (new File(entries[i], relativePath).isFile()) {
+                    return i;
+                }
+            }
+        }
+        return archiveIndex == null ? -1 : archiveIndex;
+    }
+
+    /**
+        List the archives that have been changed, added or removed since they were
+        listed and update the index. Archives that have not changed are not opened.
+        @return whether the index has changed
+     */
+    public synchronized boolean refresh() {
+
+        boolean changed = classToEntry == null;
+        for (int i = 0; i < entries.length; i++) {
+            if (directories[i]) {
+                continue;
+            }
+            File file = entries[i];
+            ArchiveListing listing = listings[i];
+            if (listing == null || !listing.matches(file)) {
+                ArchiveListing newListing = loadListing(file);
+                if (listing == null || !listing.equals(newListing)) {
+                    listings[i] = newListing;
+                    changed = true;
+                }
+            }
+        }
+        if (changed) {
+            int classCount = 0;
+            for (ArchiveListing listing : listings) {
+                if (listing != null) {
+                    classCount += listing.classNames.length;
+                }
+            }
+            Map<String, Integer> newClassToEntry = new HashMap<String, Integer>(Math.max(16, classCount * 4 / 3 + 1));
+            // iterate backwards, so that the first archive that contains a class wins
+            for (int i = entries.length - 1; i >= 0; i--) {
+                if (listings[i] != null) {
+                    Integer index = i;
+                    for (String className : listings[i].classNames) {
+                        newClassToEntry.put(className, index);
+                    }
+                }
+            }
+            classToEntry = newClassToEntry;
+        }
+        return changed;
+    }
+
+    private ArchiveListing loadListing(File file) {
+
+        if (!file.isFile()) {
+            return new ArchiveListing(file.getPath(), 0, 0, new String[0]);
+        }
+        File cacheFile = getCacheFile(file);
+        if (cacheFile != null && cacheFile.isFile()) {
+            try {
+                ArchiveListing listing = readListing(cacheFile);
+                if (listing.matches(file)) {
+                    return listing;
+                }
+            } catch (IOException e) {
+                Log.warning("could not read " + cacheFile + ": " + e.getMessage());
+            }
+        }
+        ArchiveListing listing;
+        try {
+            listing = scanArchive(file);
+        } catch (IOException e) {
+            Log.warning("could not list " + file + ": " + e.getMessage());
+            // remember the failure, so that the archive is only opened again if it changes
+            return new ArchiveListing(file.getPath(), file.length(), file.lastModified(), new String[0]);
+        }
+        if (cacheFile != null) {
+            try {
+                writeListing(cacheFile, listing);
+            } catch (IOException e) {
+                Log.warning("could not write " + cacheFile + ": " + e.getMessage());
+            }
+        }
+        return listing;
+    }
+
+    private File getCacheFile(File file) {
+
+        if (cacheDirectory == null) {
+            return null;
+        }
+        // the path is stored in the cache file, so hash collisions are detected
+        return new File(cacheDirectory, file.getName() + "-" +
+                Integer.toHexString(file.getPath().hashCode()) + CACHE_FILE_EXTENSION);
+    }
+
+    private static ArchiveListing scanArchive(File file) throws IOException {
+
+        // size and time are taken before the archive is read, a concurrent change is detected next time
+        long size = file.length();
+        long lastModified = file.lastModified();
+        List<String> classNames = new ArrayList<String>();
+        // the archive is likely to be read afterwards, so it is kept open
+        JarFileCache.Handle handle = JarFileCache.getSharedCache().acquire(file);
+        try {
+            Enumeration<JarEntry> jarEntries = handle.getJarFile().entries();
+            while (jarEntries.hasMoreElements()) {
+                JarEntry jarEntry = jarEntries.nextElement();
+                String name = jarEntry.getName();
+                if (!jarEntry.isDirectory() && name.endsWith(CLASS_FILE_EXTENSION)) {
+                    classNames.add(name.substring(0, name.length() - CLASS_FILE_EXTENSION.length()));
+                }
+            }
+        } finally {
+            handle.release();
+        }
+        return new ArchiveListing(file.getPath(), size, lastModified, classNames.toArray(new String[classNames.size()]));
+    }
+
+    private static ArchiveListing readListing(File cacheFile) throws IOException {
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)));
+        try {
+            if (in.readInt() != CACHE_FILE_MAGIC || in.readInt() != CACHE_FILE_VERSION) {
+                throw new IOException("unknown format");
+            }
+            String path = in.readUTF();
+            long size = in.readLong();
+            long lastModified = in.readLong();
+            int classCount = in.readInt();
+            if (classCount < 0) {
+                throw new IOException("invalid class count " + classCount);
+            }
+            String[] classNames = new String[classCount];
+            for (int i = 0; i < classCount; i++) {
+                classNames[i] = in.readUTF();
+            }
+            return new ArchiveListing(path, size, lastModified, classNames);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void writeListing(File cacheFile, ArchiveListing listing) throws IOException {
+
+        File directory = cacheFile.getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("cannot create " + directory);
+        }
+        // write to a temporary file first, so that concurrent sessions never read a partial listing
+        File tempFile = File.createTempFile(cacheFile.getName(), ".tmp", directory);
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            try {
+                out.writeInt(CACHE_FILE_MAGIC);
+                out.writeInt(CACHE_FILE_VERSION);
+                out.writeUTF(listing.path);
+                out.writeLong(listing.size);
+                out.writeLong(listing.lastModified);
+                out.writeInt(listing.classNames.length);
+                for (String className : listing.classNames) {
+                    out.writeUTF(className);
+                }
+            } finally {
+                out.close();
+            }
+            if (!tempFile.renameTo(cacheFile) && !(cacheFile.delete() && tempFile.renameTo(cacheFile))) {
+                throw new IOException("cannot rename " + tempFile);
+            }
+        } finally {
+            if (tempFile.exists()) {
+                tempFile.delete();
+            }
+        }
+    }
+
+    private static class ArchiveListing {
+
+        private final String path;
+        private final long size;
+        private final long lastModified;
+        private final String[] classNames;
+
+        private ArchiveListing(String path, long size, long lastModified, String[] classNames) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.classNames = classNames;
+        }
+
+        private boolean matches(File file) {
+            // a missing archive has a size and a modification time of 0
+            return path.equals(file.getPath()) && size == file.length() && lastModified == file.lastModified();
+        }
+
+        public boolean equals(Object other) {
+            if (!(other instanceof ArchiveListing)) {
+                return false;
+            }
+            ArchiveListing listing = (ArchiveListing)other;
+            return path.equals(listing.path) && size == listing.size && lastModified == listing.lastModified;
+        }
+
+        public int hashCode() {
+            return path.hashCode();
+        }
+    }
+
+}
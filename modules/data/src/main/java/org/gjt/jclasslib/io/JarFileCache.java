@@ -0,0 +1,244 @@
+/*
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU General Public
+    License as published by the Free Software Foundation; either
+    version 2 of the license, or (at your option) any later version.
+*/
+
+package org.gjt.jclasslib.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.jar.JarFile;
+
+/**
+    Keeps archives open so that their central directory is not read again for each
+    class file. <p>
+
+    An archive is obtained with <tt>acquire</tt>, which returns a <tt>Handle</tt> that must
+    be released after the last stream of the archive has been read. The number of open
+    archives is limited, when the limit is exceeded, archives that are not in use are closed
+    in least recently used order. Archives that are in use are only closed when they are
+    released, so the limit can be exceeded temporarily. If the size or the modification time
+    of a file has changed since it was opened, the next <tt>acquire</tt> opens it again. <p>
+
+    The methods of this class are thread safe. The handles returned by <tt>acquire</tt>
+    can be used by one thread at a time.
+*/
+public class JarFileCache {
+
+    /** The default maximum number of open archives. */
+    public static final int DEFAULT_MAX_OPEN_COUNT = 32;
+
+    private static final JarFileCache SHARED_CACHE = new JarFileCache(DEFAULT_MAX_OPEN_COUNT);
+
+    private final int maxOpenCount;
+    // in access order, so that the least recently used archive comes first
+    private final LinkedHashMap<File, CachedJarFile> cachedJarFiles = new LinkedHashMap<File, CachedJarFile>(16, 0.75f, true);
+    private int openCount;
+
+    /**
+        Get the cache that is shared by the class file readers and the browser.
+        @return the cache
+     */
+    public static JarFileCache getSharedCache() {
+        return SHARED_CACHE;
+    }
+
+    /**
+        Constructor.
+        @param maxOpenCount the maximum number of archives that are kept open
+     */
+    public JarFileCache(int maxOpenCount) {
+        if (maxOpenCount < 1) {
+            throw new IllegalArgumentException("maximum open count must be positive, was " + maxOpenCount);
+        }
+        this.maxOpenCount = maxOpenCount;
+    }
+
+    /**
+        Get the maximum number of archives that are kept open.
+        @return the number
+     */
+    public int getMaxOpenCount() {
+        return maxOpenCount;
+    }
+
+    /**
+        Get the number of open archives, including archives that have been
+        evicted or replaced but are still in use.
+        @return the number
+     */
+    public synchronized int getOpenCount() {
+        return openCount;
+    }
+
+    /**
+        Open an archive or reuse an open archive.
+        @param file the archive
+        @return the handle, which must be released
+        @throws IOException if the archive cannot be opened
+     */
+    public Handle acquire(File file) throws IOException {
+
+        File canonicalFile = file.getCanonicalFile();
+        long length = canonicalFile.length();
+        long lastModified = canonicalFile.lastModified();
+        List<CachedJarFile> closedJarFiles = new ArrayList<CachedJarFile>();
+        try {
+            synchronized (this) {
+                CachedJarFile cachedJarFile = cachedJarFiles.get(canonicalFile);
+                if (cachedJarFile != null && (cachedJarFile.length != length || cachedJarFile.lastModified != lastModified)) {
+                    // the file has been changed, the old archive is closed when it is no longer in use
+                    cachedJarFiles.remove(canonicalFile);
+                    cachedJarFile.cached = false;
+                    closeIfUnused(cachedJarFile, closedJarFiles);
+                    cachedJarFile = null;
+                }
+                if (cachedJarFile != null) {
+                    cachedJarFile.referenceCount++;
+                    return new Handle(cachedJarFile);
+                }
+            }
+            // the central directory is read outside of the lock
+            CachedJarFile newJarFile = new CachedJarFile(new JarFile(canonicalFile), length, lastModified);
+            synchronized (this) {
+                openCount++;
+                CachedJarFile cachedJarFile = cachedJarFiles.get(canonicalFile);
+                if (cachedJarFile != null && cachedJarFile.length == length && cachedJarFile.lastModified == lastModified) {
+                    // another thread has opened the same archive in the meantime
+                    closedJarFiles.add(newJarFile);
+                    openCount--;
+                } else {
+                    if (cachedJarFile != null) {
+                        cachedJarFile.cached = false;
+                        closeIfUnused(cachedJarFile, closedJarFiles);
+                    }
+                    cachedJarFile = newJarFile;
+                    cachedJarFiles.put(canonicalFile, cachedJarFile);
+                }
+                cachedJarFile.referenceCount++;
+                evictUnused(closedJarFiles);
+                return new Handle(cachedJarFile);
+            }
+        } finally {
+            closeAll(closedJarFiles);
+        }
+    }
+
+    /**
+        Close all archives that are not in use and forget the archives that are in use,
+        so that they are closed when they are released.
+     */
+    public void clear() {
+
+        List<CachedJarFile> closedJarFiles = new ArrayList<CachedJarFile>();
+        synchronized (this) {
+            for (CachedJarFile cachedJarFile : cachedJarFiles.values()) {
+                cachedJarFile.cached = false;
+                closeIfUnused(cachedJarFile, closedJarFiles);
+            }
+            cachedJarFiles.clear();
+        }
+        closeAll(closedJarFiles);
+    }
+
+    private void release(CachedJarFile cachedJarFile) {
+
+        List<CachedJarFile> closedJarFiles = new ArrayList<CachedJarFile>();
+        synchronized (this) {
+            cachedJarFile.referenceCount--;
+            if (cachedJarFile.cached) {
+                evictUnused(closedJarFiles);
+            } else {
+                closeIfUnused(cachedJarFile, closedJarFiles);
+            }
+        }
+        closeAll(closedJarFiles);
+    }
+
+    private void evictUnused(List<CachedJarFile> closedJarFiles) {
+
+        Iterator<CachedJarFile> iterator = cachedJarFiles.values().iterator();
+        while (openCount > maxOpenCount && iterator.hasNext()) {
+            CachedJarFile cachedJarFile = iterator.next();
+            if (cachedJarFile.referenceCount == 0) {
+                iterator.remove();
+                cachedJarFile.cached = false;
+                closeIfUnused(cachedJarFile, closedJarFiles);
+            }
+        }
+    }
+
+    private void closeIfUnused(CachedJarFile cachedJarFile, List<CachedJarFile> closedJarFiles) {
+        if (cachedJarFile.referenceCount == 0) {
+            closedJarFiles.add(cachedJarFile);
+            openCount--;
+        }
+    }
+
+    private static void closeAll(List<CachedJarFile> closedJarFiles) {
+        for (CachedJarFile cachedJarFile : closedJarFiles) {
+            try {
+                cachedJarFile.jarFile.close();
+            } catch (IOException e) {
+                Log.warning("could not close " + cachedJarFile.jarFile.getName() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+        An archive that has been acquired from the cache.
+     */
+    public class Handle {
+
+        private final CachedJarFile cachedJarFile;
+        private boolean released;
+
+        private Handle(CachedJarFile cachedJarFile) {
+            this.cachedJarFile = cachedJarFile;
+        }
+
+        /**
+            Get the archive. It must not be closed and must not be used after
+            <tt>release</tt> has been called.
+            @return the archive
+         */
+        public JarFile getJarFile() {
+            if (released) {
+                throw new IllegalStateException("handle has been released");
+            }
+            return cachedJarFile.jarFile;
+        }
+
+        /**
+            Give the archive back to the cache. Calling this method again has no effect.
+         */
+        public void release() {
+            if (!released) {
+                released = true;
+                JarFileCache.this.release(cachedJarFile);
+            }
+        }
+    }
+
+    private static class CachedJarFile {
+
+        private final JarFile jarFile;
+        private final long length;
+        private final long lastModified;
+        private int referenceCount;
+        private boolean cached = true;
+
+        private CachedJarFile(JarFile jarFile, long length, long lastModified) {
+            this.jarFile = jarFile;
+            this.length = length;
+            this.lastModified = lastModified;
+        }
+    }
+
+}
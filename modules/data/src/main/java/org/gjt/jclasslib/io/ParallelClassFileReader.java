@@ -0,0 +1,360 @@
+/*
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU General Public
+    License as published by the Free Software Foundation; either
+    version 2 of the license, or (at your option) any later version.
+*/
+
+package org.gjt.jclasslib.io;
+
+import org.gjt.jclasslib.structures.ClassFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+    Reads all class files in a jar file or a directory in parallel. <p>
+
+    Each class file is inflated and parsed by a task on an <tt>ExecutorService</tt>.
+    The results are passed to a <tt>Handler</tt> on the calling thread in the order in which
+    the tasks complete, so the handler does not have to be thread safe. A class file that
+    cannot be read is reported to the handler and does not abort the other class files.
+    The number of tasks whose results have not been handled yet is limited, so the memory
+    use does not depend on the size of the jar file. Each thread of the executor service
+    reads its class files with its own <tt>ClassFileParser</tt>, so that the read buffers
+    are reused. If the handler throws an exception or the calling thread is interrupted,
+    the class files that have not been read yet are skipped and the read methods return
+    after the running tasks have ended.
+*/
+public class ParallelClassFileReader {
+
+    /**
+        Receives the results of a parallel read.
+     */
+    public interface Handler {
+
+        /**
+            Called for each class file that has been read successfully.
+            @param name the name of the jar entry or the path relative to the directory,
+                        with forward slashes as separators
+            @param classFile the class file
+         */
+        void classFileRead(String name, ClassFile classFile);
+
+        /**
+            Called for each class file that could not be read.
+            @param name the name of the jar entry or the path relative to the directory,
+                        with forward slashes as separators
+            @param exception the exception that occurred while reading the class file
+         */
+        void classFileFailed(String name, Exception exception);
+    }
+
+    /**
+        Selects the class files that are read.
+     */
+    public interface Filter {
+
+        /**
+            Returns whether a class file should be read.
+            @param name the name of the jar entry or the path relative to the directory,
+                        with forward slashes as separators
+            @return the value
+         */
+        boolean accept(String name);
+    }
+
+    private static final Filter CLASS_FILE_FILTER = new Filter() {
+        public boolean accept(String name) {
+            return name.endsWith(".class");
+        }
+    };
+
+    private final ExecutorService executorService;
+    private final boolean ownExecutorService;
+    private ReadOptions readOptions = ReadOptions.fromSystemProperties();
+    private Filter filter = CLASS_FILE_FILTER;
+    private int maxPendingCount;
+
+    private final ThreadLocal<ClassFileParser> parsers = new ThreadLocal<ClassFileParser>() {
+        protected ClassFileParser initialValue() {
+            return new ClassFileParser(readOptions);
+        }
+    };
+
+    /**
+        Constructor. Creates an executor service with one thread per available
+        processor which is shut down by <tt>shutdown</tt>.
+     */
+    public ParallelClassFileReader() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+        Constructor. Creates an executor service with the specified number of threads
+        which is shut down by <tt>shutdown</tt>.
+        @param threadCount the number of threads
+     */
+    public ParallelClassFileReader(int threadCount) {
+        executorService = Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "jclasslib class file reader");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        ownExecutorService = true;
+        maxPendingCount = 4 * threadCount;
+    }
+
+    /**
+        Constructor. Callers running on Java 7 or later can pass a <tt>ForkJoinPool</tt>
+        to read the class files on a work-stealing pool.
+        @param executorService the executor service on which the class files are read.
+                               It is not shut down by this reader.
+        @param parallelism the number of class files that the executor service reads
+                           concurrently
+     */
+    public ParallelClassFileReader(ExecutorService executorService, int parallelism) {
+        this.executorService = executorService;
+        ownExecutorService = false;
+        maxPendingCount = 4 * parallelism;
+    }
+
+    /**
+        Get the options for reading the class files.
+        @return the options
+     */
+    public ReadOptions getReadOptions() {
+        return readOptions;
+    }
+
+    /**
+        Set the options for reading the class files. The options are shared
+        by all class files.
+        @param readOptions the options
+     */
+    public void setReadOptions(ReadOptions readOptions) {
+        this.readOptions = readOptions;
+    }
+
+    /**
+        Get the filter that selects the class files that are read.
+        @return the filter
+     */
+    public Filter getFilter() {
+        return filter;
+    }
+
+    /**
+        Set the filter that selects the class files that are read. By default, all
+        files with the extension <tt>.class</tt> are read.
+        @param filter the filter
+     */
+    public void setFilter(Filter filter) {
+        this.filter = filter;
+    }
+
+    /**
+        Read the selected class files in a jar file.
+        @param file the jar file
+        @param handler the handler that receives the results
+        @return the number of class files that have been read or that have failed
+        @throws IOException if the jar file cannot be opened
+        @throws InterruptedException if the calling thread is interrupted while
+                                     waiting for results
+     */
+    public int readJarFile(File file, Handler handler) throws IOException, InterruptedException {
+
+        JarFileCache.Handle handle = JarFileCache.getSharedCache().acquire(file);
+        final JarFile jarFile = handle.getJarFile();
+        Batch batch = new Batch(handler);
+        try {
+            Enumeration<JarEntry> entries = jarFile.entries();
+            while (entries.hasMoreElements()) {
+                final JarEntry entry = entries.nextElement();
+                if (!entry.isDirectory() && filter.accept(entry.getName())) {
+                    batch.submit(entry.getName(), new Callable<ClassFile>() {
+                        public ClassFile call() throws Exception {
+                            return getParser().parse(jarFile.getInputStream(entry));
+                        }
+                    });
+                }
+            }
+            return batch.finish();
+        } finally {
+            batch.cancelPending();
+            handle.release();
+        }
+    }
+
+    /**
+        Read the selected class files in a directory and all its subdirectories.
+        @param directory the directory
+        @param handler the handler that receives the results
+        @return the number of class files that have been read or that have failed
+        @throws IOException if the directory cannot be listed
+        @throws InterruptedException if the calling thread is interrupted while
+                                     waiting for results
+     */
+    public int readDirectory(File directory, Handler handler) throws IOException, InterruptedException {
+
+        Batch batch = new Batch(handler);
+        try {
+            submitDirectory(batch, directory, "");
+            return batch.finish();
+        } finally {
+            batch.cancelPending();
+        }
+    }
+
+    /**
+        Shut down the executor service if it has been created by this reader.
+     */
+    public void shutdown() {
+        if (ownExecutorService) {
+            executorService.shutdown();
+        }
+    }
+
+    private ClassFileParser getParser() {
+        ClassFileParser parser = parsers.get();
+        parser.setReadOptions(readOptions);
+        return parser;
+    }
+
+    private void submitDirectory(Batch batch, File directory, String prefix)
+        throws IOException, InterruptedException
+    {
+
+        File[] files = directory.listFiles();
+        if (files == null) {
+            throw new IOException("cannot list " + directory);
+        }
+        for (final File file : files) {
+            String name = prefix + file.getName();
+            if (file.isDirectory()) {
+                submitDirectory(batch, file, name + "/");
+            } else if (filter.accept(name)) {
+                batch.submit(name, new Callable<ClassFile>() {
+                    public ClassFile call() throws Exception {
+                        return getParser().parse(file);
+                    }
+                });
+            }
+        }
+    }
+
+    private class Batch {
+
+        private final Handler handler;
+        private final CompletionService<ClassFile> completionService =
+                new ExecutorCompletionService<ClassFile>(executorService);
+        private final Map<Future<ClassFile>, BatchTask> pendingTasks = new HashMap<Future<ClassFile>, BatchTask>();
+        private int count;
+
+        private Batch(Handler handler) {
+            this.handler = handler;
+        }
+
+        private void submit(String name, Callable<ClassFile> task) throws InterruptedException {
+            while (pendingTasks.size() >= maxPendingCount) {
+                handleNext();
+            }
+            BatchTask batchTask = new BatchTask(name, task);
+            pendingTasks.put(completionService.submit(batchTask), batchTask);
+        }
+
+        private int finish() throws InterruptedException {
+            while (!pendingTasks.isEmpty()) {
+                handleNext();
+            }
+            return count;
+        }
+
+        private void handleNext() throws InterruptedException {
+
+            Future<ClassFile> future = completionService.take();
+            String name = pendingTasks.remove(future).name;
+            count++;
+            ClassFile classFile;
+            try {
+                classFile = future.get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                handler.classFileFailed(name, cause instanceof Exception ? (Exception)cause : e);
+                return;
+            }
+            handler.classFileRead(name, classFile);
+        }
+
+        // only has an effect if the batch has been aborted by an exception
+        private void cancelPending() {
+            for (Future<ClassFile> future : pendingTasks.keySet()) {
+                future.cancel(true);
+            }
+            // running tasks may still use the jar file, which is closed after this method returns
+            boolean interrupted = false;
+            for (BatchTask batchTask : pendingTasks.values()) {
+                interrupted |= batchTask.awaitFinished();
+            }
+            pendingTasks.clear();
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+        A task whose end can be awaited even if its future has been cancelled
+        while it was running.
+     */
+    private static class BatchTask implements Callable<ClassFile> {
+
+        private final String name;
+        private final Callable<ClassFile> task;
+        private final AtomicBoolean started = new AtomicBoolean();
+        private final CountDownLatch finished = new CountDownLatch(1);
+
+        private BatchTask(String name, Callable<ClassFile> task) {
+            this.name = name;
+            this.task = task;
+        }
+
+        public ClassFile call() throws Exception {
+            if (!started.compareAndSet(false, true)) {
+                return null;
+            }
+            try {
+                return task.call();
+            } finally {
+                finished.countDown();
+            }
+        }
+
+        // returns whether the calling thread has been interrupted while waiting
+        private boolean awaitFinished() {
+            if (started.compareAndSet(false, true)) {
+                // the task will not be run anymore
+                return false;
+            }
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    finished.await();
+                    return interrupted;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+    }
+
+}
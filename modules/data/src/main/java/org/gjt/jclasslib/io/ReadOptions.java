@@ -0,0 +1,317 @@
+/*
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU General Public
+    License as published by the Free Software Foundation; either
+    version 2 of the license, or (at your option) any later version.
+*/
+
+package org.gjt.jclasslib.io;
+
+import org.gjt.jclasslib.structures.AbstractStructure;
+import org.gjt.jclasslib.structures.AttributeInfo;
+import org.gjt.jclasslib.structures.AttributeRegistry;
+import org.gjt.jclasslib.structures.ClassFile;
+import org.gjt.jclasslib.structures.constants.Utf8Pool;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+    Options for reading a class file. <p>
+
+    The options are passed to the methods of <tt>ClassFileReader</tt> or to the
+    constructor of <tt>ClassFile</tt> and apply to that class file only, so that
+    threads reading class files concurrently can use different options. A new
+    instance has all modes switched off. The class file takes a copy of the options,
+    so changing them afterwards does not affect class files that have already been
+    created, but they must not be changed while they are passed to a constructor
+    in another thread.
+*/
+public class ReadOptions {
+
+    private boolean skipConstantPool;
+    private boolean lazyConstantPool;
+    private boolean skipAttributes;
+    private boolean lazyAttributes;
+    private boolean debug;
+    private boolean headerOnly;
+    private boolean copyUnmodified;
+    private boolean freeze;
+    private Set<String> includedAttributes;
+    private Set<String> excludedAttributes;
+    private Utf8Pool utf8Pool;
+    private AttributeRegistry attributeRegistry;
+
+    /**
+        Constructor. All modes are switched off.
+     */
+    public ReadOptions() {
+    }
+
+    /**
+        Copy constructor.
+        @param readOptions the options to copy
+     */
+    public ReadOptions(ReadOptions readOptions) {
+        skipConstantPool = readOptions.skipConstantPool;
+        lazyConstantPool = readOptions.lazyConstantPool;
+        skipAttributes = readOptions.skipAttributes;
+        lazyAttributes = readOptions.lazyAttributes;
+        debug = readOptions.debug;
+        headerOnly = readOptions.headerOnly;
+        copyUnmodified = readOptions.copyUnmodified;
+        freeze = readOptions.freeze;
+        // the sets are replaced and never modified, so they can be shared
+        includedAttributes = readOptions.includedAttributes;
+        excludedAttributes = readOptions.excludedAttributes;
+        utf8Pool = readOptions.utf8Pool;
+        attributeRegistry = readOptions.attributeRegistry;
+    }
+
+    /**
+        Create options from the <tt>jclasslib.io.*</tt> JVM system properties, as
+        they were used by earlier versions for all class files.
+        @return the new options
+     */
+    public static ReadOptions fromSystemProperties() {
+        ReadOptions readOptions = new ReadOptions();
+        readOptions.setSkipConstantPool(Boolean.getBoolean(ClassFile.SYSTEM_PROPERTY_SKIP_CONSTANT_POOL));
+        readOptions.setLazyConstantPool(Boolean.getBoolean(ClassFile.SYSTEM_PROPERTY_LAZY_CONSTANT_POOL));
+        readOptions.setSkipAttributes(Boolean.getBoolean(AttributeInfo.SYSTEM_PROPERTY_SKIP_ATTRIBUTES));
+        readOptions.setLazyAttributes(Boolean.getBoolean(AttributeInfo.SYSTEM_PROPERTY_LAZY_ATTRIBUTES));
+        readOptions.setDebug(Boolean.getBoolean(AbstractStructure.SYSTEM_PROPERTY_DEBUG));
+        return readOptions;
+    }
+
+    /**
+        Returns whether the constant pool is skipped. Some class file
+        operations may fail in this case.
+        @return the value
+     */
+    public boolean isSkipConstantPool() {
+        return skipConstantPool;
+    }
+
+    /**
+        Sets whether the constant pool is skipped.
+        @param skipConstantPool the new value
+     */
+    public void setSkipConstantPool(boolean skipConstantPool) {
+        this.skipConstantPool = skipConstantPool;
+    }
+
+    /**
+        Returns whether constant pool entries are only created when they are
+        accessed. This only has an effect if the class file is read from a
+        <tt>ByteBufferInput</tt>.
+        @return the value
+     */
+    public boolean isLazyConstantPool() {
+        return lazyConstantPool;
+    }
+
+    /**
+        Sets whether constant pool entries are only created when they are accessed.
+        Invalid entries are then reported when they are accessed, getters that do not
+        declare an <tt>InvalidByteCodeException</tt> throw an
+        <tt>UncheckedInvalidByteCodeException</tt> in that case.
+        @param lazyConstantPool the new value
+     */
+    public void setLazyConstantPool(boolean lazyConstantPool) {
+        this.lazyConstantPool = lazyConstantPool;
+    }
+
+    /**
+        Returns whether all attributes are skipped. Some class file operations
+        may fail in this case.
+        @return the value
+     */
+    public boolean isSkipAttributes() {
+        return skipAttributes;
+    }
+
+    /**
+        Sets whether all attributes are skipped.
+        @param skipAttributes the new value
+     */
+    public void setSkipAttributes(boolean skipAttributes) {
+        this.skipAttributes = skipAttributes;
+    }
+
+    /**
+        Returns whether the decoding of attributes of known types is deferred until
+        they are accessed. This only has an effect if the class file is read from a
+        <tt>ByteBufferInput</tt>.
+        @return the value
+     */
+    public boolean isLazyAttributes() {
+        return lazyAttributes;
+    }
+
+    /**
+        Sets whether the decoding of attributes of known types is deferred until
+        they are accessed. Invalid attributes are then reported when they are accessed,
+        the methods that return attributes throw an <tt>UncheckedInvalidByteCodeException</tt>
+        in that case.
+        @param lazyAttributes the new value
+     */
+    public void setLazyAttributes(boolean lazyAttributes) {
+        this.lazyAttributes = lazyAttributes;
+    }
+
+    /**
+        Returns whether debug messages are logged while reading and writing.
+        @return the value
+     */
+    public boolean isDebug() {
+        return debug;
+    }
+
+    /**
+        Sets whether debug messages are logged while reading and writing.
+        @param debug the new value
+     */
+    public void setDebug(boolean debug) {
+        this.debug = debug;
+    }
+
+    /**
+        Returns whether only the header of the class file is read. The header consists of
+        everything up to the interfaces, that is the version, the constant pool, the access
+        flags, this class, the super class and the interfaces. Fields, methods and attributes
+        are not read and are empty in the class file structure, which cannot be written. If
+        the class file is read from a <tt>ByteBufferInput</tt>, only the constant pool entries
+        that are accessed are created.
+        @return the value
+     */
+    public boolean isHeaderOnly() {
+        return headerOnly;
+    }
+
+    /**
+        Sets whether only the header of the class file is read. This is intended for
+        scanning the class hierarchy of a large number of class files.
+        @param headerOnly the new value
+     */
+    public void setHeaderOnly(boolean headerOnly) {
+        this.headerOnly = headerOnly;
+    }
+
+    /**
+        Returns whether fields, methods and attributes that have not been modified
+        are written by copying the bytes from which they were read. This only has
+        an effect if the class file is read from a <tt>ByteBufferInput</tt>, which
+        is retained as long as the class file structure, and if no attributes are
+        skipped or filtered.
+        @return the value
+     */
+    public boolean isCopyUnmodified() {
+        return copyUnmodified;
+    }
+
+    /**
+        Sets whether fields, methods and attributes that have not been modified
+        are written by copying the bytes from which they were read. This is intended
+        for transformations that only change a small part of a class file. Replacing
+        constant pool entries that have been read, for example with
+        <tt>ClassFile.setConstantPool</tt>, switches copying off for the class file.
+        Modifications are detected by the setters of the structures, arrays that are
+        modified in place have to be reported with <tt>AbstractStructure.markModified</tt>.
+        @param copyUnmodified the new value
+     */
+    public void setCopyUnmodified(boolean copyUnmodified) {
+        this.copyUnmodified = copyUnmodified;
+    }
+
+    /**
+        Returns whether the class file is frozen after it has been read, so that
+        it can be shared between threads.
+        @return the value
+        @see org.gjt.jclasslib.structures.ClassFile#freeze
+     */
+    public boolean isFreeze() {
+        return freeze;
+    }
+
+    /**
+        Sets whether the class file is frozen after it has been read. This is intended
+        for class files that are cached and analyzed by multiple threads. Lazily read
+        constant pool entries and deferred attributes are read completely in this case.
+        @param freeze the new value
+     */
+    public void setFreeze(boolean freeze) {
+        this.freeze = freeze;
+    }
+
+    /**
+        Sets the names of the attributes that are read. All other attributes are
+        skipped and do not appear in the attribute arrays of the read structures.
+        @param attributeNames the names or <tt>null</tt> to read all attributes
+     */
+    public void setIncludedAttributes(String... attributeNames) {
+        includedAttributes = attributeNames == null ? null : new HashSet<String>(Arrays.asList(attributeNames));
+    }
+
+    /**
+        Sets the names of the attributes that are skipped. Skipped attributes do
+        not appear in the attribute arrays of the read structures.
+        @param attributeNames the names or <tt>null</tt> to skip no attributes
+     */
+    public void setExcludedAttributes(String... attributeNames) {
+        excludedAttributes = attributeNames == null ? null : new HashSet<String>(Arrays.asList(attributeNames));
+    }
+
+    /**
+        Returns whether attributes are filtered by name.
+        @return the value
+     */
+    public boolean isFilteringAttributes() {
+        return includedAttributes != null || excludedAttributes != null;
+    }
+
+    /**
+        Returns whether attributes with a given name are read according to the
+        included and excluded attribute names.
+        @param attributeName the name of the attribute
+        @return the value
+     */
+    public boolean isAttributeIncluded(String attributeName) {
+        return (includedAttributes == null || includedAttributes.contains(attributeName)) &&
+                (excludedAttributes == null || !excludedAttributes.contains(attributeName));
+    }
+
+    /**
+        Returns the pool for sharing the contents of <tt>CONSTANT_Utf8_info</tt> entries.
+        @return the pool or <tt>null</tt>
+     */
+    public Utf8Pool getUtf8Pool() {
+        return utf8Pool;
+    }
+
+    /**
+        Sets the pool for sharing the contents of <tt>CONSTANT_Utf8_info</tt> entries
+        between all class files that are read with this pool.
+        @param utf8Pool the pool or <tt>null</tt> if contents should not be shared
+     */
+    public void setUtf8Pool(Utf8Pool utf8Pool) {
+        this.utf8Pool = utf8Pool;
+    }
+
+    /**
+        Returns the registry that provides the factories for attributes.
+        @return the registry or <tt>null</tt> if the default registry is used
+     */
+    public AttributeRegistry getAttributeRegistry() {
+        return attributeRegistry;
+    }
+
+    /**
+        Sets the registry that provides the factories for attributes.
+        @param attributeRegistry the registry or <tt>null</tt> to use the default registry
+     */
+    public void setAttributeRegistry(AttributeRegistry attributeRegistry) {
+        this.attributeRegistry = attributeRegistry;
+    }
+
+}
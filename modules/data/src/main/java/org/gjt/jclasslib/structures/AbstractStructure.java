@@ -27,6 +27,8 @@ public abstract class AbstractStructure {
     /**
      * Set this JVM System property to true to switch on debugging for
      * reading and writing class files.
+     *
+     * @see org.gjt.jclasslib.io.ReadOptions#setDebug
      */
     public static final String SYSTEM_PROPERTY_DEBUG = "jclasslib.io.debug";
 
@@ -41,11 +43,17 @@ public abstract class AbstractStructure {
      */
     protected boolean debug;
 
+    /**
+     * The structure with attributes that contains this structure and that is
+     * marked as modified together with it. <tt>Null</tt> if this structure has
+     * not been read from a class file.
+     */
+    AbstractStructureWithAttributes owner;
+
     /**
      * Constructor.
      */
     protected AbstractStructure() {
-        debug = Boolean.getBoolean(SYSTEM_PROPERTY_DEBUG);
     }
 
     /**
@@ -60,12 +68,57 @@ public abstract class AbstractStructure {
     /**
      * Set parent class file. <p>
      * <p/>
-     * Has to be called at least once on a structure.
+     * Has to be called at least once on a structure. The debug mode
+     * is taken from the class file. If this structure is created while an
+     * attribute is read, it becomes part of that attribute.
      *
      * @param classFile the new parent class file
      */
     public void setClassFile(ClassFile classFile) {
         this.classFile = classFile;
+        if (classFile != null) {
+            debug = classFile.debug;
+            AbstractStructureWithAttributes readingOwner = classFile.getReadingOwner();
+            if (readingOwner != null && readingOwner != this) {
+                owner = readingOwner;
+            }
+        }
+    }
+
+    /**
+     * Returns whether the parent class file of this structure has been frozen
+     * with <tt>ClassFile.freeze</tt>.
+     *
+     * @return the value
+     */
+    protected boolean isFrozen() {
+        return classFile != null && classFile.isFrozen();
+    }
+
+    /**
+     * Utility method for derived structures. Called by setters before this
+     * structure is changed.
+     *
+     * @throws IllegalStateException if the parent class file has been frozen
+     */
+    protected void checkModifiable() {
+        if (isFrozen()) {
+            throw new IllegalStateException("class file has been frozen");
+        }
+    }
+
+    /**
+     * Mark this structure and the structures that contain it as modified. If the
+     * class file has been read with <tt>ReadOptions.setCopyUnmodified</tt>, fields,
+     * methods and attributes that have not been modified are written by copying the
+     * bytes from which they were read. All setters call this method, it only has to
+     * be called if an array that has been returned by a getter, such as the code of
+     * a <tt>CodeAttribute</tt>, is modified in place.
+     */
+    public void markModified() {
+        if (owner != null) {
+            owner.markModified();
+        }
     }
 
     /**
@@ -128,6 +181,28 @@ public abstract class AbstractStructure {
         }
     }
 
+    /**
+     * Utility method for derived structures. Skip a number of bytes of a
+     * <tt>DataInput</tt>. In contrast to <tt>DataInput.skipBytes</tt>, this
+     * method does not return before all bytes have been skipped.
+     *
+     * @param in    the <tt>DataInput</tt>
+     * @param count the number of bytes
+     * @throws IOException if the end of the <tt>DataInput</tt> is reached
+     *                     or if another exception occurs with the <tt>DataInput</tt>
+     */
+    protected static void skipBytes(DataInput in, int count) throws IOException {
+        while (count > 0) {
+            int skipped = in.skipBytes(count);
+            if (skipped <= 0) {
+                // reading throws an EOFException at the end of the DataInput
+                in.readByte();
+                skipped = 1;
+            }
+            count -= skipped;
+        }
+    }
+
     /**
      * Utility method for derived structures. Dump a specific debug message.
      *
@@ -10,6 +10,7 @@ package org.gjt.jclasslib.structures;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
     Base class for all structures with attributes.
@@ -21,38 +22,206 @@ public abstract class AbstractStructureWithAttributes extends AbstractStructure
     /** Attributes of this structure. */
     protected AttributeInfo[] attributes;
 
+    private volatile AttributeIndex attributeIndex;
+    private ByteBuffer sourceBuffer;
+    private int sourceOffset;
+    private int sourceLength;
+
     /**
-        Get the attributes of this structure.
+        Get the attributes of this structure. Attributes whose decoding
+        has been deferred are decoded.
         @return the attributes
+        @throws UncheckedInvalidByteCodeException if an attribute whose decoding has been deferred is invalid
      */
     public AttributeInfo[] getAttributes() {
+        int attributesCount = getLength(attributes);
+        for (int i = 0; i < attributesCount; i++) {
+            if (attributes[i] instanceof DeferredAttributeInfo) {
+                decodeAttribute(i);
+            }
+        }
         return attributes;
     }
     
     /**
-        Set the attributes of this structure.
+        Set the attributes of this structure. This method also has to be called
+        if the array returned by <tt>getAttributes</tt> is modified in place, so
+        that <tt>findAttribute</tt> does not use an outdated index and this
+        structure is marked as modified.
         @param attributes the new attributes
      */
     public void setAttributes(AttributeInfo[] attributes) {
+        checkModifiable();
+        markModified();
         this.attributes = attributes;
+        attributeIndex = null;
+        adoptAttributes();
+    }
+
+    /**
+        Mark this structure and the structures that contain it as modified.
+        The structures of a frozen class file cannot be modified, so this method
+        does nothing in that case.
+     */
+    public void markModified() {
+        if (!isFrozen()) {
+            sourceBuffer = null;
+            super.markModified();
+        }
+    }
+
+    /**
+        Remember the bytes from which this structure has been read.
+        @param offset the absolute offset of the structure in the buffer of the class file
+        @param length the length of the structure
+     */
+    void setSource(int offset, int length) {
+        sourceBuffer = classFile.getSourceBuffer();
+        sourceOffset = offset;
+        sourceLength = length;
+    }
+
+    /**
+        Returns whether this structure can be written by copying the bytes from
+        which it has been read.
+        @return the value
+     */
+    boolean isUnmodified() {
+        return sourceBuffer != null && sourceBuffer == classFile.getSourceBuffer();
+    }
+
+    /**
+        Get the length of the bytes from which this structure has been read.
+        @return the length
+     */
+    int getSourceLength() {
+        return sourceLength;
+    }
+
+    /**
+        Write this structure by copying the bytes from which it has been read
+        if it has not been modified.
+        @param out the <tt>DataOutput</tt> to which to write
+        @return whether this structure has been written
+        @throws IOException if an exception occurs with the <tt>DataOutput</tt>
+     */
+    boolean writeUnmodified(DataOutput out) throws IOException {
+        if (!isUnmodified()) {
+            return false;
+        }
+        writeBytes(out, sourceBuffer, sourceOffset, sourceLength);
+        if (debug) debug("copied " + sourceLength + " unmodified bytes of " + getClass().getName());
+        return true;
+    }
+
+    /**
+        Write a range of a buffer to a <tt>DataOutput</tt> without changing the buffer.
+        @param out the <tt>DataOutput</tt> to which to write
+        @param buffer the buffer
+        @param offset the absolute offset of the range
+        @param length the length of the range
+        @throws IOException if an exception occurs with the <tt>DataOutput</tt>
+     */
+    static void writeBytes(DataOutput out, ByteBuffer buffer, int offset, int length) throws IOException {
+        if (buffer.hasArray()) {
+            out.write(buffer.array(), buffer.arrayOffset() + offset, length);
+        } else {
+            byte[] bytes = new byte[length];
+            ByteBuffer source = buffer.duplicate();
+            source.position(offset);
+            source.get(bytes);
+            out.write(bytes);
+        }
     }
     
     /**
-        Find an attribute of a certain class.
+        Find an attribute of a certain class. If the decoding of attributes
+        has been deferred, only the found attribute is decoded. The attributes are
+        looked up in an index that is created on first use.
         @param attributeClass the class of the attribute
         @return the found attribute, <tt>null</tt> if not found
+        @throws UncheckedInvalidByteCodeException if an attribute whose decoding has been deferred is invalid
      */
-    public AttributeInfo findAttribute(Class attributeClass) {
-        AttributeInfo foundAttribute = null;
-        for (AttributeInfo attribute : attributes) {
-            if (attribute.getClass() == attributeClass) {
-                foundAttribute = attribute;
-                break;
-            }
+    public AttributeInfo findAttribute(Class<? extends AttributeInfo> attributeClass) {
+        int[] indices = getAttributeIndex().getIndices(attributeClass);
+        if (indices.length == 0) {
+            return null;
+        }
+        return getFoundAttribute(indices[0]);
+    }
+
+    /**
+        Find all attributes of a certain class. If the decoding of attributes
+        has been deferred, only the found attributes are decoded.
+        @param attributeClass the class of the attributes
+        @return the found attributes in the order of the class file, an empty
+                array if not found
+        @throws UncheckedInvalidByteCodeException if an attribute whose decoding has been deferred is invalid
+     */
+    public AttributeInfo[] findAttributes(Class<? extends AttributeInfo> attributeClass) {
+        int[] indices = getAttributeIndex().getIndices(attributeClass);
+        AttributeInfo[] foundAttributes = new AttributeInfo[indices.length];
+        for (int i = 0; i < indices.length; i++) {
+            foundAttributes[i] = getFoundAttribute(indices[i]);
+        }
+        return foundAttributes;
+    }
+
+    /**
+        Find an attribute of a certain class and return it with its type. This is
+        used by the typed accessors such as <tt>MethodInfo.getCodeAttribute</tt>.
+        @param attributeClass the class of the attribute
+        @return the found attribute, <tt>null</tt> if not found
+        @throws UncheckedInvalidByteCodeException if an attribute whose decoding has been deferred is invalid
+     */
+    protected <T extends AttributeInfo> T findTypedAttribute(Class<T> attributeClass) {
+        return attributeClass.cast(findAttribute(attributeClass));
+    }
+
+    private AttributeIndex getAttributeIndex() {
+        // the index is immutable, so threads that create it concurrently can use either one
+        AttributeIndex index = attributeIndex;
+        if (index == null) {
+            index = new AttributeIndex(attributes);
+            attributeIndex = index;
+        }
+        return index;
+    }
+
+    private AttributeInfo getFoundAttribute(int index) {
+        AttributeInfo foundAttribute = attributes[index];
+        if (foundAttribute instanceof DeferredAttributeInfo) {
+            foundAttribute = decodeAttribute(index);
         }
         return foundAttribute;
     }
 
+    private AttributeInfo decodeAttribute(int index) {
+        try {
+            attributes[index] = ((DeferredAttributeInfo)attributes[index]).decode();
+        } catch (InvalidByteCodeException e) {
+            throw new UncheckedInvalidByteCodeException(e);
+        }
+        return attributes[index];
+    }
+
+    /**
+        Decode all attributes of this structure and of its attributes whose decoding
+        has been deferred. This is called by <tt>ClassFile.freeze</tt>.
+        @throws InvalidByteCodeException if an attribute cannot be decoded
+     */
+    void decodeDeferredAttributes() throws InvalidByteCodeException {
+        int attributesCount = getLength(attributes);
+        for (int i = 0; i < attributesCount; i++) {
+            if (attributes[i] instanceof DeferredAttributeInfo) {
+                attributes[i] = ((DeferredAttributeInfo)attributes[i]).decode();
+            }
+            if (attributes[i] != null) {
+                attributes[i].decodeDeferredAttributes();
+            }
+        }
+    }
+
     /**
         Read the attributes of this structure from the given <tt>DataInput</tt>. <p>
      
@@ -67,10 +236,44 @@ public abstract class AbstractStructureWithAttributes extends AbstractStructure
             
         int attributesCount = in.readUnsignedShort();
         attributes = new AttributeInfo[attributesCount];
+        attributeIndex = null;
         
         for (int i = 0; i < attributesCount; i++) {
             attributes[i] = AttributeInfo.createOrSkip(in, classFile);
         }
+        if (classFile.isFilteringAttributes()) {
+            removeSkippedAttributes();
+        }
+        adoptAttributes();
+    }
+
+    private void adoptAttributes() {
+        if (attributes != null) {
+            for (AttributeInfo attribute : attributes) {
+                if (attribute != null) {
+                    attribute.owner = this;
+                }
+            }
+        }
+    }
+
+    private void removeSkippedAttributes() {
+        int count = 0;
+        for (AttributeInfo attribute : attributes) {
+            if (attribute != null) {
+                count++;
+            }
+        }
+        if (count < attributes.length) {
+            AttributeInfo[] remainingAttributes = new AttributeInfo[count];
+            count = 0;
+            for (AttributeInfo attribute : attributes) {
+                if (attribute != null) {
+                    remainingAttributes[count++] = attribute;
+                }
+            }
+            attributes = remainingAttributes;
+        }
     }
 
     /**
@@ -92,12 +295,15 @@ public abstract class AbstractStructureWithAttributes extends AbstractStructure
             if (attributes[i] == null) {
                 throw new InvalidByteCodeException("attribute " + i + " is null");
             }
-            attributes[i].write(out);
+            if (!attributes[i].writeUnmodified(out)) {
+                attributes[i].write(out);
+            }
         }
     }
     
     /**
-        Get the length of all attributes as a number of bytes.
+        Get the length of all attributes as a number of bytes. Lengths that have
+        been computed by <tt>ClassFile.prepareWrite</tt> are not computed again.
         @return the length
      */
     protected int getTotalAttributesLength() {
@@ -105,9 +311,29 @@ public abstract class AbstractStructureWithAttributes extends AbstractStructure
         int attributesCount = getLength(attributes);
         for (int i = 0; i < attributesCount; i++) {
             if (attributes[i] != null) {
-                totalLength += attributes[i].getAttributeLength();
+                totalLength += attributes[i].getPreparedLength();
             }
         }
         return totalLength;
     }
+
+    /**
+        Compute the length of the attributes of this structure including the
+        attribute count and remember the length of each attribute for the next
+        write of the class file.
+        @param generation the write generation of the class file
+        @return the length as a number of bytes
+     */
+    int prepareAttributesLength(int generation) {
+        int length = 2;
+        if (attributes != null) {
+            for (AttributeInfo attribute : attributes) {
+                if (attribute != null) {
+                    // attribute_name_index and attribute_length
+                    length += 6 + attribute.prepareLength(generation);
+                }
+            }
+        }
+        return length;
+    }
 }
@@ -44,6 +44,8 @@ public class Annotation extends AbstractStructure implements AnnotationData {
      * @param elementValuePairEntries the array
      */
     public void setElementValuePairEntries(ElementValuePair[] elementValuePairEntries) {
+        checkModifiable();
+        markModified();
         this.elementValuePairEntries = elementValuePairEntries;
     }
 
@@ -57,6 +59,8 @@ public class Annotation extends AbstractStructure implements AnnotationData {
      * @param typeIndex the <tt>type_index</tt>
      */
     public void setTypeIndex(int typeIndex) {
+        checkModifiable();
+        markModified();
         this.typeIndex = typeIndex;
     }
 
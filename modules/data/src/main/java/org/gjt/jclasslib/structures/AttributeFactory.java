@@ -0,0 +1,27 @@
+/*
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public
+License as published by the Free Software Foundation; either
+version 2 of the license, or (at your option) any later version.
+*/
+package org.gjt.jclasslib.structures;
+
+/**
+ * Creates attribute structures for a particular attribute name. <p>
+ * Factories are registered with an <tt>AttributeRegistry</tt>. The created attribute
+ * is then read with its <tt>read</tt> method, which must consume exactly
+ * <tt>attributeLength</tt> bytes.
+ *
+ * @see AttributeRegistry
+ */
+public interface AttributeFactory {
+
+    /**
+     * Create a new, not yet read attribute structure.
+     *
+     * @param attributeLength the length of the attribute content in the class file
+     * @return the new attribute structure
+     */
+    AttributeInfo createAttribute(int attributeLength);
+
+}
@@ -0,0 +1,66 @@
+/*
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU General Public
+    License as published by the Free Software Foundation; either
+    version 2 of the license, or (at your option) any later version.
+*/
+
+package org.gjt.jclasslib.structures;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+    Maps the classes of the attributes of a structure to their indices in the
+    attribute array. <p>
+
+    For a <tt>DeferredAttributeInfo</tt>, the class of the attribute that it will
+    decode to is used, so that decoding an attribute does not change the index.
+    All attributes of the same class are kept in one array in ascending order.
+    Skipped attributes that are <tt>null</tt> are not indexed.
+*/
+class AttributeIndex {
+
+    private static final int[] NO_INDICES = new int[0];
+
+    private final Map<Class<? extends AttributeInfo>, int[]> classToIndices;
+
+    /**
+        Constructor.
+        @param attributes the attributes
+     */
+    AttributeIndex(AttributeInfo[] attributes) {
+
+        int attributesCount = attributes == null ? 0 : attributes.length;
+        classToIndices = new HashMap<Class<? extends AttributeInfo>, int[]>(Math.max(4, attributesCount * 2));
+        for (int i = 0; i < attributesCount; i++) {
+            AttributeInfo attribute = attributes[i];
+            if (attribute == null) {
+                continue;
+            }
+            Class<? extends AttributeInfo> attributeClass = attribute instanceof DeferredAttributeInfo ?
+                    ((DeferredAttributeInfo)attribute).getAttributeClass() : attribute.getClass();
+            int[] indices = classToIndices.get(attributeClass);
+            if (indices == null) {
+                indices = new int[] {i};
+            } else {
+                int[] newIndices = new int[indices.length + 1];
+                System.arraycopy(indices, 0, newIndices, 0, indices.length);
+                newIndices[indices.length] = i;
+                indices = newIndices;
+            }
+            classToIndices.put(attributeClass, indices);
+        }
+    }
+
+    /**
+        Get the indices of all attributes of a given class.
+        @param attributeClass the class of the attributes
+        @return the indices in ascending order. The returned array must not be modified.
+     */
+    int[] getIndices(Class<? extends AttributeInfo> attributeClass) {
+        int[] indices = classToIndices.get(attributeClass);
+        return indices == null ? NO_INDICES : indices;
+    }
+
+}
@@ -6,8 +6,7 @@ version 2 of the license, or (at your option) any later version.
 */
 package org.gjt.jclasslib.structures;
 
-import org.gjt.jclasslib.structures.attributes.*;
-import org.gjt.jclasslib.structures.constants.ConstantUtf8Info;
+import org.gjt.jclasslib.io.ByteBufferInput;
 
 import java.io.DataInput;
 import java.io.DataOutput;
@@ -24,21 +23,47 @@ public class AttributeInfo extends AbstractStructureWithAttributes {
     /**
      * Set this JVM System property to true to skip reading of all attributes.
      * Some class file operations may fail in this case.
+     *
+     * @see org.gjt.jclasslib.io.ReadOptions#setSkipAttributes
      */
     public static final String SYSTEM_PROPERTY_SKIP_ATTRIBUTES = "jclasslib.io.skipAttributes";
 
+    /**
+     * Set this JVM System property to true to defer the decoding of attributes
+     * of known types until they are accessed through <tt>getAttributes</tt> or
+     * <tt>findAttribute</tt>. Attributes that are never accessed are written back
+     * verbatim. This only has an effect if the class file is read from a
+     * <tt>ByteBufferInput</tt>, which is retained as long as the class file structure.
+     *
+     * @see org.gjt.jclasslib.io.ReadOptions#setLazyAttributes
+     */
+    public static final String SYSTEM_PROPERTY_LAZY_ATTRIBUTES = "jclasslib.io.lazyAttributes";
+
+    /**
+     * Factory for attributes of unknown types.
+     */
+    static final AttributeFactory UNINTERPRETED_ATTRIBUTE_FACTORY = new AttributeFactory() {
+        public AttributeInfo createAttribute(int attributeLength) {
+            return new AttributeInfo(attributeLength);
+        }
+    };
+
     private int attributeNameIndex;
     private int attributeLength;
     private byte[] info;
 
+    private int preparedLength;
+    private int preparedGeneration;
+
     /**
      * Factory method for creating <tt>AttributeInfo</tt> structures. <p>
-     * An <tt>AttributeInfo</tt> of the appropriate subtype from the <tt>attributes</tt> package
-     * is created unless the type of the attribute is unknown in which case an instance of
-     * <tt>AttributeInfo</tt> is returned. <p>
+     * The attribute is created by the factory that is registered for its name in the
+     * <tt>AttributeRegistry</tt> of the class file. If the type of the attribute is unknown,
+     * an instance of <tt>AttributeInfo</tt> is returned. <p>
      * <p/>
-     * Attributes are skipped if the environment variable <tt>SYSTEM_PROPERTY_SKIP_ATTRIBUTES</tt>
-     * is set to true.
+     * Attributes are skipped and <tt>null</tt> is returned if the read options of the class file
+     * skip all attributes or exclude the name of the attribute. If the read options specify lazy
+     * attributes, the decoding of attributes of known types is deferred until they are accessed.
      *
      * @param in        the <tt>DataInput</tt> from which to read the <tt>AttributeInfo</tt> structure
      * @param classFile the parent class file of the structure to be created
@@ -49,76 +74,64 @@ public class AttributeInfo extends AbstractStructureWithAttributes {
     public static AttributeInfo createOrSkip(DataInput in, ClassFile classFile)
             throws InvalidByteCodeException, IOException {
 
-        AttributeInfo attributeInfo = null;
-
-        if (Boolean.getBoolean(SYSTEM_PROPERTY_SKIP_ATTRIBUTES)) {
-            in.skipBytes(2);
-            in.skipBytes(in.readInt());
-        } else {
-            int attributeNameIndex = in.readUnsignedShort();
-            int attributeLength = in.readInt();
+        if (classFile.isSkipAttributes()) {
+            skipBytes(in, 2);
+            skipBytes(in, in.readInt());
+            return null;
+        }
+        int attributeNameIndex = in.readUnsignedShort();
+        int attributeLength = in.readInt();
+        return createOrSkip(in, classFile, attributeNameIndex, attributeLength, true);
+    }
 
-            ConstantUtf8Info cpInfoName = classFile.getConstantPoolUtf8Entry(attributeNameIndex);
-            String attributeName;
+    /**
+     * Create an <tt>AttributeInfo</tt> structure whose name index and length
+     * have already been read as for <tt>createOrSkip(DataInput, ClassFile)</tt>.
+     *
+     * @param in                 the <tt>DataInput</tt> from which to read the content of the attribute
+     * @param classFile          the parent class file of the structure to be created
+     * @param attributeNameIndex the constant pool index of the name of the attribute
+     * @param attributeLength    the length of the content of the attribute
+     * @param deferrable         whether the decoding of the attribute can be deferred
+     *                           if the read options specify lazy attributes
+     * @return the new <tt>AttributeInfo</tt> structure
+     * @throws InvalidByteCodeException if the byte code is invalid
+     * @throws IOException              if an exception occurs with the <tt>DataInput</tt>
+     */
+    static AttributeInfo createOrSkip(DataInput in, ClassFile classFile, int attributeNameIndex,
+                                      int attributeLength, boolean deferrable)
+            throws InvalidByteCodeException, IOException {
 
-            if (cpInfoName == null) {
-                return null;
+        // the factory is resolved only once for each constant pool index of the class file
+        AttributeFactory factory = classFile.getAttributeFactory(attributeNameIndex);
+        if (factory == null) {
+            return null;
+        } else if (classFile.isAttributeExcluded(attributeNameIndex)) {
+            skipBytes(in, attributeLength);
+            return null;
+        }
+        AttributeInfo attributeInfo = factory.createAttribute(attributeLength);
+        attributeInfo.setAttributeNameIndex(attributeNameIndex);
+        attributeInfo.setClassFile(classFile);
+        if (deferrable && attributeInfo.getClass() != AttributeInfo.class && in instanceof ByteBufferInput &&
+                classFile.isLazyAttributes()) {
+            ByteBufferInput bufferInput = (ByteBufferInput)in;
+            attributeInfo = new DeferredAttributeInfo(attributeInfo, bufferInput.getBuffer(),
+                    bufferInput.getPosition(), attributeLength);
+            skipBytes(in, attributeLength);
+        } else {
+            AbstractStructureWithAttributes previousOwner = classFile.setReadingOwner(attributeInfo);
+            try {
+                attributeInfo.read(in);
+            } finally {
+                classFile.setReadingOwner(previousOwner);
             }
-
-            attributeName = cpInfoName.getString();
-
-            if (ConstantValueAttribute.ATTRIBUTE_NAME.equals(attributeName)) {
-                attributeInfo = new ConstantValueAttribute();
-            } else if (CodeAttribute.ATTRIBUTE_NAME.equals(attributeName)) {
-                attributeInfo = new CodeAttribute();
-            } else if (ExceptionsAttribute.ATTRIBUTE_NAME.equals(attributeName)) {
-                attributeInfo = new ExceptionsAttribute();
-            } else if (InnerClassesAttribute.ATTRIBUTE_NAME.equals(attributeName)) {
-                attributeInfo = new InnerClassesAttribute();
-            } else if (SyntheticAttribute.ATTRIBUTE_NAME.equals(attributeName)) {
-                attributeInfo = new SyntheticAttribute();
-            } else if (SourceFileAttribute.ATTRIBUTE_NAME.equals(attributeName)) {
-                attributeInfo = new SourceFileAttribute();
-            } else if (LineNumberTableAttribute.ATTRIBUTE_NAME.equals(attributeName)) {
-                attributeInfo = new LineNumberTableAttribute();
-            } else if (LocalVariableTableAttribute.ATTRIBUTE_NAME.equals(attributeName)) {
-                attributeInfo = new LocalVariableTableAttribute();
-            } else if (DeprecatedAttribute.ATTRIBUTE_NAME.equals(attributeName)) {
-                attributeInfo = new DeprecatedAttribute();
-            } else if (EnclosingMethodAttribute.ATTRIBUTE_NAME.equals(attributeName)) {
-                attributeInfo = new EnclosingMethodAttribute();
-            } else if (SignatureAttribute.ATTRIBUTE_NAME.equals(attributeName)) {
-                attributeInfo = new SignatureAttribute();
-            } else if (LocalVariableTypeTableAttribute.ATTRIBUTE_NAME.equals(attributeName)) {
-                attributeInfo = new LocalVariableTypeTableAttribute();
-            } else if (RuntimeVisibleAnnotationsAttribute.ATTRIBUTE_NAME.equals(attributeName)) {
-                attributeInfo = new RuntimeVisibleAnnotationsAttribute();
-            } else if (RuntimeInvisibleAnnotationsAttribute.ATTRIBUTE_NAME.equals(attributeName)) {
-                attributeInfo = new RuntimeInvisibleAnnotationsAttribute();
-            } else if (RuntimeVisibleParameterAnnotationsAttribute.ATTRIBUTE_NAME.equals(attributeName)) {
-                attributeInfo = new RuntimeVisibleParameterAnnotationsAttribute();
-            } else if (RuntimeInvisibleParameterAnnotationsAttribute.ATTRIBUTE_NAME.equals(attributeName)) {
-                attributeInfo = new RuntimeInvisibleParameterAnnotationsAttribute();
-            } else if (RuntimeVisibleTypeAnnotationsAttribute.ATTRIBUTE_NAME.equals(attributeName)) {
-                attributeInfo = new RuntimeVisibleTypeAnnotationsAttribute();
-            } else if (RuntimeInvisibleTypeAnnotationsAttribute.ATTRIBUTE_NAME.equals(attributeName)) {
-                attributeInfo = new RuntimeInvisibleTypeAnnotationsAttribute();
-            } else if (AnnotationDefaultAttribute.ATTRIBUTE_NAME.equals(attributeName)) {
-                attributeInfo = new AnnotationDefaultAttribute();
-            } else if (BootstrapMethodsAttribute.ATTRIBUTE_NAME.equals(attributeName)) {
-            	attributeInfo = new BootstrapMethodsAttribute();
-            } else if (StackMapTableAttribute.ATTRIBUTE_NAME.equals(attributeName)) {
-            	attributeInfo = new StackMapTableAttribute();
-            } else if (MethodParametersAttribute.ATTRIBUTE_NAME.equals(attributeName)) {
-            	attributeInfo = new MethodParametersAttribute();
-            } else {
-                attributeInfo = new AttributeInfo(attributeLength);
+            if (classFile.getSourceBuffer() != null && in instanceof ByteBufferInput) {
+                // attribute_name_index and attribute_length precede the content
+                int endPosition = ((ByteBufferInput)in).getPosition();
+                attributeInfo.setSource(endPosition - attributeLength - 6, attributeLength + 6);
             }
-            attributeInfo.setAttributeNameIndex(attributeNameIndex);
-            attributeInfo.setClassFile(classFile);
-            attributeInfo.read(in);
         }
-
         return attributeInfo;
     }
 
@@ -147,6 +160,8 @@ public class AttributeInfo extends AbstractStructureWithAttributes {
      * @param attributeNameIndex the new index
      */
     public void setAttributeNameIndex(int attributeNameIndex) {
+        checkModifiable();
+        markModified();
         this.attributeNameIndex = attributeNameIndex;
     }
 
@@ -169,6 +184,8 @@ public class AttributeInfo extends AbstractStructureWithAttributes {
      * @param info the new byte array
      */
     public void setInfo(byte[] info) {
+        checkModifiable();
+        markModified();
         this.info = info;
     }
 
@@ -193,7 +210,7 @@ public class AttributeInfo extends AbstractStructureWithAttributes {
     public void write(DataOutput out) throws InvalidByteCodeException, IOException {
 
         out.writeShort(attributeNameIndex);
-        out.writeInt(getAttributeLength());
+        out.writeInt(getPreparedLength());
         if (getClass().equals(AttributeInfo.class)) {
             out.write(info);
             if (debug) debug("wrote " + getDebugMessage());
@@ -209,6 +226,38 @@ public class AttributeInfo extends AbstractStructureWithAttributes {
         return getLength(info);
     }
 
+    /**
+     * Compute the length of this attribute and of its own attributes and remember
+     * them for the next write of the class file.
+     *
+     * @param generation the write generation of the class file
+     * @return the length as a number of bytes
+     */
+    int prepareLength(int generation) {
+        if (isUnmodified()) {
+            preparedLength = getSourceLength() - 6;
+        } else {
+            // nested attributes first, so that getAttributeLength uses their lengths
+            prepareAttributesLength(generation);
+            preparedLength = getAttributeLength();
+        }
+        preparedGeneration = generation;
+        return preparedLength;
+    }
+
+    /**
+     * Get the length of this attribute as computed by <tt>ClassFile.prepareWrite</tt>
+     * if the class file has not been written since then, otherwise compute the length.
+     *
+     * @return the length as a number of bytes
+     */
+    int getPreparedLength() {
+        if (classFile != null && preparedGeneration == classFile.getPreparedWriteGeneration()) {
+            return preparedLength;
+        }
+        return getAttributeLength();
+    }
+
     // cannot override debug because subclasses will call super.debug
     // and expect to call the implementation in AbstractStructure
     private String getDebugMessage() {
@@ -0,0 +1,195 @@
+/*
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public
+License as published by the Free Software Foundation; either
+version 2 of the license, or (at your option) any later version.
+*/
+package org.gjt.jclasslib.structures;
+
+import org.gjt.jclasslib.structures.attributes.*;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps attribute names to the <tt>AttributeFactory</tt> instances that create the
+ * attribute structures while a class file is read. <p>
+ * A new registry contains factories for all attributes in the <tt>attributes</tt> package.
+ * Decoders for other attributes, such as vendor specific attributes, can be added with
+ * <tt>register</tt>, and built-in factories can be replaced the same way. Attributes without
+ * a registered factory are read as uninterpreted <tt>AttributeInfo</tt> instances. <p>
+ * A class file uses the default registry unless a different registry is set with
+ * <tt>ClassFile.setAttributeRegistry</tt>. Registries can be used concurrently by multiple threads.
+ */
+public class AttributeRegistry {
+
+    private static final AttributeRegistry DEFAULT_REGISTRY = new AttributeRegistry();
+
+    private final ConcurrentHashMap<String, AttributeFactory> factories =
+            new ConcurrentHashMap<String, AttributeFactory>();
+
+    /**
+     * Get the registry that is used by class files for which no other registry has been set.
+     *
+     * @return the registry
+     */
+    public static AttributeRegistry getDefault() {
+        return DEFAULT_REGISTRY;
+    }
+
+    /**
+     * Constructor. The new registry contains the factories for all attributes
+     * in the <tt>attributes</tt> package.
+     */
+    public AttributeRegistry() {
+        registerBuiltInFactories();
+    }
+
+    /**
+     * Register a factory for an attribute name. A factory that was previously
+     * registered for the same name is replaced. Class files that are currently
+     * being read may not pick up the change.
+     *
+     * @param attributeName the name of the attribute
+     * @param factory       the factory
+     */
+    public void register(String attributeName, AttributeFactory factory) {
+        if (attributeName == null || factory == null) {
+            throw new IllegalArgumentException("attribute name and factory must not be null");
+        }
+        factories.put(attributeName, factory);
+    }
+
+    /**
+     * Remove the factory for an attribute name. Attributes with this
+     * name are then read as uninterpreted <tt>AttributeInfo</tt> instances.
+     *
+     * @param attributeName the name of the attribute
+     */
+    public void unregister(String attributeName) {
+        factories.remove(attributeName);
+    }
+
+    /**
+     * Get the factory for an attribute name.
+     *
+     * @param attributeName the name of the attribute
+     * @return the factory or <tt>null</tt> if no factory is registered for the name
+     */
+    public AttributeFactory getFactory(String attributeName) {
+        return attributeName == null ? null : factories.get(attributeName);
+    }
+
+    private void registerBuiltInFactories() {
+        factories.put(ConstantValueAttribute.ATTRIBUTE_NAME, new AttributeFactory() {
+            public AttributeInfo createAttribute(int attributeLength) {
+                return new ConstantValueAttribute();
+            }
+        });
+        factories.put(CodeAttribute.ATTRIBUTE_NAME, new AttributeFactory() {
+            public AttributeInfo createAttribute(int attributeLength) {
+                return new CodeAttribute();
+            }
+        });
+        factories.put(ExceptionsAttribute.ATTRIBUTE_NAME, new AttributeFactory() {
+            public AttributeInfo createAttribute(int attributeLength) {
+                return new ExceptionsAttribute();
+            }
+        });
+        factories.put(InnerClassesAttribute.ATTRIBUTE_NAME, new AttributeFactory() {
+            public AttributeInfo createAttribute(int attributeLength) {
+                return new InnerClassesAttribute();
+            }
+        });
+        factories.put(SyntheticAttribute.ATTRIBUTE_NAME, new AttributeFactory() {
+            public AttributeInfo createAttribute(int attributeLength) {
+                return new SyntheticAttribute();
+            }
+        });
+        factories.put(SourceFileAttribute.ATTRIBUTE_NAME, new AttributeFactory() {
+            public AttributeInfo createAttribute(int attributeLength) {
+                return new SourceFileAttribute();
+            }
+        });
+        factories.put(LineNumberTableAttribute.ATTRIBUTE_NAME, new AttributeFactory() {
+            public AttributeInfo createAttribute(int attributeLength) {
+                return new LineNumberTableAttribute();
+            }
+        });
+        factories.put(LocalVariableTableAttribute.ATTRIBUTE_NAME, new AttributeFactory() {
+            public AttributeInfo createAttribute(int attributeLength) {
+                return new LocalVariableTableAttribute();
+            }
+        });
+        factories.put(DeprecatedAttribute.ATTRIBUTE_NAME, new AttributeFactory() {
+            public AttributeInfo createAttribute(int attributeLength) {
+                return new DeprecatedAttribute();
+            }
+        });
+        factories.put(EnclosingMethodAttribute.ATTRIBUTE_NAME, new AttributeFactory() {
+            public AttributeInfo createAttribute(int attributeLength) {
+                return new EnclosingMethodAttribute();
+            }
+        });
+        factories.put(SignatureAttribute.ATTRIBUTE_NAME, new AttributeFactory() {
+            public AttributeInfo createAttribute(int attributeLength) {
+                return new SignatureAttribute();
+            }
+        });
+        factories.put(LocalVariableTypeTableAttribute.ATTRIBUTE_NAME, new AttributeFactory() {
+            public AttributeInfo createAttribute(int attributeLength) {
+                return new LocalVariableTypeTableAttribute();
+            }
+        });
+        factories.put(RuntimeVisibleAnnotationsAttribute.ATTRIBUTE_NAME, new AttributeFactory() {
+            public AttributeInfo createAttribute(int attributeLength) {
+                return new RuntimeVisibleAnnotationsAttribute();
+            }
+        });
+        factories.put(RuntimeInvisibleAnnotationsAttribute.ATTRIBUTE_NAME, new AttributeFactory() {
+            public AttributeInfo createAttribute(int attributeLength) {
+                return new RuntimeInvisibleAnnotationsAttribute();
+            }
+        });
+        factories.put(RuntimeVisibleParameterAnnotationsAttribute.ATTRIBUTE_NAME, new AttributeFactory() {
+            public AttributeInfo createAttribute(int attributeLength) {
+                return new RuntimeVisibleParameterAnnotationsAttribute();
+            }
+        });
+        factories.put(RuntimeInvisibleParameterAnnotationsAttribute.ATTRIBUTE_NAME, new AttributeFactory() {
+            public AttributeInfo createAttribute(int attributeLength) {
+                return new RuntimeInvisibleParameterAnnotationsAttribute();
+            }
+        });
+        factories.put(RuntimeVisibleTypeAnnotationsAttribute.ATTRIBUTE_NAME, new AttributeFactory() {
+            public AttributeInfo createAttribute(int attributeLength) {
+                return new RuntimeVisibleTypeAnnotationsAttribute();
+            }
+        });
+        factories.put(RuntimeInvisibleTypeAnnotationsAttribute.ATTRIBUTE_NAME, new AttributeFactory() {
+            public AttributeInfo createAttribute(int attributeLength) {
+                return new RuntimeInvisibleTypeAnnotationsAttribute();
+            }
+        });
+        factories.put(AnnotationDefaultAttribute.ATTRIBUTE_NAME, new AttributeFactory() {
+            public AttributeInfo createAttribute(int attributeLength) {
+                return new AnnotationDefaultAttribute();
+            }
+        });
+        factories.put(BootstrapMethodsAttribute.ATTRIBUTE_NAME, new AttributeFactory() {
+            public AttributeInfo createAttribute(int attributeLength) {
+                return new BootstrapMethodsAttribute();
+            }
+        });
+        factories.put(StackMapTableAttribute.ATTRIBUTE_NAME, new AttributeFactory() {
+            public AttributeInfo createAttribute(int attributeLength) {
+                return new StackMapTableAttribute();
+            }
+        });
+        factories.put(MethodParametersAttribute.ATTRIBUTE_NAME, new AttributeFactory() {
+            public AttributeInfo createAttribute(int attributeLength) {
+                return new MethodParametersAttribute();
+            }
+        });
+    }
+
+}
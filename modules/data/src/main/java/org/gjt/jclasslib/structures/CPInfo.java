@@ -205,12 +205,50 @@ public abstract class CPInfo extends AbstractStructure {
         return offset;
     }
 
+    /**
+     * Get the length of this constant pool entry in the class file
+     * including its tag.
+     *
+     * @return the length as a number of bytes
+     */
+    public int getEntryLength() {
+
+        switch (getTag()) {
+            case CONSTANT_CLASS:
+                return 1 + ConstantClassInfo.SIZE;
+            case CONSTANT_FIELDREF:
+            case CONSTANT_METHODREF:
+            case CONSTANT_INTERFACE_METHODREF:
+                return 1 + ConstantReference.SIZE;
+            case CONSTANT_STRING:
+                return 1 + ConstantStringInfo.SIZE;
+            case CONSTANT_INTEGER:
+            case CONSTANT_FLOAT:
+                return 1 + ConstantNumeric.SIZE;
+            case CONSTANT_LONG:
+            case CONSTANT_DOUBLE:
+                return 1 + ConstantLargeNumeric.SIZE;
+            case CONSTANT_NAME_AND_TYPE:
+                return 1 + ConstantNameAndTypeInfo.SIZE;
+            case CONSTANT_METHOD_TYPE:
+                return 1 + ConstantMethodTypeInfo.SIZE;
+            case CONSTANT_METHOD_HANDLE:
+                return 1 + ConstantMethodHandleInfo.SIZE;
+            case CONSTANT_INVOKE_DYNAMIC:
+                return 1 + ConstantInvokeDynamicInfo.SIZE;
+            default:
+                return 1;
+        }
+    }
+
     public boolean equals(Object object) {
-        return object instanceof CPInfo;
+        // entries with the same structure, such as CONSTANT_Fieldref_info and
+        // CONSTANT_Methodref_info, are only equal if they have the same tag
+        return object instanceof CPInfo && ((CPInfo)object).getTag() == getTag();
     }
 
     public int hashCode() {
-        return 0;
+        return getTag();
     }
 
     protected String printAccessFlagsVerbose(int accessFlags) {
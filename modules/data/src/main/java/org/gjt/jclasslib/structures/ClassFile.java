@@ -7,17 +7,41 @@
 
 package org.gjt.jclasslib.structures;
 
+import org.gjt.jclasslib.bytecode.InstructionCursor;
+import org.gjt.jclasslib.io.ByteBufferInput;
+import org.gjt.jclasslib.io.ClassFileVisitor;
 import org.gjt.jclasslib.io.Log;
+import org.gjt.jclasslib.io.ReadOptions;
+import org.gjt.jclasslib.structures.attributes.BootstrapMethodsAttribute;
+import org.gjt.jclasslib.structures.attributes.CodeAttribute;
+import org.gjt.jclasslib.structures.attributes.SignatureAttribute;
+import org.gjt.jclasslib.structures.attributes.SourceFileAttribute;
 import org.gjt.jclasslib.structures.constants.ConstantLargeNumeric;
 import org.gjt.jclasslib.structures.constants.ConstantUtf8Info;
+import org.gjt.jclasslib.structures.constants.Utf8Pool;
 
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 
 /**
- * The class file structure in which all other structures are hooked up.
+ * The class file structure in which all other structures are hooked up. <p>
+ * <p/>
+ * A class file structure is not thread safe while it is read or modified. After
+ * <tt>freeze</tt> has been called, it can be read from any number of threads without
+ * locking, provided that it has been handed to the other threads through a
+ * synchronizing action, such as storing it in a concurrent collection or submitting
+ * a task to an executor. Freezing creates all constant pool entries and decodes all
+ * deferred attributes. The indices that are created on first use, such as the member
+ * and attribute indices, the instruction offsets of code attributes and the frame tables
+ * of stack map attributes, are immutable and are published through volatile fields, so
+ * the worst case for threads that request them at the same time is that each thread
+ * creates an equivalent index. The setters of all structures throw an
+ * <tt>IllegalStateException</tt> for a frozen class file. Arrays that are returned by
+ * getters must not be modified in place, and <tt>write</tt> and <tt>prepareWrite</tt>
+ * must not be called concurrently, since they remember the computed attribute lengths.
  *
  * @author <a href="mailto:jclasslib@ej-technologies.com">Ingo Kegel</a>, <a href="mailto:vitor.carreira@gmail.com">Vitor Carreira</a>
  *
@@ -28,33 +52,220 @@ public class ClassFile extends AbstractStructureWithAttributes {
      * Set this JVM System property to true to skip reading of constant pool
      * entries. This is not advisable, since most sunsequent operations on the
      * class file structure will fail.
+     *
+     * @see org.gjt.jclasslib.io.ReadOptions#setSkipConstantPool
      */
     public static final String SYSTEM_PROPERTY_SKIP_CONSTANT_POOL = "jclasslib.io.skipConstantPool";
 
+    /**
+     * Set this JVM System property to true to read constant pool entries
+     * lazily. While reading, only the offsets and the tags of the constant pool
+     * entries are recorded, the <tt>CPInfo</tt> structures are created on first
+     * access. This only has an effect if the class file is read from a
+     * <tt>ByteBufferInput</tt>, which is retained until all constant pool entries
+     * have been created.
+     *
+     * @see org.gjt.jclasslib.io.ReadOptions#setLazyConstantPool
+     */
+    public static final String SYSTEM_PROPERTY_LAZY_CONSTANT_POOL = "jclasslib.io.lazyConstantPool";
+
     private static final int MAGIC_NUMBER = 0xcafebabe;
 
+    private final ReadOptions readOptions;
     private final boolean skipConstantPool;
+    private final boolean lazyConstantPool;
+    private final boolean skipAttributes;
+    private final boolean lazyAttributes;
+    private final boolean filteringAttributes;
+    private final boolean headerOnly;
+    private final boolean copyUnmodified;
+    private final boolean freezeAfterRead;
+    private boolean membersSkipped;
+    private volatile boolean frozen;
 
     private int minorVersion;
     private int majorVersion;
     private CPInfo[] constantPool;
-    private HashMap<CPInfo, Integer> constantPoolEntryToIndex = new HashMap<CPInfo, Integer>();
+    private volatile HashMap<CPInfo, Integer> constantPoolEntryToIndex;
+    private volatile ConstantPoolLookup constantPoolLookup;
+    private int writeGeneration;
+    private boolean writePrepared;
+    private ByteBuffer sourceBuffer;
+    private int sourceConstantPoolCount;
     private int accessFlags;
     private int thisClass;
     private int superClass;
     private int[] interfaces;
     private FieldInfo[] fields;
     private MethodInfo[] methods;
+    private volatile MemberIndex fieldIndex;
+    private volatile MemberIndex methodIndex;
+
+    private ByteBufferInput constantPoolInput;
+    private int[] constantPoolOffsets;
+    private byte[] constantPoolTags;
+    private int unreadConstantPoolEntries;
 
+    private Utf8Pool utf8Pool;
+    private AttributeRegistry attributeRegistry;
+    private AttributeFactory[] attributeFactories;
+    private boolean[] excludedAttributeNames;
+    private AbstractStructureWithAttributes readingOwner;
 
     /**
-     * Constructor.
+     * Constructor. The read options are taken from the <tt>jclasslib.io.*</tt>
+     * JVM system properties.
      */
     public ClassFile() {
-        skipConstantPool = Boolean.getBoolean(SYSTEM_PROPERTY_SKIP_CONSTANT_POOL);
+        this(ReadOptions.fromSystemProperties());
+    }
+
+    /**
+     * Constructor. The class file keeps a copy of the read options, so later changes
+     * to them do not affect this class file, including the attributes that are decoded
+     * after the class file has been read.
+     *
+     * @param readOptions the options for reading this class file
+     */
+    public ClassFile(ReadOptions readOptions) {
+        this.readOptions = new ReadOptions(readOptions);
+        skipConstantPool = readOptions.isSkipConstantPool();
+        lazyConstantPool = readOptions.isLazyConstantPool();
+        skipAttributes = readOptions.isSkipAttributes();
+        lazyAttributes = readOptions.isLazyAttributes();
+        filteringAttributes = readOptions.isFilteringAttributes();
+        headerOnly = readOptions.isHeaderOnly();
+        copyUnmodified = readOptions.isCopyUnmodified();
+        freezeAfterRead = readOptions.isFreeze();
+        utf8Pool = readOptions.getUtf8Pool();
+        attributeRegistry = readOptions.getAttributeRegistry();
+        if (attributeRegistry == null) {
+            attributeRegistry = AttributeRegistry.getDefault();
+        }
+        debug = readOptions.isDebug();
         setClassFile(this);
     }
 
+    /**
+     * Get a copy of the options for reading this class file. Changing the
+     * returned options does not affect this class file.
+     *
+     * @return the options
+     */
+    public ReadOptions getReadOptions() {
+        return new ReadOptions(readOptions);
+    }
+
+    /**
+     * Returns whether all attributes are skipped according to the read options.
+     *
+     * @return the value
+     */
+    boolean isSkipAttributes() {
+        return skipAttributes;
+    }
+
+    /**
+     * Returns whether the decoding of attributes is deferred according to the read options.
+     *
+     * @return the value
+     */
+    boolean isLazyAttributes() {
+        return lazyAttributes;
+    }
+
+    /**
+     * Returns whether attributes are filtered by name according to the read options.
+     *
+     * @return the value
+     */
+    boolean isFilteringAttributes() {
+        return filteringAttributes;
+    }
+
+    /**
+     * Make this class file unmodifiable, so that it can be read concurrently by multiple
+     * threads. All constant pool entries that have been read lazily are created and all
+     * attributes whose decoding has been deferred are decoded, including the attributes
+     * of code attributes. Afterwards, setters and <tt>read</tt> throw an
+     * <tt>IllegalStateException</tt>. Calling this method again has no effect.
+     *
+     * @throws InvalidByteCodeException if a constant pool entry or an attribute cannot be read
+     * @see org.gjt.jclasslib.io.ReadOptions#setFreeze
+     */
+    public void freeze() throws InvalidByteCodeException {
+        if (frozen) {
+            return;
+        }
+        for (int i = 1; constantPoolTags != null && i < constantPool.length; i++) {
+            if (constantPool[i] == null && constantPoolTags[i] != 0) {
+                readLazyConstantPoolEntry(i);
+            }
+        }
+        decodeDeferredAttributes();
+        decodeDeferredAttributes(fields);
+        decodeDeferredAttributes(methods);
+        attributeFactories = null;
+        // the volatile write publishes all changes above
+        frozen = true;
+        if (debug) debug("froze class file");
+    }
+
+    /**
+     * Returns whether this class file has been frozen with <tt>freeze</tt>.
+     *
+     * @return the value
+     */
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    /**
+     * Get the pool that is used for sharing the contents of <tt>CONSTANT_Utf8_info</tt>
+     * entries with other class files.
+     *
+     * @return the pool or <tt>null</tt> if contents are not shared
+     */
+    public Utf8Pool getUtf8Pool() {
+        return utf8Pool;
+    }
+
+    /**
+     * Set the pool that is used for sharing the contents of <tt>CONSTANT_Utf8_info</tt>
+     * entries with other class files. The pool is used for all entries that are read
+     * after this call.
+     *
+     * @param utf8Pool the pool or <tt>null</tt> if contents should not be shared
+     */
+    public void setUtf8Pool(Utf8Pool utf8Pool) {
+        checkModifiable();
+        this.utf8Pool = utf8Pool;
+    }
+
+    /**
+     * Get the registry that provides the factories for the attributes of this class file.
+     *
+     * @return the registry
+     */
+    public AttributeRegistry getAttributeRegistry() {
+        return attributeRegistry;
+    }
+
+    /**
+     * Set the registry that provides the factories for the attributes of this class file.
+     * The registry is used for all attributes that are read after this call.
+     *
+     * @param attributeRegistry the registry
+     */
+    public void setAttributeRegistry(AttributeRegistry attributeRegistry) {
+        checkModifiable();
+        if (attributeRegistry == null) {
+            throw new IllegalArgumentException("attribute registry must not be null");
+        }
+        this.attributeRegistry = attributeRegistry;
+        attributeFactories = null;
+    }
+
     /**
      * Get the minor version of the class file format.
      *
@@ -70,6 +281,7 @@ public class ClassFile extends AbstractStructureWithAttributes {
      * @param minorVersion the minor version
      */
     public void setMinorVersion(int minorVersion) {
+        checkModifiable();
         this.minorVersion = minorVersion;
     }
 
@@ -118,26 +330,53 @@ public class ClassFile extends AbstractStructureWithAttributes {
      * @param majorVersion the major version
      */
     public void setMajorVersion(int majorVersion) {
+        checkModifiable();
         this.majorVersion = majorVersion;
     }
 
     /**
-     * Get the array with all constant pool entries.
+     * Get the array with all constant pool entries. If the constant pool has been
+     * read lazily, all remaining constant pool entries are created.
      *
      * @return the array
+     * @throws UncheckedInvalidByteCodeException if a lazily read constant pool entry is invalid
      */
     public CPInfo[] getConstantPool() {
+        readLazyConstantPool();
         return constantPool;
     }
 
     /**
-     * Get the index of an equivalent constant pool entry.
+     * Get the tag of the constant pool entry at the specified index without
+     * creating the entry if the constant pool has been read lazily.
+     *
+     * @param index the index
+     * @return the tag, or 0 if there is no constant pool entry at that index
+     */
+    public byte getConstantPoolEntryTag(int index) {
+        if (!checkValidConstantPoolIndex(index)) {
+            return 0;
+        }
+        if (constantPool[index] != null) {
+            return constantPool[index].getTag();
+        } else if (constantPoolTags != null) {
+            return constantPoolTags[index];
+        } else {
+            return 0;
+        }
+    }
+
+    /**
+     * Get the index of an equivalent constant pool entry. The map from the entries
+     * to their indices is created on first access.
      *
      * @param cpInfo the constant pool entry
      * @return the index, -1 if no equivalent constant pool entry can be found
+     * @throws UncheckedInvalidByteCodeException if a lazily read constant pool entry is invalid
      */
     public int getConstantPoolIndex(CPInfo cpInfo) {
-        Integer index = constantPoolEntryToIndex.get(cpInfo);
+        readLazyConstantPool();
+        Integer index = getConstantPoolEntryToIndex().get(cpInfo);
         if (index != null) {
             return index;
         } else {
@@ -145,6 +384,39 @@ public class ClassFile extends AbstractStructureWithAttributes {
         }
     }
 
+    private HashMap<CPInfo, Integer> getConstantPoolEntryToIndex() {
+        // the map is only modified by methods that are not allowed for a frozen class file
+        HashMap<CPInfo, Integer> entryToIndex = constantPoolEntryToIndex;
+        if (entryToIndex == null) {
+            int constantPoolCount = getLength(constantPool);
+            entryToIndex = new HashMap<CPInfo, Integer>(Math.max(16, constantPoolCount * 4 / 3 + 1));
+            for (int i = 0; i < constantPoolCount; i++) {
+                if (constantPool[i] != null) {
+                    entryToIndex.put(constantPool[i], i);
+                }
+            }
+            constantPoolEntryToIndex = entryToIndex;
+        }
+        return entryToIndex;
+    }
+
+    /**
+     * Get the index for finding constant pool entries by their value. The index
+     * is created on first access and is kept up to date when entries are added
+     * with <tt>enlargeConstantPool</tt> or <tt>registerConstantPoolEntry</tt>.
+     *
+     * @return the index
+     * @throws UncheckedInvalidByteCodeException if a lazily read constant pool entry is invalid
+     */
+    public ConstantPoolLookup getConstantPoolLookup() {
+        ConstantPoolLookup lookup = constantPoolLookup;
+        if (lookup == null) {
+            lookup = new ConstantPoolLookup(getConstantPool());
+            constantPoolLookup = lookup;
+        }
+        return lookup;
+    }
+
     /**
      * Set the array with all constant pool entries. An internal hash map
      * will need to be recalulated. If you add to the end of the constant
@@ -153,10 +425,16 @@ public class ClassFile extends AbstractStructureWithAttributes {
      * @param constantPool the array
      */
     public void setConstantPool(CPInfo[] constantPool) {
+        checkModifiable();
+        discardLazyConstantPool();
+        attributeFactories = null;
+        constantPoolLookup = null;
+        // the indices in the original bytes may no longer be valid
+        sourceBuffer = null;
         this.constantPool = constantPool;
-        for (int i = 0; i < constantPool.length; i++) {
-            constantPoolEntryToIndex.put(constantPool[i], i);
-        }
+        constantPoolEntryToIndex = null;
+        // the names of the members may have changed
+        invalidateMemberIndices();
     }
 
     /**
@@ -165,25 +443,50 @@ public class ClassFile extends AbstractStructureWithAttributes {
      * you delete entries, use <tt>setConstantPool</tt>.
      *
      * @param enlargedConstantPool the array
+     * @throws UncheckedInvalidByteCodeException if a lazily read constant pool entry is invalid
      */
     public void enlargeConstantPool(CPInfo[] enlargedConstantPool) {
+        checkModifiable();
+        readLazyConstantPool();
         int startIndex = constantPool == null ? 0 : constantPool.length;
         this.constantPool = enlargedConstantPool;
+        if (constantPoolLookup != null) {
+            constantPoolLookup.setConstantPool(enlargedConstantPool);
+        }
         for (int i = startIndex; i < constantPool.length; i++) {
             if (constantPool[i] != null) {
-                constantPoolEntryToIndex.put(constantPool[i], i);
+                if (constantPoolEntryToIndex != null) {
+                    constantPoolEntryToIndex.put(constantPool[i], i);
+                }
+                if (constantPoolLookup != null) {
+                    constantPoolLookup.add(i);
+                }
             }
         }
+        invalidateMemberIndices();
     }
 
     /**
      * Register the constant pool entry at a given index, so that it can
-     * be found through the <tt>getConstantPoolIndex</tt> method.
+     * be found through the <tt>getConstantPoolIndex</tt> method. This has
+     * to be called when an entry is replaced or modified, the indices for
+     * looking up fields and methods by name are created again in that case.
      *
      * @param index the index
      */
     public void registerConstantPoolEntry(int index) {
-        constantPoolEntryToIndex.put(constantPool[index], index);
+        checkModifiable();
+        discardSourceIfReplaced(index);
+        invalidateMemberIndices();
+        if (attributeFactories != null && index < attributeFactories.length) {
+            attributeFactories[index] = null;
+        }
+        if (constantPoolEntryToIndex != null) {
+            constantPoolEntryToIndex.put(constantPool[index], index);
+        }
+        if (constantPoolLookup != null) {
+            constantPoolLookup.add(index);
+        }
     }
 
     /**
@@ -191,9 +494,33 @@ public class ClassFile extends AbstractStructureWithAttributes {
      * no longer be found through the <tt>getConstantPoolIndex</tt> method.
      *
      * @param index the index
+     * @throws UncheckedInvalidByteCodeException if a lazily read constant pool entry is invalid
      */
     public void unregisterConstantPoolEntry(int index) {
-        constantPoolEntryToIndex.remove(constantPool[index]);
+        checkModifiable();
+        readLazyConstantPool();
+        if (constantPoolEntryToIndex != null) {
+            constantPoolEntryToIndex.remove(constantPool[index]);
+        }
+        constantPoolLookup = null;
+        discardSourceIfReplaced(index);
+    }
+
+    /**
+     * Get the buffer from which unmodified fields, methods and attributes
+     * are copied when this class file is written.
+     *
+     * @return the buffer or <tt>null</tt> if nothing is copied
+     */
+    ByteBuffer getSourceBuffer() {
+        return sourceBuffer;
+    }
+
+    private void discardSourceIfReplaced(int index) {
+        // entries that have been read may be referenced by the original bytes
+        if (index < sourceConstantPoolCount) {
+            sourceBuffer = null;
+        }
     }
 
     /**
@@ -211,6 +538,7 @@ public class ClassFile extends AbstractStructureWithAttributes {
      * @param accessFlags the access flags
      */
     public void setAccessFlags(int accessFlags) {
+        checkModifiable();
         this.accessFlags = accessFlags;
     }
 
@@ -229,6 +557,7 @@ public class ClassFile extends AbstractStructureWithAttributes {
      * @param thisClass the index
      */
     public void setThisClass(int thisClass) {
+        checkModifiable();
         this.thisClass = thisClass;
     }
 
@@ -257,6 +586,7 @@ public class ClassFile extends AbstractStructureWithAttributes {
      * @param superClass the index
      */
     public void setSuperClass(int superClass) {
+        checkModifiable();
         this.superClass = superClass;
     }
 
@@ -270,6 +600,21 @@ public class ClassFile extends AbstractStructureWithAttributes {
         return getConstantPoolEntryName(getSuperClass());
     }
 
+    /**
+     * Get the names of all interfaces.
+     *
+     * @return the names
+     * @throws InvalidByteCodeException if the constant pool entries are invalid
+     */
+    public String[] getInterfaceNames() throws InvalidByteCodeException {
+        int interfacesCount = getLength(interfaces);
+        String[] interfaceNames = new String[interfacesCount];
+        for (int i = 0; i < interfacesCount; i++) {
+            interfaceNames[i] = getConstantPoolEntryName(interfaces[i]);
+        }
+        return interfaceNames;
+    }
+
     /**
      * Get the array with the constant pool entries of all interfaces.
      *
@@ -285,6 +630,7 @@ public class ClassFile extends AbstractStructureWithAttributes {
      * @param interfaces the array
      */
     public void setInterfaces(int[] interfaces) {
+        checkModifiable();
         this.interfaces = interfaces;
     }
 
@@ -303,7 +649,9 @@ public class ClassFile extends AbstractStructureWithAttributes {
      * @param fields the array
      */
     public void setFields(FieldInfo[] fields) {
+        checkModifiable();
         this.fields = fields;
+        fieldIndex = null;
     }
 
     /**
@@ -321,7 +669,39 @@ public class ClassFile extends AbstractStructureWithAttributes {
      * @param methods the array
      */
     public void setMethods(MethodInfo[] methods) {
+        checkModifiable();
         this.methods = methods;
+        methodIndex = null;
+    }
+
+    /**
+     * Get the <tt>SourceFile</tt> attribute of this class.
+     *
+     * @return the attribute or <tt>null</tt> if this class has no such attribute
+     * @throws UncheckedInvalidByteCodeException if an attribute whose decoding has been deferred is invalid
+     */
+    public SourceFileAttribute getSourceFileAttribute() {
+        return findTypedAttribute(SourceFileAttribute.class);
+    }
+
+    /**
+     * Get the <tt>Signature</tt> attribute of this class.
+     *
+     * @return the attribute or <tt>null</tt> if this class has no such attribute
+     * @throws UncheckedInvalidByteCodeException if an attribute whose decoding has been deferred is invalid
+     */
+    public SignatureAttribute getSignatureAttribute() {
+        return findTypedAttribute(SignatureAttribute.class);
+    }
+
+    /**
+     * Get the <tt>BootstrapMethods</tt> attribute of this class.
+     *
+     * @return the attribute or <tt>null</tt> if this class has no such attribute
+     * @throws UncheckedInvalidByteCodeException if an attribute whose decoding has been deferred is invalid
+     */
+    public BootstrapMethodsAttribute getBootstrapMethodsAttribute() {
+        return findTypedAttribute(BootstrapMethodsAttribute.class);
     }
 
     /**
@@ -370,7 +750,7 @@ public class ClassFile extends AbstractStructureWithAttributes {
             return null;
         }
 
-        CPInfo cpInfo = constantPool[index];
+        CPInfo cpInfo = getConstantPoolEntry(index);
 
         if (cpInfo == null) {
             return null;
@@ -400,7 +780,7 @@ public class ClassFile extends AbstractStructureWithAttributes {
             return null;
         }
 
-        CPInfo cpInfo = constantPool[index];
+        CPInfo cpInfo = getConstantPoolEntry(index);
         if (cpInfo == null) {
             return "invalid constant pool index";
         } else {
@@ -418,13 +798,19 @@ public class ClassFile extends AbstractStructureWithAttributes {
      */
     public int getFieldIndex(String name, String descriptor) throws InvalidByteCodeException {
 
-        for (int i = 0; i < fields.length; i++) {
-            FieldInfo field = fields[i];
-            if (field.getName().equals(name) && field.getDescriptor().equals(descriptor)) {
-                return i;
-            }
-        }
-        return -1;
+        return findMemberIndex(fields, getFieldIndex().getIndices(name), descriptor);
+    }
+
+    /**
+     * Get the indices of all fields with a given name.
+     *
+     * @param name the field name.
+     * @return the indices in ascending order. The array is empty if no field is found.
+     * @throws InvalidByteCodeException
+     */
+    public int[] getFieldIndices(String name) throws InvalidByteCodeException {
+
+        return getFieldIndex().getIndices(name).clone();
     }
 
     /**
@@ -455,13 +841,39 @@ public class ClassFile extends AbstractStructureWithAttributes {
      */
     public int getMethodIndex(String name, String descriptor) throws InvalidByteCodeException {
 
-        for (int i = 0; i < methods.length; i++) {
-            MethodInfo method = methods[i];
-            if (method.getName().equals(name) && method.getDescriptor().equals(descriptor)) {
-                return i;
-            }
+        return findMemberIndex(methods, getMethodIndex().getIndices(name), descriptor);
+    }
+
+    /**
+     * Get the indices of all methods with a given name, that is of all overloads
+     * of a method.
+     *
+     * @param name the method name.
+     * @return the indices in ascending order. The array is empty if no method is found.
+     * @throws InvalidByteCodeException
+     */
+    public int[] getMethodIndices(String name) throws InvalidByteCodeException {
+
+        return getMethodIndex().getIndices(name).clone();
+    }
+
+    /**
+     * Get the <tt>MethodInfo</tt> structures of all methods with a given name,
+     * that is of all overloads of a method.
+     *
+     * @param name the method name.
+     * @return the methods in the order of the class file. The array is empty
+     * if no method is found.
+     * @throws InvalidByteCodeException
+     */
+    public MethodInfo[] getMethods(String name) throws InvalidByteCodeException {
+
+        int[] indices = getMethodIndices(name);
+        MethodInfo[] namedMethods = new MethodInfo[indices.length];
+        for (int i = 0; i < indices.length; i++) {
+            namedMethods[i] = methods[indices[i]];
         }
-        return -1;
+        return namedMethods;
     }
 
     /**
@@ -482,37 +894,278 @@ public class ClassFile extends AbstractStructureWithAttributes {
         }
     }
 
+    /**
+     * Discard the indices that map the names of fields and methods to their
+     * positions. This is called when the name of a member or the constant
+     * pool is changed.
+     */
+    void invalidateMemberIndices() {
+        fieldIndex = null;
+        methodIndex = null;
+    }
+
+    private MemberIndex getFieldIndex() throws InvalidByteCodeException {
+        // the index is immutable, so threads that create it concurrently can use either one
+        MemberIndex index = fieldIndex;
+        if (index == null) {
+            index = new MemberIndex(fields);
+            fieldIndex = index;
+        }
+        return index;
+    }
+
+    private MemberIndex getMethodIndex() throws InvalidByteCodeException {
+        MemberIndex index = methodIndex;
+        if (index == null) {
+            index = new MemberIndex(methods);
+            methodIndex = index;
+        }
+        return index;
+    }
+
+    private int findMemberIndex(ClassMember[] members, int[] candidates, String descriptor)
+            throws InvalidByteCodeException {
+
+        // the index only contains members with the requested name
+        for (int candidate : candidates) {
+            if (isConstantPoolUtf8Entry(members[candidate].getDescriptorIndex(), descriptor)) {
+                return candidate;
+            }
+        }
+        return -1;
+    }
+
+    private boolean isConstantPoolUtf8Entry(int index, String value) throws InvalidByteCodeException {
+        if (!checkValidConstantPoolIndex(index)) {
+            return false;
+        }
+        CPInfo cpInfo = getConstantPoolEntry(index);
+        if (cpInfo == null) {
+            return false;
+        } else if (cpInfo instanceof ConstantUtf8Info) {
+            return ((ConstantUtf8Info)cpInfo).equalsString(value);
+        } else {
+            throw new InvalidByteCodeException("constant pool entry at " + index +
+                    " is not assignable to " + ConstantUtf8Info.class.getName());
+        }
+    }
+
+    /**
+     * Get the factory for attributes whose name is the constant pool entry at the
+     * specified index. The factory is looked up in the attribute registry only once
+     * for each index.
+     *
+     * @param attributeNameIndex the constant pool index of the attribute name
+     * @return the factory or <tt>null</tt> if the index does not refer to a
+     * <tt>ConstantUtf8Info</tt>
+     * @throws InvalidByteCodeException if the entry is not a <tt>ConstantUtf8Info</tt>
+     */
+    AttributeFactory getAttributeFactory(int attributeNameIndex) throws InvalidByteCodeException {
+
+        if (!checkValidConstantPoolIndex(attributeNameIndex)) {
+            return null;
+        }
+        if (attributeFactories == null || attributeFactories.length != constantPool.length) {
+            attributeFactories = new AttributeFactory[constantPool.length];
+            excludedAttributeNames = filteringAttributes ? new boolean[constantPool.length] : null;
+        }
+        AttributeFactory factory = attributeFactories[attributeNameIndex];
+        if (factory == null) {
+            ConstantUtf8Info cpInfoName = getConstantPoolUtf8Entry(attributeNameIndex);
+            if (cpInfoName == null) {
+                return null;
+            }
+            String attributeName = cpInfoName.getString();
+            factory = attributeRegistry.getFactory(attributeName);
+            if (factory == null) {
+                factory = AttributeInfo.UNINTERPRETED_ATTRIBUTE_FACTORY;
+            }
+            attributeFactories[attributeNameIndex] = factory;
+            if (excludedAttributeNames != null) {
+                excludedAttributeNames[attributeNameIndex] = !readOptions.isAttributeIncluded(attributeName);
+            }
+        }
+        return factory;
+    }
+
+    /**
+     * Get the attribute that is currently being read. Structures that are created
+     * while it is read are part of it and mark it as modified when they are modified.
+     *
+     * @return the attribute or <tt>null</tt> if no attribute is being read
+     */
+    AbstractStructureWithAttributes getReadingOwner() {
+        return readingOwner;
+    }
+
+    /**
+     * Set the attribute that is currently being read.
+     *
+     * @param readingOwner the attribute or <tt>null</tt> if no attribute is being read
+     * @return the previous attribute, which has to be restored after the attribute has been read
+     */
+    AbstractStructureWithAttributes setReadingOwner(AbstractStructureWithAttributes readingOwner) {
+        AbstractStructureWithAttributes previousOwner = this.readingOwner;
+        this.readingOwner = readingOwner;
+        return previousOwner;
+    }
+
+    /**
+     * Returns whether attributes whose name is the constant pool entry at the
+     * specified index are excluded by the read options. This is only valid after
+     * <tt>getAttributeFactory</tt> has returned a factory for the same index.
+     *
+     * @param attributeNameIndex the constant pool index of the attribute name
+     * @return the value
+     */
+    boolean isAttributeExcluded(int attributeNameIndex) {
+        return excludedAttributeNames != null && excludedAttributeNames[attributeNameIndex];
+    }
+
     public void read(DataInput in)
             throws InvalidByteCodeException, IOException {
 
-        readMagicNumber(in);
-        readVersion(in);
-        readConstantPool(in);
-        readAccessFlags(in);
-        readThisClass(in);
-        readSuperClass(in);
-        readInterfaces(in);
+        readHeader(in);
+        membersSkipped = headerOnly;
+        if (headerOnly) {
+            clearMembers();
+            if (debug) debug("skipped fields, methods and attributes");
+            freezeIfRequested();
+            return;
+        }
+        // the original bytes are only complete if no attributes are left out
+        if (copyUnmodified && in instanceof ByteBufferInput && !skipAttributes && !filteringAttributes)
+        {
+            sourceBuffer = ((ByteBufferInput)in).getBuffer();
+            sourceConstantPoolCount = getLength(constantPool);
+        }
         readFields(in);
         readMethods(in);
         readAttributes(in);
+        freezeIfRequested();
+    }
+
+    /**
+     * Read this structure from the given <tt>DataInput</tt> and report its fields,
+     * methods and attributes to a visitor. Only the constant pool and the data up to
+     * the interfaces are kept in this structure, fields, methods and attributes are empty
+     * afterwards. The structure cannot be written in this case.
+     *
+     * @param in      the <tt>DataInput</tt> from which to read
+     * @param visitor the visitor
+     * @throws InvalidByteCodeException if the byte code is invalid
+     * @throws IOException              if an exception occurs with the <tt>DataInput</tt>
+     */
+    public void read(DataInput in, ClassFileVisitor visitor)
+            throws InvalidByteCodeException, IOException {
+
+        readHeader(in);
+        membersSkipped = true;
+        clearMembers();
+        if (visitor.visitStart(this)) {
+            for (int i = 1; i < constantPool.length; i++) {
+                CPInfo cpInfo = getConstantPoolEntry(i);
+                if (cpInfo != null) {
+                    visitor.visitConstantPoolEntry(i, cpInfo);
+                }
+            }
+        }
+        visitor.visitClass(accessFlags, thisClass, superClass, interfaces);
+
+        VisitContext context = new VisitContext(visitor);
+        visitMembers(in, context, false);
+        visitMembers(in, context, true);
+        visitAttributes(in, visitor.visitClassAttributes() ? context : null);
+        visitor.visitEnd();
     }
 
     public void write(DataOutput in)
             throws InvalidByteCodeException, IOException {
 
-        writeMagicNumber(in);
-        writeVersion(in);
-        writeConstantPool(in);
-        writeAccessFlags(in);
-        writeThisClass(in);
-        writeSuperClass(in);
-        writeInterfaces(in);
-        writeFields(in);
-        writeMethods(in);
-        writeAttributes(in);
+        if (membersSkipped) {
+            throw new InvalidByteCodeException("class file has been read without fields, methods and attributes");
+        }
+        try {
+            writeMagicNumber(in);
+            writeVersion(in);
+            writeConstantPool(in);
+            writeAccessFlags(in);
+            writeThisClass(in);
+            writeSuperClass(in);
+            writeInterfaces(in);
+            writeFields(in);
+            writeMethods(in);
+            writeAttributes(in);
+        } finally {
+            // the lengths computed by prepareWrite are only valid for one write
+            writePrepared = false;
+        }
 
     }
 
+    /**
+     * Compute the exact length of the class file that is written by <tt>write</tt>.
+     * The length of each attribute is computed only once, including the attributes
+     * of code attributes, and is reused by the next call of <tt>write</tt>. This
+     * structure must not be modified between the two calls.
+     *
+     * @return the length as a number of bytes
+     * @throws InvalidByteCodeException if the class file has been read without
+     *                                  fields, methods and attributes
+     */
+    public int prepareWrite() throws InvalidByteCodeException {
+
+        if (membersSkipped) {
+            throw new InvalidByteCodeException("class file has been read without fields, methods and attributes");
+        }
+        readLazyConstantPool();
+        writeGeneration++;
+        writePrepared = true;
+
+        // magic, minor_version, major_version and constant_pool_count
+        int length = 10;
+        int constantPoolCount = ConstantPoolBuilder.computeConstantPoolCount(constantPool);
+        for (int i = 1; i < constantPoolCount; i++) {
+            if (constantPool[i] != null) {
+                length += constantPool[i].getEntryLength();
+            }
+        }
+        // access_flags, this_class, super_class, interfaces_count and interfaces
+        length += 8 + 2 * getLength(interfaces);
+        length += prepareMembersLength(fields);
+        length += prepareMembersLength(methods);
+        length += prepareAttributesLength(writeGeneration);
+        return length;
+    }
+
+    /**
+     * Get the write generation for which <tt>prepareWrite</tt> has computed
+     * attribute lengths that are still valid.
+     *
+     * @return the generation or -1 if no lengths are valid
+     */
+    int getPreparedWriteGeneration() {
+        return writePrepared ? writeGeneration : -1;
+    }
+
+    private int prepareMembersLength(ClassMember[] members) {
+
+        int length = 2;
+        if (members != null) {
+            for (ClassMember member : members) {
+                if (member != null) {
+                    if (member.isUnmodified()) {
+                        length += member.getSourceLength();
+                    } else {
+                        // access_flags, name_index and descriptor_index
+                        length += 6 + member.prepareAttributesLength(writeGeneration);
+                    }
+                }
+            }
+        }
+        return length;
+    }
+
     private boolean checkValidConstantPoolIndex(int index) {
 
         if (index < 1 || index >= constantPool.length) {
@@ -567,11 +1220,21 @@ public class ClassFile extends AbstractStructureWithAttributes {
     private void readConstantPool(DataInput in)
             throws InvalidByteCodeException, IOException {
 
-        constantPoolEntryToIndex.clear();
+        // the map from entries to indices is only created when it is needed
+        constantPoolEntryToIndex = null;
         int constantPoolCount = in.readUnsignedShort();
         if (debug) debug("read constant pool count " + constantPoolCount);
 
         constantPool = new CPInfo[constantPoolCount];
+        discardLazyConstantPool();
+        attributeFactories = null;
+        constantPoolLookup = null;
+
+        // a header only read accesses just a few entries
+        if ((lazyConstantPool || headerOnly) && !skipConstantPool && in instanceof ByteBufferInput) {
+            readConstantPoolOffsets((ByteBufferInput)in);
+            return;
+        }
 
         // constantPool has effective length constantPoolCount - 1
         // constantPool[0] defaults to null
@@ -584,7 +1247,6 @@ public class ClassFile extends AbstractStructureWithAttributes {
                 // of the constant is not yet known
                 if (debug) debug("reading constant pool entry " + i);
                 constantPool[i] = CPInfo.create(in, this);
-                constantPoolEntryToIndex.put(constantPool[i], i);
                 if (constantPool[i] instanceof ConstantLargeNumeric) {
                     // CONSTANT_Double_info and CONSTANT_Long_info take 2 constant
                     // pool entries, the second entry is unusable (design mistake)
@@ -594,20 +1256,99 @@ public class ClassFile extends AbstractStructureWithAttributes {
         }
     }
 
-    private void writeConstantPool(DataOutput out)
+    private void readConstantPoolOffsets(ByteBufferInput in)
             throws InvalidByteCodeException, IOException {
 
-        int lastFreeIndex;
-        lastFreeIndex = getLength(constantPool) - 1;
-        while (lastFreeIndex >= 0 && constantPool[lastFreeIndex] == null) {
-            lastFreeIndex--;
+        int constantPoolCount = constantPool.length;
+        constantPoolOffsets = new int[constantPoolCount];
+        constantPoolTags = new byte[constantPoolCount];
+        ByteBuffer buffer = in.getBuffer();
+        for (int i = 1; i < constantPoolCount; i++) {
+            int offset = in.getPosition();
+            constantPoolOffsets[i] = offset;
+            constantPoolTags[i] = buffer.get(offset);
+            unreadConstantPoolEntries++;
+            // CONSTANT_Double_info and CONSTANT_Long_info take 2 constant
+            // pool entries, skip returns 1 in that case
+            i += CPInfo.skip(in);
         }
+        if (debug) debug("recorded offsets of " + unreadConstantPoolEntries + " constant pool entries");
+        if (unreadConstantPoolEntries > 0) {
+            constantPoolInput = new ByteBufferInput(buffer);
+        } else {
+            discardLazyConstantPool();
+        }
+    }
+
+    private CPInfo getConstantPoolEntry(int index) throws InvalidByteCodeException {
+
+        CPInfo cpInfo = constantPool[index];
+        if (cpInfo == null && constantPoolTags != null && constantPoolTags[index] != 0) {
+            cpInfo = readLazyConstantPoolEntry(index);
+        }
+        return cpInfo;
+    }
+
+    private CPInfo readLazyConstantPoolEntry(int index) throws InvalidByteCodeException {
+
+        if (debug) debug("reading constant pool entry " + index);
+        constantPoolInput.setPosition(constantPoolOffsets[index]);
+        CPInfo cpInfo;
+        // entries can be read while an attribute is read, but are not part of it
+        AbstractStructureWithAttributes previousOwner = setReadingOwner(null);
+        try {
+            cpInfo = CPInfo.create(constantPoolInput, this);
+        } catch (IOException e) {
+            throw new InvalidByteCodeException("constant pool entry " + index + " could not be read: " + e);
+        } finally {
+            setReadingOwner(previousOwner);
+        }
+        constantPool[index] = cpInfo;
+        if (constantPoolEntryToIndex != null) {
+            constantPoolEntryToIndex.put(cpInfo, index);
+        }
+        constantPoolTags[index] = 0;
+        if (--unreadConstantPoolEntries == 0) {
+            discardLazyConstantPool();
+        }
+        return cpInfo;
+    }
+
+    private void readLazyConstantPool() {
 
-        out.writeShort(lastFreeIndex + 1);
-        if (debug) debug("wrote constant pool count " + (lastFreeIndex + 1));
+        if (constantPoolTags == null) {
+            return;
+        }
+        for (int i = 1; i < constantPool.length && constantPoolTags != null; i++) {
+            if (constantPool[i] == null && constantPoolTags[i] != 0) {
+                try {
+                    readLazyConstantPoolEntry(i);
+                } catch (InvalidByteCodeException e) {
+                    throw new UncheckedInvalidByteCodeException(e);
+                }
+            }
+        }
+    }
+
+    private void discardLazyConstantPool() {
+
+        constantPoolInput = null;
+        constantPoolOffsets = null;
+        constantPoolTags = null;
+        unreadConstantPoolEntries = 0;
+    }
+
+    private void writeConstantPool(DataOutput out)
+            throws InvalidByteCodeException, IOException {
+
+        readLazyConstantPool();
+        int constantPoolCount = ConstantPoolBuilder.computeConstantPoolCount(constantPool);
+
+        out.writeShort(constantPoolCount);
+        if (debug) debug("wrote constant pool count " + constantPoolCount);
 
         // constantPool[0] defaults to null and is not written into the class file
-        for (int i = 1; i <= lastFreeIndex; i++) {
+        for (int i = 1; i < constantPoolCount; i++) {
             if (constantPool[i] == null) {
                 throw new InvalidByteCodeException("constant pool entry " + i + " is null");
             }
@@ -685,6 +1426,109 @@ public class ClassFile extends AbstractStructureWithAttributes {
 
     }
 
+    private void clearMembers() {
+        fields = new FieldInfo[0];
+        methods = new MethodInfo[0];
+        invalidateMemberIndices();
+        setAttributes(new AttributeInfo[0]);
+    }
+
+    private void readHeader(DataInput in)
+            throws InvalidByteCodeException, IOException {
+
+        checkModifiable();
+        sourceBuffer = null;
+        readMagicNumber(in);
+        readVersion(in);
+        readConstantPool(in);
+        readAccessFlags(in);
+        readThisClass(in);
+        readSuperClass(in);
+        readInterfaces(in);
+    }
+
+    private void visitMembers(DataInput in, VisitContext context, boolean methods)
+            throws InvalidByteCodeException, IOException {
+
+        ClassFileVisitor visitor = context.visitor;
+        int membersCount = in.readUnsignedShort();
+        for (int i = 0; i < membersCount; i++) {
+            int accessFlags = in.readUnsignedShort();
+            int nameIndex = in.readUnsignedShort();
+            int descriptorIndex = in.readUnsignedShort();
+            boolean visitAttributes = methods ?
+                    visitor.visitMethod(accessFlags, nameIndex, descriptorIndex) :
+                    visitor.visitField(accessFlags, nameIndex, descriptorIndex);
+            visitAttributes(in, visitAttributes ? context : null);
+        }
+    }
+
+    private void visitAttributes(DataInput in, VisitContext context)
+            throws InvalidByteCodeException, IOException {
+
+        int attributesCount = in.readUnsignedShort();
+        for (int i = 0; i < attributesCount; i++) {
+            int attributeNameIndex = in.readUnsignedShort();
+            int attributeLength = in.readInt();
+            if (context == null || skipAttributes || getAttributeFactory(attributeNameIndex) == null ||
+                    isAttributeExcluded(attributeNameIndex))
+            {
+                skipBytes(in, attributeLength);
+                continue;
+            }
+            String attributeName = getConstantPoolUtf8Entry(attributeNameIndex).getString();
+            ClassFileVisitor visitor = context.visitor;
+            if (visitor.acceptAttribute(attributeName)) {
+                AttributeInfo attribute = AttributeInfo.createOrSkip(in, this, attributeNameIndex, attributeLength, false);
+                visitor.visitAttribute(attribute);
+                if (attribute instanceof CodeAttribute) {
+                    CodeAttribute codeAttribute = (CodeAttribute)attribute;
+                    byte[] code = codeAttribute.getCode();
+                    if (visitor.visitCode(codeAttribute.getMaxStack(), codeAttribute.getMaxLocals(), code.length)) {
+                        visitInstructions(context, code, code.length);
+                    }
+                }
+            } else if (CodeAttribute.ATTRIBUTE_NAME.equals(attributeName)) {
+                visitCode(in, context, attributeLength);
+            } else {
+                skipBytes(in, attributeLength);
+            }
+        }
+    }
+
+    private void visitCode(DataInput in, VisitContext context, int attributeLength)
+            throws InvalidByteCodeException, IOException {
+
+        // max_stack, max_locals and code_length precede the code
+        int maxStack = in.readUnsignedShort();
+        int maxLocals = in.readUnsignedShort();
+        int codeLength = in.readInt();
+        if (codeLength < 0 || codeLength > attributeLength - 8) {
+            throw new InvalidByteCodeException("invalid code length " + codeLength);
+        }
+        if (context.visitor.visitCode(maxStack, maxLocals, codeLength)) {
+            if (context.code.length < codeLength) {
+                context.code = new byte[Math.max(codeLength, context.code.length * 2)];
+            }
+            in.readFully(context.code, 0, codeLength);
+            visitInstructions(context, context.code, codeLength);
+        } else {
+            skipBytes(in, codeLength);
+        }
+        // the exception table and the attributes of the code are not reported
+        skipBytes(in, attributeLength - 8 - codeLength);
+    }
+
+    private void visitInstructions(VisitContext context, byte[] code, int codeLength)
+            throws InvalidByteCodeException, IOException {
+
+        InstructionCursor cursor = context.cursor;
+        cursor.reset(code, codeLength);
+        while (cursor.next()) {
+            context.visitor.visitInstruction(cursor);
+        }
+    }
+
     private void readFields(DataInput in)
             throws InvalidByteCodeException, IOException {
 
@@ -692,6 +1536,7 @@ public class ClassFile extends AbstractStructureWithAttributes {
         if (debug) debug("read fields count " + fieldsCount);
 
         fields = new FieldInfo[fieldsCount];
+        fieldIndex = null;
 
         for (int i = 0; i < fieldsCount; i++) {
             fields[i] = FieldInfo.create(in, this);
@@ -711,7 +1556,9 @@ public class ClassFile extends AbstractStructureWithAttributes {
             if (fields[i] == null) {
                 throw new InvalidByteCodeException("field " + i + " is null");
             }
-            fields[i].write(out);
+            if (!fields[i].writeUnmodified(out)) {
+                fields[i].write(out);
+            }
         }
 
     }
@@ -723,6 +1570,7 @@ public class ClassFile extends AbstractStructureWithAttributes {
         if (debug) debug("read methods count " + methodsCount);
 
         methods = new MethodInfo[methodsCount];
+        methodIndex = null;
 
         for (int i = 0; i < methodsCount; i++) {
             methods[i] = MethodInfo.create(in, this);
@@ -742,7 +1590,9 @@ public class ClassFile extends AbstractStructureWithAttributes {
             if (methods[i] == null) {
                 throw new InvalidByteCodeException("method " + i + " is null");
             }
-            methods[i].write(out);
+            if (!methods[i].writeUnmodified(out)) {
+                methods[i].write(out);
+            }
         }
 
     }
@@ -761,6 +1611,22 @@ public class ClassFile extends AbstractStructureWithAttributes {
         if (debug) debug("wrote " + getLength(attributes) + " attributes for the ClassFile structure");
     }
 
+    private void decodeDeferredAttributes(ClassMember[] members) throws InvalidByteCodeException {
+        if (members != null) {
+            for (ClassMember member : members) {
+                if (member != null) {
+                    member.decodeDeferredAttributes();
+                }
+            }
+        }
+    }
+
+    private void freezeIfRequested() throws InvalidByteCodeException {
+        if (freezeAfterRead) {
+            freeze();
+        }
+    }
+
     private void checkMajorVersion(int majorVersion) {
 
         if (majorVersion < 45 || majorVersion > 52) {
@@ -772,4 +1638,20 @@ public class ClassFile extends AbstractStructureWithAttributes {
     protected String printAccessFlagsVerbose(int accessFlags) {
         return printAccessFlagsVerbose(AccessFlag.CLASS_ACCESS_FLAGS, accessFlags);
     }
+
+    /**
+     * State that is shared by all attributes while a class file is read with a visitor.
+     * The code buffer and the cursor are reused for all methods.
+     */
+    private static class VisitContext {
+
+        private final ClassFileVisitor visitor;
+        private final InstructionCursor cursor;
+        private byte[] code = new byte[256];
+
+        private VisitContext(ClassFileVisitor visitor) {
+            this.visitor = visitor;
+            cursor = new InstructionCursor(code);
+        }
+    }
 }
@@ -7,6 +7,8 @@
 
 package org.gjt.jclasslib.structures;
 
+import org.gjt.jclasslib.io.ByteBufferInput;
+import org.gjt.jclasslib.structures.attributes.SignatureAttribute;
 import org.gjt.jclasslib.structures.constants.ConstantUtf8Info;
 
 import java.io.DataInput;
@@ -40,9 +42,20 @@ public abstract class ClassMember extends AbstractStructureWithAttributes {
         @param accessFlags the access flags
      */
     public void setAccessFlags(int accessFlags) {
+        checkModifiable();
+        markModified();
         this.accessFlags = accessFlags;
     }
 
+    /**
+        Get the <tt>Signature</tt> attribute of this class member.
+        @return the attribute or <tt>null</tt> if this class member has no such attribute
+        @throws UncheckedInvalidByteCodeException if an attribute whose decoding has been deferred is invalid
+     */
+    public SignatureAttribute getSignatureAttribute() {
+        return findTypedAttribute(SignatureAttribute.class);
+    }
+
     /**
         Get the constant pool index of the name of this class member.
         @return the index
@@ -56,7 +69,12 @@ public abstract class ClassMember extends AbstractStructureWithAttributes {
         @param nameIndex the index
      */
     public void setNameIndex(int nameIndex) {
+        checkModifiable();
+        markModified();
         this.nameIndex = nameIndex;
+        if (classFile != null) {
+            classFile.invalidateMemberIndices();
+        }
     }
 
     /**
@@ -72,6 +90,8 @@ public abstract class ClassMember extends AbstractStructureWithAttributes {
         @param descriptorIndex the index
      */
     public void setDescriptorIndex(int descriptorIndex) {
+        checkModifiable();
+        markModified();
         this.descriptorIndex = descriptorIndex;
     }
 
@@ -122,11 +142,15 @@ public abstract class ClassMember extends AbstractStructureWithAttributes {
     public void read(DataInput in)
         throws InvalidByteCodeException, IOException {
 
+        int startPosition = in instanceof ByteBufferInput ? ((ByteBufferInput)in).getPosition() : 0;
         accessFlags = in.readUnsignedShort();
         nameIndex = in.readUnsignedShort();
         descriptorIndex = in.readUnsignedShort();
 
         readAttributes(in);
+        if (classFile.getSourceBuffer() != null && in instanceof ByteBufferInput) {
+            setSource(startPosition, ((ByteBufferInput)in).getPosition() - startPosition);
+        }
 
     }
 
@@ -0,0 +1,379 @@
+/*
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU General Public
+    License as published by the Free Software Foundation; either
+    version 2 of the license, or (at your option) any later version.
+*/
+
+package org.gjt.jclasslib.structures;
+
+import org.gjt.jclasslib.structures.constants.*;
+
+/**
+    Adds a large number of entries to the constant pool of a <tt>ClassFile</tt>. <p>
+
+    In contrast to <tt>ConstantPoolUtil</tt>, the builder keeps track of the next free
+    index and grows its array by doubling, so that adding <i>n</i> entries takes
+    <i>O(n)</i> time. <tt>CONSTANT_Long_info</tt> and <tt>CONSTANT_Double_info</tt>
+    entries take two indices. Entries that are already present in the constant pool or
+    that have been added before are not added again. They are found with a
+    <tt>ConstantPoolLookup</tt>, so adding an existing entry does not create any objects. <p>
+
+    The added entries are only visible in the class file after <tt>commit</tt> has
+    been called, which publishes them in a single step. Until then, the class file
+    must not be modified by other means. The builder can be used for further entries
+    after a commit.
+*/
+public class ConstantPoolBuilder {
+
+    /** The maximum number of indices in a constant pool. */
+    public static final int MAX_CONSTANT_POOL_COUNT = 0xFFFF;
+
+    private static final int MIN_CAPACITY = 16;
+
+    private final ClassFile classFile;
+
+    private CPInfo[] constantPool;
+    private ConstantPoolLookup lookup;
+    private boolean shared;
+    private int firstAddedIndex;
+    private int nextIndex;
+
+    /**
+        Constructor.
+        @param classFile the class file whose constant pool is to be edited
+     */
+    public ConstantPoolBuilder(ClassFile classFile) {
+        this.classFile = classFile;
+        reset();
+    }
+
+    /**
+        Get the class file whose constant pool is edited.
+        @return the class file
+     */
+    public ClassFile getClassFile() {
+        return classFile;
+    }
+
+    /**
+        Get the index for finding entries by their value, including the entries
+        that have not been committed yet.
+        @return the index
+     */
+    public ConstantPoolLookup getConstantPoolLookup() {
+        return lookup;
+    }
+
+    /**
+        Get the constant pool count, that is the index of the next added entry.
+        @return the count
+     */
+    public int getConstantPoolCount() {
+        return nextIndex;
+    }
+
+    /**
+        Returns whether entries have been added since the last commit.
+        @return the value
+     */
+    public boolean hasUncommittedEntries() {
+        return nextIndex > firstAddedIndex;
+    }
+
+    /**
+        Make sure that a given number of indices can be added without growing
+        the array again.
+        @param count the number of indices
+     */
+    public void ensureCapacity(int count) {
+        ensureFree(count);
+    }
+
+    /**
+        Add a <tt>CONSTANT_Utf8_info</tt> entry.
+        @param string the string
+        @return the constant pool index of the entry
+     */
+    public int addUtf8(String string) {
+        int index = lookup.findUtf8(string);
+        if (index > -1) {
+            return index;
+        }
+        ConstantUtf8Info utf8Info = new ConstantUtf8Info();
+        utf8Info.setString(string);
+        return add(utf8Info);
+    }
+
+    /**
+        Add a <tt>CONSTANT_Class_info</tt> entry and the entry for its name.
+        @param className the name of the class in internal form
+        @return the constant pool index of the entry
+     */
+    public int addClass(String className) {
+        int index = lookup.findClass(className);
+        if (index > -1) {
+            return index;
+        }
+        ConstantClassInfo classInfo = new ConstantClassInfo();
+        classInfo.setNameIndex(addUtf8(className));
+        return add(classInfo);
+    }
+
+    /**
+        Add a <tt>CONSTANT_String_info</tt> entry and the entry for its value.
+        @param string the string
+        @return the constant pool index of the entry
+     */
+    public int addString(String string) {
+        int index = lookup.findString(string);
+        if (index > -1) {
+            return index;
+        }
+        ConstantStringInfo stringInfo = new ConstantStringInfo();
+        stringInfo.setStringIndex(addUtf8(string));
+        return add(stringInfo);
+    }
+
+    /**
+        Add a <tt>CONSTANT_Integer_info</tt> entry.
+        @param value the value
+        @return the constant pool index of the entry
+     */
+    public int addInteger(int value) {
+        int index = lookup.findInteger(value);
+        if (index > -1) {
+            return index;
+        }
+        ConstantIntegerInfo integerInfo = new ConstantIntegerInfo();
+        integerInfo.setInt(value);
+        return add(integerInfo);
+    }
+
+    /**
+        Add a <tt>CONSTANT_Float_info</tt> entry.
+        @param value the value
+        @return the constant pool index of the entry
+     */
+    public int addFloat(float value) {
+        int index = lookup.findFloat(value);
+        if (index > -1) {
+            return index;
+        }
+        ConstantFloatInfo floatInfo = new ConstantFloatInfo();
+        floatInfo.setFloat(value);
+        return add(floatInfo);
+    }
+
+    /**
+        Add a <tt>CONSTANT_Long_info</tt> entry.
+        @param value the value
+        @return the constant pool index of the entry
+     */
+    public int addLong(long value) {
+        int index = lookup.findLong(value);
+        if (index > -1) {
+            return index;
+        }
+        ConstantLongInfo longInfo = new ConstantLongInfo();
+        longInfo.setLong(value);
+        return add(longInfo);
+    }
+
+    /**
+        Add a <tt>CONSTANT_Double_info</tt> entry.
+        @param value the value
+        @return the constant pool index of the entry
+     */
+    public int addDouble(double value) {
+        int index = lookup.findDouble(value);
+        if (index > -1) {
+            return index;
+        }
+        ConstantDoubleInfo doubleInfo = new ConstantDoubleInfo();
+        doubleInfo.setDouble(value);
+        return add(doubleInfo);
+    }
+
+    /**
+        Add a <tt>CONSTANT_NameAndType_info</tt> entry and the entries for
+        its name and descriptor.
+        @param name the name
+        @param descriptor the descriptor
+        @return the constant pool index of the entry
+     */
+    public int addNameAndType(String name, String descriptor) {
+        int index = lookup.findNameAndType(name, descriptor);
+        if (index > -1) {
+            return index;
+        }
+        ConstantNameAndTypeInfo nameAndTypeInfo = new ConstantNameAndTypeInfo();
+        nameAndTypeInfo.setNameIndex(addUtf8(name));
+        nameAndTypeInfo.setDescriptorIndex(addUtf8(descriptor));
+        return add(nameAndTypeInfo);
+    }
+
+    /**
+        Add a <tt>CONSTANT_Fieldref_info</tt> entry and the entries it refers to.
+        @param className the name of the class in internal form
+        @param fieldName the name of the field
+        @param fieldType the type of the field
+        @return the constant pool index of the entry
+     */
+    public int addFieldref(String className, String fieldName, String fieldType) {
+        int index = lookup.findFieldref(className, fieldName, fieldType);
+        if (index > -1) {
+            return index;
+        }
+        return addReference(new ConstantFieldrefInfo(), className, fieldName, fieldType);
+    }
+
+    /**
+        Add a <tt>CONSTANT_Methodref_info</tt> entry and the entries it refers to.
+        @param className the name of the class in internal form
+        @param methodName the name of the method
+        @param methodDescriptor the descriptor of the method
+        @return the constant pool index of the entry
+     */
+    public int addMethodref(String className, String methodName, String methodDescriptor) {
+        int index = lookup.findMethodref(className, methodName, methodDescriptor);
+        if (index > -1) {
+            return index;
+        }
+        return addReference(new ConstantMethodrefInfo(), className, methodName, methodDescriptor);
+    }
+
+    /**
+        Add a <tt>CONSTANT_InterfaceMethodref_info</tt> entry and the entries it refers to.
+        @param className the name of the interface in internal form
+        @param methodName the name of the method
+        @param methodDescriptor the descriptor of the method
+        @return the constant pool index of the entry
+     */
+    public int addInterfaceMethodref(String className, String methodName, String methodDescriptor) {
+        int index = lookup.findInterfaceMethodref(className, methodName, methodDescriptor);
+        if (index > -1) {
+            return index;
+        }
+        return addReference(new ConstantInterfaceMethodrefInfo(), className, methodName, methodDescriptor);
+    }
+
+    /**
+        Add a constant pool entry. If an entry with the same tag and the same resolved
+        value is already present, its index is returned instead. Entries that refer to other entries must only refer to
+        existing or added indices.
+        @param entry the constant pool entry
+        @return the constant pool index of the entry
+     */
+    public int add(CPInfo entry) {
+
+        entry.setClassFile(classFile);
+        int index = lookup.find(entry);
+        if (index > -1) {
+            return index;
+        }
+
+        int size = entry instanceof ConstantLargeNumeric ? 2 : 1;
+        ensureFree(size);
+        index = nextIndex;
+        constantPool[index] = entry;
+        nextIndex += size;
+        lookup.add(index);
+        return index;
+    }
+
+    /**
+        Publish all entries that have been added since the last commit in the
+        constant pool of the class file. The array of the constant pool is replaced
+        by an array without unused capacity.
+     */
+    public void commit() {
+
+        if (!hasUncommittedEntries()) {
+            return;
+        }
+        int oldLength = getLength(classFile.getConstantPool());
+        CPInfo[] committedConstantPool = new CPInfo[Math.max(nextIndex, oldLength)];
+        System.arraycopy(constantPool, 0, committedConstantPool, 0, nextIndex);
+        classFile.enlargeConstantPool(committedConstantPool);
+        // enlargeConstantPool only registers entries beyond the old length
+        for (int i = firstAddedIndex; i < Math.min(nextIndex, oldLength); i++) {
+            if (committedConstantPool[i] != null) {
+                classFile.registerConstantPoolEntry(i);
+            }
+        }
+        constantPool = committedConstantPool;
+        lookup.setConstantPool(committedConstantPool);
+        shared = true;
+        firstAddedIndex = nextIndex;
+    }
+
+    /**
+        Discard all entries that have been added since the last commit and
+        synchronize with the current constant pool of the class file.
+     */
+    public void reset() {
+
+        constantPool = classFile.getConstantPool();
+        if (constantPool == null) {
+            constantPool = new CPInfo[0];
+        }
+        shared = true;
+        nextIndex = computeConstantPoolCount(constantPool);
+        firstAddedIndex = nextIndex;
+        lookup = new ConstantPoolLookup(constantPool);
+    }
+
+    /**
+        Get the constant pool count of a constant pool array that may contain
+        unused slots at the end.
+        @param constantPool the array
+        @return the index after the last used slot, at least 1
+     */
+    public static int computeConstantPoolCount(CPInfo[] constantPool) {
+
+        int lastIndex = getLength(constantPool) - 1;
+        while (lastIndex > 0 && constantPool[lastIndex] == null) {
+            lastIndex--;
+        }
+        if (lastIndex <= 0) {
+            return 1;
+        } else if (constantPool[lastIndex] instanceof ConstantLargeNumeric) {
+            // the second slot of a CONSTANT_Long_info or CONSTANT_Double_info is unusable
+            return lastIndex + 2;
+        } else {
+            return lastIndex + 1;
+        }
+    }
+
+    private int addReference(ConstantReference reference, String className, String name, String descriptor) {
+        reference.setClassIndex(addClass(className));
+        reference.setNameAndTypeIndex(addNameAndType(name, descriptor));
+        return add(reference);
+    }
+
+    private void ensureFree(int count) {
+
+        int requiredLength = nextIndex + count;
+        if (requiredLength > MAX_CONSTANT_POOL_COUNT) {
+            throw new IllegalStateException("constant pool count exceeds " + MAX_CONSTANT_POOL_COUNT);
+        }
+        if (shared || requiredLength > constantPool.length) {
+            // the array of the class file must not be modified before commit
+            int newLength = Math.max(requiredLength, constantPool.length);
+            if (requiredLength > constantPool.length) {
+                newLength = Math.max(newLength, Math.max(MIN_CAPACITY, 2 * constantPool.length));
+            }
+            CPInfo[] newConstantPool = new CPInfo[Math.min(newLength, MAX_CONSTANT_POOL_COUNT)];
+            System.arraycopy(constantPool, 0, newConstantPool, 0, Math.min(constantPool.length, nextIndex));
+            constantPool = newConstantPool;
+            lookup.setConstantPool(newConstantPool);
+            shared = false;
+        }
+    }
+
+    private static int getLength(Object[] array) {
+        return array == null ? 0 : array.length;
+    }
+
+}
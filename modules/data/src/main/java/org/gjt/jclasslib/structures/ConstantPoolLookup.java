@@ -0,0 +1,495 @@
+/*
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU General Public
+    License as published by the Free Software Foundation; either
+    version 2 of the license, or (at your option) any later version.
+*/
+
+package org.gjt.jclasslib.structures;
+
+import org.gjt.jclasslib.structures.constants.*;
+
+/**
+    Finds constant pool entries by their tag and their resolved value. <p>
+
+    Entries that refer to other entries are indexed by the values of the referenced
+    entries, for example a <tt>CONSTANT_Methodref_info</tt> by the name of its class,
+    its name and its descriptor. The lookup methods take these values directly, so no
+    probe entries have to be created and a lookup does not allocate. The index is an
+    open addressing hash table of constant pool indices. <p>
+
+    Entries that are added to the constant pool are indexed as they are registered with
+    the class file. If entries are modified in place, <tt>rebuild</tt> has to be called.
+*/
+public class ConstantPoolLookup {
+
+    private static final int MIN_CAPACITY = 16;
+
+    private CPInfo[] constantPool;
+    private int[] indices;
+    private int[] hashes;
+    private int mask;
+    private int size;
+
+    /**
+        Constructor.
+        @param constantPool the constant pool array. Entries that have not been
+                            read yet are not indexed.
+     */
+    public ConstantPoolLookup(CPInfo[] constantPool) {
+        this.constantPool = constantPool;
+        rebuild();
+    }
+
+    /**
+        Get the number of indexed entries.
+        @return the number
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+        Index all entries of the constant pool again.
+     */
+    public void rebuild() {
+
+        int length = constantPool == null ? 0 : constantPool.length;
+        allocate(tableCapacity(length));
+        for (int i = 1; i < length; i++) {
+            add(i);
+        }
+    }
+
+    /**
+        Find a <tt>CONSTANT_Utf8_info</tt> entry.
+        @param string the string
+        @return the constant pool index or -1 if there is no such entry
+     */
+    public int findUtf8(String string) {
+        return find(CPInfo.CONSTANT_UTF8, hash(CPInfo.CONSTANT_UTF8, string.hashCode()), string, null, null, 0, 0);
+    }
+
+    /**
+        Find a <tt>CONSTANT_Class_info</tt> entry.
+        @param className the name of the class in internal form
+        @return the constant pool index or -1 if there is no such entry
+     */
+    public int findClass(String className) {
+        return find(CPInfo.CONSTANT_CLASS, hash(CPInfo.CONSTANT_CLASS, className.hashCode()), className, null, null, 0, 0);
+    }
+
+    /**
+        Find a <tt>CONSTANT_String_info</tt> entry.
+        @param string the string
+        @return the constant pool index or -1 if there is no such entry
+     */
+    public int findString(String string) {
+        return find(CPInfo.CONSTANT_STRING, hash(CPInfo.CONSTANT_STRING, string.hashCode()), string, null, null, 0, 0);
+    }
+
+    /**
+        Find a <tt>CONSTANT_MethodType_info</tt> entry.
+        @param descriptor the method descriptor
+        @return the constant pool index or -1 if there is no such entry
+     */
+    public int findMethodType(String descriptor) {
+        return find(CPInfo.CONSTANT_METHOD_TYPE, hash(CPInfo.CONSTANT_METHOD_TYPE, descriptor.hashCode()), descriptor, null, null, 0, 0);
+    }
+
+    /**
+        Find a <tt>CONSTANT_Integer_info</tt> entry.
+        @param value the value
+        @return the constant pool index or -1 if there is no such entry
+     */
+    public int findInteger(int value) {
+        return find(CPInfo.CONSTANT_INTEGER, hash(CPInfo.CONSTANT_INTEGER, value), null, null, null, value, 0);
+    }
+
+    /**
+        Find a <tt>CONSTANT_Float_info</tt> entry.
+        @param value the value
+        @return the constant pool index or -1 if there is no such entry
+     */
+    public int findFloat(float value) {
+        int bits = Float.floatToIntBits(value);
+        return find(CPInfo.CONSTANT_FLOAT, hash(CPInfo.CONSTANT_FLOAT, bits), null, null, null, bits, 0);
+    }
+
+    /**
+        Find a <tt>CONSTANT_Long_info</tt> entry.
+        @param value the value
+        @return the constant pool index or -1 if there is no such entry
+     */
+    public int findLong(long value) {
+        return findLargeNumeric(CPInfo.CONSTANT_LONG, value);
+    }
+
+    /**
+        Find a <tt>CONSTANT_Double_info</tt> entry.
+        @param value the value
+        @return the constant pool index or -1 if there is no such entry
+     */
+    public int findDouble(double value) {
+        return findLargeNumeric(CPInfo.CONSTANT_DOUBLE, Double.doubleToLongBits(value));
+    }
+
+    /**
+        Find a <tt>CONSTANT_NameAndType_info</tt> entry.
+        @param name the name
+        @param descriptor the descriptor
+        @return the constant pool index or -1 if there is no such entry
+     */
+    public int findNameAndType(String name, String descriptor) {
+        int hash = hash(CPInfo.CONSTANT_NAME_AND_TYPE, name.hashCode(), descriptor.hashCode());
+        return find(CPInfo.CONSTANT_NAME_AND_TYPE, hash, name, descriptor, null, 0, 0);
+    }
+
+    /**
+        Find a <tt>CONSTANT_Fieldref_info</tt> entry.
+        @param className the name of the class in internal form
+        @param fieldName the name of the field
+        @param fieldType the type of the field
+        @return the constant pool index or -1 if there is no such entry
+     */
+    public int findFieldref(String className, String fieldName, String fieldType) {
+        return findReference(CPInfo.CONSTANT_FIELDREF, className, fieldName, fieldType);
+    }
+
+    /**
+        Find a <tt>CONSTANT_Methodref_info</tt> entry.
+        @param className the name of the class in internal form
+        @param methodName the name of the method
+        @param methodDescriptor the descriptor of the method
+        @return the constant pool index or -1 if there is no such entry
+     */
+    public int findMethodref(String className, String methodName, String methodDescriptor) {
+        return findReference(CPInfo.CONSTANT_METHODREF, className, methodName, methodDescriptor);
+    }
+
+    /**
+        Find a <tt>CONSTANT_InterfaceMethodref_info</tt> entry.
+        @param className the name of the interface in internal form
+        @param methodName the name of the method
+        @param methodDescriptor the descriptor of the method
+        @return the constant pool index or -1 if there is no such entry
+     */
+    public int findInterfaceMethodref(String className, String methodName, String methodDescriptor) {
+        return findReference(CPInfo.CONSTANT_INTERFACE_METHODREF, className, methodName, methodDescriptor);
+    }
+
+    /**
+        Find a <tt>CONSTANT_MethodHandle_info</tt> entry.
+        @param type the reference kind
+        @param referenceIndex the constant pool index of the reference
+        @return the constant pool index or -1 if there is no such entry
+     */
+    public int findMethodHandle(int type, int referenceIndex) {
+        int hash = hash(CPInfo.CONSTANT_METHOD_HANDLE, type, referenceIndex);
+        return find(CPInfo.CONSTANT_METHOD_HANDLE, hash, null, null, null, type, referenceIndex);
+    }
+
+    /**
+        Find a <tt>CONSTANT_InvokeDynamic_info</tt> entry.
+        @param bootstrapMethodAttributeIndex the index of the bootstrap method
+        @param nameAndTypeIndex the constant pool index of the name and type
+        @return the constant pool index or -1 if there is no such entry
+     */
+    public int findInvokeDynamic(int bootstrapMethodAttributeIndex, int nameAndTypeIndex) {
+        int hash = hash(CPInfo.CONSTANT_INVOKE_DYNAMIC, bootstrapMethodAttributeIndex, nameAndTypeIndex);
+        return find(CPInfo.CONSTANT_INVOKE_DYNAMIC, hash, null, null, null, bootstrapMethodAttributeIndex, nameAndTypeIndex);
+    }
+
+    /**
+        Find an entry with the same tag and the same resolved value as a given entry
+        whose indices refer to the same constant pool.
+        @param entry the entry
+        @return the constant pool index or -1 if there is no such entry
+     */
+    public int find(CPInfo entry) {
+
+        switch (entry.getTag()) {
+            case CPInfo.CONSTANT_UTF8:
+                return findUtf8(((ConstantUtf8Info)entry).getString());
+            case CPInfo.CONSTANT_CLASS:
+                return findByString(CPInfo.CONSTANT_CLASS, ((ConstantClassInfo)entry).getNameIndex());
+            case CPInfo.CONSTANT_STRING:
+                return findByString(CPInfo.CONSTANT_STRING, ((ConstantStringInfo)entry).getStringIndex());
+            case CPInfo.CONSTANT_METHOD_TYPE:
+                return findByString(CPInfo.CONSTANT_METHOD_TYPE, ((ConstantMethodTypeInfo)entry).getDescriptorIndex());
+            case CPInfo.CONSTANT_INTEGER:
+            case CPInfo.CONSTANT_FLOAT:
+                int bytes = ((ConstantNumeric)entry).getBytes();
+                return find(entry.getTag(), hash(entry.getTag(), bytes), null, null, null, bytes, 0);
+            case CPInfo.CONSTANT_LONG:
+            case CPInfo.CONSTANT_DOUBLE:
+                ConstantLargeNumeric largeNumeric = (ConstantLargeNumeric)entry;
+                return findLargeNumeric(entry.getTag(),
+                        (long)largeNumeric.getHighBytes() << 32 | largeNumeric.getLowBytes() & 0xFFFFFFFFL);
+            case CPInfo.CONSTANT_NAME_AND_TYPE:
+                ConstantNameAndTypeInfo nameAndTypeInfo = (ConstantNameAndTypeInfo)entry;
+                String name = getUtf8String(nameAndTypeInfo.getNameIndex());
+                String descriptor = getUtf8String(nameAndTypeInfo.getDescriptorIndex());
+                return name == null || descriptor == null ? -1 : findNameAndType(name, descriptor);
+            case CPInfo.CONSTANT_FIELDREF:
+            case CPInfo.CONSTANT_METHODREF:
+            case CPInfo.CONSTANT_INTERFACE_METHODREF:
+                ConstantReference reference = (ConstantReference)entry;
+                CPInfo classInfo = getEntry(reference.getClassIndex());
+                CPInfo referencedNameAndType = getEntry(reference.getNameAndTypeIndex());
+                if (!(classInfo instanceof ConstantClassInfo) || !(referencedNameAndType instanceof ConstantNameAndTypeInfo)) {
+                    return -1;
+                }
+                String className = getUtf8String(((ConstantClassInfo)classInfo).getNameIndex());
+                String memberName = getUtf8String(((ConstantNameAndTypeInfo)referencedNameAndType).getNameIndex());
+                String memberDescriptor = getUtf8String(((ConstantNameAndTypeInfo)referencedNameAndType).getDescriptorIndex());
+                if (className == null || memberName == null || memberDescriptor == null) {
+                    return -1;
+                }
+                return findReference(entry.getTag(), className, memberName, memberDescriptor);
+            case CPInfo.CONSTANT_METHOD_HANDLE:
+                ConstantMethodHandleInfo methodHandleInfo = (ConstantMethodHandleInfo)entry;
+                return findMethodHandle(methodHandleInfo.getType(), methodHandleInfo.getReferenceIndex());
+            case CPInfo.CONSTANT_INVOKE_DYNAMIC:
+                ConstantInvokeDynamicInfo invokeDynamicInfo = (ConstantInvokeDynamicInfo)entry;
+                return findInvokeDynamic(invokeDynamicInfo.getBootstrapMethodAttributeIndex(), invokeDynamicInfo.getNameAndTypeIndex());
+            default:
+                return -1;
+        }
+    }
+
+    /**
+        Replace the constant pool array with an array that contains the same entries
+        at the beginning, such as an enlarged copy. The additional entries must be
+        indexed with <tt>add</tt>.
+        @param constantPool the new array
+     */
+    void setConstantPool(CPInfo[] constantPool) {
+        this.constantPool = constantPool;
+    }
+
+    /**
+        Index the entry at a given constant pool index.
+        @param index the index
+     */
+    void add(int index) {
+
+        CPInfo entry = getEntry(index);
+        if (entry == null) {
+            return;
+        }
+        if (2 * (size + 1) > indices.length) {
+            grow();
+        }
+        insert(index, hashEntry(entry));
+        size++;
+    }
+
+    private int findLargeNumeric(byte tag, long value) {
+        int highBytes = (int)(value >>> 32);
+        int lowBytes = (int)value;
+        return find(tag, hash(tag, highBytes, lowBytes), null, null, null, highBytes, lowBytes);
+    }
+
+    private int findReference(byte tag, String className, String name, String descriptor) {
+        int hash = hash(tag, className.hashCode(), name.hashCode(), descriptor.hashCode());
+        return find(tag, hash, className, name, descriptor, 0, 0);
+    }
+
+    private int findByString(byte tag, int utf8Index) {
+        String string = getUtf8String(utf8Index);
+        return string == null ? -1 : find(tag, hash(tag, string.hashCode()), string, null, null, 0, 0);
+    }
+
+    private int find(byte tag, int hash, String string1, String string2, String string3, int value1, int value2) {
+
+        for (int position = hash & mask; ; position = (position + 1) & mask) {
+            int index = indices[position];
+            if (index == 0) {
+                return -1;
+            }
+            if (hashes[position] == hash && matches(getEntry(index), tag, string1, string2, string3, value1, value2)) {
+                return index;
+            }
+        }
+    }
+
+    private boolean matches(CPInfo entry, byte tag, String string1, String string2, String string3, int value1, int value2) {
+
+        if (entry == null || entry.getTag() != tag) {
+            return false;
+        }
+        switch (tag) {
+            case CPInfo.CONSTANT_UTF8:
+                return ((ConstantUtf8Info)entry).equalsString(string1);
+            case CPInfo.CONSTANT_CLASS:
+                return utf8Equals(((ConstantClassInfo)entry).getNameIndex(), string1);
+            case CPInfo.CONSTANT_STRING:
+                return utf8Equals(((ConstantStringInfo)entry).getStringIndex(), string1);
+            case CPInfo.CONSTANT_METHOD_TYPE:
+                return utf8Equals(((ConstantMethodTypeInfo)entry).getDescriptorIndex(), string1);
+            case CPInfo.CONSTANT_INTEGER:
+            case CPInfo.CONSTANT_FLOAT:
+                return ((ConstantNumeric)entry).getBytes() == value1;
+            case CPInfo.CONSTANT_LONG:
+            case CPInfo.CONSTANT_DOUBLE:
+                ConstantLargeNumeric largeNumeric = (ConstantLargeNumeric)entry;
+                return largeNumeric.getHighBytes() == value1 && largeNumeric.getLowBytes() == value2;
+            case CPInfo.CONSTANT_NAME_AND_TYPE:
+                return nameAndTypeEquals(entry, string1, string2);
+            case CPInfo.CONSTANT_FIELDREF:
+            case CPInfo.CONSTANT_METHODREF:
+            case CPInfo.CONSTANT_INTERFACE_METHODREF:
+                ConstantReference reference = (ConstantReference)entry;
+                CPInfo classInfo = getEntry(reference.getClassIndex());
+                return classInfo instanceof ConstantClassInfo &&
+                        utf8Equals(((ConstantClassInfo)classInfo).getNameIndex(), string1) &&
+                        nameAndTypeEquals(getEntry(reference.getNameAndTypeIndex()), string2, string3);
+            case CPInfo.CONSTANT_METHOD_HANDLE:
+                ConstantMethodHandleInfo methodHandleInfo = (ConstantMethodHandleInfo)entry;
+                return methodHandleInfo.getType() == value1 && methodHandleInfo.getReferenceIndex() == value2;
+            case CPInfo.CONSTANT_INVOKE_DYNAMIC:
+                ConstantInvokeDynamicInfo invokeDynamicInfo = (ConstantInvokeDynamicInfo)entry;
+                return invokeDynamicInfo.getBootstrapMethodAttributeIndex() == value1 &&
+                        invokeDynamicInfo.getNameAndTypeIndex() == value2;
+            default:
+                return false;
+        }
+    }
+
+    // must be consistent with the hashes computed by the find methods
+    private int hashEntry(CPInfo entry) {
+
+        byte tag = entry.getTag();
+        switch (tag) {
+            case CPInfo.CONSTANT_UTF8:
+                return hash(tag, ((ConstantUtf8Info)entry).getStringHashCode());
+            case CPInfo.CONSTANT_CLASS:
+                return hash(tag, hashUtf8(((ConstantClassInfo)entry).getNameIndex()));
+            case CPInfo.CONSTANT_STRING:
+                return hash(tag, hashUtf8(((ConstantStringInfo)entry).getStringIndex()));
+            case CPInfo.CONSTANT_METHOD_TYPE:
+                return hash(tag, hashUtf8(((ConstantMethodTypeInfo)entry).getDescriptorIndex()));
+            case CPInfo.CONSTANT_INTEGER:
+            case CPInfo.CONSTANT_FLOAT:
+                return hash(tag, ((ConstantNumeric)entry).getBytes());
+            case CPInfo.CONSTANT_LONG:
+            case CPInfo.CONSTANT_DOUBLE:
+                ConstantLargeNumeric largeNumeric = (ConstantLargeNumeric)entry;
+                return hash(tag, largeNumeric.getHighBytes(), largeNumeric.getLowBytes());
+            case CPInfo.CONSTANT_NAME_AND_TYPE:
+                ConstantNameAndTypeInfo nameAndTypeInfo = (ConstantNameAndTypeInfo)entry;
+                return hash(tag, hashUtf8(nameAndTypeInfo.getNameIndex()), hashUtf8(nameAndTypeInfo.getDescriptorIndex()));
+            case CPInfo.CONSTANT_FIELDREF:
+            case CPInfo.CONSTANT_METHODREF:
+            case CPInfo.CONSTANT_INTERFACE_METHODREF:
+                ConstantReference reference = (ConstantReference)entry;
+                CPInfo classInfo = getEntry(reference.getClassIndex());
+                CPInfo referencedNameAndType = getEntry(reference.getNameAndTypeIndex());
+                if (!(classInfo instanceof ConstantClassInfo) || !(referencedNameAndType instanceof ConstantNameAndTypeInfo)) {
+                    // cannot be found by value
+                    return hash(tag, reference.getClassIndex(), reference.getNameAndTypeIndex());
+                }
+                nameAndTypeInfo = (ConstantNameAndTypeInfo)referencedNameAndType;
+                return hash(tag, hashUtf8(((ConstantClassInfo)classInfo).getNameIndex()),
+                        hashUtf8(nameAndTypeInfo.getNameIndex()), hashUtf8(nameAndTypeInfo.getDescriptorIndex()));
+            case CPInfo.CONSTANT_METHOD_HANDLE:
+                ConstantMethodHandleInfo methodHandleInfo = (ConstantMethodHandleInfo)entry;
+                return hash(tag, methodHandleInfo.getType(), methodHandleInfo.getReferenceIndex());
+            case CPInfo.CONSTANT_INVOKE_DYNAMIC:
+                ConstantInvokeDynamicInfo invokeDynamicInfo = (ConstantInvokeDynamicInfo)entry;
+                return hash(tag, invokeDynamicInfo.getBootstrapMethodAttributeIndex(), invokeDynamicInfo.getNameAndTypeIndex());
+            default:
+                return hash(tag, 0);
+        }
+    }
+
+    private boolean nameAndTypeEquals(CPInfo entry, String name, String descriptor) {
+        if (!(entry instanceof ConstantNameAndTypeInfo)) {
+            return false;
+        }
+        ConstantNameAndTypeInfo nameAndTypeInfo = (ConstantNameAndTypeInfo)entry;
+        return utf8Equals(nameAndTypeInfo.getNameIndex(), name) && utf8Equals(nameAndTypeInfo.getDescriptorIndex(), descriptor);
+    }
+
+    private boolean utf8Equals(int index, String string) {
+        CPInfo entry = getEntry(index);
+        return entry instanceof ConstantUtf8Info && ((ConstantUtf8Info)entry).equalsString(string);
+    }
+
+    private int hashUtf8(int index) {
+        CPInfo entry = getEntry(index);
+        return entry instanceof ConstantUtf8Info ? ((ConstantUtf8Info)entry).getStringHashCode() : index;
+    }
+
+    private String getUtf8String(int index) {
+        CPInfo entry = getEntry(index);
+        return entry instanceof ConstantUtf8Info ? ((ConstantUtf8Info)entry).getString() : null;
+    }
+
+    private CPInfo getEntry(int index) {
+        return index > 0 && index < constantPool.length ? constantPool[index] : null;
+    }
+
+    private void insert(int index, int hash) {
+
+        int position = hash & mask;
+        while (indices[position] != 0) {
+            position = (position + 1) & mask;
+        }
+        indices[position] = index;
+        hashes[position] = hash;
+    }
+
+    private void grow() {
+
+        int[] oldIndices = indices;
+        int[] oldHashes = hashes;
+        int oldSize = size;
+        allocate(2 * oldIndices.length);
+        for (int i = 0; i < oldIndices.length; i++) {
+            if (oldIndices[i] != 0) {
+                insert(oldIndices[i], oldHashes[i]);
+            }
+        }
+        size = oldSize;
+    }
+
+    private void allocate(int capacity) {
+        indices = new int[capacity];
+        hashes = new int[capacity];
+        mask = capacity - 1;
+        size = 0;
+    }
+
+    private static int tableCapacity(int count) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < 2 * count) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private static int hash(byte tag, int value) {
+        return mix(31 * tag + value);
+    }
+
+    private static int hash(byte tag, int value1, int value2) {
+        return mix(31 * (31 * tag + value1) + value2);
+    }
+
+    private static int hash(byte tag, int value1, int value2, int value3) {
+        return mix(31 * (31 * (31 * tag + value1) + value2) + value3);
+    }
+
+    // spreads all bits of the hash code, the table uses the low bits only
+    private static int mix(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+
+}
@@ -11,7 +11,10 @@ import org.gjt.jclasslib.structures.constants.*;
 
 /**
     Utility methods for working on the constant pool of a <tt>ClassFile</tt>
-    object.
+    object. Existing entries are found with the <tt>ConstantPoolLookup</tt> of the
+    class file. For adding a large number of entries, use a <tt>ConstantPoolBuilder</tt>.
+    If an entry has to be added to a frozen class file, an <tt>IllegalStateException</tt>
+    is thrown before the constant pool is changed.
 
     @author <a href="mailto:jclasslib@ej-technologies.com">Ingo Kegel</a>
 */
@@ -38,6 +41,10 @@ public class ConstantPoolUtil {
                                                String methodSignature,
                                                int sizeDelta)
     {
+        int index = classFile.getConstantPoolLookup().findMethodref(className, methodName, methodSignature);
+        if (index > -1) {
+            return index;
+        }
         sizeDelta = Math.max(sizeDelta, 6);
         int classIndex = addConstantClassInfo(classFile, className, sizeDelta);
         int nameAndTypeIndex = addConstantNameAndTypeInfo(classFile, methodName, methodSignature, sizeDelta);
@@ -66,6 +73,10 @@ public class ConstantPoolUtil {
                                               String fieldType,
                                               int sizeDelta)
     {
+        int index = classFile.getConstantPoolLookup().findFieldref(className, fieldName, fieldType);
+        if (index > -1) {
+            return index;
+        }
         sizeDelta = Math.max(sizeDelta, 6);
         int classIndex = addConstantClassInfo(classFile, className, sizeDelta);
         int nameAndTypeIndex = addConstantNameAndTypeInfo(classFile, fieldName, fieldType, sizeDelta);
@@ -92,6 +103,10 @@ public class ConstantPoolUtil {
                                                  String descriptor,
                                                  int sizeDelta)
     {
+        int index = classFile.getConstantPoolLookup().findNameAndType(name, descriptor);
+        if (index > -1) {
+            return index;
+        }
         sizeDelta = Math.max(sizeDelta, 3);
         int nameIndex = addConstantUTF8Info(classFile, name, sizeDelta);
         int descriptorIndex = addConstantUTF8Info(classFile, descriptor, sizeDelta);
@@ -116,6 +131,10 @@ public class ConstantPoolUtil {
                                            String className,
                                            int sizeDelta)
     {
+        int index = classFile.getConstantPoolLookup().findClass(className);
+        if (index > -1) {
+            return index;
+        }
         sizeDelta = Math.max(sizeDelta, 2);
         int nameIndex = addConstantUTF8Info(classFile, className, sizeDelta);
 
@@ -138,6 +157,10 @@ public class ConstantPoolUtil {
                                           String string,
                                           int sizeDelta)
     {
+        int index = classFile.getConstantPoolLookup().findUtf8(string);
+        if (index > -1) {
+            return index;
+        }
         ConstantUtf8Info utf8Info = new ConstantUtf8Info();
         utf8Info.setClassFile(classFile);
         utf8Info.setString(string);
@@ -152,6 +175,7 @@ public class ConstantPoolUtil {
         @param sizeDelta the minimum increment by which the array holding the
                          constant pool is to be enlarged. Set to 0 if unsure.
         @return the constant pool index of the added constant pool entry
+        @throws IllegalStateException if the entry is not present and the class file has been frozen
      */
     public static int addConstantPoolEntry(ClassFile classFile,
                                            CPInfo newEntry,
@@ -163,19 +187,17 @@ public class ConstantPoolUtil {
         if (index > -1) {
             return index;
         }
+        // the array is written before the entry is registered
+        classFile.checkModifiable();
 
-        int lastFreeIndex;
-        lastFreeIndex = constantPool.length - 1;
-        while (lastFreeIndex >= 0 && constantPool[lastFreeIndex] == null) {
-            lastFreeIndex--;
-        }
-        if (lastFreeIndex == constantPool.length - 1) {
-            CPInfo[] newConstantPool = new CPInfo[constantPool.length + Math.max(1, sizeDelta)];
+        int newIndex = ConstantPoolBuilder.computeConstantPoolCount(constantPool);
+        int size = newEntry instanceof ConstantLargeNumeric ? 2 : 1;
+        if (newIndex + size > constantPool.length) {
+            CPInfo[] newConstantPool = new CPInfo[Math.max(newIndex + size, constantPool.length + Math.max(1, sizeDelta))];
             System.arraycopy(constantPool, 0, newConstantPool, 0, constantPool.length);
             classFile.enlargeConstantPool(newConstantPool);
             constantPool = newConstantPool;
         }
-        int newIndex = lastFreeIndex + 1;
         constantPool[newIndex] = newEntry;
         classFile.registerConstantPoolEntry(newIndex);
         return newIndex;
@@ -0,0 +1,97 @@
+/*
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU General Public
+    License as published by the Free Software Foundation; either
+    version 2 of the license, or (at your option) any later version.
+*/
+
+package org.gjt.jclasslib.structures;
+
+import org.gjt.jclasslib.io.ByteBufferInput;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+    Placeholder for an attribute whose decoding has been deferred. Holds the
+    not yet read attribute of the appropriate subtype and the location of its
+    bytes in the buffer of the class file. <p>
+
+    Placeholders never leave <tt>AbstractStructureWithAttributes</tt>, they are
+    replaced with the decoded attribute on first access. An attribute that is
+    never accessed is written back verbatim.
+*/
+class DeferredAttributeInfo extends AttributeInfo {
+
+    private final AttributeInfo attribute;
+    private final ByteBuffer buffer;
+    private final int offset;
+    private final int length;
+
+    /**
+        Constructor.
+        @param attribute the attribute that will be read on first access
+        @param buffer the buffer of the class file
+        @param offset the absolute offset of the attribute content in the buffer
+        @param length the length of the attribute content
+     */
+    DeferredAttributeInfo(AttributeInfo attribute, ByteBuffer buffer, int offset, int length) {
+        this.attribute = attribute;
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+        setAttributeNameIndex(attribute.getAttributeNameIndex());
+        setClassFile(attribute.getClassFile());
+    }
+
+    /**
+        Get the class of the attribute that will be created by <tt>decode</tt>.
+        @return the class
+     */
+    Class<? extends AttributeInfo> getAttributeClass() {
+        return attribute.getClass();
+    }
+
+    /**
+        Read the deferred attribute from the buffer of the class file.
+        @return the decoded attribute
+        @throws InvalidByteCodeException if the byte code is invalid
+     */
+    AttributeInfo decode() throws InvalidByteCodeException {
+
+        ByteBufferInput in = new ByteBufferInput(buffer);
+        in.setPosition(offset);
+        AbstractStructureWithAttributes previousOwner = classFile.setReadingOwner(attribute);
+        try {
+            attribute.read(in);
+        } catch (IOException e) {
+            throw new InvalidByteCodeException("deferred attribute could not be read: " + e);
+        } finally {
+            classFile.setReadingOwner(previousOwner);
+        }
+        if (in.getPosition() != offset + length) {
+            throw new InvalidByteCodeException("deferred attribute has a length of " + length +
+                    ", but " + (in.getPosition() - offset) + " bytes were read");
+        }
+        attribute.owner = owner;
+        if (classFile.getSourceBuffer() != null) {
+            // attribute_name_index and attribute_length precede the content
+            attribute.setSource(offset - 6, length + 6);
+        }
+        return attribute;
+    }
+
+    public void write(DataOutput out) throws InvalidByteCodeException, IOException {
+
+        out.writeShort(getAttributeNameIndex());
+        out.writeInt(length);
+        writeBytes(out, buffer, offset, length);
+        if (debug) debug("wrote deferred " + attribute.getClass().getName() + " with length " + length);
+    }
+
+    public int getAttributeLength() {
+        return length;
+    }
+
+}
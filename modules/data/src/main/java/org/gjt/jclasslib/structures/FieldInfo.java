@@ -7,6 +7,8 @@
 
 package org.gjt.jclasslib.structures;
 
+import org.gjt.jclasslib.structures.attributes.ConstantValueAttribute;
+
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
@@ -38,6 +40,16 @@ public class FieldInfo extends ClassMember {
         return fieldInfo;
     }
 
+    /**
+     * Get the <tt>ConstantValue</tt> attribute of this field.
+     *
+     * @return the attribute or <tt>null</tt> if this field has no such attribute
+     * @throws UncheckedInvalidByteCodeException if an attribute whose decoding has been deferred is invalid
+     */
+    public ConstantValueAttribute getConstantValueAttribute() {
+        return findTypedAttribute(ConstantValueAttribute.class);
+    }
+
     public void read(DataInput in)
             throws InvalidByteCodeException, IOException {
 
@@ -0,0 +1,67 @@
+/*
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU General Public
+    License as published by the Free Software Foundation; either
+    version 2 of the license, or (at your option) any later version.
+*/
+
+package org.gjt.jclasslib.structures;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+    Maps the names of the fields or methods of a class file to their indices. <p>
+
+    All members with the same name, such as overloaded methods, are kept in one
+    array in ascending order, so that the descriptor only has to be compared for
+    these members. The index is created by <tt>ClassFile</tt> on first access and
+    discarded when the members are replaced with <tt>setFields</tt> or <tt>setMethods</tt>
+    or when the name index of a member or the constant pool is changed. Arrays that are
+    modified in place have to be set again, constant pool entries that are modified in
+    place have to be registered again with <tt>ClassFile.registerConstantPoolEntry</tt>.
+*/
+class MemberIndex {
+
+    private static final int[] NO_INDICES = new int[0];
+
+    private final Map<String, int[]> nameToIndices;
+
+    /**
+        Constructor.
+        @param members the fields or methods
+        @throws InvalidByteCodeException if the name of a member cannot be resolved
+     */
+    MemberIndex(ClassMember[] members) throws InvalidByteCodeException {
+
+        int membersCount = members == null ? 0 : members.length;
+        nameToIndices = new HashMap<String, int[]>(Math.max(16, membersCount * 4 / 3 + 1));
+        for (int i = 0; i < membersCount; i++) {
+            if (members[i] == null) {
+                continue;
+            }
+            String name = members[i].getName();
+            int[] indices = nameToIndices.get(name);
+            if (indices == null) {
+                indices = new int[] {i};
+            } else {
+                int[] newIndices = new int[indices.length + 1];
+                System.arraycopy(indices, 0, newIndices, 0, indices.length);
+                newIndices[indices.length] = i;
+                indices = newIndices;
+            }
+            nameToIndices.put(name, indices);
+        }
+    }
+
+    /**
+        Get the indices of all members with a given name.
+        @param name the name
+        @return the indices in ascending order. The returned array must not be modified.
+     */
+    int[] getIndices(String name) {
+        int[] indices = nameToIndices.get(name);
+        return indices == null ? NO_INDICES : indices;
+    }
+
+}
@@ -7,6 +7,9 @@
 
 package org.gjt.jclasslib.structures;
 
+import org.gjt.jclasslib.structures.attributes.CodeAttribute;
+import org.gjt.jclasslib.structures.attributes.ExceptionsAttribute;
+
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
@@ -38,6 +41,26 @@ public class MethodInfo extends ClassMember {
         return methodInfo;
     }
 
+    /**
+     * Get the <tt>Code</tt> attribute of this method.
+     *
+     * @return the attribute or <tt>null</tt> if the method is abstract or native
+     * @throws UncheckedInvalidByteCodeException if an attribute whose decoding has been deferred is invalid
+     */
+    public CodeAttribute getCodeAttribute() {
+        return findTypedAttribute(CodeAttribute.class);
+    }
+
+    /**
+     * Get the <tt>Exceptions</tt> attribute of this method.
+     *
+     * @return the attribute or <tt>null</tt> if this method has no such attribute
+     * @throws UncheckedInvalidByteCodeException if an attribute whose decoding has been deferred is invalid
+     */
+    public ExceptionsAttribute getExceptionsAttribute() {
+        return findTypedAttribute(ExceptionsAttribute.class);
+    }
+
     public void read(DataInput in)
             throws InvalidByteCodeException, IOException {
 
@@ -0,0 +1,32 @@
+/*
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU General Public
+    License as published by the Free Software Foundation; either
+    version 2 of the license, or (at your option) any later version.
+*/
+
+package org.gjt.jclasslib.structures;
+
+/**
+    Wraps an <tt>InvalidByteCodeException</tt> that occurs in a method which cannot
+    throw checked exceptions, for example when a getter reads a lazily read constant
+    pool entry or decodes a deferred attribute. The message is taken from the cause.
+*/
+public class UncheckedInvalidByteCodeException extends RuntimeException {
+
+    /**
+        Constructor.
+        @param cause the exception that has occurred while reading
+     */
+    public UncheckedInvalidByteCodeException(InvalidByteCodeException cause) {
+        super(cause.getMessage(), cause);
+    }
+
+    /**
+        Get the exception that has occurred while reading.
+        @return the exception
+     */
+    public InvalidByteCodeException getCause() {
+        return (InvalidByteCodeException)super.getCause();
+    }
+}
@@ -43,6 +43,8 @@ public class AnnotationDefaultAttribute extends AttributeInfo {
      * @param defaultValue the <tt>default_value</tt>
      */
     public void setDefaultValue(ElementValue defaultValue) {
+        checkModifiable();
+        markModified();
         this.defaultValue = defaultValue;
     }
 
@@ -45,6 +45,8 @@ public class BootstrapMethodsAttribute extends AttributeInfo {
      * @param methods the array
      */
     public void setMethods(BootstrapMethodsEntry[] methods) {
+        checkModifiable();
+        markModified();
         this.methods = methods;
     }
 
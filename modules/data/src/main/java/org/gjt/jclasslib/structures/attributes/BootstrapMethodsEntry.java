@@ -60,6 +60,8 @@ public class BootstrapMethodsEntry extends AbstractStructure {
      * @param methodRefIndex the index
      */
     public void setMethodRefIndex(int methodRefIndex) {
+        checkModifiable();
+        markModified();
         this.methodRefIndex = methodRefIndex;
     }
 
@@ -79,6 +81,8 @@ public class BootstrapMethodsEntry extends AbstractStructure {
      * @param argumentIndices the argument references
      */
     public void setArgumentIndices(int argumentIndices[]) {
+        checkModifiable();
+        markModified();
         this.argumentIndices = argumentIndices;
     }
 
@@ -7,12 +7,14 @@
 
 package org.gjt.jclasslib.structures.attributes;
 
+import org.gjt.jclasslib.bytecode.InstructionCursor;
 import org.gjt.jclasslib.structures.AttributeInfo;
 import org.gjt.jclasslib.structures.InvalidByteCodeException;
 
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.util.Arrays;
 
 /**
     Describes a <tt>Code</tt> attribute structure.
@@ -30,6 +32,7 @@ public class CodeAttribute extends AttributeInfo {
     private int maxLocals;
     private byte[] code;
     private ExceptionTableEntry[] exceptionTable;
+    private volatile int[] instructionOffsets;
 
     /**
         Get the maximum stack depth of this code attribute.
@@ -44,6 +47,8 @@ public class CodeAttribute extends AttributeInfo {
         @param maxStack the stack depth
      */
     public void setMaxStack(int maxStack) {
+        checkModifiable();
+        markModified();
         this.maxStack = maxStack;
     }
 
@@ -60,6 +65,8 @@ public class CodeAttribute extends AttributeInfo {
         @param maxLocals the maximum number
      */
     public void setMaxLocals(int maxLocals) {
+        checkModifiable();
+        markModified();
         this.maxLocals = maxLocals;
     }
 
@@ -72,11 +79,103 @@ public class CodeAttribute extends AttributeInfo {
     }
 
     /**
-        Set the code of this code attribute as an array of bytes .
+        Set the code of this code attribute as an array of bytes . This method
+        also has to be called if the array returned by <tt>getCode</tt> is
+        modified in place, so that the instruction offsets are computed again.
         @param code the array
      */
     public void setCode(byte[] code) {
+        checkModifiable();
+        markModified();
         this.code = code;
+        instructionOffsets = null;
+    }
+
+    /**
+        Get the start offsets of all instructions in the code. The offsets are
+        computed on first access without creating instruction objects and cached
+        until <tt>setCode</tt> is called. A <tt>wide</tt> prefix counts as a
+        separate instruction as with <tt>ByteCodeReader</tt>.
+        @return the offsets in ascending order. The returned array must not be modified.
+        @throws InvalidByteCodeException if the code contains an invalid or truncated instruction
+     */
+    public int[] getInstructionOffsets() throws InvalidByteCodeException {
+        int[] offsets = instructionOffsets;
+        if (offsets == null) {
+            offsets = computeInstructionOffsets();
+            instructionOffsets = offsets;
+        }
+        return offsets;
+    }
+
+    /**
+        Get the number of instructions in the code.
+        @return the number
+        @throws InvalidByteCodeException if the code contains an invalid or truncated instruction
+     */
+    public int getInstructionCount() throws InvalidByteCodeException {
+        return getInstructionOffsets().length;
+    }
+
+    /**
+        Get the position of the instruction at a given offset in the sequence
+        of instructions.
+        @param offset the offset in the code
+        @return the position or <tt>-1</tt> if no instruction starts at the offset
+        @throws InvalidByteCodeException if the code contains an invalid or truncated instruction
+     */
+    public int getInstructionIndex(int offset) throws InvalidByteCodeException {
+        int index = Arrays.binarySearch(getInstructionOffsets(), offset);
+        return index < 0 ? -1 : index;
+    }
+
+    /**
+        Get the position of the instruction that contains a given offset in the
+        sequence of instructions. The offset may point into the operands of an instruction.
+        @param offset the offset in the code
+        @return the position or <tt>-1</tt> if the offset is outside of the code
+        @throws InvalidByteCodeException if the code contains an invalid or truncated instruction
+     */
+    public int getContainingInstructionIndex(int offset) throws InvalidByteCodeException {
+        if (code == null || offset < 0 || offset >= code.length) {
+            return -1;
+        }
+        int index = Arrays.binarySearch(getInstructionOffsets(), offset);
+        return index < 0 ? -index - 2 : index;
+    }
+
+    /**
+        Get the offset of the instruction at a given position in the sequence
+        of instructions.
+        @param index the position
+        @return the offset in the code
+        @throws InvalidByteCodeException if the code contains an invalid or truncated instruction
+     */
+    public int getInstructionOffset(int index) throws InvalidByteCodeException {
+        return getInstructionOffsets()[index];
+    }
+
+    private int[] computeInstructionOffsets() throws InvalidByteCodeException {
+
+        int codeLength = code == null ? 0 : code.length;
+        if (codeLength == 0) {
+            return new int[0];
+        }
+        // most instructions take one to three bytes
+        int[] offsets = new int[Math.max(16, codeLength / 2)];
+        int count = 0;
+        InstructionCursor cursor = new InstructionCursor(code);
+        try {
+            while (cursor.next()) {
+                if (count == offsets.length) {
+                    offsets = Arrays.copyOf(offsets, Math.min(2 * count, codeLength));
+                }
+                offsets[count++] = cursor.getOffset();
+            }
+        } catch (IOException e) {
+            throw new InvalidByteCodeException(e.getMessage());
+        }
+        return Arrays.copyOf(offsets, count);
     }
 
     /**
@@ -94,9 +193,50 @@ public class CodeAttribute extends AttributeInfo {
         @param exceptionTable the array
      */
     public void setExceptionTable(ExceptionTableEntry[] exceptionTable) {
+        checkModifiable();
+        markModified();
         this.exceptionTable = exceptionTable;
     }
 
+    /**
+        Get the <tt>LineNumberTable</tt> attribute of this code attribute. If the
+        code attribute has more than one, the first one is returned.
+        @return the attribute or <tt>null</tt> if there is no such attribute
+        @throws org.gjt.jclasslib.structures.UncheckedInvalidByteCodeException if an attribute whose decoding has been deferred is invalid
+     */
+    public LineNumberTableAttribute getLineNumberTableAttribute() {
+        return findTypedAttribute(LineNumberTableAttribute.class);
+    }
+
+    /**
+        Get the <tt>LocalVariableTable</tt> attribute of this code attribute. If the
+        code attribute has more than one, the first one is returned.
+        @return the attribute or <tt>null</tt> if there is no such attribute
+        @throws org.gjt.jclasslib.structures.UncheckedInvalidByteCodeException if an attribute whose decoding has been deferred is invalid
+     */
+    public LocalVariableTableAttribute getLocalVariableTableAttribute() {
+        return findTypedAttribute(LocalVariableTableAttribute.class);
+    }
+
+    /**
+        Get the <tt>LocalVariableTypeTable</tt> attribute of this code attribute. If the
+        code attribute has more than one, the first one is returned.
+        @return the attribute or <tt>null</tt> if there is no such attribute
+        @throws org.gjt.jclasslib.structures.UncheckedInvalidByteCodeException if an attribute whose decoding has been deferred is invalid
+     */
+    public LocalVariableTypeTableAttribute getLocalVariableTypeTableAttribute() {
+        return findTypedAttribute(LocalVariableTypeTableAttribute.class);
+    }
+
+    /**
+        Get the <tt>StackMapTable</tt> attribute of this code attribute.
+        @return the attribute or <tt>null</tt> if there is no such attribute
+        @throws org.gjt.jclasslib.structures.UncheckedInvalidByteCodeException if an attribute whose decoding has been deferred is invalid
+     */
+    public StackMapTableAttribute getStackMapTableAttribute() {
+        return findTypedAttribute(StackMapTableAttribute.class);
+    }
+
     public void read(DataInput in) throws InvalidByteCodeException, IOException {
 
         maxStack = in.readUnsignedShort();
@@ -104,6 +244,7 @@ public class CodeAttribute extends AttributeInfo {
         int codeLength = in.readInt();
         code = new byte[codeLength];
         in.readFully(code);
+        instructionOffsets = null;
         
         readExceptionTable(in);
         readAttributes(in);
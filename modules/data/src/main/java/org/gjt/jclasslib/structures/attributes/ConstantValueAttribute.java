@@ -41,6 +41,8 @@ public class ConstantValueAttribute extends AttributeInfo {
         @param constantValueIndex the index
      */
     public void setConstantValueIndex(int constantValueIndex) {
+        checkModifiable();
+        markModified();
         this.constantValueIndex = constantValueIndex;
     }
 
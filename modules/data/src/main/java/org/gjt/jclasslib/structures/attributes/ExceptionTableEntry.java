@@ -89,6 +89,8 @@ public class ExceptionTableEntry extends AbstractStructure {
      * @param startPc the <tt>start_pc</tt>
      */
     public void setStartPc(int startPc) {
+        checkModifiable();
+        markModified();
         this.startPc = startPc;
     }
 
@@ -107,6 +109,8 @@ public class ExceptionTableEntry extends AbstractStructure {
      * @param endPc the <tt>end_pc</tt>
      */
     public void setEndPc(int endPc) {
+        checkModifiable();
+        markModified();
         this.endPc = endPc;
     }
 
@@ -125,6 +129,8 @@ public class ExceptionTableEntry extends AbstractStructure {
      * @param handlerPc the <tt>handler_pc</tt>
      */
     public void setHandlerPc(int handlerPc) {
+        checkModifiable();
+        markModified();
         this.handlerPc = handlerPc;
     }
 
@@ -143,6 +149,8 @@ public class ExceptionTableEntry extends AbstractStructure {
      * @param catchType the index
      */
     public void setCatchType(int catchType) {
+        checkModifiable();
+        markModified();
         this.catchType = catchType;
     }
 
@@ -43,6 +43,8 @@ public class ExceptionsAttribute extends AttributeInfo {
         @param exceptionIndexTable the array
      */
     public void setExceptionIndexTable(int[] exceptionIndexTable) {
+        checkModifiable();
+        markModified();
         this.exceptionIndexTable = exceptionIndexTable;
     }
 
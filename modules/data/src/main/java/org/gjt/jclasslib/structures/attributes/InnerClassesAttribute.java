@@ -43,6 +43,8 @@ public class InnerClassesAttribute extends AttributeInfo {
         @param classes the array
      */
     public void setClasses(InnerClassesEntry[] classes) {
+        checkModifiable();
+        markModified();
         this.classes = classes;
     }
     
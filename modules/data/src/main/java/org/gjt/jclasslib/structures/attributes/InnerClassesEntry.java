@@ -71,6 +71,8 @@ public class InnerClassesEntry extends AbstractStructure {
      * @param innerClassInfoIndex the index
      */
     public void setInnerClassInfoIndex(int innerClassInfoIndex) {
+        checkModifiable();
+        markModified();
         this.innerClassInfoIndex = innerClassInfoIndex;
     }
 
@@ -91,6 +93,8 @@ public class InnerClassesEntry extends AbstractStructure {
      * @param outerClassInfoIndex the index
      */
     public void setOuterClassInfoIndex(int outerClassInfoIndex) {
+        checkModifiable();
+        markModified();
         this.outerClassInfoIndex = outerClassInfoIndex;
     }
 
@@ -111,6 +115,8 @@ public class InnerClassesEntry extends AbstractStructure {
      * @param innerNameIndex the index
      */
     public void setInnerNameIndex(int innerNameIndex) {
+        checkModifiable();
+        markModified();
         this.innerNameIndex = innerNameIndex;
     }
 
@@ -129,6 +135,8 @@ public class InnerClassesEntry extends AbstractStructure {
      * @param innerClassAccessFlags the access flags
      */
     public void setInnerClassAccessFlags(int innerClassAccessFlags) {
+        checkModifiable();
+        markModified();
         this.innerClassAccessFlags = innerClassAccessFlags;
     }
 
@@ -43,6 +43,8 @@ public class LineNumberTableAttribute extends AttributeInfo {
         @param lineNumberTable the index
      */
     public void setLineNumberTable(LineNumberTableEntry[] lineNumberTable) {
+        checkModifiable();
+        markModified();
         this.lineNumberTable = lineNumberTable;
     }
     
@@ -66,6 +66,8 @@ public class LineNumberTableEntry extends AbstractStructure {
      * @param startPc the <tt>start_pc</tt>
      */
     public void setStartPc(int startPc) {
+        checkModifiable();
+        markModified();
         this.startPc = startPc;
     }
 
@@ -84,6 +86,8 @@ public class LineNumberTableEntry extends AbstractStructure {
      * @param lineNumber the line number
      */
     public void setLineNumber(int lineNumber) {
+        checkModifiable();
+        markModified();
         this.lineNumber = lineNumber;
     }
 
@@ -40,6 +40,8 @@ public abstract class LocalVariableCommonAttribute extends AttributeInfo {
      * @param localVariableEntries the array
      */
     public void setLocalVariableEntries(LocalVariableCommonEntry[] localVariableEntries) {
+        checkModifiable();
+        markModified();
         this.localVariableTable = localVariableEntries;
     }
 
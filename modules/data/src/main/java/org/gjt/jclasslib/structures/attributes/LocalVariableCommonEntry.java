@@ -46,6 +46,8 @@ public abstract class LocalVariableCommonEntry extends AbstractStructure {
      * @param startPc the <tt>start_pc</tt>
      */
     final public void setStartPc(int startPc) {
+        checkModifiable();
+        markModified();
         this.startPc = startPc;
     }
 
@@ -64,6 +66,8 @@ public abstract class LocalVariableCommonEntry extends AbstractStructure {
      * @param length the length
      */
     final public void setLength(int length) {
+        checkModifiable();
+        markModified();
         this.length = length;
     }
 
@@ -84,6 +88,8 @@ public abstract class LocalVariableCommonEntry extends AbstractStructure {
      * @param nameIndex the index
      */
     final public void setNameIndex(int nameIndex) {
+        checkModifiable();
+        markModified();
         this.nameIndex = nameIndex;
     }
 
@@ -104,6 +110,8 @@ public abstract class LocalVariableCommonEntry extends AbstractStructure {
      * @param descriptorIndex the index
      */
     final public void setDescriptorOrSignatureIndex(int descriptorIndex) {
+        checkModifiable();
+        markModified();
         this.descriptorOrSignatureIndex = descriptorIndex;
     }
 
@@ -121,6 +129,8 @@ public abstract class LocalVariableCommonEntry extends AbstractStructure {
      * Set the index of this local variable.
      */
     final public void setIndex(int index) {
+        checkModifiable();
+        markModified();
         this.index = index;
     }
 
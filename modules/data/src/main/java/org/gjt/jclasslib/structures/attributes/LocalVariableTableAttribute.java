@@ -42,6 +42,8 @@ public class LocalVariableTableAttribute extends LocalVariableCommonAttribute {
      * @param localVariableTable the index
      */
     public void setLocalVariableTable(LocalVariableTableEntry[] localVariableTable) {
+        checkModifiable();
+        markModified();
         this.localVariableTable = localVariableTable;
     }
 
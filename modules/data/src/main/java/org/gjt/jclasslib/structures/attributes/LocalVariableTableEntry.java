@@ -58,6 +58,8 @@ public class LocalVariableTableEntry extends LocalVariableCommonEntry {
      * @param descriptorIndex the index
      */
     public void setDescriptorIndex(int descriptorIndex) {
+        checkModifiable();
+        markModified();
         setDescriptorOrSignatureIndex(descriptorIndex);
     }
 
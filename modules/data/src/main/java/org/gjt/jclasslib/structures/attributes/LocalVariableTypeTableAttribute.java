@@ -41,6 +41,8 @@ public class LocalVariableTypeTableAttribute extends LocalVariableCommonAttribut
      * @param localVariableTypeTable the array
      */
     public void setLocalVariableTypeTable(LocalVariableTypeTableEntry[] localVariableTypeTable) {
+        checkModifiable();
+        markModified();
         this.localVariableTable = localVariableTypeTable;
     }
 
@@ -57,6 +57,8 @@ public class LocalVariableTypeTableEntry extends LocalVariableCommonEntry {
      * @param signatureIndex the index
      */
     public void setSignatureIndex(int signatureIndex) {
+        checkModifiable();
+        markModified();
         this.descriptorOrSignatureIndex = signatureIndex;
     }
 
@@ -45,6 +45,8 @@ public class MethodParametersAttribute extends AttributeInfo {
      * @param entries the array
      */
     public void setMethods(MethodParametersEntry[] entries) {
+        checkModifiable();
+        markModified();
         this.entries = entries;
     }
 
@@ -29,6 +29,16 @@ public class ObjectVerificationTypeEntry extends VerificationTypeInfoEntry {
     }
 
     public void setCpIndex(int cpIndex) {
+        checkModifiable();
+        markModified();
+        this.cpIndex = cpIndex;
+    }
+
+    /**
+     * Initialize the constant pool index without checking whether the class file
+     * has been frozen, as for <tt>StackMapFrameEntry.initialize</tt>.
+     */
+    void initializeCpIndex(int cpIndex) {
         this.cpIndex = cpIndex;
     }
 
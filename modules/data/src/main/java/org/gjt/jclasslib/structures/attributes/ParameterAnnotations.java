@@ -41,6 +41,8 @@ public class ParameterAnnotations extends AbstractStructure {
      * @param runtimeAnnotations the array
      */
     public void setRuntimeAnnotations(Annotation[] runtimeAnnotations) {
+        checkModifiable();
+        markModified();
         this.runtimeAnnotations = runtimeAnnotations;
     }
 
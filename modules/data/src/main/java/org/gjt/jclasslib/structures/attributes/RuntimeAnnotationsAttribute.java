@@ -43,6 +43,8 @@ public class RuntimeAnnotationsAttribute extends AttributeInfo implements Annota
      * @param runtimeAnnotations the array
      */
     public void setRuntimeAnnotations(Annotation[] runtimeAnnotations) {
+        checkModifiable();
+        markModified();
         this.runtimeAnnotations = runtimeAnnotations;
     }
 
@@ -39,6 +39,8 @@ public class RuntimeParameterAnnotationsAttribute extends AttributeInfo {
      * @param parameterAnnotations the array
      */
     public void setParameterAnnotations(ParameterAnnotations[] parameterAnnotations) {
+        checkModifiable();
+        markModified();
         this.parameterAnnotations = parameterAnnotations;
     }
 
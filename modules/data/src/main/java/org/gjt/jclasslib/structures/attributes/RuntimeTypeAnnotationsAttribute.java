@@ -48,6 +48,8 @@ public class RuntimeTypeAnnotationsAttribute extends AttributeInfo implements An
      * @param runtimeAnnotations the array
      */
     public void setRuntimeAnnotations(TypeAnnotation[] runtimeAnnotations) {
+        checkModifiable();
+        markModified();
         this.runtimeTypeAnnotations = runtimeAnnotations;
     }
 
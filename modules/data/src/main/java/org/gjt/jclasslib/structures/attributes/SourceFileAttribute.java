@@ -41,6 +41,8 @@ public class SourceFileAttribute extends AttributeInfo {
         @param sourceFileIndex the index
      */
     public void setSourceFileIndex(int sourceFileIndex) {
+        checkModifiable();
+        markModified();
         this.sourceFileIndex = sourceFileIndex;
     }
 
@@ -60,6 +60,8 @@ public class StackMapFrameEntry extends AbstractStructure {
     }
 
     public void setTag(int tag) {
+        checkModifiable();
+        markModified();
         this.tag = tag;
     }
 
@@ -74,6 +76,8 @@ public class StackMapFrameEntry extends AbstractStructure {
      * Sets the frame type
      */
     public void setFrameType(StackFrameType frameType) {
+        checkModifiable();
+        markModified();
         this.frameType = frameType;
     }
 
@@ -88,6 +92,8 @@ public class StackMapFrameEntry extends AbstractStructure {
      * Sets the offset delta.
      */
     public void setOffsetDelta(int offsetDelta) {
+        checkModifiable();
+        markModified();
         this.offsetDelta = offsetDelta;
     }
 
@@ -102,6 +108,8 @@ public class StackMapFrameEntry extends AbstractStructure {
      * Sets the offset.
      */
     public void setOffset(int offset) {
+        checkModifiable();
+        markModified();
         this.offset = offset;
     }
 
@@ -116,6 +124,8 @@ public class StackMapFrameEntry extends AbstractStructure {
      * Sets the local verification items. No consistency check will be performed.
      */
     public void setLocalItems(VerificationTypeInfoEntry[] localItems) {
+        checkModifiable();
+        markModified();
         this.localItems = localItems;
     }
 
@@ -130,6 +140,24 @@ public class StackMapFrameEntry extends AbstractStructure {
      * Sets the stack verification items. No consistency check will be performed.
      */
     public void setStackItems(VerificationTypeInfoEntry[] stackItems) {
+        checkModifiable();
+        markModified();
+        this.stackItems = stackItems;
+    }
+
+    /**
+     * Initialize all values of a frame that has been decoded from a <tt>StackMapFrameTable</tt>.
+     * Unlike the setters, this does not check whether the class file has been frozen and does
+     * not mark the entry as modified, since the entries of a frozen class file are created on
+     * first access.
+     */
+    void initialize(int tag, StackFrameType frameType, int offsetDelta, int offset,
+                    VerificationTypeInfoEntry[] localItems, VerificationTypeInfoEntry[] stackItems) {
+        this.tag = tag;
+        this.frameType = frameType;
+        this.offsetDelta = offsetDelta;
+        this.offset = offset;
+        this.localItems = localItems;
         this.stackItems = stackItems;
     }
 
@@ -0,0 +1,549 @@
+/*
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU General Public
+    License as published by the Free Software Foundation; either
+    version 2 of the license, or (at your option) any later version.
+*/
+
+package org.gjt.jclasslib.structures.attributes;
+
+import org.gjt.jclasslib.structures.ClassFile;
+import org.gjt.jclasslib.structures.InvalidByteCodeException;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Decoded view of the frames in a <tt>StackMapTable</tt> attribute structure.
+ * <p>
+ * The frames are stored with absolute offsets and with their complete locals and stack
+ * in flat arrays, so that no <tt>StackMapFrameEntry</tt> or <tt>VerificationTypeInfoEntry</tt>
+ * objects are needed. The frame in effect at an offset is found by binary search.
+ * <p>
+ * The locals of a frame are resolved against the previous frames. Locals of the implicit
+ * initial frame, which is derived from the method descriptor, are not stored, since the
+ * attribute does not know its method. For each frame, <tt>getInitialLocalCount</tt>
+ * returns how many of them precede the stored locals. As in the class file format,
+ * <tt>long</tt> and <tt>double</tt> locals are a single item.
+ */
+public class StackMapFrameTable {
+
+    private static final int MIN_CAPACITY = 16;
+    private static final VerificationType[] VERIFICATION_TYPES = VerificationType.values();
+    private static final VerificationTypeInfoEntry[] NO_ITEMS = new VerificationTypeInfoEntry[0];
+
+    private int frameCount;
+    private int[] offsets;
+    private byte[] tags;
+    // number of locals removed from the initial frame, -1 after a full frame
+    private int[] choppedInitialLocals;
+    private int[] itemStarts;
+    private int[] localCounts;
+    private byte[] itemTypes;
+    private int[] itemData;
+    private int itemCount;
+
+    // locals of the previous frame while decoding
+    private byte[] currentTypes = new byte[MIN_CAPACITY];
+    private int[] currentData = new int[MIN_CAPACITY];
+    private int currentCount;
+    private int currentChopped;
+
+    /**
+     * Decode the frames of a <tt>StackMapTable</tt> attribute structure from
+     * a <tt>DataInput</tt>.
+     *
+     * @param in the <tt>DataInput</tt> which is positioned at the number of entries
+     * @return the new <tt>StackMapFrameTable</tt>
+     * @throws InvalidByteCodeException if the byte code is invalid
+     * @throws IOException              if an exception occurs with the <tt>DataInput</tt>
+     */
+    public static StackMapFrameTable read(DataInput in) throws InvalidByteCodeException, IOException {
+
+        int numberOfEntries = in.readUnsignedShort();
+        StackMapFrameTable table = new StackMapFrameTable(numberOfEntries);
+        for (int i = 0; i < numberOfEntries; i++) {
+            int tag = in.readUnsignedByte();
+            StackFrameType frameType = StackFrameType.getFromTag(tag);
+            int offsetDelta;
+            switch (frameType) {
+                case SAME:
+                    table.startFrame(tag, tag);
+                    break;
+                case SAME_LOCALS_1_STACK_ITEM:
+                    table.startFrame(tag, tag - 64);
+                    table.readItem(in);
+                    break;
+                case SAME_LOCALS_1_STACK_ITEM_EXT:
+                    table.startFrame(tag, in.readUnsignedShort());
+                    table.readItem(in);
+                    break;
+                case CHOP:
+                case SAME_EXT:
+                    table.startFrame(tag, in.readUnsignedShort());
+                    break;
+                case APPEND:
+                    offsetDelta = in.readUnsignedShort();
+                    for (int j = 0; j < tag - 251; j++) {
+                        table.readCurrentLocal(in);
+                    }
+                    table.startFrame(tag, offsetDelta);
+                    break;
+                case FULL:
+                    offsetDelta = in.readUnsignedShort();
+                    table.currentCount = 0;
+                    table.currentChopped = -1;
+                    int numLocals = in.readUnsignedShort();
+                    for (int j = 0; j < numLocals; j++) {
+                        table.readCurrentLocal(in);
+                    }
+                    table.startFrame(tag, offsetDelta);
+                    int numStack = in.readUnsignedShort();
+                    for (int j = 0; j < numStack; j++) {
+                        table.readItem(in);
+                    }
+                    break;
+                default:
+                    throw new IllegalStateException(frameType.toString());
+            }
+        }
+        table.finish();
+        return table;
+    }
+
+    /**
+     * Create the view for existing <tt>StackMapFrameEntry</tt> structures. The offsets
+     * are computed from the offset deltas of the entries.
+     *
+     * @param entries the entries
+     * @return the new <tt>StackMapFrameTable</tt>
+     * @throws InvalidByteCodeException if an entry has an invalid tag
+     */
+    public static StackMapFrameTable create(StackMapFrameEntry[] entries) throws InvalidByteCodeException {
+
+        int numberOfEntries = entries == null ? 0 : entries.length;
+        StackMapFrameTable table = new StackMapFrameTable(numberOfEntries);
+        for (int i = 0; i < numberOfEntries; i++) {
+            StackMapFrameEntry entry = entries[i];
+            int tag = entry.getTag();
+            switch (StackFrameType.getFromTag(tag)) {
+                case APPEND:
+                    for (VerificationTypeInfoEntry localItem : entry.getLocalItems()) {
+                        table.addCurrentLocal(localItem.getType().getTag(), getData(localItem));
+                    }
+                    break;
+                case FULL:
+                    table.currentCount = 0;
+                    table.currentChopped = -1;
+                    for (VerificationTypeInfoEntry localItem : entry.getLocalItems()) {
+                        table.addCurrentLocal(localItem.getType().getTag(), getData(localItem));
+                    }
+                    break;
+            }
+            table.startFrame(tag, entry.getOffsetDelta());
+            for (VerificationTypeInfoEntry stackItem : entry.getStackItems()) {
+                table.addItem(stackItem.getType().getTag(), getData(stackItem));
+            }
+        }
+        table.finish();
+        return table;
+    }
+
+    private StackMapFrameTable(int numberOfEntries) {
+        offsets = new int[numberOfEntries];
+        tags = new byte[numberOfEntries];
+        choppedInitialLocals = new int[numberOfEntries];
+        itemStarts = new int[numberOfEntries + 1];
+        localCounts = new int[numberOfEntries];
+        itemTypes = new byte[Math.max(MIN_CAPACITY, 2 * numberOfEntries)];
+        itemData = new int[itemTypes.length];
+    }
+
+    /**
+     * Get the number of frames.
+     *
+     * @return the number
+     */
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * Get the frame that is in effect at a given offset, that is the last frame
+     * whose offset is not greater than the given offset.
+     *
+     * @param offset the offset in the code
+     * @return the index of the frame or <tt>-1</tt> if the implicit initial frame
+     * is in effect
+     */
+    public int getFrameIndexAt(int offset) {
+        int index = Arrays.binarySearch(offsets, 0, frameCount, offset);
+        return index < 0 ? -index - 2 : index;
+    }
+
+    /**
+     * Get the absolute offset of a frame in the code.
+     *
+     * @param frame the index of the frame
+     * @return the offset
+     */
+    public int getFrameOffset(int frame) {
+        return offsets[checkFrame(frame)];
+    }
+
+    /**
+     * Get the tag of a frame.
+     *
+     * @param frame the index of the frame
+     * @return the tag
+     */
+    public int getFrameTag(int frame) {
+        return tags[checkFrame(frame)] & 0xff;
+    }
+
+    /**
+     * Get the type of a frame.
+     *
+     * @param frame the index of the frame
+     * @return the type
+     */
+    public StackFrameType getFrameType(int frame) {
+        try {
+            return StackFrameType.getFromTag(getFrameTag(frame));
+        } catch (InvalidByteCodeException e) {
+            // tags have been checked when decoding
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Get the number of locals of the implicit initial frame that precede the
+     * locals returned by <tt>getLocalType</tt>.
+     *
+     * @param frame             the index of the frame
+     * @param initialLocalCount the number of locals in the implicit initial frame
+     * @return the number of initial locals, <tt>0</tt> if a full frame has replaced them
+     */
+    public int getInitialLocalCount(int frame, int initialLocalCount) {
+        int chopped = choppedInitialLocals[checkFrame(frame)];
+        return chopped < 0 ? 0 : Math.max(0, initialLocalCount - chopped);
+    }
+
+    /**
+     * Get the number of locals of a frame that have been declared by this or
+     * previous frames.
+     *
+     * @param frame the index of the frame
+     * @return the number
+     */
+    public int getLocalCount(int frame) {
+        return localCounts[checkFrame(frame)];
+    }
+
+    /**
+     * Get the verification type of a local of a frame.
+     *
+     * @param frame the index of the frame
+     * @param index the index of the local
+     * @return the type
+     */
+    public VerificationType getLocalType(int frame, int index) {
+        return getType(getLocalPosition(frame, index));
+    }
+
+    /**
+     * Get the constant pool index of a local of type <tt>VerificationType.OBJECT</tt>
+     * or the offset of the <tt>new</tt> instruction of a local of type
+     * <tt>VerificationType.UNINITIALIZED</tt>.
+     *
+     * @param frame the index of the frame
+     * @param index the index of the local
+     * @return the index or offset, <tt>0</tt> for other types
+     */
+    public int getLocalData(int frame, int index) {
+        return itemData[getLocalPosition(frame, index)];
+    }
+
+    /**
+     * Get the number of items on the operand stack of a frame.
+     *
+     * @param frame the index of the frame
+     * @return the number
+     */
+    public int getStackCount(int frame) {
+        checkFrame(frame);
+        return itemStarts[frame + 1] - itemStarts[frame] - localCounts[frame];
+    }
+
+    /**
+     * Get the verification type of a stack item of a frame.
+     *
+     * @param frame the index of the frame
+     * @param index the index of the stack item, <tt>0</tt> is the bottom of the stack
+     * @return the type
+     */
+    public VerificationType getStackType(int frame, int index) {
+        return getType(getStackPosition(frame, index));
+    }
+
+    /**
+     * Get the constant pool index or the offset of a stack item of a frame
+     * as for <tt>getLocalData</tt>.
+     *
+     * @param frame the index of the frame
+     * @param index the index of the stack item, <tt>0</tt> is the bottom of the stack
+     * @return the index or offset, <tt>0</tt> for other types
+     */
+    public int getStackData(int frame, int index) {
+        return itemData[getStackPosition(frame, index)];
+    }
+
+    /**
+     * Create <tt>StackMapFrameEntry</tt> structures for all frames.
+     *
+     * @param classFile the class file of the attribute
+     * @return the entries
+     */
+    public StackMapFrameEntry[] createEntries(ClassFile classFile) {
+
+        StackMapFrameEntry[] entries = new StackMapFrameEntry[frameCount];
+        for (int i = 0; i < frameCount; i++) {
+            StackMapFrameEntry entry = new StackMapFrameEntry();
+            entry.setClassFile(classFile);
+            int explicitStart = getExplicitLocalStart(i);
+            int localsEnd = itemStarts[i] + localCounts[i];
+            // the setters cannot be used, since they reject frozen class files
+            entry.initialize(getFrameTag(i), getFrameType(i), getOffsetDelta(i), offsets[i],
+                    createItems(explicitStart, localsEnd, classFile),
+                    createItems(localsEnd, itemStarts[i + 1], classFile));
+            entries[i] = entry;
+        }
+        return entries;
+    }
+
+    /**
+     * Write the frames in the format of a <tt>StackMapTable</tt> attribute structure
+     * starting with the number of entries.
+     *
+     * @param out the <tt>DataOutput</tt> to which to write
+     * @throws IOException if an exception occurs with the <tt>DataOutput</tt>
+     */
+    public void write(DataOutput out) throws IOException {
+
+        out.writeShort(frameCount);
+        for (int i = 0; i < frameCount; i++) {
+            int tag = getFrameTag(i);
+            out.writeByte(tag);
+            int localsEnd = itemStarts[i] + localCounts[i];
+            switch (getFrameType(i)) {
+                case SAME:
+                    break;
+                case SAME_LOCALS_1_STACK_ITEM:
+                    writeItems(out, localsEnd, itemStarts[i + 1]);
+                    break;
+                case FULL:
+                    out.writeShort(getOffsetDelta(i));
+                    out.writeShort(localCounts[i]);
+                    writeItems(out, itemStarts[i], localsEnd);
+                    out.writeShort(itemStarts[i + 1] - localsEnd);
+                    writeItems(out, localsEnd, itemStarts[i + 1]);
+                    break;
+                default:
+                    out.writeShort(getOffsetDelta(i));
+                    writeItems(out, getExplicitLocalStart(i), localsEnd);
+                    writeItems(out, localsEnd, itemStarts[i + 1]);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Get the length of the frames in the format of a <tt>StackMapTable</tt>
+     * attribute structure including the number of entries.
+     *
+     * @return the length as a number of bytes
+     */
+    public int getLength() {
+
+        int length = 2;
+        for (int i = 0; i < frameCount; i++) {
+            int localsEnd = itemStarts[i] + localCounts[i];
+            switch (getFrameType(i)) {
+                case SAME:
+                    length += 1;
+                    break;
+                case SAME_LOCALS_1_STACK_ITEM:
+                    length += 1 + getItemsLength(localsEnd, itemStarts[i + 1]);
+                    break;
+                case FULL:
+                    length += 7 + getItemsLength(itemStarts[i], itemStarts[i + 1]);
+                    break;
+                default:
+                    length += 3 + getItemsLength(getExplicitLocalStart(i), itemStarts[i + 1]);
+                    break;
+            }
+        }
+        return length;
+    }
+
+    private void startFrame(int tag, int offsetDelta) throws InvalidByteCodeException {
+
+        int type = tag & 0xff;
+        if (type >= 248 && type <= 250) {
+            // chop frames remove locals from the end, possibly into the initial frame
+            int chopCount = 251 - type;
+            int explicitChop = Math.min(chopCount, currentCount);
+            currentCount -= explicitChop;
+            if (currentChopped >= 0) {
+                currentChopped += chopCount - explicitChop;
+            } else if (explicitChop < chopCount) {
+                throw new InvalidByteCodeException("chop frame removes more locals than declared");
+            }
+        }
+        offsets[frameCount] = frameCount == 0 ? offsetDelta : offsets[frameCount - 1] + offsetDelta + 1;
+        tags[frameCount] = (byte)tag;
+        choppedInitialLocals[frameCount] = currentChopped;
+        itemStarts[frameCount] = itemCount;
+        localCounts[frameCount] = currentCount;
+        ensureItemCapacity(currentCount);
+        System.arraycopy(currentTypes, 0, itemTypes, itemCount, currentCount);
+        System.arraycopy(currentData, 0, itemData, itemCount, currentCount);
+        itemCount += currentCount;
+        frameCount++;
+    }
+
+    private void finish() {
+        itemStarts[frameCount] = itemCount;
+        itemTypes = Arrays.copyOf(itemTypes, itemCount);
+        itemData = Arrays.copyOf(itemData, itemCount);
+        currentTypes = null;
+        currentData = null;
+    }
+
+    private void readItem(DataInput in) throws InvalidByteCodeException, IOException {
+        int type = VerificationType.getFromTag(in.readUnsignedByte()).getTag();
+        addItem(type, hasData(type) ? in.readUnsignedShort() : 0);
+    }
+
+    private void readCurrentLocal(DataInput in) throws InvalidByteCodeException, IOException {
+        int type = VerificationType.getFromTag(in.readUnsignedByte()).getTag();
+        addCurrentLocal(type, hasData(type) ? in.readUnsignedShort() : 0);
+    }
+
+    private void addItem(int type, int data) {
+        ensureItemCapacity(1);
+        itemTypes[itemCount] = (byte)type;
+        itemData[itemCount++] = data;
+    }
+
+    private void addCurrentLocal(int type, int data) {
+        if (currentCount == currentTypes.length) {
+            currentTypes = Arrays.copyOf(currentTypes, 2 * currentCount);
+            currentData = Arrays.copyOf(currentData, 2 * currentCount);
+        }
+        currentTypes[currentCount] = (byte)type;
+        currentData[currentCount++] = data;
+    }
+
+    private void ensureItemCapacity(int count) {
+        if (itemCount + count > itemTypes.length) {
+            int newLength = Math.max(itemCount + count, 2 * itemTypes.length);
+            itemTypes = Arrays.copyOf(itemTypes, newLength);
+            itemData = Arrays.copyOf(itemData, newLength);
+        }
+    }
+
+    private int getOffsetDelta(int frame) {
+        return frame == 0 ? offsets[0] : offsets[frame] - offsets[frame - 1] - 1;
+    }
+
+    // append frames declare only their last locals, full frames declare all of them
+    private int getExplicitLocalStart(int frame) {
+        int tag = getFrameTag(frame);
+        int localsEnd = itemStarts[frame] + localCounts[frame];
+        if (tag == 255) {
+            return itemStarts[frame];
+        } else if (tag >= 252 && tag <= 254) {
+            return localsEnd - (tag - 251);
+        } else {
+            return localsEnd;
+        }
+    }
+
+    private VerificationTypeInfoEntry[] createItems(int start, int end, ClassFile classFile) {
+        if (start >= end) {
+            return NO_ITEMS;
+        }
+        VerificationTypeInfoEntry[] items = new VerificationTypeInfoEntry[end - start];
+        for (int i = start; i < end; i++) {
+            VerificationTypeInfoEntry item = getType(i).createEntry();
+            item.setClassFile(classFile);
+            if (item instanceof ObjectVerificationTypeEntry) {
+                ((ObjectVerificationTypeEntry)item).initializeCpIndex(itemData[i]);
+            } else if (item instanceof UninitializedVerificationTypeEntry) {
+                ((UninitializedVerificationTypeEntry)item).initializeOffset(itemData[i]);
+            }
+            items[i - start] = item;
+        }
+        return items;
+    }
+
+    private void writeItems(DataOutput out, int start, int end) throws IOException {
+        for (int i = start; i < end; i++) {
+            out.writeByte(itemTypes[i]);
+            if (hasData(itemTypes[i])) {
+                out.writeShort(itemData[i]);
+            }
+        }
+    }
+
+    private int getItemsLength(int start, int end) {
+        int length = 0;
+        for (int i = start; i < end; i++) {
+            length += hasData(itemTypes[i]) ? 3 : 1;
+        }
+        return length;
+    }
+
+    private int getLocalPosition(int frame, int index) {
+        if (index < 0 || index >= getLocalCount(frame)) {
+            throw new IndexOutOfBoundsException("invalid local " + index);
+        }
+        return itemStarts[frame] + index;
+    }
+
+    private int getStackPosition(int frame, int index) {
+        if (index < 0 || index >= getStackCount(frame)) {
+            throw new IndexOutOfBoundsException("invalid stack item " + index);
+        }
+        return itemStarts[frame] + localCounts[frame] + index;
+    }
+
+    private VerificationType getType(int position) {
+        return VERIFICATION_TYPES[itemTypes[position]];
+    }
+
+    private int checkFrame(int frame) {
+        if (frame < 0 || frame >= frameCount) {
+            throw new IndexOutOfBoundsException("invalid frame " + frame);
+        }
+        return frame;
+    }
+
+    private static boolean hasData(int type) {
+        return type == VerificationType.OBJECT.getTag() || type == VerificationType.UNINITIALIZED.getTag();
+    }
+
+    private static int getData(VerificationTypeInfoEntry item) {
+        if (item instanceof ObjectVerificationTypeEntry) {
+            return ((ObjectVerificationTypeEntry)item).getCpIndex();
+        } else if (item instanceof UninitializedVerificationTypeEntry) {
+            return ((UninitializedVerificationTypeEntry)item).getOffset();
+        } else {
+            return 0;
+        }
+    }
+
+}
@@ -26,16 +26,31 @@ public class StackMapTableAttribute extends AttributeInfo {
 
     private static final int INITIAL_LENGTH = 2;
 
-    private StackMapFrameEntry[] entries;
+    private volatile StackMapFrameEntry[] entries;
+    private volatile StackMapFrameTable frameTable;
 
     /**
      * Get the list of stackMapFrame entries in the <tt>StackMapTableAttribute</tt> structure
-     * as an array of <tt>BootstrapMethodsEntry</tt> structures.
+     * as an array of <tt>BootstrapMethodsEntry</tt> structures. The entries are created
+     * on first access. Since they can be modified, the attribute is marked as modified
+     * and the frame table is created again from the entries on the next call to
+     * <tt>getFrameTable</tt>, unless the class file has been frozen.
      *
      * @return the array
      */
     public StackMapFrameEntry[] getEntries() {
-        return entries;
+        StackMapFrameEntry[] currentEntries = entries;
+        StackMapFrameTable currentFrameTable = frameTable;
+        if (currentEntries == null && currentFrameTable != null) {
+            currentEntries = currentFrameTable.createEntries(classFile);
+            entries = currentEntries;
+            // the created entries do not report their modifications to this attribute
+            markModified();
+        }
+        if (!isFrozen()) {
+            frameTable = null;
+        }
+        return currentEntries;
     }
 
     /**
@@ -45,19 +60,34 @@ public class StackMapTableAttribute extends AttributeInfo {
      * @param entries the array
      */
     public void setEntries(StackMapFrameEntry[] entries) {
+        checkModifiable();
+        markModified();
         this.entries = entries;
+        frameTable = null;
     }
 
-    public void read(DataInput in) throws InvalidByteCodeException, IOException {
+    /**
+     * Get the decoded view of the frames with absolute offsets and resolved locals.
+     * When the attribute is read, the frames are decoded into the view without
+     * creating <tt>StackMapFrameEntry</tt> structures.
+     *
+     * @return the view
+     * @throws InvalidByteCodeException if an entry has an invalid tag
+     */
+    public StackMapFrameTable getFrameTable() throws InvalidByteCodeException {
+        StackMapFrameTable currentFrameTable = frameTable;
+        if (currentFrameTable == null) {
+            currentFrameTable = StackMapFrameTable.create(entries);
+            frameTable = currentFrameTable;
+        }
+        return currentFrameTable;
+    }
 
-        int numberOfEntries = in.readUnsignedShort();
-        entries = new StackMapFrameEntry[numberOfEntries];
+    public void read(DataInput in) throws InvalidByteCodeException, IOException {
 
-        int previousOffset = 0;
-        for (int i = 0; i < numberOfEntries; i++) {
-            entries[i] = StackMapFrameEntry.create(in, classFile, previousOffset);
-            previousOffset += entries[i].getOffsetDelta() + 1;
-        }
+        // entries are created from the frame table when they are requested
+        frameTable = StackMapFrameTable.read(in);
+        entries = null;
 
         if (debug) {
             debug("read ");
@@ -67,6 +97,13 @@ public class StackMapTableAttribute extends AttributeInfo {
     public void write(DataOutput out) throws InvalidByteCodeException, IOException {
         super.write(out);
 
+        if (entries == null && frameTable != null) {
+            frameTable.write(out);
+            if (debug) {
+                debug("wrote ");
+            }
+            return;
+        }
         int numberOfRefs = getLength(entries);
         out.writeShort(numberOfRefs);
         for (int i = 0; i < numberOfRefs; i++) {
@@ -78,6 +115,9 @@ public class StackMapTableAttribute extends AttributeInfo {
     }
 
     public int getAttributeLength() {
+        if (entries == null && frameTable != null) {
+            return frameTable.getLength();
+        }
         int size = INITIAL_LENGTH;
         for (StackMapFrameEntry entry : entries) {
             size += entry.getLength();
@@ -86,7 +126,8 @@ public class StackMapTableAttribute extends AttributeInfo {
     }
 
     protected void debug(String message) {
-        super.debug(message + "StackMapTable attribute with " + getLength(entries) + " entries");
+        super.debug(message + "StackMapTable attribute with " +
+                (entries == null && frameTable != null ? frameTable.getFrameCount() : getLength(entries)) + " entries");
     }
 
 }
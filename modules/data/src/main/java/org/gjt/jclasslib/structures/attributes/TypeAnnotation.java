@@ -34,6 +34,8 @@ public class TypeAnnotation extends AbstractStructure {
     }
 
     public void setTargetType(TypeAnnotationTargetType targetType) {
+        checkModifiable();
+        markModified();
         this.targetType = targetType;
     }
 
@@ -42,6 +44,8 @@ public class TypeAnnotation extends AbstractStructure {
     }
 
     public void setTargetInfo(TargetInfo targetInfo) {
+        checkModifiable();
+        markModified();
         this.targetInfo = targetInfo;
     }
 
@@ -50,6 +54,8 @@ public class TypeAnnotation extends AbstractStructure {
     }
 
     public void setTypePathEntries(TypePathEntry[] typePathEntries) {
+        checkModifiable();
+        markModified();
         this.typePathEntries = typePathEntries;
     }
 
@@ -58,6 +64,8 @@ public class TypeAnnotation extends AbstractStructure {
     }
 
     public void setAnnotation(Annotation annotation) {
+        checkModifiable();
+        markModified();
         this.annotation = annotation;
     }
 
@@ -27,6 +27,8 @@ public class TypePathEntry extends AbstractStructure {
     }
 
     public void setTypePathKind(TypePathKind typePathKind) {
+        checkModifiable();
+        markModified();
         this.typePathKind = typePathKind;
     }
 
@@ -35,6 +37,8 @@ public class TypePathEntry extends AbstractStructure {
     }
 
     public void setTypeArgumentIndex(int typeArgumentIndex) {
+        checkModifiable();
+        markModified();
         this.typeArgumentIndex = typeArgumentIndex;
     }
 
@@ -37,6 +37,16 @@ public class UninitializedVerificationTypeEntry extends VerificationTypeInfoEntr
     }
 
     public void setOffset(int offset) {
+        checkModifiable();
+        markModified();
+        this.offset = offset;
+    }
+
+    /**
+     * Initialize the offset without checking whether the class file has been
+     * frozen, as for <tt>StackMapFrameEntry.initialize</tt>.
+     */
+    void initializeOffset(int offset) {
         this.offset = offset;
     }
 
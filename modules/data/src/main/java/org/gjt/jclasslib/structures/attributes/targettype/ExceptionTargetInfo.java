@@ -25,6 +25,8 @@ public class ExceptionTargetInfo extends TargetInfo {
     }
 
     public void setExceptionTableIndex(int exceptionTableIndex) {
+        checkModifiable();
+        markModified();
         this.exceptionTableIndex = exceptionTableIndex;
     }
 
@@ -28,6 +28,8 @@ public class LocalVarTarget extends AbstractStructure {
     }
 
     public void setStartPc(int startPc) {
+        checkModifiable();
+        markModified();
         this.startPc = startPc;
     }
 
@@ -36,6 +38,8 @@ public class LocalVarTarget extends AbstractStructure {
     }
 
     public void setLength(int length) {
+        checkModifiable();
+        markModified();
         this.length = length;
     }
 
@@ -44,6 +48,8 @@ public class LocalVarTarget extends AbstractStructure {
     }
 
     public void setIndex(int index) {
+        checkModifiable();
+        markModified();
         this.index = index;
     }
 
@@ -25,6 +25,8 @@ public class LocalVarTargetInfo extends TargetInfo {
     }
 
     public void setLocalVarTargets(LocalVarTarget[] localVarTargets) {
+        checkModifiable();
+        markModified();
         this.localVarTargets = localVarTargets;
     }
 
@@ -25,6 +25,8 @@ public class OffsetTargetInfo extends TargetInfo {
     }
 
     public void setOffset(int offset) {
+        checkModifiable();
+        markModified();
         this.offset = offset;
     }
 
@@ -25,6 +25,8 @@ public class ParameterTargetInfo extends TargetInfo {
     }
 
     public void setTypeParameterIndex(int typeParameterIndex) {
+        checkModifiable();
+        markModified();
         this.typeParameterIndex = typeParameterIndex;
     }
 
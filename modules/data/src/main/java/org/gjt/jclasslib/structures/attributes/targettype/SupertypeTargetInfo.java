@@ -25,6 +25,8 @@ public class SupertypeTargetInfo extends TargetInfo {
     }
 
     public void setSupertypeIndex(int supertypeIndex) {
+        checkModifiable();
+        markModified();
         this.supertypeIndex = supertypeIndex;
     }
 
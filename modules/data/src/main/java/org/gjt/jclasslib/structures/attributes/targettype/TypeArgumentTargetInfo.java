@@ -25,6 +25,8 @@ public class TypeArgumentTargetInfo extends TargetInfo {
     }
 
     public void setOffset(int offset) {
+        checkModifiable();
+        markModified();
         this.offset = offset;
     }
 
@@ -33,6 +35,8 @@ public class TypeArgumentTargetInfo extends TargetInfo {
     }
 
     public void setTypeArgumentIndex(int typeArgumentIndex) {
+        checkModifiable();
+        markModified();
         this.typeArgumentIndex = typeArgumentIndex;
     }
 
@@ -26,6 +26,8 @@ public class TypeParameterBoundTargetInfo extends TargetInfo {
     }
 
     public void setTypeParameterIndex(int typeParameterIndex) {
+        checkModifiable();
+        markModified();
         this.typeParameterIndex = typeParameterIndex;
     }
 
@@ -34,6 +36,8 @@ public class TypeParameterBoundTargetInfo extends TargetInfo {
     }
 
     public void setBoundIndex(int boundIndex) {
+        checkModifiable();
+        markModified();
         this.boundIndex = boundIndex;
     }
 
@@ -51,6 +51,7 @@ public class ConstantClassInfo extends CPInfo {
         @param nameIndex the index
      */
     public void setNameIndex(int nameIndex) {
+        checkModifiable();
         this.nameIndex = nameIndex;
     }
     
@@ -87,7 +88,7 @@ public class ConstantClassInfo extends CPInfo {
     }
 
     public int hashCode() {
-        return super.hashCode() ^ nameIndex;
+        return 31 * super.hashCode() + nameIndex;
     }
     
     protected void debug(String message) {
@@ -46,6 +46,7 @@ public class ConstantDoubleInfo extends ConstantLargeNumeric {
         @param number the value
      */
     public void setDouble(double number) {
+        checkModifiable();
         long longBits = Double.doubleToLongBits(number);
         highBytes = (int)(longBits >>> 32 & 0xFFFFFFFFL);
         lowBytes = (int)(longBits & 0xFFFFFFFFL);
@@ -45,6 +45,7 @@ public class ConstantFloatInfo extends ConstantNumeric {
         @param number the value
      */
     public void setFloat(float number) {
+        checkModifiable();
         bytes = Float.floatToIntBits(number);
     }
 
@@ -45,6 +45,7 @@ public class ConstantIntegerInfo extends ConstantNumeric {
         @param number the value
      */
     public void setInt(int number) {
+        checkModifiable();
         bytes = number;
     }
 
@@ -46,6 +46,7 @@ public class ConstantInvokeDynamicInfo extends CPInfo {
     }
 
     public void setBootstrapMethodAttributeIndex(int bootstrapMethodAttributeIndex) {
+        checkModifiable();
         this.bootstrapMethodAttributeIndex = bootstrapMethodAttributeIndex;
     }
 
@@ -54,6 +55,7 @@ public class ConstantInvokeDynamicInfo extends CPInfo {
     }
 
     public void setNameAndTypeIndex(int nameAndTypeIndex) {
+        checkModifiable();
         this.nameAndTypeIndex = nameAndTypeIndex;
     }
 
@@ -97,7 +99,7 @@ public class ConstantInvokeDynamicInfo extends CPInfo {
     }
 
     public int hashCode() {
-        return super.hashCode() ^ bootstrapMethodAttributeIndex ^ nameAndTypeIndex;
+        return 31 * (31 * super.hashCode() + bootstrapMethodAttributeIndex) + nameAndTypeIndex;
     }
     
 }
@@ -42,6 +42,7 @@ public abstract class ConstantLargeNumeric extends CPInfo {
         @param highBytes the <tt>high_bytes</tt> field
      */
     public void setHighBytes(int highBytes) {
+        checkModifiable();
         this.highBytes = highBytes;
     }
 
@@ -58,6 +59,7 @@ public abstract class ConstantLargeNumeric extends CPInfo {
         @param lowBytes the <tt>low_bytes</tt> field
      */
     public void setLowBytes(int lowBytes) {
+        checkModifiable();
         this.lowBytes = lowBytes;
     }
     
@@ -104,7 +106,7 @@ public abstract class ConstantLargeNumeric extends CPInfo {
     }
 
     public int hashCode() {
-        return super.hashCode() ^ highBytes ^ lowBytes;
+        return 31 * (31 * super.hashCode() + highBytes) + lowBytes;
     }
     
 }
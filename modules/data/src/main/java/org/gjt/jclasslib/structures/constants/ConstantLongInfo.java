@@ -37,7 +37,7 @@ public class ConstantLongInfo extends ConstantLargeNumeric {
         @return the value
      */
     public long getLong() {
-        return ((long)highBytes << 32) | ((long)lowBytes & 0xFFFFFFFF);
+        return ((long)highBytes << 32) | ((long)lowBytes & 0xFFFFFFFFL);
     }
 
     /**
@@ -45,8 +45,9 @@ public class ConstantLongInfo extends ConstantLargeNumeric {
         @param number the value
      */
     public void setLong(long number) {
+        checkModifiable();
         highBytes = (int)(number >>> 32);
-        lowBytes = (int)(number & 0xFFFFFFFF);
+        lowBytes = (int)(number & 0xFFFFFFFFL);
     }
 
     public void read(DataInput in)
@@ -63,6 +63,7 @@ public class ConstantMethodHandleInfo extends CPInfo {
         @param referenceIndex the index
      */
     public void setReferenceIndex(int referenceIndex) {
+        checkModifiable();
         this.referenceIndex = referenceIndex;
     }
 
@@ -71,6 +72,7 @@ public class ConstantMethodHandleInfo extends CPInfo {
     }
 
     public void setType(int type) {
+        checkModifiable();
         this.type = type;
     }
 
@@ -136,7 +138,7 @@ public class ConstantMethodHandleInfo extends CPInfo {
     }
 
     public int hashCode() {
-        return super.hashCode() ^ referenceIndex;
+        return 31 * (31 * super.hashCode() + type) + referenceIndex;
     }
     
     protected void debug(String message) {
@@ -51,6 +51,7 @@ public class ConstantMethodTypeInfo extends CPInfo {
         @param descriptorIndex the index
      */
     public void setDescriptorIndex(int descriptorIndex) {
+        checkModifiable();
         this.descriptorIndex = descriptorIndex;
     }
 
@@ -87,7 +88,7 @@ public class ConstantMethodTypeInfo extends CPInfo {
     }
 
     public int hashCode() {
-        return super.hashCode() ^ descriptorIndex;
+        return 31 * super.hashCode() + descriptorIndex;
     }
     
     protected void debug(String message) {
@@ -52,6 +52,7 @@ public class ConstantNameAndTypeInfo extends CPInfo {
         @param nameIndex the index
      */
     public void setNameIndex(int nameIndex) {
+        checkModifiable();
         this.nameIndex = nameIndex;
     }
 
@@ -68,6 +69,7 @@ public class ConstantNameAndTypeInfo extends CPInfo {
         @param descriptorIndex the index
      */
     public void setDescriptorIndex(int descriptorIndex) {
+        checkModifiable();
         this.descriptorIndex = descriptorIndex;
     }
 
@@ -123,7 +125,7 @@ public class ConstantNameAndTypeInfo extends CPInfo {
     }
 
     public int hashCode() {
-        return super.hashCode() ^ nameIndex ^ descriptorIndex;
+        return 31 * (31 * super.hashCode() + nameIndex) + descriptorIndex;
     }
     
 }
@@ -40,6 +40,7 @@ public abstract class ConstantNumeric extends CPInfo {
         @param bytes the <tt>bytes</tt> field
      */
     public void setBytes(int bytes) {
+        checkModifiable();
         this.bytes = bytes;
     }
 
@@ -73,7 +74,7 @@ public abstract class ConstantNumeric extends CPInfo {
     }
 
     public int hashCode() {
-        return super.hashCode() ^ bytes;
+        return 31 * super.hashCode() + bytes;
     }
     
 }
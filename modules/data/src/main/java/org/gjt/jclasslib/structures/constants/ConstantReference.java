@@ -52,6 +52,7 @@ public abstract class ConstantReference extends CPInfo {
         @param classIndex the index
      */
     public void setClassIndex(int classIndex) {
+        checkModifiable();
         this.classIndex = classIndex;
     }
     
@@ -70,6 +71,7 @@ public abstract class ConstantReference extends CPInfo {
         @param nameAndTypeIndex the index
      */
     public void setNameAndTypeIndex(int nameAndTypeIndex) {
+        checkModifiable();
         this.nameAndTypeIndex = nameAndTypeIndex;
     }
 
@@ -118,7 +120,7 @@ public abstract class ConstantReference extends CPInfo {
     }
 
     public int hashCode() {
-        return super.hashCode() ^ classIndex ^ nameAndTypeIndex;
+        return 31 * (31 * super.hashCode() + classIndex) + nameAndTypeIndex;
     }
 
 }
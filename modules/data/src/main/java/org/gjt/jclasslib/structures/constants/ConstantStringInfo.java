@@ -53,6 +53,7 @@ public class ConstantStringInfo extends CPInfo {
         @param stringIndex the index
      */
     public void setStringIndex(int stringIndex) {
+        checkModifiable();
         this.stringIndex = stringIndex;
     }
 
@@ -84,7 +85,7 @@ public class ConstantStringInfo extends CPInfo {
     }
 
     public int hashCode() {
-        return super.hashCode() ^ stringIndex;
+        return 31 * super.hashCode() + stringIndex;
     }
     
 }
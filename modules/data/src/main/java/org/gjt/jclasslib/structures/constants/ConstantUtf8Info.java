@@ -7,12 +7,16 @@
 
 package org.gjt.jclasslib.structures.constants;
 
+import org.gjt.jclasslib.io.ByteBufferInput;
 import org.gjt.jclasslib.structures.CPInfo;
 import org.gjt.jclasslib.structures.InvalidByteCodeException;
 
 import java.io.DataInput;
 import java.io.DataOutput;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.util.Arrays;
 
 /**
  * Describes a <tt>CONSTANT_Utf8_info</tt> constant pool data structure.
@@ -22,7 +26,9 @@ import java.io.IOException;
  */
 public class ConstantUtf8Info extends CPInfo {
 
+    private byte[] bytes;
     private String string;
+    private int hash;
 
     public byte getTag() {
         return CONSTANT_UTF8;
@@ -33,7 +39,7 @@ public class ConstantUtf8Info extends CPInfo {
     }
 
     public String getVerbose() throws InvalidByteCodeException {
-        return string;
+        return getString();
     }
 
     /**
@@ -42,15 +48,28 @@ public class ConstantUtf8Info extends CPInfo {
      * @return the array
      */
     public byte[] getBytes() {
-        return string.getBytes();
+        return getString().getBytes();
+    }
+
+    /**
+     * Get the bytes of this entry in the modified UTF-8 encoding of the class
+     * file format. The returned array must not be modified.
+     *
+     * @return the array
+     */
+    public byte[] getUtf8Bytes() {
+        return bytes;
     }
 
     /**
-     * Get the string in this entry.
+     * Get the string in this entry. The string is decoded on first access.
      *
      * @return the string
      */
     public String getString() {
+        if (string == null && bytes != null) {
+            string = decode(bytes);
+        }
         return string;
     }
 
@@ -61,37 +80,151 @@ public class ConstantUtf8Info extends CPInfo {
      * @deprecated use <tt>setString</tt> instead
      */
     public void setBytes(byte[] bytes) {
-        string = new String(bytes);
+        checkModifiable();
+        setString(new String(bytes));
     }
 
     /**
-     * Set the string in this entry.
+     * Set the string in this entry. The entry cannot be written
+     * while the string is <tt>null</tt>. <p>
+     * <p/>
+     * If the entry is part of the constant pool of a class file, it has to be
+     * unregistered with <tt>ClassFile.unregisterConstantPoolEntry</tt> before and
+     * registered again with <tt>ClassFile.registerConstantPoolEntry</tt> after this
+     * call, so that the class file updates its indices, such as the index for
+     * looking up fields and methods by name.
      *
-     * @param string the string
+     * @param string the string or <tt>null</tt>
      */
     public void setString(String string) {
+        checkModifiable();
         this.string = string;
+        bytes = string == null ? null : encode(string);
+        hash = 0;
+    }
+
+    /**
+     * Get the hash code of the string in this entry, as returned by
+     * <tt>String.hashCode</tt>, without decoding the string in this entry.
+     *
+     * @return the hash code
+     */
+    public int getStringHashCode() {
+        if (string != null) {
+            return string.hashCode();
+        }
+        int h = 0;
+        if (bytes != null) {
+            int length = bytes.length;
+            int position = 0;
+            while (position < length) {
+                int b = bytes[position] & 0xff;
+                char c;
+                if (b < 0x80 || position + 1 >= length) {
+                    c = (char)b;
+                    position++;
+                } else if ((b & 0xe0) == 0xc0 || position + 2 >= length) {
+                    c = (char)((b & 0x1f) << 6 | bytes[position + 1] & 0x3f);
+                    position += 2;
+                } else {
+                    c = (char)((b & 0x0f) << 12 | (bytes[position + 1] & 0x3f) << 6 | bytes[position + 2] & 0x3f);
+                    position += 3;
+                }
+                h = 31 * h + c;
+            }
+        }
+        return h;
+    }
+
+    /**
+     * Check whether the string in this entry is equal to a given string
+     * without decoding the string in this entry.
+     *
+     * @param value the string to compare with
+     * @return whether the strings are equal
+     */
+    public boolean equalsString(String value) {
+        if (string != null) {
+            return string.equals(value);
+        }
+        return bytes != null && value != null && matchPrefix(value) == bytes.length;
+    }
+
+    /**
+     * Check whether the string in this entry starts with a given prefix
+     * without decoding the string in this entry.
+     *
+     * @param prefix the prefix
+     * @return whether the string starts with the prefix
+     */
+    public boolean startsWith(String prefix) {
+        if (string != null) {
+            return string.startsWith(prefix);
+        }
+        return bytes != null && matchPrefix(prefix) >= 0;
     }
 
     public void read(DataInput in)
             throws InvalidByteCodeException, IOException {
 
-        string = in.readUTF();
+        int length = in.readUnsignedShort();
+        Utf8Pool pool = getClassFile() == null ? null : getClassFile().getUtf8Pool();
+        Utf8Pool.Entry entry = null;
+        if (pool != null && in instanceof ByteBufferInput) {
+            // look up the content in place, a pooled content is never copied out of the buffer
+            ByteBufferInput bufferInput = (ByteBufferInput)in;
+            int position = bufferInput.getPosition();
+            if (bufferInput.getBuffer().limit() - position < length) {
+                throw new EOFException();
+            }
+            entry = pool.intern(bufferInput.getBuffer(), position, length);
+            if (entry != null) {
+                bufferInput.setPosition(position + length);
+            }
+        }
+        if (entry == null) {
+            bytes = new byte[length];
+            in.readFully(bytes);
+            if (pool != null) {
+                entry = pool.intern(bytes);
+            }
+        }
+        if (entry != null) {
+            bytes = entry.bytes;
+            string = entry.string;
+            hash = entry.hash;
+        } else {
+            string = null;
+            hash = 0;
+            checkEncoding(bytes);
+        }
 
         if (debug) debug("read ");
     }
 
+    public int getEntryLength() {
+        // tag and length
+        return 3 + (bytes == null ? 0 : bytes.length);
+    }
+
     public void write(DataOutput out)
             throws InvalidByteCodeException, IOException {
 
+        if (bytes == null) {
+            throw new InvalidByteCodeException("string of " + getTagVerbose() + " is null");
+        }
+        if (bytes.length > 0xffff) {
+            throw new UTFDataFormatException("encoded string too long: " + bytes.length + " bytes");
+        }
         out.writeByte(CONSTANT_UTF8);
-        out.writeUTF(string);
+        out.writeShort(bytes.length);
+        out.write(bytes);
         if (debug) debug("wrote ");
     }
 
     protected void debug(String message) {
-        super.debug(message + getTagVerbose() + " with length " + string.length() +
-                " (\"" + string + "\")");
+        super.debug(message + getTagVerbose() + " with length " + getString().length() +
+                " (\"" + getString() + "\")");
     }
 
     public boolean equals(Object object) {
@@ -99,12 +232,140 @@ public class ConstantUtf8Info extends CPInfo {
             return false;
         }
         ConstantUtf8Info constantUtf8Info = (ConstantUtf8Info)object;
-        return super.equals(object) && constantUtf8Info.string.equals(string);
+        return super.equals(object) && Arrays.equals(constantUtf8Info.bytes, bytes);
     }
 
     public int hashCode() {
-        return super.hashCode() ^ string.hashCode();
+        if (hash == 0 && bytes != null) {
+            int h = 0;
+            for (byte b : bytes) {
+                h = 31 * h + b;
+            }
+            hash = h;
+        }
+        return 31 * super.hashCode() + hash;
     }
 
+    // Returns the number of bytes matched by the encoded prefix or -1 if the prefix does not match
+    private int matchPrefix(String prefix) {
+        int length = bytes.length;
+        int position = 0;
+        for (int i = 0; i < prefix.length(); i++) {
+            char c = prefix.charAt(i);
+            if (c != 0 && c < 0x80) {
+                if (position >= length || bytes[position++] != c) {
+                    return -1;
+                }
+            } else if (c < 0x800) {
+                if (position + 2 > length ||
+                        bytes[position++] != (byte)(0xc0 | c >> 6) ||
+                        bytes[position++] != (byte)(0x80 | c & 0x3f))
+                {
+                    return -1;
+                }
+            } else {
+                if (position + 3 > length ||
+                        bytes[position++] != (byte)(0xe0 | c >> 12) ||
+                        bytes[position++] != (byte)(0x80 | c >> 6 & 0x3f) ||
+                        bytes[position++] != (byte)(0x80 | c & 0x3f))
+                {
+                    return -1;
+                }
+            }
+        }
+        return position;
+    }
+
+    private static byte[] encode(String string) {
+        int stringLength = string.length();
+        int length = 0;
+        for (int i = 0; i < stringLength; i++) {
+            char c = string.charAt(i);
+            if (c != 0 && c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else {
+                length += 3;
+            }
+        }
+
+        byte[] bytes = new byte[length];
+        int position = 0;
+        for (int i = 0; i < stringLength; i++) {
+            char c = string.charAt(i);
+            if (c != 0 && c < 0x80) {
+                bytes[position++] = (byte)c;
+            } else if (c < 0x800) {
+                bytes[position++] = (byte)(0xc0 | c >> 6);
+                bytes[position++] = (byte)(0x80 | c & 0x3f);
+            } else {
+                bytes[position++] = (byte)(0xe0 | c >> 12);
+                bytes[position++] = (byte)(0x80 | c >> 6 & 0x3f);
+                bytes[position++] = (byte)(0x80 | c & 0x3f);
+            }
+        }
+        return bytes;
+    }
+
+    static String decode(byte[] bytes) {
+        int length = bytes.length;
+        char[] chars = new char[length];
+        int position = 0;
+        // fast path for ASCII
+        while (position < length && bytes[position] >= 0) {
+            chars[position] = (char)bytes[position];
+            position++;
+        }
+        if (position == length) {
+            return new String(chars);
+        }
+
+        // the encoding has been checked when the entry was read
+        int charCount = position;
+        while (position < length) {
+            int b = bytes[position] & 0xff;
+            if (b < 0x80) {
+                chars[charCount++] = (char)b;
+                position++;
+            } else if ((b & 0xe0) == 0xc0) {
+                chars[charCount++] = (char)((b & 0x1f) << 6 | bytes[position + 1] & 0x3f);
+                position += 2;
+            } else {
+                chars[charCount++] = (char)((b & 0x0f) << 12 | (bytes[position + 1] & 0x3f) << 6 | bytes[position + 2] & 0x3f);
+                position += 3;
+            }
+        }
+        return new String(chars, 0, charCount);
+    }
+
+    static void checkEncoding(byte[] bytes) throws UTFDataFormatException {
+        int length = bytes.length;
+        int position = 0;
+        while (position < length) {
+            int b = bytes[position];
+            if (b >= 0) {
+                position++;
+            } else if ((b & 0xe0) == 0xc0) {
+                checkContinuation(bytes, position + 1);
+                position += 2;
+            } else if ((b & 0xf0) == 0xe0) {
+                checkContinuation(bytes, position + 1);
+                checkContinuation(bytes, position + 2);
+                position += 3;
+            } else {
+                throw new UTFDataFormatException("malformed input around byte " + position);
+            }
+        }
+    }
+
+    private static void checkContinuation(byte[] bytes, int position) throws UTFDataFormatException {
+        if (position >= bytes.length) {
+            throw new UTFDataFormatException("malformed input: partial character at end");
+        }
+        if ((bytes[position] & 0xc0) != 0x80) {
+            throw new UTFDataFormatException("malformed input around byte " + position);
+        }
+    }
 
 }
@@ -0,0 +1,275 @@
+/*
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU General Public
+    License as published by the Free Software Foundation; either
+    version 2 of the license, or (at your option) any later version.
+*/
+
+package org.gjt.jclasslib.structures.constants;
+
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+    Pool for sharing the contents of <tt>CONSTANT_Utf8_info</tt> entries between
+    class files. <p>
+
+    When a class file is read with a pool, all <tt>ConstantUtf8Info</tt> entries with
+    the same content share a single byte array and a single <tt>String</tt>. Repeated
+    names and descriptors such as <tt>java/lang/Object</tt> or <tt>()V</tt> are then held
+    only once, no matter how many class files are kept in memory. <p>
+
+    The pool has a fixed number of slots. A new content replaces the content that was
+    previously stored in its slot, so the memory used by the pool is bounded. The pool
+    can be used by any number of threads concurrently without locking.
+*/
+public class Utf8Pool {
+
+    /** Default number of slots. */
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+    /** Default maximum length in bytes of pooled contents. */
+    public static final int DEFAULT_MAX_LENGTH = 1024;
+
+    private static final int HITS = 0;
+    private static final int MISSES = 1;
+    private static final int EVICTIONS = 2;
+    private static final int STRIPES = 16;
+    // one counter block per stripe, padded to avoid false sharing between threads
+    private static final int STRIPE_SIZE = 8;
+
+    private final AtomicReferenceArray<Entry> entries;
+    private final int mask;
+    private final int maxLength;
+    private final AtomicLongArray counters = new AtomicLongArray(STRIPES * STRIPE_SIZE);
+
+    /**
+        Constructor with default capacity and maximum length.
+     */
+    public Utf8Pool() {
+        this(DEFAULT_CAPACITY, DEFAULT_MAX_LENGTH);
+    }
+
+    /**
+        Constructor.
+        @param capacity the number of slots, rounded up to the next power of two
+        @param maxLength the maximum length in bytes of a pooled content. Longer
+                         contents are rarely repeated and are not pooled.
+     */
+    public Utf8Pool(int capacity, int maxLength) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("invalid capacity " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        entries = new AtomicReferenceArray<Entry>(size);
+        mask = size - 1;
+        this.maxLength = maxLength;
+    }
+
+    /**
+        Get the number of slots of this pool.
+        @return the number of slots
+     */
+    public int getCapacity() {
+        return entries.length();
+    }
+
+    /**
+        Get the number of occupied slots. This scans all slots.
+        @return the number of occupied slots
+     */
+    public int getSize() {
+        int size = 0;
+        for (int i = 0; i < entries.length(); i++) {
+            if (entries.get(i) != null) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    /**
+        Get the number of lookups that found a pooled content.
+        @return the number of hits
+     */
+    public long getHitCount() {
+        return getCount(HITS);
+    }
+
+    /**
+        Get the number of lookups that did not find a pooled content.
+        @return the number of misses
+     */
+    public long getMissCount() {
+        return getCount(MISSES);
+    }
+
+    /**
+        Get the number of pooled contents that have been replaced by a different content.
+        @return the number of evictions
+     */
+    public long getEvictionCount() {
+        return getCount(EVICTIONS);
+    }
+
+    /**
+        Get the ratio of hits to all lookups.
+        @return the ratio between 0 and 1
+     */
+    public double getHitRatio() {
+        long hits = getHitCount();
+        long total = hits + getMissCount();
+        return total == 0 ? 0 : (double)hits / total;
+    }
+
+    /**
+        Remove all pooled contents and reset the statistics.
+     */
+    public void clear() {
+        for (int i = 0; i < entries.length(); i++) {
+            entries.set(i, null);
+        }
+        for (int i = 0; i < counters.length(); i++) {
+            counters.set(i, 0);
+        }
+    }
+
+    public String toString() {
+        return "Utf8Pool with " + getCapacity() + " slots, " + getHitCount() + " hits, " +
+                getMissCount() + " misses, " + getEvictionCount() + " evictions";
+    }
+
+    /**
+        Look up the content of a <tt>CONSTANT_Utf8_info</tt> entry in a buffer.
+        @param buffer the buffer
+        @param offset the absolute offset of the encoded bytes
+        @param length the number of encoded bytes
+        @return the pooled entry or <tt>null</tt> if the content is too long to be pooled
+        @throws UTFDataFormatException if the content is not valid modified UTF-8
+     */
+    Entry intern(ByteBuffer buffer, int offset, int length) throws UTFDataFormatException {
+
+        if (length > maxLength) {
+            return null;
+        }
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + buffer.get(offset + i);
+        }
+        int index = spread(hash) & mask;
+        Entry entry = entries.get(index);
+        if (entry != null && entry.hash == hash && entry.matches(buffer, offset, length)) {
+            count(HITS);
+            return entry;
+        }
+
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(offset + i);
+        }
+        return store(index, entry, bytes, hash);
+    }
+
+    /**
+        Look up the content of a <tt>CONSTANT_Utf8_info</tt> entry.
+        @param bytes the encoded bytes. If the content is not pooled yet, the array
+                     is taken over by the pool and must not be modified afterwards.
+        @return the pooled entry or <tt>null</tt> if the content is too long to be pooled
+        @throws UTFDataFormatException if the content is not valid modified UTF-8
+     */
+    Entry intern(byte[] bytes) throws UTFDataFormatException {
+
+        int length = bytes.length;
+        if (length > maxLength) {
+            return null;
+        }
+        int hash = 0;
+        for (byte b : bytes) {
+            hash = 31 * hash + b;
+        }
+        int index = spread(hash) & mask;
+        Entry entry = entries.get(index);
+        if (entry != null && entry.hash == hash && entry.matches(bytes)) {
+            count(HITS);
+            return entry;
+        }
+        return store(index, entry, bytes, hash);
+    }
+
+    private Entry store(int index, Entry previousEntry, byte[] bytes, int hash) throws UTFDataFormatException {
+        ConstantUtf8Info.checkEncoding(bytes);
+        Entry entry = new Entry(bytes, ConstantUtf8Info.decode(bytes), hash);
+        entries.set(index, entry);
+        count(MISSES);
+        if (previousEntry != null) {
+            count(EVICTIONS);
+        }
+        return entry;
+    }
+
+    private void count(int counter) {
+        int stripe = (int)Thread.currentThread().getId() & (STRIPES - 1);
+        counters.incrementAndGet(stripe * STRIPE_SIZE + counter);
+    }
+
+    private long getCount(int counter) {
+        long count = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            count += counters.get(i * STRIPE_SIZE + counter);
+        }
+        return count;
+    }
+
+    private static int spread(int hash) {
+        // the polynomial hash of short strings has poor low bits
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        return hash;
+    }
+
+    /**
+        Pooled content of a <tt>CONSTANT_Utf8_info</tt> entry.
+     */
+    static final class Entry {
+
+        final byte[] bytes;
+        final String string;
+        final int hash;
+
+        Entry(byte[] bytes, String string, int hash) {
+            this.bytes = bytes;
+            this.string = string;
+            this.hash = hash;
+        }
+
+        boolean matches(ByteBuffer buffer, int offset, int length) {
+            if (bytes.length != length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (bytes[i] != buffer.get(offset + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        boolean matches(byte[] otherBytes) {
+            if (bytes.length != otherBytes.length) {
+                return false;
+            }
+            for (int i = 0; i < otherBytes.length; i++) {
+                if (bytes[i] != otherBytes[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+}
@@ -48,6 +48,8 @@ public class AnnotationElementValue extends ElementValue implements AnnotationDa
      * @param elementValuePairEntries the array
      */
     public void setElementValuePairEntries(ElementValuePair[] elementValuePairEntries) {
+        checkModifiable();
+        markModified();
         this.elementValuePairEntries = elementValuePairEntries;
     }
 
@@ -61,6 +63,8 @@ public class AnnotationElementValue extends ElementValue implements AnnotationDa
      * @param typeIndex the <tt>type_index</tt>
      */
     public void setTypeIndex(int typeIndex) {
+        checkModifiable();
+        markModified();
         this.typeIndex = typeIndex;
     }
 
@@ -47,6 +47,8 @@ public class ArrayElementValue extends ElementValue {
      * @param elementValueEntries the array
      */
     public void setConstValueIndex(ElementValue[] elementValueEntries) {
+        checkModifiable();
+        markModified();
         this.elementValueEntries = elementValueEntries;
     }
 
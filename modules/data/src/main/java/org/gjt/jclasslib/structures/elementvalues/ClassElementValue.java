@@ -44,6 +44,8 @@ public class ClassElementValue extends ElementValue {
      * @param classInfoIndex the <tt>class_info_index</tt>
      */
     public void setClassInfoIndex(int classInfoIndex) {
+        checkModifiable();
+        markModified();
         this.classInfoIndex = classInfoIndex;
     }
 
@@ -44,6 +44,8 @@ public class ConstElementValue extends ElementValue {
      * @param constValueIndex the <tt>const_value_index</tt>
      */
     public void setConstValueIndex(int constValueIndex) {
+        checkModifiable();
+        markModified();
         this.constValueIndex = constValueIndex;
     }
 
@@ -66,6 +66,8 @@ public class ElementValuePair extends AbstractStructure {
      * @param elementValue the <tt>element_value</tt>
      */
     public void setElementValue(ElementValue elementValue) {
+        checkModifiable();
+        markModified();
         this.elementValue = elementValue;
     }
 
@@ -84,6 +86,8 @@ public class ElementValuePair extends AbstractStructure {
      * @param elementNameIndex the <tt>element_name_index</tt>
      */
     public void setElementNameIndex(int elementNameIndex) {
+        checkModifiable();
+        markModified();
         this.elementNameIndex = elementNameIndex;
     }
 
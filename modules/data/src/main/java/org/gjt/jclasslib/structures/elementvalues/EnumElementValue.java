@@ -45,6 +45,8 @@ public class EnumElementValue extends ElementValue {
      * @param typeNameIndex the <tt>type_name_index</tt>
      */
     public void setTypeNameIndex(int typeNameIndex) {
+        checkModifiable();
+        markModified();
         this.typeNameIndex = typeNameIndex;
     }
 
@@ -63,6 +65,8 @@ public class EnumElementValue extends ElementValue {
      * @param constNameIndex the <tt>const_name_index</tt>
      */
     public void setConstNameIndex(int constNameIndex) {
+        checkModifiable();
+        markModified();
         this.constNameIndex = constNameIndex;
     }
 
@@ -0,0 +1,143 @@
+/*
+ This library is free software; you can redistribute it and/or
+ modify it under the terms of the GNU General Public
+ License as published by the Free Software Foundation; either
+ version 2 of the license, or (at your option) any later version.
+ */
+
+package org.gjt.jclasslib.test;
+
+import org.gjt.jclasslib.io.ClassPathIndex;
+import org.gjt.jclasslib.io.JarFileCache;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.testng.Assert.*;
+
+public class ClassPathIndexTest {
+
+    @Test
+    public void testFirstArchiveWins() throws IOException {
+        File directory = TestFiles.createTempDirectory("jclasslib");
+        try {
+            File a = createJarFile(directory, "a.jar", "p/A", "p/B");
+            File b = createJarFile(directory, "b.jar", "p/B", "p/C");
+            ClassPathIndex index = new ClassPathIndex(new String[] {a.getPath(), b.getPath()});
+
+            assertEquals(index.getEntryCount(), 2);
+            assertEquals(index.getEntry(0), a.getCanonicalFile());
+            assertFalse(index.isDirectory(0));
+            assertEquals(index.getArchiveClassCount(), 3);
+            assertEquals(index.findEntry("p.A"), 0);
+            assertEquals(index.findEntry("p/B"), 0);
+            assertEquals(index.findEntry("p.C"), 1);
+            assertEquals(index.findEntry("p.D"), -1);
+            // directory entries of archives are not classes
+            assertEquals(index.findEntry("p"), -1);
+
+            index = new ClassPathIndex(new String[] {b.getPath(), a.getPath()});
+            assertEquals(index.findEntry("p.A"), 1);
+            assertEquals(index.findEntry("p.B"), 0);
+        } finally {
+            TestFiles.delete(directory);
+        }
+    }
+
+    @Test
+    public void testDirectories() throws IOException {
+        File directory = TestFiles.createTempDirectory("jclasslib");
+        try {
+            File a = createJarFile(directory, "a.jar", "p/A", "p/B");
+            File before = new File(directory, "before");
+            File after = new File(directory, "after");
+            byte[] bytes = TestFiles.readResource(TestFiles.CLASS_RESOURCES[0]);
+            TestFiles.writeFile(new File(before, "p/A.class"), bytes);
+            TestFiles.writeFile(new File(after, "p/B.class"), bytes);
+            TestFiles.writeFile(new File(after, "p/D.class"), bytes);
+            ClassPathIndex index = new ClassPathIndex(new String[] {before.getPath(), a.getPath(), after.getPath()});
+
+            assertTrue(index.isDirectory(0));
+            assertFalse(index.isDirectory(1));
+            assertTrue(index.isDirectory(2));
+            assertEquals(index.getArchiveClassCount(), 2);
+            // an earlier directory shadows the archive, a later one does not
+            assertEquals(index.findEntry("p.A"), 0);
+            assertEquals(index.findEntry("p.B"), 1);
+            assertEquals(index.findEntry("p.D"), 2);
+            assertEquals(index.findEntry("p.E"), -1);
+
+            // the contents of directories are not indexed
+            TestFiles.writeFile(new File(before, "p/B.class"), bytes);
+            assertEquals(index.findEntry("p.B"), 0);
+        } finally {
+            TestFiles.delete(directory);
+        }
+    }
+
+    @Test
+    public void testCachedListing() throws IOException {
+        File directory = TestFiles.createTempDirectory("jclasslib");
+        try {
+            File a = createJarFile(directory, "a.jar", "p/A", "p/B");
+            File missing = new File(directory, "missing.jar");
+            File cacheDirectory = new File(directory, "cache");
+            String[] classPath = {missing.getPath(), a.getPath()};
+            ClassPathIndex index = new ClassPathIndex(classPath, cacheDirectory);
+            assertEquals(index.findEntry("p.A"), 1);
+            assertFalse(index.refresh());
+            File[] cacheFiles = cacheDirectory.listFiles();
+            assertNotNull(cacheFiles);
+            assertEquals(cacheFiles.length, 1);
+
+            // replace the archive with invalid content of the same size and time, so only the cache can list it
+            long length = a.length();
+            long lastModified = a.lastModified();
+            byte[] invalidBytes = new byte[(int)length];
+            Arrays.fill(invalidBytes, (byte)1);
+            TestFiles.writeFile(a, invalidBytes);
+            assertTrue(a.setLastModified(lastModified));
+            JarFileCache.getSharedCache().clear();
+
+            index = new ClassPathIndex(classPath, cacheDirectory);
+            assertEquals(index.getArchiveClassCount(), 2);
+            assertEquals(index.findEntry("p.A"), 1);
+            assertEquals(index.findEntry("p.B"), 1);
+            assertEquals(new ClassPathIndex(classPath).findEntry("p.A"), -1);
+
+            // a changed archive is listed again and its listing is replaced in the cache
+            createJarFile(directory, "a.jar", "p/C");
+            assertTrue(a.setLastModified(lastModified - 10000));
+            assertTrue(index.refresh());
+            assertEquals(index.findEntry("p.A"), -1);
+            assertEquals(index.findEntry("p.C"), 1);
+            assertEquals(new ClassPathIndex(classPath, cacheDirectory).findEntry("p.C"), 1);
+            assertEquals(cacheDirectory.listFiles().length, 1);
+
+            // an archive that has been added is listed by refresh
+            createJarFile(directory, "missing.jar", "p/C");
+            assertTrue(index.refresh());
+            assertEquals(index.findEntry("p.C"), 0);
+        } finally {
+            JarFileCache.getSharedCache().clear();
+            TestFiles.delete(directory);
+        }
+    }
+
+    private static File createJarFile(File directory, String name, String... classNames) throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+        byte[] bytes = TestFiles.readResource(TestFiles.CLASS_RESOURCES[0]);
+        entries.put("p/", null);
+        for (String className : classNames) {
+            entries.put(className + ".class", bytes);
+        }
+        File file = new File(directory, name);
+        TestFiles.writeJarFile(file, entries);
+        return file;
+    }
+
+}
@@ -0,0 +1,168 @@
+/*
+ This library is free software; you can redistribute it and/or
+ modify it under the terms of the GNU General Public
+ License as published by the Free Software Foundation; either
+ version 2 of the license, or (at your option) any later version.
+ */
+
+package org.gjt.jclasslib.test;
+
+import org.gjt.jclasslib.io.ClassFileReader;
+import org.gjt.jclasslib.io.ClassFileWriter;
+import org.gjt.jclasslib.structures.CPInfo;
+import org.gjt.jclasslib.structures.ClassFile;
+import org.gjt.jclasslib.structures.ConstantPoolBuilder;
+import org.gjt.jclasslib.structures.InvalidByteCodeException;
+import org.gjt.jclasslib.structures.constants.ConstantDoubleInfo;
+import org.gjt.jclasslib.structures.constants.ConstantLongInfo;
+import org.gjt.jclasslib.structures.constants.ConstantMethodrefInfo;
+import org.gjt.jclasslib.structures.constants.ConstantStringInfo;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+
+import static org.testng.Assert.*;
+
+public class ConstantPoolBuilderTest {
+
+    @Test
+    public void testLargeNumericEntries() throws IOException, InvalidByteCodeException {
+        ClassFile classFile = readClassFile();
+        ConstantPoolBuilder builder = new ConstantPoolBuilder(classFile);
+        int count = builder.getConstantPoolCount();
+        assertEquals(count, classFile.getConstantPool().length);
+
+        int longIndex = builder.addLong(0x123456789abcdefL);
+        assertEquals(longIndex, count);
+        int doubleIndex = builder.addDouble(-1.5);
+        assertEquals(doubleIndex, count + 2);
+        int integerIndex = builder.addInteger(0x7abcdef0);
+        assertEquals(integerIndex, count + 4);
+        int lastDoubleIndex = builder.addDouble(2.5);
+        assertEquals(lastDoubleIndex, count + 5);
+        assertEquals(builder.getConstantPoolCount(), count + 7);
+        builder.commit();
+
+        // the second index of a long or a double is unused, even after the last entry
+        CPInfo[] constantPool = classFile.getConstantPool();
+        assertEquals(constantPool.length, count + 7);
+        assertTrue(constantPool[longIndex] instanceof ConstantLongInfo);
+        assertNull(constantPool[longIndex + 1]);
+        assertTrue(constantPool[doubleIndex] instanceof ConstantDoubleInfo);
+        assertNull(constantPool[doubleIndex + 1]);
+        assertTrue(constantPool[lastDoubleIndex] instanceof ConstantDoubleInfo);
+        assertNull(constantPool[lastDoubleIndex + 1]);
+        assertEquals(ConstantPoolBuilder.computeConstantPoolCount(constantPool), count + 7);
+        assertEquals(ConstantPoolBuilder.computeConstantPoolCount(new CPInfo[] {null, constantPool[longIndex]}), 3);
+        assertEquals(ConstantPoolBuilder.computeConstantPoolCount(new CPInfo[] {null, constantPool[integerIndex]}), 2);
+
+        // the entries are found again and survive writing and reading
+        assertEquals(builder.addLong(0x123456789abcdefL), longIndex);
+        assertEquals(builder.addDouble(-1.5), doubleIndex);
+        assertFalse(builder.hasUncommittedEntries());
+        byte[] bytes = ClassFileWriter.writeToByteArray(classFile);
+        ClassFile readClassFile = ClassFileReader.readFromByteArray(bytes, 0, bytes.length);
+        assertEquals(readClassFile.getConstantPool().length, count + 7);
+        assertEquals(readClassFile.getConstantPoolLookup().findLong(0x123456789abcdefL), longIndex);
+        assertEquals(readClassFile.getConstantPoolLookup().findDouble(-1.5), doubleIndex);
+        assertEquals(readClassFile.getConstantPoolLookup().findInteger(0x7abcdef0), integerIndex);
+        assertEquals(readClassFile.getConstantPoolLookup().findDouble(2.5), lastDoubleIndex);
+    }
+
+    @Test
+    public void testExistingEntries() throws IOException, InvalidByteCodeException {
+        ClassFile classFile = readClassFile();
+        CPInfo[] constantPool = classFile.getConstantPool();
+        ConstantPoolBuilder builder = new ConstantPoolBuilder(classFile);
+
+        assertEquals(builder.addClass(classFile.getThisClassName().replace('.', '/')), classFile.getThisClass());
+        assertEquals(builder.addUtf8("Code"), classFile.getConstantPoolLookup().findUtf8("Code"));
+        for (int i = 1; i < constantPool.length; i++) {
+            if (constantPool[i] instanceof ConstantMethodrefInfo) {
+                ConstantMethodrefInfo methodrefInfo = (ConstantMethodrefInfo)constantPool[i];
+                String className = methodrefInfo.getClassInfo().getName();
+                String name = methodrefInfo.getNameAndTypeInfo().getName();
+                String descriptor = methodrefInfo.getNameAndTypeInfo().getDescriptor();
+                assertEquals(builder.addMethodref(className, name, descriptor), i);
+            }
+        }
+        assertFalse(builder.hasUncommittedEntries());
+
+        // entries that have been added are reused as well
+        int methodrefIndex = builder.addMethodref("test/Added", "added", "()V");
+        int count = builder.getConstantPoolCount();
+        assertEquals(methodrefIndex, count - 1);
+        int classIndex = builder.addClass("test/Added");
+        assertTrue(classIndex >= constantPool.length && classIndex < methodrefIndex);
+        assertEquals(builder.addUtf8("added"), builder.getConstantPoolLookup().findUtf8("added"));
+        assertEquals(builder.addNameAndType("added", "()V"), builder.getConstantPoolLookup().findNameAndType("added", "()V"));
+        assertEquals(builder.addMethodref("test/Added", "added", "()V"), methodrefIndex);
+        assertEquals(builder.getConstantPoolCount(), count);
+    }
+
+    @Test
+    public void testCopyOnWrite() throws IOException, InvalidByteCodeException {
+        ClassFile classFile = readClassFile();
+        CPInfo[] constantPool = classFile.getConstantPool();
+        ConstantPoolBuilder builder = new ConstantPoolBuilder(classFile);
+
+        // uncommitted entries are neither in the array nor in the lookup of the class file
+        int index = builder.addString("first added string");
+        assertTrue(builder.hasUncommittedEntries());
+        assertSame(classFile.getConstantPool(), constantPool);
+        // the string entry follows the entry of its value
+        assertEquals(classFile.getConstantPool().length, index - 1);
+        assertEquals(classFile.getConstantPoolLookup().findString("first added string"), -1);
+        assertEquals(builder.getConstantPoolLookup().findString("first added string"), index);
+
+        builder.commit();
+        CPInfo[] committedConstantPool = classFile.getConstantPool();
+        assertNotSame(committedConstantPool, constantPool);
+        assertEquals(committedConstantPool.length, builder.getConstantPoolCount());
+        assertEquals(classFile.getConstantPoolLookup().findString("first added string"), index);
+        ConstantStringInfo stringInfo = (ConstantStringInfo)classFile.getConstantPoolEntry(index, ConstantStringInfo.class);
+        assertEquals(stringInfo.getStringIndex(), classFile.getConstantPoolLookup().findUtf8("first added string"));
+
+        // the committed array is shared with the class file and is not written by further additions
+        int secondIndex = builder.addString("second added string");
+        assertSame(classFile.getConstantPool(), committedConstantPool);
+        assertEquals(committedConstantPool.length, secondIndex - 1);
+        assertEquals(classFile.getConstantPoolLookup().findString("second added string"), -1);
+
+        // reset discards the uncommitted entries
+        builder.reset();
+        assertFalse(builder.hasUncommittedEntries());
+        assertEquals(builder.getConstantPoolCount(), committedConstantPool.length);
+        assertEquals(builder.getConstantPoolLookup().findString("second added string"), -1);
+        assertEquals(builder.getConstantPoolLookup().findString("first added string"), index);
+        builder.commit();
+        assertSame(classFile.getConstantPool(), committedConstantPool);
+
+        assertEquals(builder.addString("second added string"), secondIndex);
+        builder.commit();
+        assertEquals(classFile.getConstantPoolLookup().findString("second added string"), secondIndex);
+    }
+
+    @Test
+    public void testGrowth() throws IOException, InvalidByteCodeException {
+        ClassFile classFile = readClassFile();
+        int count = classFile.getConstantPool().length;
+        ConstantPoolBuilder builder = new ConstantPoolBuilder(classFile);
+        for (int i = 0; i < 5000; i++) {
+            assertEquals(builder.addInteger(1000000 + i), count + i);
+        }
+        builder.commit();
+        for (int i = 0; i < 5000; i++) {
+            assertEquals(classFile.getConstantPoolLookup().findInteger(1000000 + i), count + i);
+        }
+        byte[] bytes = ClassFileWriter.writeToByteArray(classFile);
+        ClassFile readClassFile = ClassFileReader.readFromByteArray(bytes, 0, bytes.length);
+        assertEquals(readClassFile.getConstantPool().length, count + 5000);
+    }
+
+    private static ClassFile readClassFile() throws IOException, InvalidByteCodeException {
+        byte[] bytes = TestFiles.readResource(TestFiles.CLASS_RESOURCES[0]);
+        return ClassFileReader.readFromByteArray(bytes, 0, bytes.length);
+    }
+
+}
@@ -0,0 +1,218 @@
+/*
+ This library is free software; you can redistribute it and/or
+ modify it under the terms of the GNU General Public
+ License as published by the Free Software Foundation; either
+ version 2 of the license, or (at your option) any later version.
+ */
+
+package org.gjt.jclasslib.test;
+
+import org.gjt.jclasslib.io.ClassFileReader;
+import org.gjt.jclasslib.structures.CPInfo;
+import org.gjt.jclasslib.structures.ClassFile;
+import org.gjt.jclasslib.structures.ConstantPoolLookup;
+import org.gjt.jclasslib.structures.InvalidByteCodeException;
+import org.gjt.jclasslib.structures.constants.*;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+
+import static org.testng.Assert.*;
+
+public class ConstantPoolLookupTest {
+
+    private static final String[] CLASS_RESOURCES = TestFiles.classResources(
+        "/org/gjt/jclasslib/structures/ClassFile.class"
+    );
+
+    private static final int CLASS_NAME = 1;
+    private static final int CLASS = 2;
+    private static final int METHOD_NAME = 3;
+    private static final int METHOD_DESCRIPTOR = 4;
+    private static final int NAME_AND_TYPE = 5;
+    private static final int METHODREF = 6;
+    private static final int INTERFACE_METHODREF = 7;
+    private static final int FIELDREF = 8;
+    private static final int LONG = 9;
+    private static final int DOUBLE_NAN = 11;
+    private static final int FLOAT_NAN = 13;
+    private static final int FLOAT_ZERO = 14;
+    private static final int FLOAT_NEGATIVE_ZERO = 15;
+    private static final int INTEGER = 16;
+    private static final int STRING = 17;
+    private static final int METHOD_HANDLE = 18;
+    private static final int INVOKE_DYNAMIC = 19;
+    private static final int LAST_DOUBLE = 20;
+
+    @Test
+    public void testClassFileEntries() throws IOException, InvalidByteCodeException {
+        for (String resource : CLASS_RESOURCES) {
+            byte[] bytes = TestFiles.readResource(resource);
+            ClassFile classFile = ClassFileReader.readFromByteArray(bytes, 0, bytes.length);
+            CPInfo[] constantPool = classFile.getConstantPool();
+            ConstantPoolLookup lookup = new ConstantPoolLookup(constantPool);
+            int count = 0;
+            for (int i = 1; i < constantPool.length; i++) {
+                if (constantPool[i] != null) {
+                    // duplicate entries are found at the first index
+                    String message = resource + " " + i;
+                    int index = lookup.find(constantPool[i]);
+                    assertTrue(index > 0 && index <= i, message);
+                    assertEquals(constantPool[index].getTag(), constantPool[i].getTag(), message);
+                    assertEquals(constantPool[index].getVerbose(), constantPool[i].getVerbose(), message);
+                    assertEquals(lookup.find(constantPool[index]), index, message);
+                    count++;
+                }
+            }
+            assertEquals(lookup.getSize(), count, resource);
+            assertEquals(lookup.findClass(classFile.getThisClassName().replace('.', '/')), classFile.getThisClass(), resource);
+        }
+    }
+
+    @Test
+    public void testTypedLookups() {
+        ConstantPoolLookup lookup = new ConstantPoolLookup(createConstantPool());
+        assertEquals(lookup.getSize(), 18);
+
+        assertEquals(lookup.findUtf8("test/Lookup"), CLASS_NAME);
+        assertEquals(lookup.findClass("test/Lookup"), CLASS);
+        assertEquals(lookup.findString("test/Lookup"), STRING);
+        assertEquals(lookup.findNameAndType("run", "()V"), NAME_AND_TYPE);
+        assertEquals(lookup.findMethodref("test/Lookup", "run", "()V"), METHODREF);
+        assertEquals(lookup.findInterfaceMethodref("test/Lookup", "run", "()V"), INTERFACE_METHODREF);
+        assertEquals(lookup.findFieldref("test/Lookup", "run", "()V"), FIELDREF);
+        assertEquals(lookup.findMethodHandle(ConstantMethodHandleInfo.TYPE_INVOKE_VIRTUAL, METHODREF), METHOD_HANDLE);
+        assertEquals(lookup.findInvokeDynamic(0, NAME_AND_TYPE), INVOKE_DYNAMIC);
+        assertEquals(lookup.findInteger(7), INTEGER);
+        assertEquals(lookup.findLong(-2L), LONG);
+
+        // the tag is part of the key
+        assertEquals(lookup.findClass("run"), -1);
+        assertEquals(lookup.findString("run"), -1);
+        assertEquals(lookup.findMethodType("()V"), -1);
+        assertEquals(lookup.findMethodref("test/Lookup", "run", "()I"), -1);
+        assertEquals(lookup.findMethodref("test/Other", "run", "()V"), -1);
+        assertEquals(lookup.findInteger(8), -1);
+        assertEquals(lookup.findLong(7L), -1);
+        assertEquals(lookup.findMethodHandle(ConstantMethodHandleInfo.TYPE_INVOKE_STATIC, METHODREF), -1);
+    }
+
+    @Test
+    public void testFloatingPointLookups() {
+        ConstantPoolLookup lookup = new ConstantPoolLookup(createConstantPool());
+
+        // NaN is found although it is not equal to itself, zeros are compared by their bits
+        assertEquals(lookup.findFloat(Float.NaN), FLOAT_NAN);
+        assertEquals(lookup.findFloat(0.0f / 0.0f), FLOAT_NAN);
+        assertEquals(lookup.findFloat(0.0f), FLOAT_ZERO);
+        assertEquals(lookup.findFloat(-0.0f), FLOAT_NEGATIVE_ZERO);
+        assertEquals(lookup.findFloat(1.0f), -1);
+        assertEquals(lookup.findDouble(Double.NaN), DOUBLE_NAN);
+        assertEquals(lookup.findDouble(0.0), -1);
+        assertEquals(lookup.findDouble(Double.MAX_VALUE), LAST_DOUBLE);
+
+        // longs and doubles with the same bits are distinct
+        assertEquals(lookup.findLong(Double.doubleToLongBits(Double.NaN)), -1);
+        assertEquals(lookup.findInteger(Float.floatToIntBits(Float.NaN)), -1);
+    }
+
+    @Test
+    public void testRebuild() {
+        CPInfo[] constantPool = createConstantPool();
+        ConstantPoolLookup lookup = new ConstantPoolLookup(constantPool);
+
+        ((ConstantIntegerInfo)constantPool[INTEGER]).setInt(42);
+        ((ConstantFloatInfo)constantPool[FLOAT_NAN]).setFloat(1.5f);
+        ((ConstantUtf8Info)constantPool[CLASS_NAME]).setString("test/Renamed");
+        lookup.rebuild();
+
+        assertEquals(lookup.getSize(), 18);
+        assertEquals(lookup.findInteger(42), INTEGER);
+        assertEquals(lookup.findInteger(7), -1);
+        assertEquals(lookup.findFloat(1.5f), FLOAT_NAN);
+        assertEquals(lookup.findFloat(Float.NaN), -1);
+
+        // entries that refer to the modified entry are found with the new value
+        assertEquals(lookup.findUtf8("test/Lookup"), -1);
+        assertEquals(lookup.findClass("test/Renamed"), CLASS);
+        assertEquals(lookup.findClass("test/Lookup"), -1);
+        assertEquals(lookup.findString("test/Renamed"), STRING);
+        assertEquals(lookup.findMethodref("test/Renamed", "run", "()V"), METHODREF);
+        assertEquals(lookup.findMethodref("test/Lookup", "run", "()V"), -1);
+        assertEquals(lookup.find(constantPool[INTERFACE_METHODREF]), INTERFACE_METHODREF);
+    }
+
+    @Test
+    public void testEmptyConstantPool() {
+        ConstantPoolLookup lookup = new ConstantPoolLookup(null);
+        assertEquals(lookup.getSize(), 0);
+        assertEquals(lookup.findUtf8("test/Lookup"), -1);
+        assertEquals(lookup.findFloat(Float.NaN), -1);
+        lookup.rebuild();
+        assertEquals(lookup.getSize(), 0);
+    }
+
+    private static CPInfo[] createConstantPool() {
+
+        CPInfo[] constantPool = new CPInfo[LAST_DOUBLE + 2];
+        constantPool[CLASS_NAME] = createUtf8("test/Lookup");
+        ConstantClassInfo classInfo = new ConstantClassInfo();
+        classInfo.setNameIndex(CLASS_NAME);
+        constantPool[CLASS] = classInfo;
+        constantPool[METHOD_NAME] = createUtf8("run");
+        constantPool[METHOD_DESCRIPTOR] = createUtf8("()V");
+        ConstantNameAndTypeInfo nameAndTypeInfo = new ConstantNameAndTypeInfo();
+        nameAndTypeInfo.setNameIndex(METHOD_NAME);
+        nameAndTypeInfo.setDescriptorIndex(METHOD_DESCRIPTOR);
+        constantPool[NAME_AND_TYPE] = nameAndTypeInfo;
+        constantPool[METHODREF] = createReference(new ConstantMethodrefInfo());
+        constantPool[INTERFACE_METHODREF] = createReference(new ConstantInterfaceMethodrefInfo());
+        constantPool[FIELDREF] = createReference(new ConstantFieldrefInfo());
+        ConstantLongInfo longInfo = new ConstantLongInfo();
+        longInfo.setLong(-2L);
+        constantPool[LONG] = longInfo;
+        ConstantDoubleInfo doubleInfo = new ConstantDoubleInfo();
+        doubleInfo.setDouble(Double.NaN);
+        constantPool[DOUBLE_NAN] = doubleInfo;
+        constantPool[FLOAT_NAN] = createFloat(Float.NaN);
+        constantPool[FLOAT_ZERO] = createFloat(0.0f);
+        constantPool[FLOAT_NEGATIVE_ZERO] = createFloat(-0.0f);
+        ConstantIntegerInfo integerInfo = new ConstantIntegerInfo();
+        integerInfo.setInt(7);
+        constantPool[INTEGER] = integerInfo;
+        ConstantStringInfo stringInfo = new ConstantStringInfo();
+        stringInfo.setStringIndex(CLASS_NAME);
+        constantPool[STRING] = stringInfo;
+        ConstantMethodHandleInfo methodHandleInfo = new ConstantMethodHandleInfo();
+        methodHandleInfo.setType(ConstantMethodHandleInfo.TYPE_INVOKE_VIRTUAL);
+        methodHandleInfo.setReferenceIndex(METHODREF);
+        constantPool[METHOD_HANDLE] = methodHandleInfo;
+        ConstantInvokeDynamicInfo invokeDynamicInfo = new ConstantInvokeDynamicInfo();
+        invokeDynamicInfo.setBootstrapMethodAttributeIndex(0);
+        invokeDynamicInfo.setNameAndTypeIndex(NAME_AND_TYPE);
+        constantPool[INVOKE_DYNAMIC] = invokeDynamicInfo;
+        ConstantDoubleInfo lastDoubleInfo = new ConstantDoubleInfo();
+        lastDoubleInfo.setDouble(Double.MAX_VALUE);
+        constantPool[LAST_DOUBLE] = lastDoubleInfo;
+        return constantPool;
+    }
+
+    private static ConstantUtf8Info createUtf8(String string) {
+        ConstantUtf8Info utf8Info = new ConstantUtf8Info();
+        utf8Info.setString(string);
+        return utf8Info;
+    }
+
+    private static ConstantFloatInfo createFloat(float value) {
+        ConstantFloatInfo floatInfo = new ConstantFloatInfo();
+        floatInfo.setFloat(value);
+        return floatInfo;
+    }
+
+    private static ConstantReference createReference(ConstantReference reference) {
+        reference.setClassIndex(CLASS);
+        reference.setNameAndTypeIndex(NAME_AND_TYPE);
+        return reference;
+    }
+
+}
@@ -0,0 +1,316 @@
+/*
+ This library is free software; you can redistribute it and/or
+ modify it under the terms of the GNU General Public
+ License as published by the Free Software Foundation; either
+ version 2 of the license, or (at your option) any later version.
+ */
+
+package org.gjt.jclasslib.test;
+
+import org.gjt.jclasslib.bytecode.ControlFlowGraph;
+import org.gjt.jclasslib.io.ClassFileReader;
+import org.gjt.jclasslib.structures.ClassFile;
+import org.gjt.jclasslib.structures.InvalidByteCodeException;
+import org.gjt.jclasslib.structures.MethodInfo;
+import org.gjt.jclasslib.structures.attributes.CodeAttribute;
+import org.gjt.jclasslib.structures.attributes.ExceptionTableEntry;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import static org.testng.Assert.*;
+
+public class ControlFlowGraphTest {
+
+    private static final String[] CLASS_RESOURCES = {
+        "/java8/Main.class",
+        "/java8/Test.class",
+        "/java8/Test2.class",
+        "/org/gjt/jclasslib/bytecode/ControlFlowGraph.class",
+        "/org/gjt/jclasslib/bytecode/InstructionCursor.class",
+        "/org/gjt/jclasslib/bytecode/Opcode.class",
+        "/org/gjt/jclasslib/io/ClassPathIndex.class",
+        "/org/gjt/jclasslib/structures/ClassFile.class",
+        "/org/gjt/jclasslib/structures/ConstantPoolBuilder.class",
+        "/org/gjt/jclasslib/structures/attributes/StackMapFrameTable.class"
+    };
+
+    @Test
+    public void testClassFiles() throws IOException, InvalidByteCodeException {
+        int count = 0;
+        for (String resource : CLASS_RESOURCES) {
+            InputStream is = getClass().getResourceAsStream(resource);
+            assertNotNull(is, resource);
+            ClassFile classFile = ClassFileReader.readFromInputStream(is);
+            for (MethodInfo method : classFile.getMethods()) {
+                CodeAttribute codeAttribute = method.getCodeAttribute();
+                if (codeAttribute != null) {
+                    checkGraph(ControlFlowGraph.build(codeAttribute), resource + " " + method.getName());
+                    count++;
+                }
+            }
+        }
+        assertTrue(count > 100, "only " + count + " methods checked");
+    }
+
+    @Test
+    public void testSwitches() throws InvalidByteCodeException {
+        ControlFlowGraph graph = build(new byte[] {
+            0x1a,                                   //  0: iload_0
+            (byte)0xaa, 0, 0,                       //  1: tableswitch
+            0, 0, 0, 31,                            //     default -> 32
+            0, 0, 0, 0,                             //     low 0
+            0, 0, 0, 2,                             //     high 2
+            0, 0, 0, 27,                            //     0 -> 28
+            0, 0, 0, 29,                            //     1 -> 30
+            0, 0, 0, 27,                            //     2 -> 28
+            0x03, (byte)0xac,                       // 28: iconst_0, ireturn
+            0x04, (byte)0xac,                       // 30: iconst_1, ireturn
+            0x1a,                                   // 32: iload_0
+            (byte)0xab, 0, 0,                       // 33: lookupswitch
+            0, 0, 0, 19,                            //     default -> 52
+            0, 0, 0, 1,                             //     1 pair
+            0, 0, 0, 7, 0, 0, 0, 21,                //     7 -> 54
+            0x05, (byte)0xac,                       // 52: iconst_2, ireturn
+            0x06, (byte)0xac                        // 54: iconst_3, ireturn
+        });
+
+        assertBlockStarts(graph, 0, 28, 30, 32, 52, 54);
+        // the repeated target of the table switch is a single edge
+        assertSuccessors(graph, 0, 3, 1, 2);
+        assertSuccessors(graph, 1);
+        assertSuccessors(graph, 3, 4, 5);
+        for (int block = 1; block < graph.getBlockCount(); block++) {
+            assertEquals(graph.getImmediateDominator(block), block < 4 ? 0 : 3, "block " + block);
+        }
+        assertEquals(graph.getLoopHeaders(), new int[0]);
+        checkGraph(graph, "switches");
+    }
+
+    @Test
+    public void testNestedLoops() throws InvalidByteCodeException {
+        ControlFlowGraph graph = build(new byte[] {
+            0x03, 0x3c,                             //  0: iconst_0, istore_1
+            0x1b, 0x10, 10,                         //  2: iload_1, bipush 10
+            (byte)0xa2, 0, 23,                      //  5: if_icmpge 28
+            0x03, 0x3d,                             //  8: iconst_0, istore_2
+            0x1c, 0x10, 10,                         // 10: iload_2, bipush 10
+            (byte)0xa2, 0, 9,                       // 13: if_icmpge 22
+            (byte)0x84, 2, 1,                       // 16: iinc 2 1
+            (byte)0xa7, (byte)0xff, (byte)0xf7,     // 19: goto 10
+            (byte)0x84, 1, 1,                       // 22: iinc 1 1
+            (byte)0xa7, (byte)0xff, (byte)0xe9,     // 25: goto 2
+            (byte)0xb1                              // 28: return
+        });
+
+        assertBlockStarts(graph, 0, 2, 8, 10, 16, 22, 28);
+        assertEquals(graph.getLoopHeaders(), new int[] {1, 3});
+        int[] loopDepths = {0, 1, 1, 2, 2, 1, 0};
+        for (int block = 0; block < graph.getBlockCount(); block++) {
+            assertEquals(graph.getLoopDepth(block), loopDepths[block], "block " + block);
+        }
+        assertEquals(graph.getImmediateDominator(6), 1);
+        assertEquals(graph.getImmediateDominator(5), 3);
+        checkGraph(graph, "nested loops");
+    }
+
+    @Test
+    public void testTryCatch() throws InvalidByteCodeException {
+        ControlFlowGraph graph = build(new byte[] {
+            0x04, 0x03, 0x6c, 0x3c,                 //  0: iconst_1, iconst_0, idiv, istore_1
+            (byte)0xa7, 0, 5,                       //  4: goto 9
+            0x4d, 0x00,                             //  7: astore_2, nop
+            (byte)0xb1                              //  9: return
+        }, new ExceptionTableEntry(0, 4, 7, 0));
+
+        assertBlockStarts(graph, 0, 4, 7, 9);
+        assertSuccessors(graph, 0, 1);
+        assertEquals(graph.getExceptionSuccessorCount(0), 1);
+        assertEquals(graph.getExceptionSuccessor(0, 0), 2);
+        assertEquals(graph.getExceptionSuccessorCount(1), 0);
+        assertSuccessors(graph, 2, 3);
+        for (int block = 1; block < graph.getBlockCount(); block++) {
+            assertEquals(graph.getImmediateDominator(block), 0, "block " + block);
+        }
+        checkGraph(graph, "try/catch");
+    }
+
+    @Test
+    public void testUnreachableBlocks() throws InvalidByteCodeException {
+        ControlFlowGraph graph = build(new byte[] {
+            (byte)0xa7, 0, 8,                       //  0: goto 8
+            0x00,                                   //  3: nop
+            (byte)0xa7, (byte)0xff, (byte)0xff,     //  4: goto 3
+            0x00,                                   //  7: nop
+            (byte)0xb1                              //  8: return
+        });
+
+        assertBlockStarts(graph, 0, 3, 7, 8);
+        assertTrue(graph.isReachable(0));
+        assertFalse(graph.isReachable(1));
+        assertFalse(graph.isReachable(2));
+        assertTrue(graph.isReachable(3));
+        assertEquals(graph.getImmediateDominator(1), -1);
+        assertEquals(graph.getImmediateDominator(3), 0);
+        assertFalse(graph.dominates(1, 1));
+        // the unreachable block that branches to itself is not a loop
+        assertSuccessors(graph, 1, 1);
+        assertEquals(graph.getLoopHeaders(), new int[0]);
+        checkGraph(graph, "unreachable blocks");
+    }
+
+    private static ControlFlowGraph build(byte[] code, ExceptionTableEntry... exceptionTable)
+            throws InvalidByteCodeException {
+
+        CodeAttribute codeAttribute = new CodeAttribute();
+        codeAttribute.setCode(code);
+        codeAttribute.setExceptionTable(exceptionTable);
+        return ControlFlowGraph.build(codeAttribute);
+    }
+
+    private static void assertBlockStarts(ControlFlowGraph graph, int... starts) {
+        assertEquals(graph.getBlockCount(), starts.length);
+        for (int block = 0; block < starts.length; block++) {
+            assertEquals(graph.getBlockStart(block), starts[block], "start of block " + block);
+        }
+    }
+
+    private static void assertSuccessors(ControlFlowGraph graph, int block, int... successors) {
+        int[] actual = new int[graph.getSuccessorCount(block)];
+        for (int i = 0; i < actual.length; i++) {
+            actual[i] = graph.getSuccessor(block, i);
+        }
+        Arrays.sort(actual);
+        int[] expected = successors.clone();
+        Arrays.sort(expected);
+        assertEquals(actual, expected, "successors of block " + block);
+    }
+
+    // compares the graph with the definitions of dominators and natural loops
+    private static void checkGraph(ControlFlowGraph graph, String name) {
+
+        int blockCount = graph.getBlockCount();
+        for (int block = 0; block < blockCount; block++) {
+            assertTrue(graph.getBlockStart(block) < graph.getBlockEnd(block), name);
+            assertEquals(graph.getBlockAt(graph.getBlockStart(block)), block, name);
+            assertEquals(graph.getBlockAt(graph.getBlockEnd(block) - 1), block, name);
+        }
+        if (blockCount == 0) {
+            return;
+        }
+
+        boolean[][] edges = new boolean[blockCount][blockCount];
+        int[] predecessorCounts = new int[blockCount];
+        for (int block = 0; block < blockCount; block++) {
+            for (int i = 0; i < graph.getSuccessorCount(block); i++) {
+                edges[block][graph.getSuccessor(block, i)] = true;
+                predecessorCounts[graph.getSuccessor(block, i)]++;
+            }
+            for (int i = 0; i < graph.getExceptionSuccessorCount(block); i++) {
+                edges[block][graph.getExceptionSuccessor(block, i)] = true;
+                predecessorCounts[graph.getExceptionSuccessor(block, i)]++;
+            }
+        }
+        for (int block = 0; block < blockCount; block++) {
+            assertEquals(graph.getPredecessorCount(block), predecessorCounts[block], name + " predecessors of " + block);
+            for (int i = 0; i < graph.getPredecessorCount(block); i++) {
+                assertTrue(edges[graph.getPredecessor(block, i)][block], name + " predecessor of " + block);
+            }
+        }
+
+        boolean[] reachable = reach(edges, 0, -1);
+        boolean[][] dominators = new boolean[blockCount][];
+        for (int dominator = 0; dominator < blockCount; dominator++) {
+            // a block is dominated if it cannot be reached without the dominator
+            boolean[] reachableWithout = reach(edges, 0, dominator);
+            dominators[dominator] = new boolean[blockCount];
+            for (int block = 0; block < blockCount; block++) {
+                dominators[dominator][block] = reachable[block] && (block == dominator || !reachableWithout[block]);
+            }
+        }
+
+        for (int block = 0; block < blockCount; block++) {
+            String message = name + " block " + block;
+            assertEquals(graph.isReachable(block), reachable[block], message);
+            for (int dominator = 0; dominator < blockCount; dominator++) {
+                assertEquals(graph.dominates(dominator, block), dominators[dominator][block],
+                        message + " dominated by " + dominator);
+            }
+            int immediateDominator = graph.getImmediateDominator(block);
+            if (block == 0 || !reachable[block]) {
+                assertEquals(immediateDominator, -1, message);
+                continue;
+            }
+            // the immediate dominator is the strict dominator that all other strict dominators dominate
+            assertTrue(immediateDominator != block && dominators[immediateDominator][block], message);
+            for (int dominator = 0; dominator < blockCount; dominator++) {
+                if (dominator != block && dominators[dominator][block]) {
+                    assertTrue(dominators[dominator][immediateDominator], message);
+                }
+            }
+        }
+
+        int[] loopDepths = new int[blockCount];
+        int headerCount = 0;
+        for (int header = 0; header < blockCount; header++) {
+            if (!reachable[header]) {
+                continue;
+            }
+            // the natural loop contains the blocks that reach a back edge without passing the header
+            boolean[] body = new boolean[blockCount];
+            boolean hasBackEdge = false;
+            for (int source = 0; source < blockCount; source++) {
+                if (edges[source][header] && dominators[header][source]) {
+                    hasBackEdge = true;
+                    boolean[] reachingSource = reachBackwards(edges, source, header);
+                    for (int block = 0; block < blockCount; block++) {
+                        body[block] |= reachingSource[block] && reachable[block];
+                    }
+                }
+            }
+            assertEquals(graph.isLoopHeader(header), hasBackEdge, name + " loop header " + header);
+            if (hasBackEdge) {
+                headerCount++;
+                body[header] = true;
+                for (int block = 0; block < blockCount; block++) {
+                    if (body[block]) {
+                        loopDepths[block]++;
+                    }
+                }
+            }
+        }
+        assertEquals(graph.getLoopHeaders().length, headerCount, name);
+        for (int block = 0; block < blockCount; block++) {
+            assertEquals(graph.getLoopDepth(block), loopDepths[block], name + " loop depth of " + block);
+        }
+    }
+
+    private static boolean[] reach(boolean[][] edges, int start, int excluded) {
+        boolean[] visited = new boolean[edges.length];
+        if (start != excluded) {
+            visit(edges, start, excluded, visited, false);
+        }
+        return visited;
+    }
+
+    private static boolean[] reachBackwards(boolean[][] edges, int start, int excluded) {
+        boolean[] visited = new boolean[edges.length];
+        if (start != excluded) {
+            visit(edges, start, excluded, visited, true);
+        }
+        return visited;
+    }
+
+    private static void visit(boolean[][] edges, int block, int excluded, boolean[] visited, boolean backwards) {
+        visited[block] = true;
+        for (int next = 0; next < edges.length; next++) {
+            boolean edge = backwards ? edges[next][block] : edges[block][next];
+            if (edge && next != excluded && !visited[next]) {
+                visit(edges, next, excluded, visited, backwards);
+            }
+        }
+    }
+
+}
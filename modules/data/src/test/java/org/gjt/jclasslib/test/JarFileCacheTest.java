@@ -0,0 +1,195 @@
+/*
+ This library is free software; you can redistribute it and/or
+ modify it under the terms of the GNU General Public
+ License as published by the Free Software Foundation; either
+ version 2 of the license, or (at your option) any later version.
+ */
+
+package org.gjt.jclasslib.test;
+
+import org.gjt.jclasslib.io.JarFileCache;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.jar.JarFile;
+
+import static org.testng.Assert.*;
+
+public class JarFileCacheTest {
+
+    @Test
+    public void testEviction() throws IOException {
+        File directory = TestFiles.createTempDirectory("jclasslib");
+        JarFileCache cache = new JarFileCache(2);
+        try {
+            File a = createJarFile(directory, "a.jar", "A");
+            File b = createJarFile(directory, "b.jar", "B");
+            File c = createJarFile(directory, "c.jar", "C");
+
+            JarFile jarFileA = acquireAndRelease(cache, a);
+            JarFile jarFileB = acquireAndRelease(cache, b);
+            assertEquals(cache.getOpenCount(), 2);
+            // open archives are reused, using a makes b the least recently used archive
+            assertSame(acquireAndRelease(cache, a), jarFileA);
+
+            JarFile jarFileC = acquireAndRelease(cache, c);
+            assertEquals(cache.getOpenCount(), 2);
+            assertFalse(isClosed(jarFileA));
+            assertTrue(isClosed(jarFileB));
+            assertFalse(isClosed(jarFileC));
+
+            // an evicted archive is opened again
+            JarFile newJarFileB = acquireAndRelease(cache, b);
+            assertNotSame(newJarFileB, jarFileB);
+            assertEquals(cache.getOpenCount(), 2);
+            assertTrue(isClosed(jarFileA));
+
+            cache.clear();
+            assertEquals(cache.getOpenCount(), 0);
+            assertTrue(isClosed(jarFileC));
+            assertTrue(isClosed(newJarFileB));
+        } finally {
+            cache.clear();
+            TestFiles.delete(directory);
+        }
+    }
+
+    @Test
+    public void testDeferredClose() throws IOException {
+        File directory = TestFiles.createTempDirectory("jclasslib");
+        JarFileCache cache = new JarFileCache(1);
+        try {
+            File a = createJarFile(directory, "a.jar", "A");
+            File b = createJarFile(directory, "b.jar", "B");
+
+            // archives that are in use are not evicted, the limit is exceeded
+            JarFileCache.Handle handleA = cache.acquire(a);
+            JarFileCache.Handle handleB = cache.acquire(b);
+            assertEquals(cache.getOpenCount(), 2);
+            assertNotNull(handleA.getJarFile().getEntry("A.class"));
+            assertNotNull(handleB.getJarFile().getEntry("B.class"));
+
+            JarFile jarFileA = handleA.getJarFile();
+            handleA.release();
+            assertTrue(isClosed(jarFileA));
+            assertEquals(cache.getOpenCount(), 1);
+
+            // an archive that is in use is closed when it is released after the cache has been cleared
+            cache.clear();
+            assertEquals(cache.getOpenCount(), 1);
+            JarFile jarFileB = handleB.getJarFile();
+            assertFalse(isClosed(jarFileB));
+            JarFileCache.Handle newHandleB = cache.acquire(b);
+            assertNotSame(newHandleB.getJarFile(), jarFileB);
+            assertEquals(cache.getOpenCount(), 2);
+            handleB.release();
+            assertTrue(isClosed(jarFileB));
+            assertEquals(cache.getOpenCount(), 1);
+            newHandleB.release();
+            assertEquals(cache.getOpenCount(), 1);
+        } finally {
+            cache.clear();
+            TestFiles.delete(directory);
+        }
+    }
+
+    @Test
+    public void testChangedFile() throws IOException {
+        File directory = TestFiles.createTempDirectory("jclasslib");
+        JarFileCache cache = new JarFileCache(4);
+        try {
+            File a = createJarFile(directory, "a.jar", "A");
+            long lastModified = a.lastModified();
+            JarFile jarFile = acquireAndRelease(cache, a);
+
+            // the archive is opened again after it has been changed, the old archive is closed
+            createJarFile(directory, "a.jar", "Changed");
+            assertTrue(a.setLastModified(lastModified - 10000));
+            JarFileCache.Handle handle = cache.acquire(a);
+            assertNotSame(handle.getJarFile(), jarFile);
+            assertTrue(isClosed(jarFile));
+            assertNotNull(handle.getJarFile().getEntry("Changed.class"));
+            assertNull(handle.getJarFile().getEntry("A.class"));
+            assertEquals(cache.getOpenCount(), 1);
+
+            // an archive that is in use when it is changed is closed when it is released
+            createJarFile(directory, "a.jar", "A");
+            assertTrue(a.setLastModified(lastModified));
+            JarFileCache.Handle newHandle = cache.acquire(a);
+            assertNotNull(newHandle.getJarFile().getEntry("A.class"));
+            assertEquals(cache.getOpenCount(), 2);
+            jarFile = handle.getJarFile();
+            assertNotNull(jarFile.getEntry("Changed.class"));
+            handle.release();
+            assertTrue(isClosed(jarFile));
+            assertEquals(cache.getOpenCount(), 1);
+            assertSame(acquireAndRelease(cache, a), newHandle.getJarFile());
+            newHandle.release();
+        } finally {
+            cache.clear();
+            TestFiles.delete(directory);
+        }
+    }
+
+    @Test
+    public void testReleaseTwice() throws IOException {
+        File directory = TestFiles.createTempDirectory("jclasslib");
+        JarFileCache cache = new JarFileCache(1);
+        try {
+            File a = createJarFile(directory, "a.jar", "A");
+            File b = createJarFile(directory, "b.jar", "B");
+
+            JarFileCache.Handle handle = cache.acquire(a);
+            JarFile jarFile = handle.getJarFile();
+            handle.release();
+            handle.release();
+            try {
+                handle.getJarFile();
+                fail("released handle has returned its archive");
+            } catch (IllegalStateException e) {
+                // expected
+            }
+            assertEquals(cache.getOpenCount(), 1);
+
+            // the second release must not have released the use of another handle
+            JarFileCache.Handle newHandle = cache.acquire(a);
+            assertSame(newHandle.getJarFile(), jarFile);
+            JarFile jarFileB = acquireAndRelease(cache, b);
+            assertFalse(isClosed(jarFile));
+            assertTrue(isClosed(jarFileB));
+            assertNotNull(jarFile.getEntry("A.class"));
+            newHandle.release();
+            assertFalse(isClosed(jarFile));
+            assertEquals(cache.getOpenCount(), 1);
+        } finally {
+            cache.clear();
+            TestFiles.delete(directory);
+        }
+    }
+
+    private static JarFile acquireAndRelease(JarFileCache cache, File file) throws IOException {
+        JarFileCache.Handle handle = cache.acquire(file);
+        JarFile jarFile = handle.getJarFile();
+        handle.release();
+        return jarFile;
+    }
+
+    private static File createJarFile(File directory, String name, String className) throws IOException {
+        File file = new File(directory, name);
+        TestFiles.writeJarFile(file, Collections.singletonMap(className + ".class",
+                TestFiles.readResource(TestFiles.CLASS_RESOURCES[0])));
+        return file;
+    }
+
+    private static boolean isClosed(JarFile jarFile) {
+        try {
+            jarFile.size();
+            return false;
+        } catch (IllegalStateException e) {
+            return true;
+        }
+    }
+
+}
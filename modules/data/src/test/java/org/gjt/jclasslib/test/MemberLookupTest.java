@@ -0,0 +1,103 @@
+/*
+ This library is free software; you can redistribute it and/or
+ modify it under the terms of the GNU General Public
+ License as published by the Free Software Foundation; either
+ version 2 of the license, or (at your option) any later version.
+ */
+
+package org.gjt.jclasslib.test;
+
+import org.gjt.jclasslib.io.ClassFileReader;
+import org.gjt.jclasslib.structures.CPInfo;
+import org.gjt.jclasslib.structures.ClassFile;
+import org.gjt.jclasslib.structures.FieldInfo;
+import org.gjt.jclasslib.structures.InvalidByteCodeException;
+import org.gjt.jclasslib.structures.MethodInfo;
+import org.gjt.jclasslib.structures.constants.ConstantUtf8Info;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+
+import static org.testng.Assert.*;
+
+public class MemberLookupTest {
+
+    private static final String METHOD_NAME = "handleTest";
+    private static final String METHOD_DESCRIPTOR = "(LTestInterface;)V";
+    private static final String NEW_NAME = "renamedTest";
+
+    @Test
+    public void testLookup() throws IOException, InvalidByteCodeException {
+        ClassFile classFile = readClassFile();
+        MethodInfo[] methods = classFile.getMethods();
+        for (int i = 0; i < methods.length; i++) {
+            assertEquals(classFile.getMethodIndex(methods[i].getName(), methods[i].getDescriptor()), i);
+            assertSame(classFile.getMethod(methods[i].getName(), methods[i].getDescriptor()), methods[i]);
+        }
+        FieldInfo[] fields = classFile.getFields();
+        for (int i = 0; i < fields.length; i++) {
+            assertEquals(classFile.getFieldIndex(fields[i].getName(), fields[i].getDescriptor()), i);
+        }
+        assertEquals(classFile.getMethodIndex(METHOD_NAME, "()V"), -1);
+        assertEquals(classFile.getMethodIndex(NEW_NAME, METHOD_DESCRIPTOR), -1);
+        assertNull(classFile.getField(METHOD_NAME, METHOD_DESCRIPTOR));
+    }
+
+    @Test
+    public void testRenameWithSetConstantPool() throws IOException, InvalidByteCodeException {
+        ClassFile classFile = readClassFile();
+        int methodIndex = classFile.getMethodIndex(METHOD_NAME, METHOD_DESCRIPTOR);
+        assertTrue(methodIndex >= 0);
+
+        CPInfo[] constantPool = classFile.getConstantPool().clone();
+        constantPool[classFile.getMethods()[methodIndex].getNameIndex()] = createUtf8Info(classFile, NEW_NAME);
+        classFile.setConstantPool(constantPool);
+        assertRenamed(classFile, methodIndex);
+    }
+
+    @Test
+    public void testRenameWithRegisterConstantPoolEntry() throws IOException, InvalidByteCodeException {
+        ClassFile classFile = readClassFile();
+        int methodIndex = classFile.getMethodIndex(METHOD_NAME, METHOD_DESCRIPTOR);
+        assertTrue(methodIndex >= 0);
+
+        int nameIndex = classFile.getMethods()[methodIndex].getNameIndex();
+        classFile.unregisterConstantPoolEntry(nameIndex);
+        classFile.getConstantPool()[nameIndex] = createUtf8Info(classFile, NEW_NAME);
+        classFile.registerConstantPoolEntry(nameIndex);
+        assertRenamed(classFile, methodIndex);
+    }
+
+    @Test
+    public void testRenameInPlace() throws IOException, InvalidByteCodeException {
+        ClassFile classFile = readClassFile();
+        int methodIndex = classFile.getMethodIndex(METHOD_NAME, METHOD_DESCRIPTOR);
+        assertTrue(methodIndex >= 0);
+
+        int nameIndex = classFile.getMethods()[methodIndex].getNameIndex();
+        classFile.unregisterConstantPoolEntry(nameIndex);
+        classFile.getConstantPoolUtf8Entry(nameIndex).setString(NEW_NAME);
+        classFile.registerConstantPoolEntry(nameIndex);
+        assertRenamed(classFile, methodIndex);
+    }
+
+    private static void assertRenamed(ClassFile classFile, int methodIndex) throws InvalidByteCodeException {
+        assertEquals(classFile.getMethodIndex(NEW_NAME, METHOD_DESCRIPTOR), methodIndex);
+        assertSame(classFile.getMethod(NEW_NAME, METHOD_DESCRIPTOR), classFile.getMethods()[methodIndex]);
+        assertEquals(classFile.getMethodIndex(METHOD_NAME, METHOD_DESCRIPTOR), -1);
+        assertNull(classFile.getMethod(METHOD_NAME, METHOD_DESCRIPTOR));
+    }
+
+    private static ConstantUtf8Info createUtf8Info(ClassFile classFile, String string) {
+        ConstantUtf8Info utf8Info = new ConstantUtf8Info();
+        utf8Info.setClassFile(classFile);
+        utf8Info.setString(string);
+        return utf8Info;
+    }
+
+    private static ClassFile readClassFile() throws IOException, InvalidByteCodeException {
+        byte[] bytes = TestFiles.readResource(TestFiles.CLASS_RESOURCES[0]);
+        return ClassFileReader.readFromByteArray(bytes, 0, bytes.length);
+    }
+
+}
@@ -0,0 +1,215 @@
+/*
+ This library is free software; you can redistribute it and/or
+ modify it under the terms of the GNU General Public
+ License as published by the Free Software Foundation; either
+ version 2 of the license, or (at your option) any later version.
+ */
+
+package org.gjt.jclasslib.test;
+
+import org.gjt.jclasslib.io.ParallelClassFileReader;
+import org.gjt.jclasslib.io.ReadOptions;
+import org.gjt.jclasslib.structures.AttributeFactory;
+import org.gjt.jclasslib.structures.AttributeRegistry;
+import org.gjt.jclasslib.structures.ClassFile;
+import org.gjt.jclasslib.structures.InvalidByteCodeException;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.*;
+
+public class ParallelClassFileReaderTest {
+
+    private static final int ABORT_CLASS_COUNT = 200;
+
+    @Test
+    public void testReadJarFile() throws IOException, InterruptedException, InvalidByteCodeException {
+        File directory = TestFiles.createTempDirectory("jclasslib");
+        ParallelClassFileReader reader = new ParallelClassFileReader(2);
+        try {
+            Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+            entries.put("a/", null);
+            for (String resource : TestFiles.CLASS_RESOURCES) {
+                entries.put("a/" + getFileName(resource), TestFiles.readResource(resource));
+            }
+            entries.put("a/Broken.class", new byte[] {1, 2, 3});
+            entries.put("a/readme.txt", new byte[] {1, 2, 3});
+            File jarFile = new File(directory, "test.jar");
+            TestFiles.writeJarFile(jarFile, entries);
+
+            RecordingHandler handler = new RecordingHandler();
+            assertEquals(reader.readJarFile(jarFile, handler), TestFiles.CLASS_RESOURCES.length + 1);
+            assertResults(handler, "a/");
+        } finally {
+            reader.shutdown();
+            TestFiles.delete(directory);
+        }
+    }
+
+    @Test
+    public void testReadDirectory() throws IOException, InterruptedException, InvalidByteCodeException {
+        File directory = TestFiles.createTempDirectory("jclasslib");
+        ParallelClassFileReader reader = new ParallelClassFileReader(2);
+        try {
+            for (String resource : TestFiles.CLASS_RESOURCES) {
+                TestFiles.writeFile(new File(directory, "a/" + getFileName(resource)), TestFiles.readResource(resource));
+            }
+            TestFiles.writeFile(new File(directory, "a/Broken.class"), new byte[] {1, 2, 3});
+            TestFiles.writeFile(new File(directory, "a/readme.txt"), new byte[] {1, 2, 3});
+
+            RecordingHandler handler = new RecordingHandler();
+            assertEquals(reader.readDirectory(directory, handler), TestFiles.CLASS_RESOURCES.length + 1);
+            assertResults(handler, "a/");
+
+            // the filter selects the files that are read
+            reader.setFilter(new ParallelClassFileReader.Filter() {
+                public boolean accept(String name) {
+                    return name.equals("a/Main.class");
+                }
+            });
+            handler = new RecordingHandler();
+            assertEquals(reader.readDirectory(directory, handler), 1);
+            assertEquals(handler.classNames.keySet().iterator().next(), "a/Main.class");
+        } finally {
+            reader.shutdown();
+            TestFiles.delete(directory);
+        }
+    }
+
+    @Test
+    public void testAbortJarFile() throws IOException, InterruptedException {
+        File directory = TestFiles.createTempDirectory("jclasslib");
+        try {
+            Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+            byte[] bytes = TestFiles.readResource(TestFiles.CLASS_RESOURCES[0]);
+            for (int i = 0; i < ABORT_CLASS_COUNT; i++) {
+                entries.put("Main" + i + ".class", bytes);
+            }
+            File jarFile = new File(directory, "test.jar");
+            TestFiles.writeJarFile(jarFile, entries);
+            checkAbort(jarFile, false);
+            checkAbort(jarFile, true);
+        } finally {
+            TestFiles.delete(directory);
+        }
+    }
+
+    @Test
+    public void testAbortDirectory() throws IOException, InterruptedException {
+        File directory = TestFiles.createTempDirectory("jclasslib");
+        try {
+            byte[] bytes = TestFiles.readResource(TestFiles.CLASS_RESOURCES[0]);
+            for (int i = 0; i < ABORT_CLASS_COUNT; i++) {
+                TestFiles.writeFile(new File(directory, "Main" + i + ".class"), bytes);
+            }
+            checkAbort(directory, false);
+            checkAbort(directory, true);
+        } finally {
+            TestFiles.delete(directory);
+        }
+    }
+
+    private static void checkAbort(File file, final boolean interrupt) throws IOException, InterruptedException {
+        SlowAttributeRegistry registry = new SlowAttributeRegistry();
+        ReadOptions readOptions = new ReadOptions();
+        readOptions.setAttributeRegistry(registry);
+        ParallelClassFileReader reader = new ParallelClassFileReader(4);
+        reader.setReadOptions(readOptions);
+        final AtomicInteger handledCount = new AtomicInteger();
+        RecordingHandler handler = new RecordingHandler() {
+            public void classFileRead(String name, ClassFile classFile) {
+                handledCount.incrementAndGet();
+                if (interrupt) {
+                    Thread.currentThread().interrupt();
+                } else {
+                    throw new IllegalStateException("abort");
+                }
+            }
+        };
+        try {
+            if (file.isDirectory()) {
+                reader.readDirectory(file, handler);
+            } else {
+                reader.readJarFile(file, handler);
+            }
+            fail("batch has not been aborted");
+        } catch (IllegalStateException e) {
+            assertFalse(interrupt);
+            assertEquals(e.getMessage(), "abort");
+        } catch (InterruptedException e) {
+            assertTrue(interrupt);
+        } finally {
+            // all tasks have ended before the read method returned
+            registry.readReturned = true;
+            Thread.interrupted();
+        }
+        assertEquals(handledCount.get(), 1);
+        assertTrue(registry.callCount.get() > 0);
+        // let tasks that would still be running reach the registry
+        Thread.sleep(100);
+        reader.shutdown();
+        assertEquals(registry.lateCallCount.get(), 0);
+    }
+
+    private static void assertResults(RecordingHandler handler, String prefix) throws InvalidByteCodeException {
+        assertEquals(handler.classNames.size(), TestFiles.CLASS_RESOURCES.length);
+        for (String resource : TestFiles.CLASS_RESOURCES) {
+            String fileName = getFileName(resource);
+            assertEquals(handler.classNames.get(prefix + fileName), fileName.substring(0, fileName.length() - 6));
+        }
+        assertEquals(handler.failures.size(), 1);
+        assertTrue(handler.failures.containsKey(prefix + "Broken.class"));
+    }
+
+    private static String getFileName(String resource) {
+        return resource.substring(resource.lastIndexOf('/') + 1);
+    }
+
+    private static class RecordingHandler implements ParallelClassFileReader.Handler {
+
+        private final Map<String, String> classNames = new TreeMap<String, String>();
+        private final Map<String, Exception> failures = new TreeMap<String, Exception>();
+
+        public void classFileRead(String name, ClassFile classFile) {
+            try {
+                classNames.put(name, classFile.getThisClassName());
+            } catch (InvalidByteCodeException e) {
+                failures.put(name, e);
+            }
+        }
+
+        public void classFileFailed(String name, Exception exception) {
+            failures.put(name, exception);
+        }
+    }
+
+    /**
+     * Makes the tasks slow and records calls after the read method has returned.
+     */
+    private static class SlowAttributeRegistry extends AttributeRegistry {
+
+        private final AtomicInteger callCount = new AtomicInteger();
+        private final AtomicInteger lateCallCount = new AtomicInteger();
+        private volatile boolean readReturned;
+
+        public AttributeFactory getFactory(String attributeName) {
+            callCount.incrementAndGet();
+            if (readReturned) {
+                lateCallCount.incrementAndGet();
+            }
+            // the interrupt flag of cancelled tasks does not shorten the delay
+            long end = System.nanoTime() + 1000000;
+            while (System.nanoTime() < end) {
+                Thread.yield();
+            }
+            return super.getFactory(attributeName);
+        }
+    }
+
+}
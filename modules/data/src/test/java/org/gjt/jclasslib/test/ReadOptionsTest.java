@@ -0,0 +1,266 @@
+/*
+ This library is free software; you can redistribute it and/or
+ modify it under the terms of the GNU General Public
+ License as published by the Free Software Foundation; either
+ version 2 of the license, or (at your option) any later version.
+ */
+
+package org.gjt.jclasslib.test;
+
+import org.gjt.jclasslib.io.ClassFileReader;
+import org.gjt.jclasslib.io.ClassFileWriter;
+import org.gjt.jclasslib.io.ReadOptions;
+import org.gjt.jclasslib.structures.AccessFlag;
+import org.gjt.jclasslib.structures.AttributeInfo;
+import org.gjt.jclasslib.structures.ClassFile;
+import org.gjt.jclasslib.structures.InvalidByteCodeException;
+import org.gjt.jclasslib.structures.MethodInfo;
+import org.gjt.jclasslib.structures.attributes.CodeAttribute;
+import org.gjt.jclasslib.structures.attributes.LineNumberTableAttribute;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.testng.Assert.*;
+
+public class ReadOptionsTest {
+
+    private static final String[] CLASS_RESOURCES = TestFiles.classResources(
+        "/org/gjt/jclasslib/structures/ClassFile.class",
+        "/org/gjt/jclasslib/structures/attributes/StackMapFrameTable.class"
+    );
+
+    @Test
+    public void testRoundTrip() throws IOException, InvalidByteCodeException {
+        for (String resource : CLASS_RESOURCES) {
+            byte[] before = TestFiles.readResource(resource);
+            for (int flags = 0; flags < 16; flags++) {
+                ReadOptions readOptions = createReadOptions(flags);
+                String message = resource + " " + flags;
+
+                ClassFile classFile = ClassFileReader.readFromByteArray(before, 0, before.length, readOptions);
+                assertEquals(ClassFileWriter.writeToByteArray(classFile), before, message);
+                // a second write gives the same result, the computed length is only used once
+                assertEquals(ClassFileWriter.writeToByteArray(classFile), before, message);
+                assertEquals(writeToStream(classFile), before, message);
+
+                classFile = ClassFileReader.readFromByteArray(before, 0, before.length, readOptions);
+                assertEquals(classFile.prepareWrite(), before.length, message);
+                ByteBuffer buffer = ClassFileWriter.writeToByteBuffer(classFile, true);
+                assertEquals(buffer.position(), 0, message);
+                assertEquals(buffer.limit(), before.length, message);
+                byte[] after = new byte[buffer.remaining()];
+                buffer.get(after);
+                assertEquals(after, before, message);
+            }
+        }
+    }
+
+    @Test
+    public void testDeferredAttributes() throws IOException, InvalidByteCodeException {
+        for (String resource : CLASS_RESOURCES) {
+            byte[] bytes = TestFiles.readResource(resource);
+            ClassFile classFile = ClassFileReader.readFromByteArray(bytes, 0, bytes.length);
+            ReadOptions readOptions = new ReadOptions();
+            readOptions.setLazyConstantPool(true);
+            readOptions.setLazyAttributes(true);
+            ClassFile lazyClassFile = ClassFileReader.readFromByteArray(bytes, 0, bytes.length, readOptions);
+
+            assertEquals(lazyClassFile.getThisClassName(), classFile.getThisClassName(), resource);
+            compareAttributes(lazyClassFile.getAttributes(), classFile.getAttributes(), resource);
+            MethodInfo[] methods = classFile.getMethods();
+            MethodInfo[] lazyMethods = lazyClassFile.getMethods();
+            assertEquals(lazyMethods.length, methods.length, resource);
+            for (int i = 0; i < methods.length; i++) {
+                String message = resource + " " + methods[i].getName();
+                assertEquals(lazyMethods[i].getName(), methods[i].getName(), message);
+                assertEquals(lazyMethods[i].getDescriptor(), methods[i].getDescriptor(), message);
+                compareAttributes(lazyMethods[i].getAttributes(), methods[i].getAttributes(), message);
+                CodeAttribute codeAttribute = methods[i].getCodeAttribute();
+                if (codeAttribute != null) {
+                    CodeAttribute lazyCodeAttribute = lazyMethods[i].getCodeAttribute();
+                    assertEquals(lazyCodeAttribute.getMaxStack(), codeAttribute.getMaxStack(), message);
+                    assertEquals(lazyCodeAttribute.getCode(), codeAttribute.getCode(), message);
+                    compareAttributes(lazyCodeAttribute.getAttributes(), codeAttribute.getAttributes(), message);
+                }
+            }
+            // decoding the attributes does not change the written class file
+            assertEquals(ClassFileWriter.writeToByteArray(lazyClassFile), bytes, resource);
+        }
+    }
+
+    @Test
+    public void testCopyModified() throws IOException, InvalidByteCodeException {
+        for (String resource : CLASS_RESOURCES) {
+            byte[] bytes = TestFiles.readResource(resource);
+            int methodIndex = findMethodWithCode(ClassFileReader.readFromByteArray(bytes, 0, bytes.length));
+            if (methodIndex == -1) {
+                continue;
+            }
+            // frozen class files cannot be modified
+            for (int flags = 0; flags < 8; flags++) {
+                String message = resource + " " + flags;
+                ClassFile expected = ClassFileReader.readFromByteArray(bytes, 0, bytes.length);
+                ClassFile classFile = ClassFileReader.readFromByteArray(bytes, 0, bytes.length, createReadOptions(flags));
+                modifyMethod(expected.getMethods()[methodIndex]);
+                modifyMethod(classFile.getMethods()[methodIndex]);
+
+                byte[] after = ClassFileWriter.writeToByteArray(classFile);
+                assertEquals(after, ClassFileWriter.writeToByteArray(expected), message);
+                ClassFile readClassFile = ClassFileReader.readFromByteArray(after, 0, after.length);
+                MethodInfo method = readClassFile.getMethods()[methodIndex];
+                assertEquals(method.getAccessFlags(), expected.getMethods()[methodIndex].getAccessFlags(), message);
+                assertEquals(method.getCodeAttribute().getMaxStack(),
+                        expected.getMethods()[methodIndex].getCodeAttribute().getMaxStack(), message);
+                assertEquals(method.getCodeAttribute().getCode()[0], (byte)0, message);
+            }
+        }
+    }
+
+    @Test
+    public void testCopyUnmarkedInPlaceModification() throws IOException, InvalidByteCodeException {
+        byte[] bytes = TestFiles.readResource(CLASS_RESOURCES[0]);
+        ReadOptions readOptions = new ReadOptions();
+        readOptions.setCopyUnmodified(true);
+        ClassFile classFile = ClassFileReader.readFromByteArray(bytes, 0, bytes.length, readOptions);
+        CodeAttribute codeAttribute = classFile.getMethods()[findMethodWithCode(classFile)].getCodeAttribute();
+
+        // arrays that are modified in place have to be reported
+        byte[] code = codeAttribute.getCode();
+        byte opcode = code[0];
+        code[0] = 0;
+        assertEquals(ClassFileWriter.writeToByteArray(classFile), bytes);
+        codeAttribute.markModified();
+        byte[] after = ClassFileWriter.writeToByteArray(classFile);
+        assertEquals(after.length, bytes.length);
+        assertFalse(Arrays.equals(after, bytes));
+        code[0] = opcode;
+        assertEquals(ClassFileWriter.writeToByteArray(classFile), bytes);
+    }
+
+    @Test
+    public void testHeaderOnly() throws IOException, InvalidByteCodeException {
+        for (String resource : CLASS_RESOURCES) {
+            byte[] bytes = TestFiles.readResource(resource);
+            ClassFile expected = ClassFileReader.readFromByteArray(bytes, 0, bytes.length);
+            for (int flags = 0; flags < 16; flags++) {
+                String message = resource + " " + flags;
+                ReadOptions readOptions = createReadOptions(flags);
+                readOptions.setHeaderOnly(true);
+                ClassFile classFile = ClassFileReader.readFromByteArray(bytes, 0, bytes.length, readOptions);
+
+                assertEquals(classFile.getMinorVersion(), expected.getMinorVersion(), message);
+                assertEquals(classFile.getMajorVersion(), expected.getMajorVersion(), message);
+                assertEquals(classFile.getConstantPool().length, expected.getConstantPool().length, message);
+                assertEquals(classFile.getAccessFlags(), expected.getAccessFlags(), message);
+                assertEquals(classFile.getThisClassName(), expected.getThisClassName(), message);
+                assertEquals(classFile.getSuperClassName(), expected.getSuperClassName(), message);
+                assertEquals(classFile.getInterfaces(), expected.getInterfaces(), message);
+                assertEquals(classFile.getFields().length, 0, message);
+                assertEquals(classFile.getMethods().length, 0, message);
+                assertEquals(classFile.getAttributes().length, 0, message);
+                try {
+                    ClassFileWriter.writeToByteArray(classFile);
+                    fail("class file read without members has been written: " + message);
+                } catch (InvalidByteCodeException e) {
+                    // expected
+                }
+                try {
+                    writeToStream(classFile);
+                    fail("class file read without members has been written: " + message);
+                } catch (InvalidByteCodeException e) {
+                    // expected
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testOptionsChangedAfterRead() throws IOException, InvalidByteCodeException {
+        for (String resource : CLASS_RESOURCES) {
+            byte[] bytes = TestFiles.readResource(resource);
+            ReadOptions readOptions = new ReadOptions();
+            readOptions.setLazyAttributes(true);
+            readOptions.setExcludedAttributes("LineNumberTable");
+            ClassFile classFile = ClassFileReader.readFromByteArray(bytes, 0, bytes.length, readOptions);
+
+            // the attributes of code attributes are decoded after these changes
+            readOptions.setSkipAttributes(true);
+            readOptions.setExcludedAttributes("LocalVariableTable");
+            readOptions.setFreeze(true);
+            classFile.getReadOptions().setSkipAttributes(true);
+
+            assertTrue(classFile.getReadOptions().isLazyAttributes(), resource);
+            assertFalse(classFile.getReadOptions().isSkipAttributes(), resource);
+            assertFalse(classFile.getReadOptions().isAttributeIncluded("LineNumberTable"), resource);
+            assertTrue(classFile.getReadOptions().isAttributeIncluded("LocalVariableTable"), resource);
+
+            ReadOptions expectedOptions = new ReadOptions();
+            expectedOptions.setExcludedAttributes("LineNumberTable");
+            ClassFile expected = ClassFileReader.readFromByteArray(bytes, 0, bytes.length, expectedOptions);
+            MethodInfo[] methods = classFile.getMethods();
+            for (int i = 0; i < methods.length; i++) {
+                String message = resource + " " + methods[i].getName();
+                CodeAttribute codeAttribute = methods[i].getCodeAttribute();
+                if (codeAttribute != null) {
+                    compareAttributes(codeAttribute.getAttributes(),
+                            expected.getMethods()[i].getCodeAttribute().getAttributes(), message);
+                    assertNull(codeAttribute.findAttribute(LineNumberTableAttribute.class), message);
+                }
+            }
+            assertFalse(classFile.isFrozen(), resource);
+        }
+    }
+
+    private static ReadOptions createReadOptions(int flags) {
+        ReadOptions readOptions = new ReadOptions();
+        readOptions.setCopyUnmodified((flags & 1) != 0);
+        readOptions.setLazyConstantPool((flags & 2) != 0);
+        readOptions.setLazyAttributes((flags & 4) != 0);
+        readOptions.setFreeze((flags & 8) != 0);
+        return readOptions;
+    }
+
+    private static int findMethodWithCode(ClassFile classFile) {
+        MethodInfo[] methods = classFile.getMethods();
+        for (int i = methods.length - 1; i >= 0; i--) {
+            if (methods[i].getCodeAttribute() != null) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static void modifyMethod(MethodInfo method) {
+        method.setAccessFlags(method.getAccessFlags() ^ AccessFlag.SYNCHRONIZED.getFlag());
+        CodeAttribute codeAttribute = method.getCodeAttribute();
+        codeAttribute.setMaxStack(codeAttribute.getMaxStack() + 1);
+        byte[] code = codeAttribute.getCode().clone();
+        code[0] = 0;
+        codeAttribute.setCode(code);
+    }
+
+    private static void compareAttributes(AttributeInfo[] attributes, AttributeInfo[] expected, String message)
+            throws InvalidByteCodeException {
+
+        assertEquals(attributes.length, expected.length, message);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(attributes[i].getClass(), expected[i].getClass(), message);
+            assertEquals(attributes[i].getName(), expected[i].getName(), message);
+            assertEquals(attributes[i].getAttributeLength(), expected[i].getAttributeLength(), message);
+        }
+    }
+
+    private static byte[] writeToStream(ClassFile classFile) throws IOException, InvalidByteCodeException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bos);
+        classFile.write(out);
+        out.flush();
+        return bos.toByteArray();
+    }
+
+}
@@ -0,0 +1,184 @@
+/*
+ This library is free software; you can redistribute it and/or
+ modify it under the terms of the GNU General Public
+ License as published by the Free Software Foundation; either
+ version 2 of the license, or (at your option) any later version.
+ */
+
+package org.gjt.jclasslib.test;
+
+import org.gjt.jclasslib.io.ClassFileReader;
+import org.gjt.jclasslib.io.ClassFileWriter;
+import org.gjt.jclasslib.io.ReadOptions;
+import org.gjt.jclasslib.structures.ClassFile;
+import org.gjt.jclasslib.structures.InvalidByteCodeException;
+import org.gjt.jclasslib.structures.MethodInfo;
+import org.gjt.jclasslib.structures.attributes.CodeAttribute;
+import org.gjt.jclasslib.structures.attributes.StackMapFrameEntry;
+import org.gjt.jclasslib.structures.attributes.StackMapFrameTable;
+import org.gjt.jclasslib.structures.attributes.StackMapTableAttribute;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import static org.testng.Assert.*;
+
+public class StackMapFrameTableTest {
+
+    private static final String[] CLASS_RESOURCES = TestFiles.classResources(
+        "/org/gjt/jclasslib/bytecode/ControlFlowGraph.class",
+        "/org/gjt/jclasslib/io/ClassPathIndex.class",
+        "/org/gjt/jclasslib/structures/ClassFile.class",
+        "/org/gjt/jclasslib/structures/attributes/StackMapFrameTable.class"
+    );
+
+    @Test
+    public void testEntriesRoundTrip() throws IOException, InvalidByteCodeException {
+        int count = 0;
+        for (String resource : CLASS_RESOURCES) {
+            byte[] before = TestFiles.readResource(resource);
+            ClassFile classFile = ClassFileReader.readFromByteArray(before, 0, before.length);
+            ClassFile originalClassFile = ClassFileReader.readFromByteArray(before, 0, before.length);
+            MethodInfo[] methods = classFile.getMethods();
+            for (int i = 0; i < methods.length; i++) {
+                StackMapTableAttribute attribute = getStackMapTable(methods[i]);
+                if (attribute == null) {
+                    continue;
+                }
+                String message = resource + " " + methods[i].getName();
+                byte[] readBytes = writeAttribute(attribute);
+
+                // the entries are written instead of the frame table that has been read
+                StackMapFrameEntry[] entries = attribute.getEntries();
+                assertEquals(entries.length, attribute.getFrameTable().getFrameCount(), message);
+                assertEquals(writeAttribute(attribute), readBytes, message);
+
+                // the frame table that is created from the entries is equal to the one that has been read
+                StackMapFrameTable originalFrameTable = getStackMapTable(originalClassFile.getMethods()[i]).getFrameTable();
+                compareFrameTables(attribute.getFrameTable(), originalFrameTable, message);
+                assertEquals(writeAttribute(attribute), readBytes, message);
+                count++;
+            }
+            assertEquals(ClassFileWriter.writeToByteArray(classFile), before, resource);
+        }
+        assertTrue(count > 20, "only " + count + " stack map tables checked");
+    }
+
+    @Test
+    public void testFrameIndexAt() throws IOException, InvalidByteCodeException {
+        for (String resource : CLASS_RESOURCES) {
+            byte[] bytes = TestFiles.readResource(resource);
+            ClassFile classFile = ClassFileReader.readFromByteArray(bytes, 0, bytes.length);
+            for (MethodInfo method : classFile.getMethods()) {
+                StackMapTableAttribute attribute = getStackMapTable(method);
+                if (attribute == null) {
+                    continue;
+                }
+                String message = resource + " " + method.getName();
+                StackMapFrameTable frameTable = attribute.getFrameTable();
+                int frameCount = frameTable.getFrameCount();
+
+                // the first frame applies at its offset delta, later ones at the previous offset plus delta plus one
+                int[] offsets = new int[frameCount];
+                StackMapFrameEntry[] entries = attribute.getEntries();
+                for (int frame = 0; frame < frameCount; frame++) {
+                    offsets[frame] = frame == 0 ? entries[frame].getOffsetDelta() :
+                            offsets[frame - 1] + entries[frame].getOffsetDelta() + 1;
+                    assertEquals(frameTable.getFrameOffset(frame), offsets[frame], message);
+                }
+
+                int codeLength = method.getCodeAttribute().getCode().length;
+                int expectedFrame = -1;
+                for (int offset = 0; offset < codeLength; offset++) {
+                    while (expectedFrame + 1 < frameCount && offsets[expectedFrame + 1] <= offset) {
+                        expectedFrame++;
+                    }
+                    assertEquals(frameTable.getFrameIndexAt(offset), expectedFrame, message + " at " + offset);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testEntriesOfFrozenClassFile() throws IOException, InvalidByteCodeException {
+        ReadOptions readOptions = new ReadOptions();
+        readOptions.setFreeze(true);
+        int count = 0;
+        for (String resource : CLASS_RESOURCES) {
+            byte[] bytes = TestFiles.readResource(resource);
+            ClassFile expected = ClassFileReader.readFromByteArray(bytes, 0, bytes.length);
+            ClassFile classFile = ClassFileReader.readFromByteArray(bytes, 0, bytes.length, readOptions);
+            assertTrue(classFile.isFrozen(), resource);
+            MethodInfo[] methods = classFile.getMethods();
+            for (int i = 0; i < methods.length; i++) {
+                StackMapTableAttribute attribute = getStackMapTable(methods[i]);
+                if (attribute == null) {
+                    continue;
+                }
+                String message = resource + " " + methods[i].getName();
+                StackMapFrameEntry[] entries = attribute.getEntries();
+                StackMapFrameEntry[] expectedEntries = getStackMapTable(expected.getMethods()[i]).getEntries();
+                assertEquals(entries.length, expectedEntries.length, message);
+                for (int frame = 0; frame < entries.length; frame++) {
+                    String frameMessage = message + " frame " + frame;
+                    assertEquals(entries[frame].getTag(), expectedEntries[frame].getTag(), frameMessage);
+                    assertEquals(entries[frame].getOffsetDelta(), expectedEntries[frame].getOffsetDelta(), frameMessage);
+                    assertEquals(entries[frame].getOffset(), expectedEntries[frame].getOffset(), frameMessage);
+                    assertEquals(entries[frame].getLocalItems().length, expectedEntries[frame].getLocalItems().length, frameMessage);
+                    assertEquals(entries[frame].getStackItems().length, expectedEntries[frame].getStackItems().length, frameMessage);
+                }
+                // the entries are cached and the frame table is kept, since neither can be modified
+                assertSame(attribute.getEntries(), entries, message);
+                assertEquals(writeAttribute(attribute), writeAttribute(getStackMapTable(expected.getMethods()[i])), message);
+                if (entries.length > 0) {
+                    try {
+                        entries[0].setOffsetDelta(entries[0].getOffsetDelta());
+                        fail("entry of frozen class file has been modified: " + message);
+                    } catch (IllegalStateException e) {
+                        // expected
+                    }
+                }
+                count++;
+            }
+            assertEquals(ClassFileWriter.writeToByteArray(classFile), bytes, resource);
+        }
+        assertTrue(count > 20, "only " + count + " stack map tables checked");
+    }
+
+    private static void compareFrameTables(StackMapFrameTable frameTable, StackMapFrameTable expected, String message) {
+        assertEquals(frameTable.getFrameCount(), expected.getFrameCount(), message);
+        assertEquals(frameTable.getLength(), expected.getLength(), message);
+        for (int frame = 0; frame < expected.getFrameCount(); frame++) {
+            String frameMessage = message + " frame " + frame;
+            assertEquals(frameTable.getFrameOffset(frame), expected.getFrameOffset(frame), frameMessage);
+            assertEquals(frameTable.getFrameTag(frame), expected.getFrameTag(frame), frameMessage);
+            assertEquals(frameTable.getInitialLocalCount(frame, 10), expected.getInitialLocalCount(frame, 10), frameMessage);
+            assertEquals(frameTable.getLocalCount(frame), expected.getLocalCount(frame), frameMessage);
+            for (int i = 0; i < expected.getLocalCount(frame); i++) {
+                assertEquals(frameTable.getLocalType(frame, i), expected.getLocalType(frame, i), frameMessage);
+                assertEquals(frameTable.getLocalData(frame, i), expected.getLocalData(frame, i), frameMessage);
+            }
+            assertEquals(frameTable.getStackCount(frame), expected.getStackCount(frame), frameMessage);
+            for (int i = 0; i < expected.getStackCount(frame); i++) {
+                assertEquals(frameTable.getStackType(frame, i), expected.getStackType(frame, i), frameMessage);
+                assertEquals(frameTable.getStackData(frame, i), expected.getStackData(frame, i), frameMessage);
+            }
+        }
+    }
+
+    private static StackMapTableAttribute getStackMapTable(MethodInfo method) {
+        CodeAttribute codeAttribute = method.getCodeAttribute();
+        return codeAttribute == null ? null : codeAttribute.getStackMapTableAttribute();
+    }
+
+    private static byte[] writeAttribute(StackMapTableAttribute attribute) throws IOException, InvalidByteCodeException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bos);
+        attribute.write(out);
+        out.flush();
+        return bos.toByteArray();
+    }
+
+}
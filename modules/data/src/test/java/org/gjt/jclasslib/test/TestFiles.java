@@ -0,0 +1,122 @@
+/*
+ This library is free software; you can redistribute it and/or
+ modify it under the terms of the GNU General Public
+ License as published by the Free Software Foundation; either
+ version 2 of the license, or (at your option) any later version.
+ */
+
+package org.gjt.jclasslib.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import static org.testng.Assert.*;
+
+/**
+ * Creates the temporary files and directories for the tests of the classes that read
+ * class files from the file system.
+ */
+class TestFiles {
+
+    static final String[] CLASS_RESOURCES = {
+        "/java8/Main.class",
+        "/java8/Test.class",
+        "/java8/Test2.class",
+        "/java8/TestInterface.class"
+    };
+
+    /**
+     * Get the shared class file resources followed by additional resources.
+     *
+     * @param additionalResources the additional resources
+     * @return the resources
+     */
+    static String[] classResources(String... additionalResources) {
+        String[] resources = new String[CLASS_RESOURCES.length + additionalResources.length];
+        System.arraycopy(CLASS_RESOURCES, 0, resources, 0, CLASS_RESOURCES.length);
+        System.arraycopy(additionalResources, 0, resources, CLASS_RESOURCES.length, additionalResources.length);
+        return resources;
+    }
+
+    static byte[] readResource(String resource) throws IOException {
+        InputStream is = TestFiles.class.getResourceAsStream(resource);
+        assertNotNull(is, resource);
+        try {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int count;
+            while ((count = is.read(buffer)) != -1) {
+                bos.write(buffer, 0, count);
+            }
+            return bos.toByteArray();
+        } finally {
+            is.close();
+        }
+    }
+
+    static File createTempDirectory(String prefix) throws IOException {
+        File directory = File.createTempFile(prefix, "");
+        if (!directory.delete() || !directory.mkdir()) {
+            throw new IOException("cannot create " + directory);
+        }
+        return directory;
+    }
+
+    /**
+     * Write a file and create its parent directories.
+     *
+     * @param file the file
+     * @param bytes the content
+     */
+    static void writeFile(File file, byte[] bytes) throws IOException {
+        File parent = file.getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("cannot create " + parent);
+        }
+        OutputStream os = new FileOutputStream(file);
+        try {
+            os.write(bytes);
+        } finally {
+            os.close();
+        }
+    }
+
+    /**
+     * Write a jar file.
+     *
+     * @param file the jar file
+     * @param entries the contents by entry name, a <tt>null</tt> content creates a directory entry
+     */
+    static void writeJarFile(File file, Map<String, byte[]> entries) throws IOException {
+        JarOutputStream jos = new JarOutputStream(new FileOutputStream(file));
+        try {
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                jos.putNextEntry(new JarEntry(entry.getKey()));
+                if (entry.getValue() != null) {
+                    jos.write(entry.getValue());
+                }
+                jos.closeEntry();
+            }
+        } finally {
+            jos.close();
+        }
+    }
+
+    static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+}